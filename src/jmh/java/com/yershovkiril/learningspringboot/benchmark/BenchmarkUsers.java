@@ -0,0 +1,66 @@
+package com.yershovkiril.learningspringboot.benchmark;
+
+import com.yershovkiril.learningspringboot.dao.ConcurrentDataDao;
+import com.yershovkiril.learningspringboot.dao.FakeDataDao;
+import com.yershovkiril.learningspringboot.dao.OffHeapDataDao;
+import com.yershovkiril.learningspringboot.dao.ShardedDataDao;
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.model.User;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stores and users shared by the benchmarks.
+ */
+final class BenchmarkUsers {
+
+    private BenchmarkUsers() {
+    }
+
+    /**
+     * @param type a {@code users.dao.type} value; "fake" is not thread-safe, so only use it with -t 1
+     */
+    static UserDao newUserDao(String type) {
+        switch (type) {
+            case "fake":
+                return new FakeDataDao();
+            case "concurrent":
+                return new ConcurrentDataDao();
+            case "offheap":
+                return new OffHeapDataDao(64 << 20);
+            case "sharded":
+                return new ShardedDataDao(0, 1024);
+            default:
+                throw new IllegalArgumentException("unknown store " + type);
+        }
+    }
+
+    /**
+     * Fills {@code userDao} with {@code count} users and returns their uids.
+     */
+    static UUID[] fill(UserDao userDao, int count) {
+        UUID[] userUids = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            userUids[i] = randomUserUid();
+            userDao.insertUser(userUids[i], user(userUids[i], i));
+        }
+        return userUids;
+    }
+
+    /**
+     * A user whose email derives from its uid, so updates never collide on email.
+     */
+    static User user(UUID userUid, int i) {
+        return new User(userUid, "first" + i, "last" + i,
+                i % 2 == 0 ? User.Gender.MALE : User.Gender.FEMALE, i % 100, userUid + "@gmail.com");
+    }
+
+    /**
+     * Cheaper than {@link UUID#randomUUID()}, which draws from a shared SecureRandom.
+     */
+    static UUID randomUserUid() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new UUID(random.nextLong(), random.nextLong());
+    }
+}
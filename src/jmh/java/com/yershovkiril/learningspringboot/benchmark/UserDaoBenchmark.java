@@ -0,0 +1,68 @@
+package com.yershovkiril.learningspringboot.benchmark;
+
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single operations of each store at two sizes. Raise -t to add threads, leaving
+ * out "fake", which is not thread-safe: -t 4 -p dao=concurrent,offheap.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class UserDaoBenchmark {
+
+    @Param({"fake", "concurrent", "offheap"})
+    private String dao;
+
+    @Param({"1000", "100000"})
+    private int storeSize;
+
+    private UserDao userDao;
+    private UUID[] userUids;
+
+    @Setup
+    public void setUp() {
+        userDao = BenchmarkUsers.newUserDao(dao);
+        userUids = BenchmarkUsers.fill(userDao, storeSize);
+    }
+
+    @Benchmark
+    public Optional<User> selectUserByUserUid() {
+        return userDao.selectUserByUserUid(randomUserUid());
+    }
+
+    @Benchmark
+    public List<User> selectAllUsers() {
+        return userDao.selectAllUsers();
+    }
+
+    @Benchmark
+    public int updateUser() {
+        UUID userUid = randomUserUid();
+        return userDao.updateUser(BenchmarkUsers.user(userUid, ThreadLocalRandom.current().nextInt(100)));
+    }
+
+    /**
+     * Inserts a new user and deletes it again, so the store keeps its size.
+     */
+    @Benchmark
+    public int insertAndDeleteUser() {
+        UUID userUid = BenchmarkUsers.randomUserUid();
+        return userDao.insertUser(userUid, BenchmarkUsers.user(userUid, 7))
+                + userDao.deleteUserByUserUid(userUid);
+    }
+
+    private UUID randomUserUid() {
+        return userUids[ThreadLocalRandom.current().nextInt(userUids.length)];
+    }
+}
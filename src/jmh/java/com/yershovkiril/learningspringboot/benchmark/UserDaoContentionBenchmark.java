@@ -0,0 +1,148 @@
+package com.yershovkiril.learningspringboot.benchmark;
+
+import com.yershovkiril.learningspringboot.dao.FakeDataDao;
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mixed read/write contention on a single store. The "synchronized" baseline is
+ * {@link FakeDataDao} behind one monitor, which is the cheapest way to make the
+ * old HashMap safe; compare it against the concurrent store while raising -t.
+ * The off-heap store trades a decode per read for a near-empty heap; run with
+ * -prof gc to see what that costs in allocation. The sharded store hands every write to
+ * its shard's writer thread: writes cost a queue hand-off but never contend with each other,
+ * which pays off once -t exceeds the cores that would otherwise fight over the same lines.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class UserDaoContentionBenchmark {
+
+    @Param({"synchronized", "concurrent", "offheap", "sharded"})
+    private String dao;
+
+    @Param({"10000"})
+    private int storeSize;
+
+    private UserDao userDao;
+    private UUID[] userUids;
+
+    @Setup
+    public void setUp() {
+        userDao = "synchronized".equals(dao)
+                ? new SynchronizedDao(new FakeDataDao())
+                : BenchmarkUsers.newUserDao(dao);
+        userUids = BenchmarkUsers.fill(userDao, storeSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (userDao instanceof Closeable) {
+            ((Closeable) userDao).close();
+        }
+    }
+
+    @Benchmark
+    public Optional<User> read() {
+        return userDao.selectUserByUserUid(randomUserUid());
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(3)
+    public Optional<User> readMostlyRead() {
+        return userDao.selectUserByUserUid(randomUserUid());
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public int readMostlyWrite() {
+        UUID userUid = randomUserUid();
+        return userDao.updateUser(BenchmarkUsers.user(userUid, ThreadLocalRandom.current().nextInt(100)));
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(1)
+    public Optional<User> writeHeavyRead() {
+        return userDao.selectUserByUserUid(randomUserUid());
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(3)
+    public int writeHeavyWrite() {
+        UUID userUid = randomUserUid();
+        return userDao.updateUser(BenchmarkUsers.user(userUid, ThreadLocalRandom.current().nextInt(100)));
+    }
+
+    private UUID randomUserUid() {
+        return userUids[ThreadLocalRandom.current().nextInt(userUids.length)];
+    }
+
+    private static final class SynchronizedDao implements UserDao {
+        private final UserDao delegate;
+
+        SynchronizedDao(UserDao delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized List<User> selectAllUsers() {
+            return delegate.selectAllUsers();
+        }
+
+        @Override
+        public synchronized Optional<User> selectUserByUserUid(UUID userUid) {
+            return delegate.selectUserByUserUid(userUid);
+        }
+
+        @Override
+        public synchronized Optional<VersionedUser> selectVersionedUserByUserUid(UUID userUid) {
+            return delegate.selectVersionedUserByUserUid(userUid);
+        }
+
+        @Override
+        public synchronized int updateUser(User user) {
+            return delegate.updateUser(user);
+        }
+
+        @Override
+        public synchronized int updateUser(User user, long expectedVersion) {
+            return delegate.updateUser(user, expectedVersion);
+        }
+
+        @Override
+        public synchronized int deleteUserByUserUid(UUID userUid) {
+            return delegate.deleteUserByUserUid(userUid);
+        }
+
+        @Override
+        public synchronized int deleteUserByUserUid(UUID userUid, long expectedVersion) {
+            return delegate.deleteUserByUserUid(userUid, expectedVersion);
+        }
+
+        @Override
+        public synchronized int insertUser(UUID userUid, User user) {
+            return delegate.insertUser(userUid, user);
+        }
+
+        @Override
+        public synchronized long modificationCount() {
+            return delegate.modificationCount();
+        }
+    }
+}
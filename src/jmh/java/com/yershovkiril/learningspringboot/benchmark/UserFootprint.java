@@ -0,0 +1,55 @@
+package com.yershovkiril.learningspringboot.benchmark;
+
+import com.yershovkiril.learningspringboot.dao.ConcurrentDataDao;
+import com.yershovkiril.learningspringboot.dao.FakeDataDao;
+import com.yershovkiril.learningspringboot.dao.OffHeapDataDao;
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.model.User;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Heap retained by each store for the same users, measured with JOL by walking the
+ * object graph reachable from the store. Direct memory held by the off-heap store is
+ * not on that graph and is reported next to it.
+ * <p>
+ * Arguments: {@code [users]}, one million by default.
+ */
+public final class UserFootprint {
+
+    private UserFootprint() {
+    }
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%-12s %16s %12s %16s%n", "store", "heap bytes", "heap/user", "direct bytes");
+        measure("fake", FakeDataDao::new, users);
+        measure("concurrent", ConcurrentDataDao::new, users);
+        measure("offheap", () -> new OffHeapDataDao(64 << 20), users);
+    }
+
+    private static void measure(String name, Supplier<UserDao> store, int users) {
+        UserDao userDao = store.get();
+        Random random = new Random(42);
+        for (int i = 0; i < users; i++) {
+            UUID userUid = new UUID(random.nextLong(), random.nextLong());
+            userDao.insertUser(userUid, new User(userUid, name(random, 4, 10), name(random, 5, 12),
+                    random.nextBoolean() ? User.Gender.MALE : User.Gender.FEMALE, random.nextInt(90),
+                    userUid + "@gmail.com"));
+        }
+        long heapBytes = GraphLayout.parseInstance(userDao).totalSize();
+        long directBytes = userDao instanceof OffHeapDataDao ? ((OffHeapDataDao) userDao).offHeapBytes() : 0;
+        System.out.printf("%-12s %,16d %,12.1f %,16d%n", name, heapBytes, (double) heapBytes / users, directBytes);
+    }
+
+    private static String name(Random random, int minLength, int maxLength) {
+        char[] name = new char[minLength + random.nextInt(maxLength - minLength + 1)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(name);
+    }
+}
@@ -0,0 +1,87 @@
+package com.yershovkiril.learningspringboot.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserJsonModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson round-trips of one user and of a page of users, with the mapper configured
+ * the way Spring Boot configures its own: {@code reflective} with bean binding alone,
+ * {@code tuned} with the modules of {@code JacksonConfig} as the application runs it.
+ * Compare the two with {@code -Djmh.args="UserJson -f 1 -prof gc"} for allocation per op.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class UserJsonBenchmark {
+
+    @Param({"100"})
+    private int listSize;
+
+    @Param({"reflective", "tuned"})
+    private String mapper;
+
+    private ObjectWriter userWriter;
+    private ObjectReader userReader;
+    private ObjectWriter listWriter;
+    private ObjectReader listReader;
+    private User user;
+    private List<User> users;
+    private byte[] userJson;
+    private byte[] usersJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        if ("tuned".equals(mapper)) {
+            builder.modulesToInstall(new AfterburnerModule(), new UserJsonModule());
+        }
+        ObjectMapper objectMapper = builder.build();
+        TypeReference<List<User>> listType = new TypeReference<List<User>>() {
+        };
+        userWriter = objectMapper.writerFor(User.class);
+        userReader = objectMapper.readerFor(User.class);
+        listWriter = objectMapper.writerFor(listType);
+        listReader = objectMapper.readerFor(listType);
+        user = BenchmarkUsers.user(BenchmarkUsers.randomUserUid(), 1);
+        users = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            users.add(BenchmarkUsers.user(BenchmarkUsers.randomUserUid(), i));
+        }
+        userJson = userWriter.writeValueAsBytes(user);
+        usersJson = listWriter.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public byte[] writeUser() throws IOException {
+        return userWriter.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public User readUser() throws IOException {
+        return userReader.readValue(userJson);
+    }
+
+    @Benchmark
+    public byte[] writeUserList() throws IOException {
+        return listWriter.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public List<User> readUserList() throws IOException {
+        return listReader.readValue(usersJson);
+    }
+}
@@ -0,0 +1,103 @@
+package com.yershovkiril.learningspringboot.benchmark;
+
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 name searches against the indexed store and a scanning one. Users draw their
+ * names from pools of made-up first and last names, so like real ones each name is shared
+ * by many users, while emails are unique.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class UserSearchBenchmark {
+
+    private static final int LIMIT = 10;
+    private static final String[] SYLLABLES = {"an", "bel", "ca", "dor", "el", "fi", "ga", "hen", "is", "jo",
+            "ka", "li", "mon", "na", "or", "pe", "ra", "son", "ta", "vi"};
+
+    @Param({"concurrent", "offheap"})
+    private String dao;
+
+    @Param({"100000", "1000000"})
+    private int storeSize;
+
+    private UserDao userDao;
+    private String[] firstNames;
+    private String[] lastNames;
+    // first and last names of stored users, as people search for someone who exists
+    private String[][] storedNames;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        firstNames = names(random, 2_000, 3);
+        lastNames = names(random, 50_000, 4);
+        storedNames = new String[1024][];
+        userDao = BenchmarkUsers.newUserDao(dao);
+        for (int i = 0; i < storeSize; i++) {
+            UUID userUid = BenchmarkUsers.randomUserUid();
+            String firstName = firstNames[random.nextInt(firstNames.length)];
+            String lastName = lastNames[random.nextInt(lastNames.length)];
+            userDao.insertUser(userUid, new User(userUid, firstName, lastName, User.Gender.FEMALE, i % 100,
+                    firstName.toLowerCase() + "." + lastName.toLowerCase() + i + "@gmail.com"));
+            if (i < storedNames.length) {
+                storedNames[i] = new String[]{firstName, lastName};
+            }
+        }
+    }
+
+    @Benchmark
+    public List<User> exactWord() {
+        return userDao.searchUsers(lastName(), LIMIT);
+    }
+
+    @Benchmark
+    public List<User> prefix() {
+        return userDao.searchUsers(lastName().substring(0, 3), LIMIT);
+    }
+
+    @Benchmark
+    public List<User> twoWords() {
+        String[] names = storedNames[ThreadLocalRandom.current().nextInt(storedNames.length)];
+        return userDao.searchUsers(names[0] + " " + names[1].substring(0, 4), LIMIT);
+    }
+
+    /**
+     * Swaps two letters in the middle of a last name.
+     */
+    @Benchmark
+    public List<User> typo() {
+        String lastName = lastName();
+        int i = lastName.length() / 2;
+        return userDao.searchUsers(lastName.substring(0, i - 1) + lastName.charAt(i) + lastName.charAt(i - 1)
+                + lastName.substring(i + 1), LIMIT);
+    }
+
+    private String lastName() {
+        return lastNames[ThreadLocalRandom.current().nextInt(lastNames.length)];
+    }
+
+    private static String[] names(Random random, int count, int maxSyllables) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int syllables = 2 + random.nextInt(maxSyllables - 1); syllables > 0; syllables--) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+            names[i] = name.toString();
+        }
+        return names;
+    }
+}
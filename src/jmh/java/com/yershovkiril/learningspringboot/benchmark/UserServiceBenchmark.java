@@ -0,0 +1,48 @@
+package com.yershovkiril.learningspringboot.benchmark;
+
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.service.UserService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserService#getAllUsers} with and without a gender filter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class UserServiceBenchmark {
+
+    @Param({"fake", "concurrent"})
+    private String dao;
+
+    @Param({"1000", "100000"})
+    private int storeSize;
+
+    private UserService userService;
+    private final Optional<String> noGender = Optional.empty();
+    private final Optional<String> female = Optional.of("FEMALE");
+
+    @Setup
+    public void setUp() {
+        UserDao userDao = BenchmarkUsers.newUserDao(dao);
+        BenchmarkUsers.fill(userDao, storeSize);
+        userService = new UserService(userDao);
+    }
+
+    @Benchmark
+    public List<User> getAllUsers() {
+        return userService.getAllUsers(noGender);
+    }
+
+    @Benchmark
+    public List<User> getAllUsersByGender() {
+        return userService.getAllUsers(female);
+    }
+}
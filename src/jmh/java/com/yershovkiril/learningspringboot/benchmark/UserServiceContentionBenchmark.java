@@ -0,0 +1,57 @@
+package com.yershovkiril.learningspringboot.benchmark;
+
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.service.UserChangeFeed;
+import com.yershovkiril.learningspringboot.service.UserService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updates of random users through {@link UserService}, which numbers every write in its
+ * {@link UserChangeFeed}. Writes to different users only share a feed stripe by chance,
+ * so throughput should follow the store's own as -t rises; compare with
+ * {@link UserDaoContentionBenchmark} writes at the same -t.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class UserServiceContentionBenchmark {
+
+    @Param({"concurrent", "sharded"})
+    private String dao;
+
+    @Param({"10000"})
+    private int storeSize;
+
+    private UserDao userDao;
+    private UserService userService;
+    private UUID[] userUids;
+
+    @Setup
+    public void setUp() {
+        userDao = BenchmarkUsers.newUserDao(dao);
+        userUids = BenchmarkUsers.fill(userDao, storeSize);
+        userService = new UserService(userDao, new UserChangeFeed(userDao));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (userDao instanceof Closeable) {
+            ((Closeable) userDao).close();
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID userUid = userUids[random.nextInt(userUids.length)];
+        return userService.updateUser(BenchmarkUsers.user(userUid, random.nextInt(100)));
+    }
+}
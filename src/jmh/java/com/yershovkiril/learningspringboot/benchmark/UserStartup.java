@@ -0,0 +1,128 @@
+package com.yershovkiril.learningspringboot.benchmark;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to ready and first-request latency of the packaged application, each run a fresh
+ * JVM: the time from launching it until {@code /actuator/health/readiness} is UP, then
+ * the latency of the first and second {@code GET /api/v1/users}. Runs the fat jar as
+ * configured by default and with the fast-startup profile, and the thin jar with the
+ * AppCDS archive built by the cds Maven profile when it is there.
+ * <p>
+ * Arguments: {@code [runs] [cds directory]}, five runs and {@code target/cds} by default.
+ * The output of each mode goes to {@code target/startup-<mode>.log}.
+ */
+public final class UserStartup {
+
+    private static final long TIMEOUT_MS = 120_000;
+
+    private UserStartup() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        File cds = new File(args.length > 1 ? args[1] : "target/cds");
+        File fatJar = jar(new File("target"), (dir, name) -> name.endsWith(".jar"));
+        System.out.printf("%-14s %12s %12s %12s%n", "mode", "ready ms", "first ms", "second ms");
+        measure("default", runs, Arrays.asList("-jar", fatJar.getPath()));
+        measure("fast-startup", runs, Arrays.asList("-jar", fatJar.getPath(), "--spring.profiles.active=fast-startup"));
+        File archive = new File(cds, "app.jsa");
+        if (archive.isFile()) {
+            measure("cds", runs, Arrays.asList("-XX:SharedArchiveFile=" + archive.getPath(), "-jar",
+                    jar(cds, (dir, name) -> name.endsWith("-cds.jar")).getPath(), "--spring.profiles.active=fast-startup"));
+        } else {
+            System.out.println("no " + archive + ", build it with mvn -Pcds package -DskipTests");
+        }
+    }
+
+    private static void measure(String mode, int runs, List<String> arguments) throws Exception {
+        double ready = 0;
+        double first = 0;
+        double second = 0;
+        for (int i = 0; i < runs; i++) {
+            int port = freePort();
+            int managementPort = freePort();
+            List<String> command = new ArrayList<>();
+            command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+            command.addAll(arguments);
+            command.add("--server.port=" + port);
+            command.add("--management.server.port=" + managementPort);
+            command.add("--management.endpoint.health.probes.enabled=true");
+            long started = System.nanoTime();
+            Process application = new ProcessBuilder(command)
+                    .redirectOutput(new File("target", "startup-" + mode + ".log"))
+                    .redirectErrorStream(true)
+                    .start();
+            try {
+                String readiness = "http://localhost:" + managementPort + "/actuator/health/readiness";
+                while (get(readiness) != 200) {
+                    if (!application.isAlive() || elapsedMs(started) > TIMEOUT_MS) {
+                        throw new IllegalStateException(mode + " did not get ready");
+                    }
+                    Thread.sleep(10);
+                }
+                ready += elapsedMs(started);
+                first += timeMs("http://localhost:" + port + "/api/v1/users");
+                second += timeMs("http://localhost:" + port + "/api/v1/users");
+            } finally {
+                application.destroy();
+                application.waitFor(30, TimeUnit.SECONDS);
+            }
+        }
+        System.out.printf("%-14s %,12.0f %,12.1f %,12.1f%n", mode, ready / runs, first / runs, second / runs);
+    }
+
+    private static double timeMs(String url) throws IOException {
+        long started = System.nanoTime();
+        if (get(url) != 200) {
+            throw new IllegalStateException(url + " failed");
+        }
+        return (System.nanoTime() - started) / 1e6;
+    }
+
+    private static int get(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            int status = connection.getResponseCode();
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (body != null) {
+                    byte[] buffer = new byte[8192];
+                    while (body.read(buffer) >= 0) {
+                        // discarded
+                    }
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static long elapsedMs(long started) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static File jar(File directory, FilenameFilter filter) {
+        File[] jars = directory.listFiles(filter);
+        if (jars == null || jars.length == 0) {
+            throw new IllegalStateException("no jar in " + directory + ", run mvn package first");
+        }
+        return jars[0];
+    }
+}
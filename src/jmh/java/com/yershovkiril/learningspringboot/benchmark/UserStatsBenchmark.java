@@ -0,0 +1,48 @@
+package com.yershovkiril.learningspringboot.benchmark;
+
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.model.UserStats;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store-side statistics against the way reports computed them before: copying every user
+ * out and totalling them on one thread. Parallel speed-up needs as many free cores; cap the
+ * common pool with -jvmArgs -Djava.util.concurrent.ForkJoinPool.common.parallelism=N to compare.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class UserStatsBenchmark {
+
+    private static final int TOP_DOMAINS = 10;
+
+    @Param({"concurrent", "offheap"})
+    private String dao;
+
+    @Param({"100000", "1000000"})
+    private int storeSize;
+
+    private UserDao userDao;
+
+    @Setup
+    public void setUp() {
+        userDao = BenchmarkUsers.newUserDao(dao);
+        BenchmarkUsers.fill(userDao, storeSize);
+    }
+
+    @Benchmark
+    public UserStats collectStats() {
+        return userDao.collectStats().toStats(TOP_DOMAINS);
+    }
+
+    @Benchmark
+    public UserStats selectAllUsersAndTotal() {
+        UserStats.Accumulator stats = new UserStats.Accumulator();
+        userDao.selectAllUsers().forEach(stats::accept);
+        return stats.toStats(TOP_DOMAINS);
+    }
+}
@@ -0,0 +1,54 @@
+package com.yershovkiril.learningspringboot.benchmark;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.service.UserValidator;
+import org.openjdk.jmh.annotations.*;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of one user against the constraints of {@link User}: {@code bean} with
+ * Hibernate Validator, as {@code @Valid} ran it, {@code compiled} with {@link UserValidator}.
+ * Compare the two with {@code -Djmh.args="UserValidation -f 1 -prof gc"} for allocation per op.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class UserValidationBenchmark {
+
+    @Param({"bean", "compiled"})
+    private String validator;
+
+    private Validator beanValidator;
+    private User validUser;
+    private User invalidUser;
+
+    @Setup
+    public void setUp() {
+        beanValidator = Validation.buildDefaultValidatorFactory().getValidator();
+        validUser = BenchmarkUsers.user(BenchmarkUsers.randomUserUid(), 1);
+        invalidUser = new User(validUser.getUserUid(), validUser.getFirstName(), validUser.getLastName(),
+                validUser.getGender(), validUser.getAge(), "not-an-email");
+    }
+
+    @Benchmark
+    public boolean validUser() {
+        return isValid(validUser);
+    }
+
+    @Benchmark
+    public boolean invalidUser() {
+        return isValid(invalidUser);
+    }
+
+    private boolean isValid(User user) {
+        if ("bean".equals(validator)) {
+            return beanValidator.validate(user).isEmpty();
+        }
+        return UserValidator.validationError(user) == null;
+    }
+}
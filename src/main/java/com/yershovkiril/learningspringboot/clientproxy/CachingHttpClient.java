@@ -0,0 +1,306 @@
+package com.yershovkiril.learningspringboot.clientproxy;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.http.*;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.Configurable;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Private HTTP cache and request coalescing in front of the users API client.
+ * <p>
+ * GET responses that carry an {@code ETag} or a positive {@code max-age} are buffered and
+ * kept, keyed by URL and {@code Accept}. A fresh entry is answered locally; a stale one is
+ * revalidated with {@code If-None-Match} and reused on 304. {@code no-store} responses are
+ * never kept. Identical GETs issued while one is in flight wait for it and share its
+ * response instead of sending their own (single-flight). A successful non-GET drops the
+ * entries under the path it targeted.
+ * <p>
+ * Requests that set their own conditional or {@code Cache-Control} headers bypass the cache.
+ */
+public class CachingHttpClient extends CloseableHttpClient implements Configurable, MeterBinder {
+
+    private static final String CACHE_NAME = "users-api-client";
+
+    private final CloseableHttpClient httpClient;
+    private final Cache<String, CachedResponse> cache;
+    private final Ticker ticker;
+    private final ConcurrentMap<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    public CachingHttpClient(CloseableHttpClient httpClient, long maximumSize) {
+        this(httpClient, maximumSize, Ticker.systemTicker());
+    }
+
+    CachingHttpClient(CloseableHttpClient httpClient, long maximumSize, Ticker ticker) {
+        this.httpClient = httpClient;
+        this.ticker = ticker;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+            throws IOException {
+        String method = request.getRequestLine().getMethod();
+        if (!"GET".equals(method)) {
+            CloseableHttpResponse response = httpClient.execute(target, request, context);
+            if (response.getStatusLine().getStatusCode() < 400) {
+                invalidate(target, request);
+            }
+            return response;
+        }
+        if (request.containsHeader(HttpHeaders.IF_NONE_MATCH)
+                || request.containsHeader(HttpHeaders.IF_MODIFIED_SINCE)
+                || request.containsHeader(HttpHeaders.CACHE_CONTROL)) {
+            return httpClient.execute(target, request, context);
+        }
+
+        String key = key(target, request);
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null && cached.isFresh(ticker.read())) {
+            return cached.toResponse();
+        }
+        CompletableFuture<CachedResponse> flight = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.increment();
+            CachedResponse shared = await(leader);
+            return shared != null ? shared.toResponse() : httpClient.execute(target, request, context);
+        }
+        try {
+            CloseableHttpResponse response = fetch(target, request, context, key, cached);
+            flight.complete(response instanceof CachedHttpResponse ? ((CachedHttpResponse) response).source : null);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private CloseableHttpResponse fetch(HttpHost target, HttpRequest request, HttpContext context,
+                                        String key, CachedResponse cached) throws IOException {
+        if (cached != null && cached.entityTag != null) {
+            request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.entityTag);
+        }
+        long requestTime = ticker.read();
+        CloseableHttpResponse response = httpClient.execute(target, request, context);
+        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+            response.close();
+            CachedResponse revalidated = cached.revalidated(response, requestTime);
+            cache.put(key, revalidated);
+            return revalidated.toResponse();
+        }
+        CacheControl cacheControl = CacheControl.of(response);
+        Header entityTag = response.getFirstHeader(HttpHeaders.ETAG);
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK
+                || cacheControl.noStore
+                || (entityTag == null && cacheControl.maxAgeNanos <= 0)) {
+            cache.invalidate(key);
+            return response;
+        }
+        CachedResponse stored;
+        try {
+            byte[] body = response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+            stored = new CachedResponse(response.getStatusLine(), response.getAllHeaders(), body,
+                    entityTag == null ? null : entityTag.getValue(), requestTime + cacheControl.maxAgeNanos);
+        } finally {
+            response.close();
+        }
+        cache.put(key, stored);
+        return stored.toResponse();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+        FunctionCounter.builder("users.client.coalesced", coalesced, LongAdder::sum)
+                .description("GET requests that shared the response of an identical request in flight")
+                .register(registry);
+    }
+
+    @Override
+    public RequestConfig getConfig() {
+        return httpClient instanceof Configurable ? ((Configurable) httpClient).getConfig() : RequestConfig.DEFAULT;
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public HttpParams getParams() {
+        return httpClient.getParams();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public ClientConnectionManager getConnectionManager() {
+        return httpClient.getConnectionManager();
+    }
+
+    private void invalidate(HttpHost target, HttpRequest request) {
+        String uri = uri(request);
+        int query = uri.indexOf('?');
+        String prefix = target.toURI() + (query < 0 ? uri : uri.substring(0, query));
+        cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static String key(HttpHost target, HttpRequest request) {
+        StringBuilder key = new StringBuilder(target.toURI()).append(uri(request));
+        for (Header accept : request.getHeaders(HttpHeaders.ACCEPT)) {
+            key.append(' ').append(accept.getValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * The path and query of the request, whether its request line holds them alone or an absolute URI.
+     */
+    private static String uri(HttpRequest request) {
+        String uri = request.getRequestLine().getUri();
+        int scheme = uri.indexOf("://");
+        if (uri.startsWith("/") || scheme < 0) {
+            return uri;
+        }
+        int path = uri.indexOf('/', scheme + 3);
+        return path < 0 ? "/" : uri.substring(path);
+    }
+
+    private static CachedResponse await(CompletableFuture<CachedResponse> leader) throws IOException {
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for an identical request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ClientProtocolException(cause);
+        }
+    }
+
+    private static final class CacheControl {
+        private final boolean noStore;
+        private final long maxAgeNanos;
+
+        private CacheControl(boolean noStore, long maxAgeNanos) {
+            this.noStore = noStore;
+            this.maxAgeNanos = maxAgeNanos;
+        }
+
+        static CacheControl of(HttpResponse response) {
+            boolean noStore = false;
+            boolean noCache = false;
+            long maxAgeSeconds = 0;
+            for (Header header : response.getHeaders(HttpHeaders.CACHE_CONTROL)) {
+                for (HeaderElement element : header.getElements()) {
+                    String name = element.getName().toLowerCase(Locale.ROOT);
+                    if ("no-store".equals(name)) {
+                        noStore = true;
+                    } else if ("no-cache".equals(name)) {
+                        noCache = true;
+                    } else if ("max-age".equals(name) && element.getValue() != null) {
+                        try {
+                            maxAgeSeconds = Math.max(0, Long.parseLong(element.getValue()));
+                        } catch (NumberFormatException e) {
+                            maxAgeSeconds = 0;
+                        }
+                    }
+                }
+            }
+            return new CacheControl(noStore, noCache ? 0 : TimeUnit.SECONDS.toNanos(maxAgeSeconds));
+        }
+    }
+
+    private static final class CachedResponse {
+        private final StatusLine statusLine;
+        private final Header[] headers;
+        private final byte[] body;
+        private final String entityTag;
+        private final long expiresAt;
+
+        CachedResponse(StatusLine statusLine, Header[] headers, byte[] body, String entityTag, long expiresAt) {
+            this.statusLine = statusLine;
+            this.headers = headers;
+            this.body = body;
+            this.entityTag = entityTag;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isFresh(long now) {
+            return now - expiresAt < 0;
+        }
+
+        CachedResponse revalidated(HttpResponse notModified, long requestTime) {
+            return new CachedResponse(statusLine, headers, body, entityTag,
+                    requestTime + CacheControl.of(notModified).maxAgeNanos);
+        }
+
+        CloseableHttpResponse toResponse() {
+            CachedHttpResponse response = new CachedHttpResponse(this);
+            for (Header header : headers) {
+                if (!HttpHeaders.TRANSFER_ENCODING.equalsIgnoreCase(header.getName())
+                        && !HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getName())) {
+                    response.addHeader(header);
+                }
+            }
+            ByteArrayEntity entity = new ByteArrayEntity(body);
+            Header contentType = response.getFirstHeader(HttpHeaders.CONTENT_TYPE);
+            if (contentType != null) {
+                entity.setContentType(contentType);
+            }
+            response.setHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(body.length));
+            response.setEntity(entity);
+            return response;
+        }
+    }
+
+    private static final class CachedHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+        private final CachedResponse source;
+
+        CachedHttpResponse(CachedResponse source) {
+            super(source.statusLine);
+            this.source = source;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,29 +1,168 @@
 package com.yershovkiril.learningspringboot.clientproxy;
 
+import com.yershovkiril.learningspringboot.config.ObjectMapperContextResolver;
+import com.yershovkiril.learningspringboot.config.SmileProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.MicrometerHttpRequestExecutor;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
 import org.jboss.resteasy.client.jaxrs.ResteasyWebTarget;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient43Engine;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.core.UriBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 @Configuration
 public class ClientProxyConfig {
 
+    private static final String CLIENT_NAME = "users-api";
+    private static final Pattern UUID_SEGMENT =
+            Pattern.compile("/[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}(?=/|$)");
+
     @Value("${users.api.url.v1}")
     private String usersEndpointUrl;
 
+    @Value("${users.client.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${users.client.max-connections-per-route:50}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${users.client.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${users.client.read-timeout-ms:10000}")
+    private int readTimeoutMs;
+
+    @Value("${users.client.pool-timeout-ms:1000}")
+    private int poolTimeoutMs;
+
+    @Value("${users.client.keep-alive-ms:30000}")
+    private long keepAliveMs;
+
+    @Value("${users.client.async-threads:16}")
+    private int asyncThreads;
+
+    @Value("${users.client.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${users.client.cache.maximum-size:1000}")
+    private long cacheMaximumSize;
+
+    @Value("${users.client.smile.enabled:true}")
+    private boolean smileEnabled;
+
+    /**
+     * Keeps connections to the users API open between calls. Connections idle past
+     * {@code keep-alive-ms} are closed, and ones idle for a second are checked before reuse.
+     */
+    @Bean
+    public PoolingHttpClientConnectionManager userApiConnectionManager() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(1000);
+        return connectionManager;
+    }
+
+    /**
+     * Publishes leased, available and pending connections as the
+     * {@code httpcomponents.httpclient.pool.*} meters tagged {@code httpclient=users-api}.
+     */
+    @Bean
+    public MeterBinder userApiConnectionPoolMetrics(PoolingHttpClientConnectionManager userApiConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(userApiConnectionManager, CLIENT_NAME);
+    }
+
+    /**
+     * Shared by the proxies below. Request latency is timed as
+     * {@code httpcomponents.httpclient.request}, tagged with the method, status and the
+     * path with uids replaced by {@code {userUid}}. Unless disabled, a {@link CachingHttpClient}
+     * answers repeated GETs from its cache and coalesces identical ones in flight.
+     * Asynchronous proxy calls block a thread of their own pool, leaving the caller's free.
+     * Bodies are read and written with the same mappers as the server's, as Smile unless disabled.
+     */
+    @Bean(destroyMethod = "close")
+    public ResteasyClient userApiClient(PoolingHttpClientConnectionManager userApiConnectionManager,
+                                        MeterRegistry meterRegistry,
+                                        ObjectMapperContextResolver objectMapperContextResolver,
+                                        SmileProvider smileProvider) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .setConnectionRequestTimeout(poolTimeoutMs)
+                .build();
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(userApiConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long advertised = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return advertised > 0 ? Math.min(advertised, keepAliveMs) : keepAliveMs;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS)
+                .setRequestExecutor(MicrometerHttpRequestExecutor.builder(meterRegistry)
+                        .uriMapper(ClientProxyConfig::uriTemplate)
+                        .tags(Tags.of("httpclient", CLIENT_NAME))
+                        .build())
+                .build();
+        if (cacheEnabled) {
+            CachingHttpClient cachingHttpClient = new CachingHttpClient(httpClient, cacheMaximumSize);
+            cachingHttpClient.bindTo(meterRegistry);
+            httpClient = cachingHttpClient;
+        }
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService asyncExecutor = Executors.newFixedThreadPool(asyncThreads, runnable -> {
+            Thread thread = new Thread(runnable, "users-api-client-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ClientBuilder clientBuilder = ClientBuilder.newBuilder()
+                .register(objectMapperContextResolver)
+                .register(smileProvider);
+        if (smileEnabled) {
+            clientBuilder.register(new SmileRequestFilter());
+        }
+        return ((ResteasyClientBuilder) clientBuilder)
+                .httpEngine(new ApacheHttpClient43Engine(httpClient, true))
+                .executorService(asyncExecutor, true)
+                .build();
+    }
+
     @Bean
-    public UserResourceV1 geUserControllerRestEasyProxy() {
-        // Client
-        ResteasyClient client = (ResteasyClient) ClientBuilder.newClient();
+    public UserResourceV1 geUserControllerRestEasyProxy(ResteasyClient userApiClient) {
         // WebTarget
-        ResteasyWebTarget target = client.target(usersEndpointUrl);
+        ResteasyWebTarget target = userApiClient.target(usersEndpointUrl);
         // Return Proxy
         UserResourceV1 proxy = target.proxy(UserResourceV1.class);
         return proxy;
     }
+
+    @Bean
+    public UserResourceV1Async userResourceV1AsyncProxy(ResteasyClient userApiClient) {
+        return userApiClient.target(usersEndpointUrl).proxy(UserResourceV1Async.class);
+    }
+
+    static String uriTemplate(HttpRequest request) {
+        String uri = request.getRequestLine().getUri();
+        int query = uri.indexOf('?');
+        String path = query < 0 ? uri : uri.substring(0, query);
+        return UUID_SEGMENT.matcher(path).replaceAll("/{userUid}");
+    }
 }
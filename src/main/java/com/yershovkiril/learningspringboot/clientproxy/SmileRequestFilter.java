@@ -0,0 +1,29 @@
+package com.yershovkiril.learningspringboot.clientproxy;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.util.List;
+
+import static com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes.APPLICATION_JACKSON_SMILE_TYPE;
+
+/**
+ * Sends JSON request bodies as Smile and asks for Smile wherever JSON alone was accepted,
+ * with JSON as the fallback for resources that only produce JSON.
+ */
+public class SmileRequestFilter implements ClientRequestFilter {
+
+    static final String ACCEPT_SMILE = APPLICATION_JACKSON_SMILE_TYPE + ", " + MediaType.APPLICATION_JSON + ";q=0.5";
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        List<MediaType> accepted = requestContext.getAcceptableMediaTypes();
+        if (accepted.size() == 1 && accepted.get(0).isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+            requestContext.getHeaders().putSingle(HttpHeaders.ACCEPT, ACCEPT_SMILE);
+        }
+        if (requestContext.hasEntity() && MediaType.APPLICATION_JSON_TYPE.isCompatible(requestContext.getMediaType())) {
+            requestContext.getHeaders().putSingle(HttpHeaders.CONTENT_TYPE, APPLICATION_JACKSON_SMILE_TYPE);
+        }
+    }
+}
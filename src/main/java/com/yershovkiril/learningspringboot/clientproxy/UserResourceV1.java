@@ -1,9 +1,14 @@
 package com.yershovkiril.learningspringboot.clientproxy;
 
 import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserBatchResult;
+import com.yershovkiril.learningspringboot.model.UserImportResult;
+import com.yershovkiril.learningspringboot.model.UserStats;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
+import java.io.InputStream;
 import java.util.List;
 import java.util.UUID;
 
@@ -14,6 +19,93 @@ public interface UserResourceV1 {
     @Produces(APPLICATION_JSON)
     List<User> fetchUsers(@QueryParam("gender") String gender);
 
+    /**
+     * One page of users; the X-Next-Cursor response header carries the cursor of the next page.
+     */
+    @GET
+    @Produces(APPLICATION_JSON)
+    Response fetchUsersPage(@QueryParam("gender") String gender,
+                            @QueryParam("limit") Integer limit,
+                            @QueryParam("cursor") String cursor);
+
+    /**
+     * Users selected, ordered and trimmed by the server; fields left out by {@code fields} are null.
+     */
+    @GET
+    @Produces(APPLICATION_JSON)
+    List<User> queryUsers(@QueryParam("gender") String gender,
+                          @QueryParam("minAge") Integer minAge,
+                          @QueryParam("maxAge") Integer maxAge,
+                          @QueryParam("namePrefix") String namePrefix,
+                          @QueryParam("emailDomain") String emailDomain,
+                          @QueryParam("sort") String sort,
+                          @QueryParam("fields") String fields,
+                          @QueryParam("limit") Integer limit);
+
+    /**
+     * Best matches first for the words of {@code text}, by prefix or within a typo.
+     */
+    @GET
+    @Path("search")
+    @Produces(APPLICATION_JSON)
+    List<User> searchUsers(@QueryParam("q") String text, @QueryParam("limit") Integer limit);
+
+    /**
+     * Totals computed by the server, with the {@code domains} most common email domains.
+     */
+    @GET
+    @Path("stats")
+    @Produces(APPLICATION_JSON)
+    UserStats fetchUserStats(@QueryParam("domains") Integer domains);
+
+    /**
+     * Raw JSON array of all users, to be parsed incrementally and closed by the caller.
+     */
+    @GET
+    @Path("stream")
+    @Produces(APPLICATION_JSON)
+    InputStream streamUsers(@QueryParam("gender") String gender);
+
+    /**
+     * Every user, one JSON object per line, to be read incrementally and closed by the caller.
+     */
+    @GET
+    @Path("export")
+    @Produces("application/x-ndjson")
+    Response exportUsers(@QueryParam("gender") String gender);
+
+    /**
+     * Inserts the users of {@code ndjson}, one JSON object per line. The client compresses
+     * the body itself when {@code contentEncoding} is gzip; pass null to send it as it is.
+     */
+    @POST
+    @Path("import")
+    @Consumes("application/x-ndjson")
+    @Produces(APPLICATION_JSON)
+    UserImportResult importUsers(@HeaderParam(HttpHeaders.CONTENT_ENCODING) String contentEncoding,
+                                 InputStream ndjson);
+
+    /**
+     * Changes after {@code after} of {@code epoch}, one JSON UserChange per line, with the
+     * epoch in the X-Change-Epoch header. A followed response never ends and is read as it
+     * arrives; the feed is served {@code no-store}, which {@link CachingHttpClient} passes
+     * through without buffering.
+     */
+    @GET
+    @Path("changes")
+    @Produces("application/x-ndjson")
+    Response fetchChanges(@QueryParam("epoch") String epoch,
+                          @QueryParam("after") Long after,
+                          @QueryParam("follow") Boolean follow);
+
+    /**
+     * Every user, one JSON object per line, as of the X-Change-Epoch and X-Change-Sequence headers.
+     */
+    @GET
+    @Path("changes/snapshot")
+    @Produces("application/x-ndjson")
+    Response fetchChangesSnapshot();
+
     @GET
     @Path("{userUid}")
     @Produces(APPLICATION_JSON)
@@ -33,4 +125,22 @@ public interface UserResourceV1 {
     @Path("{userUid}")
     @Produces(APPLICATION_JSON)
     void deleteUser(@PathParam("userUid") UUID userUid);
+
+    @POST
+    @Path("batch")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    List<UserBatchResult> insertNewUsers(List<User> users);
+
+    @PUT
+    @Path("batch")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    List<UserBatchResult> updateUsers(List<User> users);
+
+    @DELETE
+    @Path("batch")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    List<UserBatchResult> deleteUsers(List<UUID> userUids);
 }
@@ -0,0 +1,70 @@
+package com.yershovkiril.learningspringboot.clientproxy;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserBatchResult;
+
+import javax.ws.rs.*;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+/**
+ * {@link UserResourceV1} without blocking the caller: every call returns at once and its
+ * stage completes from the client's own thread pool, failing with the same
+ * {@link WebApplicationException}s the blocking proxy throws.
+ */
+public interface UserResourceV1Async {
+    @GET
+    @Produces(APPLICATION_JSON)
+    CompletionStage<List<User>> fetchUsers(@QueryParam("gender") String gender);
+
+    /**
+     * One page of users; the X-Next-Cursor response header carries the cursor of the next page.
+     */
+    @GET
+    @Produces(APPLICATION_JSON)
+    CompletionStage<Response> fetchUsersPage(@QueryParam("gender") String gender,
+                                             @QueryParam("limit") Integer limit,
+                                             @QueryParam("cursor") String cursor);
+
+    @GET
+    @Path("{userUid}")
+    @Produces(APPLICATION_JSON)
+    CompletionStage<User> fetchUser(@PathParam("userUid") UUID userUid);
+
+    @POST
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    CompletionStage<Void> insertNewUser(User user);
+
+    @PUT
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    CompletionStage<Void> updateUser(User user);
+
+    @DELETE
+    @Path("{userUid}")
+    @Produces(APPLICATION_JSON)
+    CompletionStage<Void> deleteUser(@PathParam("userUid") UUID userUid);
+
+    @POST
+    @Path("batch")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    CompletionStage<List<UserBatchResult>> insertNewUsers(List<User> users);
+
+    @PUT
+    @Path("batch")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    CompletionStage<List<UserBatchResult>> updateUsers(List<User> users);
+
+    @DELETE
+    @Path("batch")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    CompletionStage<List<UserBatchResult>> deleteUsers(List<UUID> userUids);
+}
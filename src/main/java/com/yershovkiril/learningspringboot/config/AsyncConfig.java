@@ -0,0 +1,88 @@
+package com.yershovkiril.learningspringboot.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class AsyncConfig {
+
+    @Value("${users.async.threads:64}")
+    private int threads;
+
+    @Value("${users.async.max-in-flight:10000}")
+    private int maxInFlight;
+
+    @Value("${users.async.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    /**
+     * Runs the service work of the async endpoints. Virtual threads are used when the
+     * JDK has them, a fixed pool of platform threads otherwise; either way at most
+     * {@code max-in-flight} tasks are accepted and the rest are rejected.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public BoundedExecutor userExecutor() {
+        ExecutorService executor = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (executor == null) {
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "user-async-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return new BoundedExecutor(executor, maxInFlight);
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Caps the tasks queued or running on an executor, failing fast with
+     * {@link RejectedExecutionException} instead of queueing without bound.
+     */
+    public static class BoundedExecutor implements Executor {
+        private final ExecutorService executor;
+        private final Semaphore permits;
+
+        BoundedExecutor(ExecutorService executor, int maxInFlight) {
+            this.executor = executor;
+            this.permits = new Semaphore(maxInFlight);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (!permits.tryAcquire()) {
+                throw new RejectedExecutionException("more than the maximum tasks in flight");
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        public void shutdown() throws InterruptedException {
+            executor.shutdown();
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.yershovkiril.learningspringboot.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.yershovkiril.learningspringboot.model.UserJsonModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Modules declared here are installed by Spring Boot into its {@link ObjectMapper}, which
+ * {@link ObjectMapperContextResolver} hands to RESTEasy (and Spring Boot's own Jersey
+ * configuration hands to Jersey) in place of a default mapper of their own.
+ */
+@Configuration
+public class JacksonConfig {
+
+    /**
+     * Generates bytecode accessors for the bean properties Jackson would otherwise reach by reflection.
+     */
+    @Bean
+    public Module afterburnerModule() {
+        return new AfterburnerModule();
+    }
+
+    @Bean
+    public Module userJsonModule() {
+        return new UserJsonModule();
+    }
+}
@@ -0,0 +1,23 @@
+package com.yershovkiril.learningspringboot.config;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Reads and writes {@value SmileMediaTypes#APPLICATION_JACKSON_SMILE}, the binary form of
+ * JSON, with a mapper built from Spring Boot's builder, so the modules and settings of the
+ * JSON mapper apply. Field names repeated in a message are written once and referenced.
+ */
+@Component
+@Provider
+public class SmileProvider extends JacksonSmileProvider {
+
+    public SmileProvider(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        super(objectMapperBuilder.factory(new SmileFactory()).build());
+    }
+}
@@ -0,0 +1,256 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserQuery;
+import com.yershovkiril.learningspringboot.model.UserStats;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache of uid lookups in front of the configured store. Size-bounded
+ * with W-TinyLFU eviction; found users expire after {@code ttl-ms} and missing uids
+ * are remembered for the shorter {@code negative-ttl-ms}.
+ * <p>
+ * Every successful write invalidates the uids it touched. Caffeine serializes that
+ * with an in-flight load of the same uid, so a load that read the old user cannot
+ * be cached after the invalidation. Other queries go straight to the store.
+ * <p>
+ * Hit, miss and eviction counters are published as the {@code cache.*} meters
+ * tagged {@code cache=users}.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "users.dao.cache.enabled", havingValue = "true")
+public class CachingUserDao implements UserDao, MeterBinder {
+
+    private static final String CACHE_NAME = "users";
+
+    private final UserDao userDao;
+    private final Cache<UUID, Optional<VersionedUser>> cache;
+
+    @Autowired
+    public CachingUserDao(@Qualifier("userStore") UserDao userDao,
+                          @Value("${users.dao.cache.maximum-size:10000}") long maximumSize,
+                          @Value("${users.dao.cache.ttl-ms:600000}") long ttlMs,
+                          @Value("${users.dao.cache.negative-ttl-ms:5000}") long negativeTtlMs) {
+        this(userDao, maximumSize, ttlMs, negativeTtlMs, Ticker.systemTicker());
+    }
+
+    CachingUserDao(UserDao userDao, long maximumSize, long ttlMs, long negativeTtlMs, Ticker ticker) {
+        this.userDao = userDao;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new UserExpiry(ttlMs, negativeTtlMs))
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Optional<User> selectUserByUserUid(UUID userUid) {
+        return selectVersionedUserByUserUid(userUid).map(VersionedUser::getUser);
+    }
+
+    @Override
+    public Optional<VersionedUser> selectVersionedUserByUserUid(UUID userUid) {
+        if (userUid == null) {
+            return Optional.empty();
+        }
+        return cache.get(userUid, userDao::selectVersionedUserByUserUid);
+    }
+
+    @Override
+    public int updateUser(User user) {
+        int result = userDao.updateUser(user);
+        if (result > 0) {
+            cache.invalidate(user.getUserUid());
+        }
+        return result;
+    }
+
+    @Override
+    public int updateUser(User user, long expectedVersion) {
+        int result = userDao.updateUser(user, expectedVersion);
+        if (result > 0) {
+            cache.invalidate(user.getUserUid());
+        }
+        return result;
+    }
+
+    @Override
+    public int deleteUserByUserUid(UUID userUid) {
+        int result = userDao.deleteUserByUserUid(userUid);
+        if (result > 0) {
+            cache.invalidate(userUid);
+        }
+        return result;
+    }
+
+    @Override
+    public int deleteUserByUserUid(UUID userUid, long expectedVersion) {
+        int result = userDao.deleteUserByUserUid(userUid, expectedVersion);
+        if (result > 0) {
+            cache.invalidate(userUid);
+        }
+        return result;
+    }
+
+    @Override
+    public int insertUser(UUID userUid, User user) {
+        int result = userDao.insertUser(userUid, user);
+        if (result > 0) {
+            cache.invalidate(userUid);
+        }
+        return result;
+    }
+
+    @Override
+    public int[] insertUsers(List<User> users) {
+        int[] results = userDao.insertUsers(users);
+        invalidate(users.stream().map(User::getUserUid).collect(Collectors.toList()), results);
+        return results;
+    }
+
+    @Override
+    public int[] updateUsers(List<User> users) {
+        int[] results = userDao.updateUsers(users);
+        invalidate(users.stream().map(User::getUserUid).collect(Collectors.toList()), results);
+        return results;
+    }
+
+    @Override
+    public int[] deleteUsersByUserUid(List<UUID> userUids) {
+        int[] results = userDao.deleteUsersByUserUid(userUids);
+        invalidate(userUids, results);
+        return results;
+    }
+
+    @Override
+    public List<User> selectAllUsers() {
+        return userDao.selectAllUsers();
+    }
+
+    @Override
+    public List<User> selectUsersByGender(User.Gender gender) {
+        return userDao.selectUsersByGender(gender);
+    }
+
+    @Override
+    public Optional<User> selectUserByEmail(String email) {
+        return userDao.selectUserByEmail(email);
+    }
+
+    @Override
+    public List<User> selectUsersByAgeBetween(int minAge, int maxAge) {
+        return userDao.selectUsersByAgeBetween(minAge, maxAge);
+    }
+
+    @Override
+    public List<User> selectUsersAfter(UUID afterUserUid, int limit) {
+        return userDao.selectUsersAfter(afterUserUid, limit);
+    }
+
+    @Override
+    public List<User> selectUsersByGenderAfter(User.Gender gender, UUID afterUserUid, int limit) {
+        return userDao.selectUsersByGenderAfter(gender, afterUserUid, limit);
+    }
+
+    @Override
+    public List<User> selectUsers(UserQuery query) {
+        return userDao.selectUsers(query);
+    }
+
+    @Override
+    public List<User> searchUsers(String text, int limit) {
+        return userDao.searchUsers(text, limit);
+    }
+
+    @Override
+    public UserStats.Accumulator collectStats() {
+        return userDao.collectStats();
+    }
+
+    @Override
+    public <T> T deferSync(Supplier<T> writes) {
+        return userDao.deferSync(writes);
+    }
+
+    @Override
+    public Stream<User> streamAllUsers() {
+        return userDao.streamAllUsers();
+    }
+
+    @Override
+    public Stream<User> streamUsersByGender(User.Gender gender) {
+        return userDao.streamUsersByGender(gender);
+    }
+
+    @Override
+    public long modificationCount() {
+        return userDao.modificationCount();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    CacheStats stats() {
+        cache.cleanUp();
+        return cache.stats();
+    }
+
+    private void invalidate(List<UUID> userUids, int[] results) {
+        List<UUID> changed = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] > 0 && userUids.get(i) != null) {
+                changed.add(userUids.get(i));
+            }
+        }
+        cache.invalidateAll(changed);
+    }
+
+    private static final class UserExpiry implements Expiry<UUID, Optional<VersionedUser>> {
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        UserExpiry(long ttlMs, long negativeTtlMs) {
+            this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+            this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMs);
+        }
+
+        @Override
+        public long expireAfterCreate(UUID userUid, Optional<VersionedUser> user, long currentTime) {
+            return user.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(UUID userUid, Optional<VersionedUser> user, long currentTime, long currentDuration) {
+            return expireAfterCreate(userUid, user, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(UUID userUid, Optional<VersionedUser> user, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
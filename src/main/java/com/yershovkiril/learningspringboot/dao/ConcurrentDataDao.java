@@ -0,0 +1,345 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserField;
+import com.yershovkiril.learningspringboot.model.UserQuery;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Thread-safe in-memory store. Reads never lock; writes only contend on the
+ * hash bin of the user they touch, so unrelated users are updated in parallel.
+ * Secondary indexes are maintained inside the same per-user critical section,
+ * and an email can belong to one user at a time. Each user is stored with its version,
+ * so conditional writes compare and set inside that section as well.
+ */
+@Repository
+@Qualifier("userStore")
+@ConditionalOnProperty(name = "users.dao.type", havingValue = "concurrent", matchIfMissing = true)
+public class ConcurrentDataDao implements UserDao, MeterBinder {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final long ANY_VERSION = -1;
+
+    private final ConcurrentHashMap<UUID, VersionedUser> database;
+    private final UserIndexes indexes;
+    private final LongAdder modifications = new LongAdder();
+    private final AtomicLong insertions = new AtomicLong();
+
+    public ConcurrentDataDao() {
+        this(DEFAULT_CAPACITY);
+        UUID joeUserUid = UUID.randomUUID();
+        insertUser(joeUserUid, new User(joeUserUid, "Joe", "Jones",
+                User.Gender.MALE, 22, "example@gmail.com"));
+    }
+
+    /**
+     * Creates an empty store, without the sample user.
+     */
+    ConcurrentDataDao(int initialCapacity) {
+        this(initialCapacity, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Creates an empty store that owns the emails it holds in {@code emailIndex}, which
+     * may be shared with other stores.
+     */
+    ConcurrentDataDao(int initialCapacity, ConcurrentMap<String, UUID> emailIndex) {
+        database = new ConcurrentHashMap<>(initialCapacity);
+        indexes = new UserIndexes(emailIndex);
+    }
+
+    int size() {
+        return database.size();
+    }
+
+    /**
+     * Publishes the number of users as {@code users.store.size}, and the index sizes.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Tags tags = Tags.of("store", getClass().getSimpleName());
+        Gauge.builder("users.store.size", database, Map::size)
+                .tags(tags)
+                .register(registry);
+        indexes.bindTo(registry, tags);
+    }
+
+    @Override
+    public List<User> selectAllUsers() {
+        List<User> users = new ArrayList<>(database.size());
+        for (VersionedUser versionedUser : database.values()) {
+            users.add(versionedUser.getUser());
+        }
+        return users;
+    }
+
+    @Override
+    public Optional<User> selectUserByUserUid(UUID userUid) {
+        return selectVersionedUserByUserUid(userUid).map(VersionedUser::getUser);
+    }
+
+    @Override
+    public Optional<VersionedUser> selectVersionedUserByUserUid(UUID userUid) {
+        if (userUid == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(database.get(userUid));
+    }
+
+    @Override
+    public int updateUser(User user) {
+        return update(user, ANY_VERSION);
+    }
+
+    @Override
+    public int updateUser(User user, long expectedVersion) {
+        return update(user, expectedVersion);
+    }
+
+    @Override
+    public int deleteUserByUserUid(UUID userUid) {
+        return delete(userUid, ANY_VERSION);
+    }
+
+    @Override
+    public int deleteUserByUserUid(UUID userUid, long expectedVersion) {
+        return delete(userUid, expectedVersion);
+    }
+
+    @Override
+    public int insertUser(UUID userUid, User user) {
+        int[] result = {0};
+        database.compute(userUid, (uid, existing) -> {
+            if (existing != null || !indexes.reserveEmail(uid, user.getEmail())) {
+                return existing;
+            }
+            indexes.add(uid, user);
+            result[0] = 1;
+            return new VersionedUser(user, insertions.incrementAndGet(), 1);
+        });
+        return modified(result[0]);
+    }
+
+    @Override
+    public long modificationCount() {
+        return modifications.sum();
+    }
+
+    /**
+     * Stores {@code user} whether or not it exists, taking over its email from any other
+     * user. Only for replaying a log, whose records were validated when first applied:
+     * intermediate states of a replay may briefly violate email uniqueness.
+     */
+    void restoreUser(User user) {
+        database.compute(user.getUserUid(), (userUid, existing) -> {
+            indexes.claimEmail(userUid, user.getEmail());
+            if (existing == null) {
+                indexes.add(userUid, user);
+                return new VersionedUser(user, insertions.incrementAndGet(), 1);
+            }
+            indexes.replace(userUid, existing.getUser(), user);
+            return new VersionedUser(user, existing.getInsertion(), existing.getVersion() + 1);
+        });
+        modifications.increment();
+    }
+
+    @Override
+    public List<User> selectUsersByGender(User.Gender gender) {
+        List<User> users = new ArrayList<>();
+        for (UUID userUid : indexes.byGender(gender)) {
+            User user = user(userUid);
+            if (user != null && user.getGender() == gender) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    @Override
+    public Optional<User> selectUserByEmail(String email) {
+        if (email == null) {
+            return Optional.empty();
+        }
+        String emailKey = UserIndexes.emailKey(email);
+        return indexes.byEmail(email)
+                .map(this::user)
+                .filter(user -> user.getEmail() != null && UserIndexes.emailKey(user.getEmail()).equals(emailKey));
+    }
+
+    @Override
+    public List<User> selectUsersByAgeBetween(int minAge, int maxAge) {
+        List<User> users = new ArrayList<>();
+        for (NavigableSet<UUID> bucket : indexes.byAgeBetween(minAge, maxAge)) {
+            for (UUID userUid : bucket) {
+                User user = user(userUid);
+                if (user != null && user.getAge() != null && user.getAge() >= minAge && user.getAge() <= maxAge) {
+                    users.add(user);
+                }
+            }
+        }
+        return users;
+    }
+
+    @Override
+    public List<User> selectUsersAfter(UUID afterUserUid, int limit) {
+        return selectPage(indexes.userUids(), afterUserUid, limit, user -> true);
+    }
+
+    @Override
+    public List<User> selectUsersByGenderAfter(User.Gender gender, UUID afterUserUid, int limit) {
+        return selectPage(indexes.byGender(gender), afterUserUid, limit, user -> user.getGender() == gender);
+    }
+
+    /**
+     * Draws candidates from the age buckets when the query has an age range, else from the
+     * gender bucket, and only resolves and tests those. In uid or age order candidates
+     * arrive already ordered and the walk stops at the limit; any other order keeps the
+     * best matches in a heap.
+     */
+    @Override
+    public List<User> selectUsers(UserQuery query) {
+        if (query.isOrderedBy(UserField.USER_UID)) {
+            NavigableSet<UUID> keys;
+            if (query.hasAgeRange()) {
+                keys = new TreeSet<>();
+                indexes.byAgeBetween(query.getMinAge(), query.getMaxAge()).forEach(keys::addAll);
+            } else {
+                keys = query.getGender() == null ? indexes.userUids() : indexes.byGender(query.getGender());
+            }
+            return selectPage(keys, query.getAfterUserUid(), query.getLimit(), query::matches);
+        }
+        boolean descending = !query.getSort().isEmpty() && query.getSort().get(0).isDescending();
+        if (query.isOrderedBy(UserField.AGE)) {
+            List<User> users = new ArrayList<>();
+            for (NavigableSet<UUID> bucket : indexes.byAgeBetween(query.getMinAge(), query.getMaxAge(), descending)) {
+                for (UUID userUid : bucket) {
+                    User user = user(userUid);
+                    if (user != null && query.matches(user)) {
+                        users.add(user);
+                        if (users.size() == query.getLimit()) {
+                            return sorted(users, query);
+                        }
+                    }
+                }
+            }
+            if (!query.hasAgeRange()) {
+                // users without an age sort last and are in no bucket
+                database.values().stream()
+                        .map(VersionedUser::getUser)
+                        .filter(user -> user.getAge() == null && query.matches(user))
+                        .sorted(query.comparator())
+                        .limit(query.getLimit() - users.size())
+                        .forEach(users::add);
+            }
+            return sorted(users, query);
+        }
+        return query.select(candidates(query).map(this::user).filter(Objects::nonNull));
+    }
+
+    @Override
+    public List<User> searchUsers(String text, int limit) {
+        return indexes.search().search(text, limit, this::user);
+    }
+
+    @Override
+    public Stream<User> streamAllUsers() {
+        return database.values().stream().map(VersionedUser::getUser);
+    }
+
+    @Override
+    public Stream<User> streamUsersByGender(User.Gender gender) {
+        return indexes.byGender(gender).stream()
+                .map(this::user)
+                .filter(user -> user != null && user.getGender() == gender);
+    }
+
+    private int update(User user, long expectedVersion) {
+        if (user.getUserUid() == null) {
+            return 0;
+        }
+        int[] result = {0};
+        database.computeIfPresent(user.getUserUid(), (userUid, existing) -> {
+            if ((expectedVersion != ANY_VERSION && existing.getVersion() != expectedVersion)
+                    || !indexes.reserveEmail(userUid, user.getEmail())) {
+                return existing;
+            }
+            indexes.replace(userUid, existing.getUser(), user);
+            result[0] = 1;
+            return new VersionedUser(user, existing.getInsertion(), existing.getVersion() + 1);
+        });
+        return modified(result[0]);
+    }
+
+    private int delete(UUID userUid, long expectedVersion) {
+        if (userUid == null) {
+            return 0;
+        }
+        int[] result = {0};
+        database.computeIfPresent(userUid, (uid, existing) -> {
+            if (expectedVersion != ANY_VERSION && existing.getVersion() != expectedVersion) {
+                return existing;
+            }
+            indexes.remove(uid, existing.getUser());
+            result[0] = 1;
+            return null;
+        });
+        return modified(result[0]);
+    }
+
+    private int modified(int result) {
+        if (result > 0) {
+            modifications.increment();
+        }
+        return result;
+    }
+
+    private User user(UUID userUid) {
+        VersionedUser versionedUser = database.get(userUid);
+        return versionedUser == null ? null : versionedUser.getUser();
+    }
+
+    private Stream<UUID> candidates(UserQuery query) {
+        if (query.hasAgeRange()) {
+            return indexes.byAgeBetween(query.getMinAge(), query.getMaxAge()).stream().flatMap(Set::stream);
+        }
+        return query.getGender() == null ? database.keySet().stream() : indexes.byGender(query.getGender()).stream();
+    }
+
+    /**
+     * Reorders users a moving user may have left out of place: one updated while the buckets
+     * were walked can be met in its old bucket with its new age.
+     */
+    private static List<User> sorted(List<User> users, UserQuery query) {
+        users.sort(query.comparator());
+        return users;
+    }
+
+    private List<User> selectPage(NavigableSet<UUID> keys, UUID afterUserUid, int limit, Predicate<User> filter) {
+        List<User> users = new ArrayList<>(Math.min(limit, database.size()));
+        Iterator<UUID> iterator = afterUserUid == null
+                ? keys.iterator()
+                : keys.tailSet(afterUserUid, false).iterator();
+        while (users.size() < limit && iterator.hasNext()) {
+            User user = user(iterator.next());
+            if (user != null && filter.test(user)) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+}
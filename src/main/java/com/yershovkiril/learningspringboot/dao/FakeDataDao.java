@@ -1,22 +1,43 @@
 package com.yershovkiril.learningspringboot.dao;
 
 import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import java.util.*;
 
 @Repository
-public class FakeDataDao implements UserDao {
+@Qualifier("userStore")
+@ConditionalOnProperty(name = "users.dao.type", havingValue = "fake")
+public class FakeDataDao implements UserDao, MeterBinder {
 
     private Map<UUID, User> database;
+    private Map<UUID, Long> versions;
+    private Map<UUID, Long> insertions;
+    private long inserts;
+    private long modifications;
 
     public FakeDataDao() {
         database = new HashMap<>();
+        versions = new HashMap<>();
+        insertions = new HashMap<>();
         UUID joeUserUid = UUID.randomUUID();
-        database.put(joeUserUid, new User(joeUserUid, "Joe", "Jones",
+        insertUser(joeUserUid, new User(joeUserUid, "Joe", "Jones",
                 User.Gender.MALE, 22, "example@gmail.com"));
     }
 
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("users.store.size", this, dao -> dao.database.size())
+                .tag("store", getClass().getSimpleName())
+                .register(registry);
+    }
+
     @Override
     public List<User> selectAllUsers() {
         return new ArrayList<>(database.values());
@@ -27,21 +48,56 @@ public class FakeDataDao implements UserDao {
         return Optional.ofNullable(database.get(userUid));
     }
 
+    @Override
+    public Optional<VersionedUser> selectVersionedUserByUserUid(UUID userUid) {
+        return selectUserByUserUid(userUid).map(user -> new VersionedUser(user, insertions.get(userUid), versions.get(userUid)));
+    }
+
     @Override
     public int updateUser(User user) {
         database.put(user.getUserUid(), user);
+        versions.merge(user.getUserUid(), 1L, Long::sum);
+        insertions.computeIfAbsent(user.getUserUid(), userUid -> ++inserts);
+        modifications++;
         return 1;
     }
 
+    @Override
+    public int updateUser(User user, long expectedVersion) {
+        if (!versions.containsKey(user.getUserUid()) || versions.get(user.getUserUid()) != expectedVersion) {
+            return 0;
+        }
+        return updateUser(user);
+    }
+
     @Override
     public int deleteUserByUserUid(UUID userUid) {
         database.remove(userUid);
+        versions.remove(userUid);
+        insertions.remove(userUid);
+        modifications++;
         return 1;
     }
 
+    @Override
+    public int deleteUserByUserUid(UUID userUid, long expectedVersion) {
+        if (!versions.containsKey(userUid) || versions.get(userUid) != expectedVersion) {
+            return 0;
+        }
+        return deleteUserByUserUid(userUid);
+    }
+
     @Override
     public int insertUser(UUID userUid, User user) {
         database.put(userUid, user);
+        versions.put(userUid, 1L);
+        insertions.put(userUid, ++inserts);
+        modifications++;
         return 1;
     }
+
+    @Override
+    public long modificationCount() {
+        return modifications;
+    }
 }
@@ -0,0 +1,404 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Durable store: the in-memory {@link ConcurrentDataDao} plus a {@link UserLog} of every
+ * applied mutation and periodic {@link UserSnapshot}s.
+ * <p>
+ * Files in the store directory are numbered by generation. {@code users-N.snapshot} holds
+ * the users as of some point after log {@code N} was started, and replaying logs
+ * {@code N, N+1, ...} over it yields the latest state: records are full users or deletes,
+ * so replaying a change the snapshot already contains is harmless. Startup loads the
+ * newest snapshot, replays the log tail and opens a fresh log.
+ * <p>
+ * Mutations are applied and logged under one lock, which keeps the log in the order the
+ * map was changed; fsync happens outside it according to {@link Fsync}. Versions are not
+ * logged: replay numbers them afresh, so they only compare within one process.
+ */
+@Repository
+@Qualifier("userStore")
+@ConditionalOnProperty(name = "users.dao.type", havingValue = "file")
+public class FileDataDao extends ConcurrentDataDao implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileDataDao.class);
+
+    private static final String PREFIX = "users-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * When a write is acknowledged relative to its fsync.
+     */
+    enum Fsync {
+        /**
+         * After its record is forced; concurrent writers share one force (group commit).
+         */
+        GROUP,
+        /**
+         * Immediately; the log is forced every fsync interval, which bounds what a crash can lose.
+         */
+        INTERVAL,
+        /**
+         * Immediately; flushing is left to the operating system.
+         */
+        NONE
+    }
+
+    private final Path directory;
+    private final Fsync fsync;
+    private final int regionSize;
+    private final long snapshotMinLogBytes;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Object snapshotLock = new Object();
+    private final ScheduledExecutorService scheduler;
+    private final ThreadLocal<DeferredSync> deferredSync = new ThreadLocal<>();
+
+    private volatile UserLog log;
+    private long generation;
+    private long recoveredLogBytes;
+
+    @Autowired
+    public FileDataDao(@Value("${users.dao.file.directory:data}") String directory,
+                       @Value("${users.dao.file.fsync:group}") String fsync,
+                       @Value("${users.dao.file.fsync-interval-ms:100}") long fsyncIntervalMs,
+                       @Value("${users.dao.file.snapshot-interval-ms:60000}") long snapshotIntervalMs,
+                       @Value("${users.dao.file.snapshot-min-log-bytes:16777216}") long snapshotMinLogBytes)
+            throws IOException {
+        this(Paths.get(directory), Fsync.valueOf(fsync.toUpperCase(Locale.ROOT)),
+                fsyncIntervalMs, snapshotIntervalMs, snapshotMinLogBytes, UserLog.DEFAULT_REGION_SIZE);
+    }
+
+    FileDataDao(Path directory, Fsync fsync, long fsyncIntervalMs, long snapshotIntervalMs,
+                long snapshotMinLogBytes, int regionSize) throws IOException {
+        super(DEFAULT_CAPACITY);
+        this.directory = directory;
+        this.fsync = fsync;
+        this.regionSize = regionSize;
+        this.snapshotMinLogBytes = snapshotMinLogBytes;
+        recover();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-store-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsync == Fsync.INTERVAL) {
+            scheduler.scheduleWithFixedDelay(() -> log.force(),
+                    fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        if (snapshotIntervalMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::snapshotIfNeeded,
+                    snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public int insertUser(UUID userUid, User user) {
+        return write(UserLog.put(userUid, user), () -> super.insertUser(userUid, user));
+    }
+
+    @Override
+    public int updateUser(User user) {
+        if (user.getUserUid() == null) {
+            return 0;
+        }
+        return write(UserLog.put(user.getUserUid(), user), () -> super.updateUser(user));
+    }
+
+    @Override
+    public int updateUser(User user, long expectedVersion) {
+        if (user.getUserUid() == null) {
+            return 0;
+        }
+        return write(UserLog.put(user.getUserUid(), user), () -> super.updateUser(user, expectedVersion));
+    }
+
+    @Override
+    public int deleteUserByUserUid(UUID userUid) {
+        if (userUid == null) {
+            return 0;
+        }
+        return write(UserLog.delete(userUid), () -> super.deleteUserByUserUid(userUid));
+    }
+
+    @Override
+    public int deleteUserByUserUid(UUID userUid, long expectedVersion) {
+        if (userUid == null) {
+            return 0;
+        }
+        return write(UserLog.delete(userUid), () -> super.deleteUserByUserUid(userUid, expectedVersion));
+    }
+
+    @Override
+    public int[] insertUsers(List<User> users) {
+        byte[][] records = new byte[users.size()][];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = UserLog.put(users.get(i).getUserUid(), users.get(i));
+        }
+        return writeBatch(records, i -> super.insertUser(users.get(i).getUserUid(), users.get(i)));
+    }
+
+    @Override
+    public int[] updateUsers(List<User> users) {
+        byte[][] records = new byte[users.size()][];
+        for (int i = 0; i < records.length; i++) {
+            UUID userUid = users.get(i).getUserUid();
+            records[i] = userUid == null ? null : UserLog.put(userUid, users.get(i));
+        }
+        return writeBatch(records, i -> super.updateUser(users.get(i)));
+    }
+
+    @Override
+    public int[] deleteUsersByUserUid(List<UUID> userUids) {
+        byte[][] records = new byte[userUids.size()][];
+        for (int i = 0; i < records.length; i++) {
+            UUID userUid = userUids.get(i);
+            records[i] = userUid == null ? null : UserLog.delete(userUid);
+        }
+        return writeBatch(records, i -> super.deleteUserByUserUid(userUids.get(i)));
+    }
+
+    /**
+     * With {@link Fsync#GROUP}, waits once for the last record {@code writes} appended.
+     */
+    @Override
+    public <T> T deferSync(Supplier<T> writes) {
+        if (deferredSync.get() != null) {
+            return writes.get();
+        }
+        DeferredSync deferred = new DeferredSync();
+        deferredSync.set(deferred);
+        T result;
+        try {
+            result = writes.get();
+        } finally {
+            deferredSync.remove();
+        }
+        if (deferred.target != null) {
+            sync(deferred.target, deferred.end);
+        }
+        return result;
+    }
+
+    /**
+     * Writes a compacted snapshot and drops the files it supersedes.
+     */
+    void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long snapshotGeneration;
+            UserLog previous;
+            writeLock.lock();
+            try {
+                snapshotGeneration = generation + 1;
+                UserLog next = UserLog.create(path(snapshotGeneration, LOG_SUFFIX), regionSize);
+                previous = log;
+                log = next;
+                generation = snapshotGeneration;
+                recoveredLogBytes = 0;
+            } finally {
+                writeLock.unlock();
+            }
+            previous.close();
+            // the new log must outlive a crash before the logs it follows can go
+            UserSnapshot.forceDirectory(directory);
+            try (Stream<User> users = streamAllUsers()) {
+                long count = UserSnapshot.write(path(snapshotGeneration, SNAPSHOT_SUFFIX), users.iterator());
+                LOGGER.info("Wrote snapshot {} of {} users", snapshotGeneration, count);
+            }
+            for (long stale : generations(LOG_SUFFIX)) {
+                if (stale < snapshotGeneration) {
+                    Files.deleteIfExists(path(stale, LOG_SUFFIX));
+                }
+            }
+            for (long stale : generations(SNAPSHOT_SUFFIX)) {
+                if (stale < snapshotGeneration) {
+                    Files.deleteIfExists(path(stale, SNAPSHOT_SUFFIX));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLock.lock();
+        try {
+            log.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int write(byte[] record, IntSupplier mutation) {
+        UserLog target;
+        long end;
+        writeLock.lock();
+        try {
+            target = log;
+            target.reserve(record.length);
+            if (mutation.getAsInt() == 0) {
+                return 0;
+            }
+            end = target.append(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+        sync(target, end);
+        return 1;
+    }
+
+    private int[] writeBatch(byte[][] records, IntUnaryOperator mutation) {
+        int[] results = new int[records.length];
+        UserLog target;
+        long end = -1;
+        writeLock.lock();
+        try {
+            target = log;
+            for (int i = 0; i < records.length; i++) {
+                if (records[i] == null) {
+                    continue;
+                }
+                target.reserve(records[i].length);
+                results[i] = mutation.applyAsInt(i);
+                if (results[i] == 1) {
+                    end = target.append(records[i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+        if (end >= 0) {
+            sync(target, end);
+        }
+        return results;
+    }
+
+    private void sync(UserLog target, long end) {
+        if (fsync != Fsync.GROUP) {
+            return;
+        }
+        DeferredSync deferred = deferredSync.get();
+        if (deferred == null) {
+            target.awaitDurable(end);
+            return;
+        }
+        // a snapshot switched logs since the last deferred write: that one cannot wait for this one
+        if (deferred.target != null && deferred.target != target) {
+            deferred.target.awaitDurable(deferred.end);
+        }
+        deferred.target = target;
+        deferred.end = end;
+    }
+
+    private void snapshotIfNeeded() {
+        try {
+            if (recoveredLogBytes + log.appendedBytes() >= snapshotMinLogBytes) {
+                snapshot();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not snapshot the user store in {}", directory, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> temporaries = Files.newDirectoryStream(directory, PREFIX + "*.tmp")) {
+            for (Path temporary : temporaries) {
+                Files.delete(temporary);
+            }
+        }
+        UserLog.Visitor replay = new UserLog.Visitor() {
+            @Override
+            public void put(User user) {
+                restoreUser(user);
+            }
+
+            @Override
+            public void delete(UUID userUid) {
+                FileDataDao.super.deleteUserByUserUid(userUid);
+            }
+        };
+        List<Long> snapshots = generations(SNAPSHOT_SUFFIX);
+        long base = 0;
+        if (!snapshots.isEmpty()) {
+            base = snapshots.get(snapshots.size() - 1);
+            long users = UserSnapshot.read(path(base, SNAPSHOT_SUFFIX), replay);
+            LOGGER.info("Loaded snapshot {} of {} users", base, users);
+        }
+        generation = base;
+        for (long logGeneration : generations(LOG_SUFFIX)) {
+            if (logGeneration >= base) {
+                long records = UserLog.replay(path(logGeneration, LOG_SUFFIX), replay);
+                recoveredLogBytes += Files.size(path(logGeneration, LOG_SUFFIX));
+                LOGGER.info("Replayed {} records of log {}", records, logGeneration);
+            }
+            generation = Math.max(generation, logGeneration);
+        }
+        generation++;
+        log = UserLog.create(path(generation, LOG_SUFFIX), regionSize);
+        // writes forced to the log are only durable once its directory entry is
+        UserSnapshot.forceDirectory(directory);
+    }
+
+    private List<Long> generations(String suffix) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring unexpected file {}", file);
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private Path path(long generation, String suffix) {
+        return directory.resolve(String.format("%s%019d%s", PREFIX, generation, suffix));
+    }
+
+    /**
+     * The log position {@link #deferSync} still has to wait for on its thread.
+     */
+    private static final class DeferredSync {
+        private UserLog target;
+        private long end;
+    }
+}
@@ -0,0 +1,645 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserQuery;
+import com.yershovkiril.learningspringboot.model.UserStats;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Store that keeps users outside the Java heap, in {@link UserCodec} form, and decodes
+ * them on every read. The heap only holds a primitive open-addressing table of
+ * {@code uid -> address} (24 bytes a slot), so millions of users add almost nothing for
+ * the garbage collector to trace.
+ * <p>
+ * Records live in direct buffers of {@code chunkSize} bytes, in 16-byte aligned slots;
+ * freed slots are reused by later records of the same size class. A record is
+ * {@code [int length][long version][long insertion][encoded user]}. Readers share a read lock and
+ * writers take the write lock.
+ * <p>
+ * The only secondary index is the unique one on email, {@code email -> uid} on the heap,
+ * changed under the write lock and read without it. Gender and age lookups scan the
+ * records, reading the fixed-offset fields without decoding.
+ */
+@Repository
+@Qualifier("userStore")
+@ConditionalOnProperty(name = "users.dao.type", havingValue = "offheap")
+public class OffHeapDataDao implements UserDao, MeterBinder {
+
+    private static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int SLOT_SHIFT = 4;
+    private static final int VERSION_OFFSET = 4;
+    private static final int INSERTION_OFFSET = 12;
+    private static final int RECORD_HEADER_SIZE = 20;
+    private static final long EMPTY = -1;
+    private static final long ANY_VERSION = -1;
+
+    private final int chunkSize;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final Map<Integer, LongStack> freeSlots = new HashMap<>();
+    private final ConcurrentMap<String, UUID> emailIndex = new ConcurrentHashMap<>();
+    private final Lock readLock;
+    private final Lock writeLock;
+    private int chunkPosition;
+
+    private long[] keys;
+    private long[] addresses;
+    private int size;
+    private long insertions;
+    private volatile long modifications;
+
+    @Autowired
+    public OffHeapDataDao(@Value("${users.dao.offheap.chunk-bytes:" + DEFAULT_CHUNK_SIZE + "}") int chunkSize) {
+        this(chunkSize, DEFAULT_CAPACITY);
+        UUID joeUserUid = UUID.randomUUID();
+        insertUser(joeUserUid, new User(joeUserUid, "Joe", "Jones",
+                User.Gender.MALE, 22, "example@gmail.com"));
+    }
+
+    /**
+     * Creates an empty store, without the sample user.
+     */
+    OffHeapDataDao(int chunkSize, int initialCapacity) {
+        this.chunkSize = chunkSize;
+        this.chunkPosition = chunkSize;
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity * 2 - 1));
+        this.keys = new long[capacity * 2];
+        this.addresses = new long[capacity];
+        Arrays.fill(addresses, EMPTY);
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+    }
+
+    @Override
+    public List<User> selectAllUsers() {
+        readLock.lock();
+        try {
+            List<User> users = new ArrayList<>(size);
+            for (long address : addresses) {
+                if (address != EMPTY) {
+                    users.add(read(address));
+                }
+            }
+            return users;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<User> selectUserByUserUid(UUID userUid) {
+        if (userUid == null) {
+            return Optional.empty();
+        }
+        readLock.lock();
+        try {
+            int slot = find(userUid.getMostSignificantBits(), userUid.getLeastSignificantBits());
+            return slot < 0 ? Optional.empty() : Optional.of(read(addresses[slot]));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<VersionedUser> selectVersionedUserByUserUid(UUID userUid) {
+        if (userUid == null) {
+            return Optional.empty();
+        }
+        readLock.lock();
+        try {
+            int slot = find(userUid.getMostSignificantBits(), userUid.getLeastSignificantBits());
+            if (slot < 0) {
+                return Optional.empty();
+            }
+            long address = addresses[slot];
+            return Optional.of(new VersionedUser(read(address), insertion(address), version(address)));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<User> selectUserByEmail(String email) {
+        if (email == null) {
+            return Optional.empty();
+        }
+        String emailKey = UserIndexes.emailKey(email);
+        return Optional.ofNullable(emailIndex.get(emailKey))
+                .flatMap(this::selectUserByUserUid)
+                .filter(user -> user.getEmail() != null && UserIndexes.emailKey(user.getEmail()).equals(emailKey));
+    }
+
+    @Override
+    public int updateUser(User user) {
+        return update(user, ANY_VERSION);
+    }
+
+    @Override
+    public int updateUser(User user, long expectedVersion) {
+        return update(user, expectedVersion);
+    }
+
+    @Override
+    public int deleteUserByUserUid(UUID userUid) {
+        return delete(userUid, ANY_VERSION);
+    }
+
+    @Override
+    public int deleteUserByUserUid(UUID userUid, long expectedVersion) {
+        return delete(userUid, expectedVersion);
+    }
+
+    @Override
+    public int insertUser(UUID userUid, User user) {
+        byte[] encoded = UserCodec.encode(userUid, user);
+        long msb = userUid.getMostSignificantBits();
+        long lsb = userUid.getLeastSignificantBits();
+        writeLock.lock();
+        try {
+            int slot = find(msb, lsb);
+            if (slot >= 0 || emailTaken(userUid, user.getEmail())) {
+                return 0;
+            }
+            if ((size + 1) * 2 > addresses.length) {
+                resize();
+                slot = find(msb, lsb);
+            }
+            long address = allocate(RECORD_HEADER_SIZE + encoded.length);
+            write(address, insertions + 1, 1, encoded);
+            // the email is only claimed once nothing can fail any more
+            claimEmail(userUid, user.getEmail());
+            slot = -slot - 1;
+            keys[2 * slot] = msb;
+            keys[2 * slot + 1] = lsb;
+            addresses[slot] = address;
+            size++;
+            insertions++;
+            modifications++;
+            return 1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long modificationCount() {
+        return modifications;
+    }
+
+    /**
+     * Publishes the number of users as {@code users.store.size}, the owned emails as
+     * {@code users.store.index.size} and the direct memory taken by record chunks as
+     * {@code users.store.offheap.bytes}.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        String store = getClass().getSimpleName();
+        Gauge.builder("users.store.size", this, dao -> dao.locked(() -> dao.size))
+                .tag("store", store)
+                .register(registry);
+        Gauge.builder("users.store.index.size", emailIndex, Map::size)
+                .tags("store", store, "index", "email")
+                .register(registry);
+        Gauge.builder("users.store.offheap.bytes", this, dao -> dao.locked(() -> (long) dao.chunks.size() * dao.chunkSize))
+                .tag("store", store)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Whether a user other than {@code userUid} owns {@code email}. Checked under the write
+     * lock, which keeps the answer until {@link #claimEmail} once the user is stored.
+     */
+    private boolean emailTaken(UUID userUid, String email) {
+        if (email == null) {
+            return false;
+        }
+        UUID owner = emailIndex.get(UserIndexes.emailKey(email));
+        return owner != null && !owner.equals(userUid);
+    }
+
+    private void claimEmail(UUID userUid, String email) {
+        if (email != null) {
+            emailIndex.put(UserIndexes.emailKey(email), userUid);
+        }
+    }
+
+    private double locked(LongSupplier value) {
+        readLock.lock();
+        try {
+            return value.getAsLong();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<User> selectUsersByGender(User.Gender gender) {
+        readLock.lock();
+        try {
+            List<User> users = new ArrayList<>();
+            for (long address : addresses) {
+                if (address != EMPTY && UserCodec.gender(chunk(address), offset(address) + RECORD_HEADER_SIZE) == gender) {
+                    users.add(read(address));
+                }
+            }
+            return users;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<User> selectUsersByAgeBetween(int minAge, int maxAge) {
+        readLock.lock();
+        try {
+            List<User> users = new ArrayList<>();
+            for (long address : addresses) {
+                if (address != EMPTY && UserCodec.hasAgeBetween(chunk(address),
+                        offset(address) + RECORD_HEADER_SIZE, minAge, maxAge)) {
+                    users.add(read(address));
+                }
+            }
+            return users;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Tests gender and age on the encoded records and decodes only the users that pass.
+     */
+    @Override
+    public List<User> selectUsers(UserQuery query) {
+        List<User> candidates = new ArrayList<>();
+        readLock.lock();
+        try {
+            for (long address : addresses) {
+                if (address == EMPTY) {
+                    continue;
+                }
+                ByteBuffer chunk = chunk(address);
+                int offset = offset(address) + RECORD_HEADER_SIZE;
+                if ((query.getGender() == null || UserCodec.gender(chunk, offset) == query.getGender())
+                        && (!query.hasAgeRange()
+                        || UserCodec.hasAgeBetween(chunk, offset, query.getMinAge(), query.getMaxAge()))) {
+                    candidates.add(read(address));
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return query.select(candidates.stream());
+    }
+
+    /**
+     * Totals the encoded records in parallel without decoding whole users. The slot array
+     * splits into even halves, and the read lock held here keeps writers out until every
+     * split is done.
+     */
+    @Override
+    public UserStats.Accumulator collectStats() {
+        readLock.lock();
+        try {
+            return Arrays.stream(addresses).parallel()
+                    .filter(address -> address != EMPTY)
+                    .collect(UserStats.Accumulator::new, this::accumulate, UserStats.Accumulator::combine);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<User> selectUsersAfter(UUID afterUserUid, int limit) {
+        return selectPage(null, afterUserUid, limit);
+    }
+
+    @Override
+    public List<User> selectUsersByGenderAfter(User.Gender gender, UUID afterUserUid, int limit) {
+        return selectPage(gender, afterUserUid, limit);
+    }
+
+    /**
+     * Walks a copy of the uids taken up front, decoding each user as it is reached;
+     * users deleted in the meantime are skipped.
+     */
+    @Override
+    public Stream<User> streamAllUsers() {
+        long[] uids;
+        readLock.lock();
+        try {
+            uids = new long[size * 2];
+            int next = 0;
+            for (int slot = 0; slot < addresses.length; slot++) {
+                if (addresses[slot] != EMPTY) {
+                    uids[next++] = keys[2 * slot];
+                    uids[next++] = keys[2 * slot + 1];
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return IntStream.range(0, uids.length / 2)
+                .mapToObj(i -> selectUserByUserUid(new UUID(uids[2 * i], uids[2 * i + 1])))
+                .filter(Optional::isPresent)
+                .map(Optional::get);
+    }
+
+    @Override
+    public Stream<User> streamUsersByGender(User.Gender gender) {
+        return streamAllUsers().filter(user -> user.getGender() == gender);
+    }
+
+    /**
+     * Bytes of direct memory reserved for records.
+     */
+    public long offHeapBytes() {
+        readLock.lock();
+        try {
+            return (long) chunks.size() * chunkSize;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private int update(User user, long expectedVersion) {
+        if (user.getUserUid() == null) {
+            return 0;
+        }
+        byte[] encoded = UserCodec.encode(user);
+        writeLock.lock();
+        try {
+            int slot = find(user.getUserUid().getMostSignificantBits(), user.getUserUid().getLeastSignificantBits());
+            if (slot < 0) {
+                return 0;
+            }
+            long address = addresses[slot];
+            long version = version(address);
+            if (expectedVersion != ANY_VERSION && version != expectedVersion) {
+                return 0;
+            }
+            if (emailTaken(user.getUserUid(), user.getEmail())) {
+                return 0;
+            }
+            String previousEmail = read(address).getEmail();
+            int recordSize = RECORD_HEADER_SIZE + encoded.length;
+            if (sizeClass(recordSize) != sizeClass(RECORD_HEADER_SIZE + chunk(address).getInt(offset(address)))) {
+                // the old record stays in place until the new one is written
+                long moved = allocate(recordSize);
+                write(moved, insertion(address), version + 1, encoded);
+                addresses[slot] = moved;
+                free(address);
+            } else {
+                write(address, insertion(address), version + 1, encoded);
+            }
+            claimEmail(user.getUserUid(), user.getEmail());
+            if (previousEmail != null && (user.getEmail() == null
+                    || !UserIndexes.emailKey(previousEmail).equals(UserIndexes.emailKey(user.getEmail())))) {
+                emailIndex.remove(UserIndexes.emailKey(previousEmail), user.getUserUid());
+            }
+            modifications++;
+            return 1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int delete(UUID userUid, long expectedVersion) {
+        if (userUid == null) {
+            return 0;
+        }
+        writeLock.lock();
+        try {
+            int slot = find(userUid.getMostSignificantBits(), userUid.getLeastSignificantBits());
+            if (slot < 0 || (expectedVersion != ANY_VERSION && version(addresses[slot]) != expectedVersion)) {
+                return 0;
+            }
+            String email = read(addresses[slot]).getEmail();
+            if (email != null) {
+                emailIndex.remove(UserIndexes.emailKey(email), userUid);
+            }
+            free(addresses[slot]);
+            removeSlot(slot);
+            size--;
+            modifications++;
+            return 1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private List<User> selectPage(User.Gender gender, UUID afterUserUid, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        // keep the smallest `limit` uids after the cursor in a max-heap
+        PriorityQueue<UUID> page = new PriorityQueue<>(limit, Comparator.reverseOrder());
+        readLock.lock();
+        try {
+            for (int slot = 0; slot < addresses.length; slot++) {
+                long address = addresses[slot];
+                if (address == EMPTY || (gender != null
+                        && UserCodec.gender(chunk(address), offset(address) + RECORD_HEADER_SIZE) != gender)) {
+                    continue;
+                }
+                long msb = keys[2 * slot];
+                long lsb = keys[2 * slot + 1];
+                if (afterUserUid != null && compare(msb, lsb, afterUserUid) <= 0) {
+                    continue;
+                }
+                if (page.size() == limit) {
+                    if (compare(msb, lsb, page.peek()) >= 0) {
+                        continue;
+                    }
+                    page.poll();
+                }
+                page.add(new UUID(msb, lsb));
+            }
+            List<UUID> userUids = new ArrayList<>(page);
+            Collections.sort(userUids);
+            List<User> users = new ArrayList<>(userUids.size());
+            for (UUID userUid : userUids) {
+                users.add(read(addresses[find(userUid.getMostSignificantBits(), userUid.getLeastSignificantBits())]));
+            }
+            return users;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Records
+
+    private User read(long address) {
+        return UserCodec.decode(chunk(address), offset(address) + RECORD_HEADER_SIZE);
+    }
+
+    private void accumulate(UserStats.Accumulator stats, long address) {
+        ByteBuffer chunk = chunk(address);
+        int offset = offset(address) + RECORD_HEADER_SIZE;
+        boolean hasAge = UserCodec.hasAge(chunk, offset);
+        stats.accept(UserCodec.gender(chunk, offset), hasAge, hasAge ? UserCodec.age(chunk, offset) : 0,
+                UserCodec.emailDomain(chunk, offset));
+    }
+
+    private long version(long address) {
+        return chunk(address).getLong(offset(address) + VERSION_OFFSET);
+    }
+
+    private long insertion(long address) {
+        return chunk(address).getLong(offset(address) + INSERTION_OFFSET);
+    }
+
+    private void write(long address, long insertion, long version, byte[] encoded) {
+        ByteBuffer target = chunk(address).duplicate();
+        target.position(offset(address));
+        target.putInt(encoded.length);
+        target.putLong(version);
+        target.putLong(insertion);
+        target.put(encoded);
+    }
+
+    private long allocate(int recordSize) {
+        if (recordSize > chunkSize) {
+            throw new IllegalArgumentException("user of " + recordSize + " bytes does not fit a chunk of " + chunkSize);
+        }
+        int sizeClass = sizeClass(recordSize);
+        LongStack free = freeSlots.get(sizeClass);
+        if (free != null && !free.isEmpty()) {
+            return free.pop();
+        }
+        int slotSize = sizeClass << SLOT_SHIFT;
+        if (chunkPosition + slotSize > chunkSize) {
+            chunks.add(ByteBuffer.allocateDirect(chunkSize));
+            chunkPosition = 0;
+        }
+        long address = ((long) (chunks.size() - 1) << 32) | chunkPosition;
+        chunkPosition += slotSize;
+        return address;
+    }
+
+    private void free(long address) {
+        int recordSize = RECORD_HEADER_SIZE + chunk(address).getInt(offset(address));
+        freeSlots.computeIfAbsent(sizeClass(recordSize), sizeClass -> new LongStack()).push(address);
+    }
+
+    private ByteBuffer chunk(long address) {
+        return chunks.get((int) (address >>> 32));
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private static int sizeClass(int recordSize) {
+        return (recordSize + (1 << SLOT_SHIFT) - 1) >>> SLOT_SHIFT;
+    }
+
+    // Open-addressing table with linear probing
+
+    /**
+     * @return the slot holding the uid, or {@code -(free slot + 1)} where it would go
+     */
+    private int find(long msb, long lsb) {
+        int mask = addresses.length - 1;
+        int slot = home(msb, lsb, mask);
+        while (addresses[slot] != EMPTY) {
+            if (keys[2 * slot] == msb && keys[2 * slot + 1] == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    /**
+     * Empties {@code slot}, shifting back later entries of the probe run so lookups need no tombstones.
+     */
+    private void removeSlot(int slot) {
+        int mask = addresses.length - 1;
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (addresses[next] == EMPTY) {
+                break;
+            }
+            int home = home(keys[2 * next], keys[2 * next + 1], mask);
+            boolean reachable = hole <= next ? home > hole && home <= next : home > hole || home <= next;
+            if (!reachable) {
+                keys[2 * hole] = keys[2 * next];
+                keys[2 * hole + 1] = keys[2 * next + 1];
+                addresses[hole] = addresses[next];
+                hole = next;
+            }
+        }
+        addresses[hole] = EMPTY;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldAddresses = addresses;
+        // both allocated before either is replaced, so running out of heap leaves the table as it was
+        long[] newKeys = new long[oldKeys.length * 2];
+        long[] newAddresses = new long[oldAddresses.length * 2];
+        keys = newKeys;
+        addresses = newAddresses;
+        Arrays.fill(addresses, EMPTY);
+        for (int slot = 0; slot < oldAddresses.length; slot++) {
+            if (oldAddresses[slot] != EMPTY) {
+                int target = -find(oldKeys[2 * slot], oldKeys[2 * slot + 1]) - 1;
+                keys[2 * target] = oldKeys[2 * slot];
+                keys[2 * target + 1] = oldKeys[2 * slot + 1];
+                addresses[target] = oldAddresses[slot];
+            }
+        }
+    }
+
+    private static int home(long msb, long lsb, int mask) {
+        long hash = (msb ^ (lsb * 0x9E3779B97F4A7C15L)) * 0xBF58476D1CE4E5B9L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static int compare(long msb, long lsb, UUID userUid) {
+        int result = Long.compare(msb, userUid.getMostSignificantBits());
+        return result != 0 ? result : Long.compare(lsb, userUid.getLeastSignificantBits());
+    }
+
+    private static final class LongStack {
+        private long[] values = new long[8];
+        private int size;
+
+        void push(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long pop() {
+            return values[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserQuery;
+import com.yershovkiril.learningspringboot.model.UserStats;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Store partitioned by uid hash into shards, one per core by default. Each shard is a
+ * {@link ConcurrentDataDao} that only its own writer thread mutates: callers queue their
+ * writes and wait, and the writer drains the queue in batches and applies them in order,
+ * so no two cores write the same shard's lines and versions compare and set without
+ * contention. Reads go straight to the shards, lock-free.
+ * <p>
+ * Lookups by uid touch one shard; the others fan out across every shard in parallel and
+ * merge. Emails are kept unique in one index the shards share, the only structure that
+ * writers to different shards both touch, and only when an email changes hands. A batch
+ * whose items on different shards contend for an email is applied one item at a time,
+ * so that the first in input order gets it, as in one store.
+ */
+@Repository
+@Qualifier("userStore")
+@ConditionalOnProperty(name = "users.dao.type", havingValue = "sharded")
+public class ShardedDataDao implements UserDao, MeterBinder, Closeable {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_DRAIN = 256;
+
+    private final Shard[] shards;
+    private final ConcurrentMap<String, UUID> emailIndex = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    @Autowired
+    public ShardedDataDao(@Value("${users.dao.sharded.shards:0}") int shards,
+                          @Value("${users.dao.sharded.queue-capacity:1024}") int queueCapacity) {
+        this(shards > 0 ? shards : Runtime.getRuntime().availableProcessors(), queueCapacity, DEFAULT_CAPACITY);
+        UUID joeUserUid = UUID.randomUUID();
+        insertUser(joeUserUid, new User(joeUserUid, "Joe", "Jones",
+                User.Gender.MALE, 22, "example@gmail.com"));
+    }
+
+    /**
+     * Creates an empty store, without the sample user.
+     */
+    ShardedDataDao(int shards, int queueCapacity, int initialCapacity) {
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(i, queueCapacity,
+                    new ConcurrentDataDao(Math.max(16, initialCapacity / shards), emailIndex));
+        }
+    }
+
+    /**
+     * Publishes the number of users as {@code users.store.size}, the owned emails, and per
+     * shard the queued writes as {@code users.store.shard.queue} and the writes applied per
+     * wake-up of its writer as {@code users.store.shard.batch}.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Tags tags = Tags.of("store", getClass().getSimpleName());
+        Gauge.builder("users.store.size", this, dao -> Arrays.stream(dao.shards).mapToInt(shard -> shard.store.size()).sum())
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("users.store.index.size", emailIndex, Map::size)
+                .tags(tags.and("index", "email"))
+                .register(registry);
+        for (Shard shard : shards) {
+            Tags shardTags = tags.and("shard", Integer.toString(shard.index));
+            Gauge.builder("users.store.shard.queue", shard.queue, Collection::size)
+                    .tags(shardTags)
+                    .register(registry);
+            shard.batches = DistributionSummary.builder("users.store.shard.batch")
+                    .tags(shardTags)
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public List<User> selectAllUsers() {
+        return fanOut(ConcurrentDataDao::selectAllUsers);
+    }
+
+    @Override
+    public Optional<User> selectUserByUserUid(UUID userUid) {
+        return selectVersionedUserByUserUid(userUid).map(VersionedUser::getUser);
+    }
+
+    @Override
+    public Optional<VersionedUser> selectVersionedUserByUserUid(UUID userUid) {
+        if (userUid == null) {
+            return Optional.empty();
+        }
+        return shard(userUid).store.selectVersionedUserByUserUid(userUid);
+    }
+
+    @Override
+    public int updateUser(User user) {
+        if (user.getUserUid() == null) {
+            return 0;
+        }
+        return write(user.getUserUid(), store -> store.updateUser(user));
+    }
+
+    @Override
+    public int updateUser(User user, long expectedVersion) {
+        if (user.getUserUid() == null) {
+            return 0;
+        }
+        return write(user.getUserUid(), store -> store.updateUser(user, expectedVersion));
+    }
+
+    @Override
+    public int deleteUserByUserUid(UUID userUid) {
+        if (userUid == null) {
+            return 0;
+        }
+        return write(userUid, store -> store.deleteUserByUserUid(userUid));
+    }
+
+    @Override
+    public int deleteUserByUserUid(UUID userUid, long expectedVersion) {
+        if (userUid == null) {
+            return 0;
+        }
+        return write(userUid, store -> store.deleteUserByUserUid(userUid, expectedVersion));
+    }
+
+    @Override
+    public int insertUser(UUID userUid, User user) {
+        return write(userUid, store -> store.insertUser(userUid, user));
+    }
+
+    @Override
+    public long modificationCount() {
+        long count = 0;
+        for (Shard shard : shards) {
+            count += shard.store.modificationCount();
+        }
+        return count;
+    }
+
+    @Override
+    public List<User> selectUsersByGender(User.Gender gender) {
+        return fanOut(store -> store.selectUsersByGender(gender));
+    }
+
+    @Override
+    public Optional<User> selectUserByEmail(String email) {
+        if (email == null) {
+            return Optional.empty();
+        }
+        UUID owner = emailIndex.get(UserIndexes.emailKey(email));
+        return owner == null ? Optional.empty() : shard(owner).store.selectUserByEmail(email);
+    }
+
+    /**
+     * Youngest first, as each shard returns them.
+     */
+    @Override
+    public List<User> selectUsersByAgeBetween(int minAge, int maxAge) {
+        List<User> users = fanOut(store -> store.selectUsersByAgeBetween(minAge, maxAge));
+        users.sort(Comparator.comparing(User::getAge).thenComparing(User::getUserUid));
+        return users;
+    }
+
+    @Override
+    public List<User> selectUsersAfter(UUID afterUserUid, int limit) {
+        return firstByUid(fanOut(store -> store.selectUsersAfter(afterUserUid, limit)), limit);
+    }
+
+    @Override
+    public List<User> selectUsersByGenderAfter(User.Gender gender, UUID afterUserUid, int limit) {
+        return firstByUid(fanOut(store -> store.selectUsersByGenderAfter(gender, afterUserUid, limit)), limit);
+    }
+
+    /**
+     * Every shard evaluates the query up to its limit, so the merged best are among what
+     * they return.
+     */
+    @Override
+    public List<User> selectUsers(UserQuery query) {
+        return query.select(fanOut(store -> store.selectUsers(query)).stream());
+    }
+
+    /**
+     * Every shard ranks its best {@code limit} in its own index; ranking those again
+     * orders them as one index over all users would.
+     */
+    @Override
+    public List<User> searchUsers(String text, int limit) {
+        return UserSearchIndex.scan(fanOut(store -> store.searchUsers(text, limit)).stream(), text, limit);
+    }
+
+    @Override
+    public UserStats.Accumulator collectStats() {
+        return Arrays.stream(shards).parallel()
+                .map(shard -> shard.store.streamAllUsers()
+                        .collect(UserStats.Accumulator::new, UserStats.Accumulator::accept, UserStats.Accumulator::combine))
+                .reduce((a, b) -> {
+                    a.combine(b);
+                    return a;
+                })
+                .orElseGet(UserStats.Accumulator::new);
+    }
+
+    @Override
+    public Stream<User> streamAllUsers() {
+        return Arrays.stream(shards).flatMap(shard -> shard.store.streamAllUsers());
+    }
+
+    @Override
+    public Stream<User> streamUsersByGender(User.Gender gender) {
+        return Arrays.stream(shards).flatMap(shard -> shard.store.streamUsersByGender(gender));
+    }
+
+    @Override
+    public int[] insertUsers(List<User> users) {
+        Write insert = (store, i) -> store.insertUser(users.get(i).getUserUid(), users.get(i));
+        if (emailsContended(users, false)) {
+            return writeInOrder(users.size(), i -> users.get(i).getUserUid(), insert);
+        }
+        return writeBatch(users.size(), i -> users.get(i).getUserUid(), insert);
+    }
+
+    @Override
+    public int[] updateUsers(List<User> users) {
+        Write update = (store, i) -> users.get(i).getUserUid() == null ? 0 : store.updateUser(users.get(i));
+        if (emailsContended(users, true)) {
+            return writeInOrder(users.size(), i -> users.get(i).getUserUid(), update);
+        }
+        return writeBatch(users.size(), i -> users.get(i).getUserUid(), update);
+    }
+
+    /**
+     * Deletes only release emails, so their order across shards does not matter.
+     */
+    @Override
+    public int[] deleteUsersByUserUid(List<UUID> userUids) {
+        return writeBatch(userUids.size(), userUids::get,
+                (store, i) -> userUids.get(i) == null ? 0 : store.deleteUserByUserUid(userUids.get(i)));
+    }
+
+    /**
+     * Lets every writer apply what was queued before, then stops it.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Shard shard : shards) {
+            shard.stop();
+        }
+    }
+
+    private static IllegalStateException closedStore() {
+        return new IllegalStateException("user store is closed");
+    }
+
+    private Shard shard(UUID userUid) {
+        return shards[shardIndex(userUid)];
+    }
+
+    private int shardIndex(UUID userUid) {
+        int hash = userUid.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    private int write(UUID userUid, ToIntFunction<ConcurrentDataDao> write) {
+        return write(shard(userUid), write);
+    }
+
+    private int write(Shard shard, ToIntFunction<ConcurrentDataDao> write) {
+        int[] results = new int[1];
+        Mutation mutation = new Mutation(new int[]{0}, (store, i) -> write.applyAsInt(store), results, new CountDownLatch(1));
+        shard.submit(mutation);
+        mutation.await();
+        return results[0];
+    }
+
+    /**
+     * Splits the items by shard, queues each part on its shard and waits for all of them.
+     * A null uid goes to the first shard, whose writer applies the item as the store does.
+     */
+    private int[] writeBatch(int size, IntFunction<UUID> userUid, Write write) {
+        int[] results = new int[size];
+        int[][] positions = new int[shards.length][];
+        int[] counts = new int[shards.length];
+        int[] owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            UUID uid = userUid.apply(i);
+            owners[i] = uid == null ? 0 : shardIndex(uid);
+            counts[owners[i]]++;
+        }
+        int involved = 0;
+        for (int s = 0; s < shards.length; s++) {
+            if (counts[s] > 0) {
+                positions[s] = new int[counts[s]];
+                counts[s] = 0;
+                involved++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            positions[owners[i]][counts[owners[i]]++] = i;
+        }
+        CountDownLatch done = new CountDownLatch(involved);
+        Mutation[] mutations = new Mutation[shards.length];
+        for (int s = 0; s < shards.length; s++) {
+            if (positions[s] != null) {
+                mutations[s] = new Mutation(positions[s], write, results, done);
+                shards[s].submit(mutations[s]);
+            }
+        }
+        for (Mutation mutation : mutations) {
+            if (mutation != null) {
+                mutation.await();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Whether an email is wanted, or with {@code held} also released, by items of
+     * {@code users} on different shards.
+     */
+    private boolean emailsContended(List<User> users, boolean held) {
+        Map<String, Integer> shardByEmail = new HashMap<>();
+        for (User user : users) {
+            int owner = user.getUserUid() == null ? 0 : shardIndex(user.getUserUid());
+            List<String> emails = new ArrayList<>(2);
+            emails.add(user.getEmail());
+            if (held) {
+                selectUserByUserUid(user.getUserUid()).ifPresent(current -> emails.add(current.getEmail()));
+            }
+            for (String email : emails) {
+                if (email != null) {
+                    Integer other = shardByEmail.putIfAbsent(UserIndexes.emailKey(email), owner);
+                    if (other != null && other != owner) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private int[] writeInOrder(int size, IntFunction<UUID> userUid, Write write) {
+        int[] results = new int[size];
+        for (int i = 0; i < size; i++) {
+            int item = i;
+            UUID uid = userUid.apply(i);
+            results[i] = write(uid == null ? shards[0] : shard(uid), store -> write.apply(store, item));
+        }
+        return results;
+    }
+
+    private List<User> fanOut(Function<ConcurrentDataDao, List<User>> read) {
+        List<List<User>> parts = Arrays.stream(shards).parallel()
+                .map(shard -> read.apply(shard.store))
+                .collect(Collectors.toList());
+        List<User> users = new ArrayList<>(parts.stream().mapToInt(List::size).sum());
+        parts.forEach(users::addAll);
+        return users;
+    }
+
+    private static List<User> firstByUid(List<User> users, int limit) {
+        users.sort(Comparator.comparing(User::getUserUid));
+        return users.size() > limit ? new ArrayList<>(users.subList(0, limit)) : users;
+    }
+
+    /**
+     * Applies item {@code i} of a call to the shard store it belongs to.
+     */
+    private interface Write {
+        int apply(ConcurrentDataDao store, int i);
+    }
+
+    /**
+     * The items of one call that belong to one shard, applied in order by its writer.
+     */
+    private static final class Mutation {
+        private final int[] items;
+        private final Write write;
+        private final int[] results;
+        private final CountDownLatch done;
+        private RuntimeException failure;
+
+        Mutation(int[] items, Write write, int[] results, CountDownLatch done) {
+            this.items = items;
+            this.write = write;
+            this.results = results;
+            this.done = done;
+        }
+
+        void apply(ConcurrentDataDao store) {
+            try {
+                for (int item : items) {
+                    results[item] = write.apply(store, item);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        void fail(RuntimeException e) {
+            failure = e;
+            done.countDown();
+        }
+
+        /**
+         * Waits for the writer even when interrupted: the write is queued and will be applied,
+         * or failed if the store closes first.
+         */
+        void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private final class Shard {
+        private final int index;
+        private final BlockingQueue<Mutation> queue;
+        private final ConcurrentDataDao store;
+        private final Thread writer;
+        private volatile DistributionSummary batches;
+
+        Shard(int index, int queueCapacity, ConcurrentDataDao store) {
+            this.index = index;
+            this.queue = new LinkedBlockingQueue<>(queueCapacity);
+            this.store = store;
+            this.writer = new Thread(this::drain, "user-store-shard-" + index);
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        void submit(Mutation mutation) {
+            if (closed) {
+                throw closedStore();
+            }
+            try {
+                queue.put(mutation);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted before the write was queued", e);
+            }
+            // closed since the check: unless the writer or stop() has taken it, nobody will
+            if (closed && queue.remove(mutation)) {
+                throw closedStore();
+            }
+        }
+
+        void stop() {
+            writer.interrupt();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // writes queued while closing, after the writer's last look at the queue
+            List<Mutation> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            rest.forEach(mutation -> mutation.fail(closedStore()));
+        }
+
+        private void drain() {
+            List<Mutation> batch = new ArrayList<>(MAX_DRAIN);
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    // closing: apply what is still queued, then stop
+                    queue.drainTo(batch);
+                    batch.forEach(mutation -> mutation.apply(store));
+                    return;
+                }
+                queue.drainTo(batch, MAX_DRAIN - 1);
+                for (Mutation mutation : batch) {
+                    mutation.apply(store);
+                }
+                DistributionSummary summary = batches;
+                if (summary != null) {
+                    summary.record(batch.size());
+                }
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserStats;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Dense binary form of a {@link User}, shared by the off-heap store and the user log:
+ * {@code [long uid msb][long uid lsb][byte gender][byte age][firstName][lastName][email]}.
+ * <p>
+ * Gender is the ordinal, or -1 for null. An age of 0..253 is the age byte alone, 255 is
+ * null and 254 is followed by the age as a zig-zag varint, so any {@code Integer} fits.
+ * Strings are a varint of {@code length + 1} (0 for null) followed by UTF-8 bytes.
+ * A typical user takes 40-80 bytes instead of the 300+ of its object graph.
+ */
+public final class UserCodec {
+
+    private static final int GENDER_OFFSET = 16;
+    private static final int AGE_OFFSET = 17;
+    private static final int STRINGS_OFFSET = 18;
+    private static final int MAX_SHORT_AGE = 253;
+    private static final int WIDE_AGE = 254;
+    private static final int NULL_AGE = 255;
+    private static final byte NULL_GENDER = -1;
+    private static final User.Gender[] GENDERS = User.Gender.values();
+
+    private UserCodec() {
+    }
+
+    public static byte[] encode(User user) {
+        return encode(user.getUserUid(), user);
+    }
+
+    /**
+     * Encodes {@code user} under {@code userUid}, which takes precedence over the user's own uid.
+     */
+    public static byte[] encode(UUID userUid, User user) {
+        byte[] firstName = utf8(user.getFirstName());
+        byte[] lastName = utf8(user.getLastName());
+        byte[] email = utf8(user.getEmail());
+        Integer age = user.getAge();
+        boolean wideAge = age != null && (age < 0 || age > MAX_SHORT_AGE);
+        int size = STRINGS_OFFSET + (wideAge ? varintSize(zigZag(age)) : 0)
+                + stringSize(firstName) + stringSize(lastName) + stringSize(email);
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putLong(userUid.getMostSignificantBits());
+        out.putLong(userUid.getLeastSignificantBits());
+        out.put(user.getGender() == null ? NULL_GENDER : (byte) user.getGender().ordinal());
+        if (age == null) {
+            out.put((byte) NULL_AGE);
+        } else if (wideAge) {
+            out.put((byte) WIDE_AGE);
+            putVarint(out, zigZag(age));
+        } else {
+            out.put(age.byteValue());
+        }
+        putString(out, firstName);
+        putString(out, lastName);
+        putString(out, email);
+        return out.array();
+    }
+
+    public static User decode(byte[] encoded) {
+        return decode(ByteBuffer.wrap(encoded), 0);
+    }
+
+    /**
+     * Decodes the user starting at {@code offset}, without moving the position of {@code source}.
+     */
+    public static User decode(ByteBuffer source, int offset) {
+        ByteBuffer in = source.duplicate();
+        in.position(offset);
+        UUID userUid = new UUID(in.getLong(), in.getLong());
+        byte gender = in.get();
+        int ageByte = in.get() & 0xFF;
+        Integer age;
+        if (ageByte == NULL_AGE) {
+            age = null;
+        } else if (ageByte == WIDE_AGE) {
+            int zigZag = getVarint(in);
+            age = (zigZag >>> 1) ^ -(zigZag & 1);
+        } else {
+            age = ageByte;
+        }
+        String firstName = getString(in);
+        String lastName = getString(in);
+        String email = getString(in);
+        return new User(userUid, firstName, lastName, gender == NULL_GENDER ? null : GENDERS[gender], age, email);
+    }
+
+    /**
+     * Reads only the gender of the user encoded at {@code offset}.
+     */
+    static User.Gender gender(ByteBuffer source, int offset) {
+        byte gender = source.get(offset + GENDER_OFFSET);
+        return gender == NULL_GENDER ? null : GENDERS[gender];
+    }
+
+    /**
+     * Tests the age of the user encoded at {@code offset}, decoding it only for a wide age.
+     */
+    static boolean hasAgeBetween(ByteBuffer source, int offset, int minAge, int maxAge) {
+        if (!hasAge(source, offset)) {
+            return false;
+        }
+        int age = age(source, offset);
+        return age >= minAge && age <= maxAge;
+    }
+
+    static boolean hasAge(ByteBuffer source, int offset) {
+        return (source.get(offset + AGE_OFFSET) & 0xFF) != NULL_AGE;
+    }
+
+    /**
+     * Reads only the age of the user encoded at {@code offset}, which must have one.
+     */
+    static int age(ByteBuffer source, int offset) {
+        int ageByte = source.get(offset + AGE_OFFSET) & 0xFF;
+        if (ageByte != WIDE_AGE) {
+            return ageByte;
+        }
+        ByteBuffer in = source.duplicate();
+        in.position(offset + STRINGS_OFFSET);
+        int zigZag = getVarint(in);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    /**
+     * Reads only the email domain of the user encoded at {@code offset}, as
+     * {@link UserStats#emailDomain(String)} would take it from the decoded email.
+     */
+    static String emailDomain(ByteBuffer source, int offset) {
+        ByteBuffer in = source.duplicate();
+        in.position(offset + STRINGS_OFFSET);
+        if ((source.get(offset + AGE_OFFSET) & 0xFF) == WIDE_AGE) {
+            getVarint(in);
+        }
+        skipString(in);
+        skipString(in);
+        int length = getVarint(in) - 1;
+        int start = in.position();
+        // '@' never occurs inside a multi-byte UTF-8 sequence
+        for (int i = start + length - 1; i >= start; i--) {
+            if (in.get(i) == '@') {
+                byte[] domain = new byte[start + length - i - 1];
+                in.position(i + 1);
+                in.get(domain);
+                return new String(domain, StandardCharsets.UTF_8).toLowerCase(Locale.ROOT);
+            }
+        }
+        return null;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte next = in.get();
+            value |= (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint in encoded user");
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] value) {
+        return value == null ? 1 : varintSize(value.length + 1) + value.length;
+    }
+
+    private static void putString(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            out.put((byte) 0);
+            return;
+        }
+        putVarint(out, value.length + 1);
+        out.put(value);
+    }
+
+    private static void skipString(ByteBuffer in) {
+        int length = getVarint(in) - 1;
+        if (length > 0) {
+            in.position(in.position() + length);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = getVarint(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,10 +1,17 @@
 package com.yershovkiril.learningspringboot.dao;
 
 import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserQuery;
+import com.yershovkiril.learningspringboot.model.UserStats;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public interface UserDao {
 
@@ -18,4 +25,147 @@ public interface UserDao {
 
     int insertUser(UUID userUid, User user);
 
+    // Every store numbers the versions of each user, 1 on insert and one more per
+    // update, numbers its inserts, and counts the mutations it applies. The conditional variants compare
+    // and set atomically: they return 0 when the user is missing, its version is no
+    // longer expectedVersion, or the update is rejected for another reason.
+
+    Optional<VersionedUser> selectVersionedUserByUserUid(UUID userUid);
+
+    int updateUser(User user, long expectedVersion);
+
+    int deleteUserByUserUid(UUID userUid, long expectedVersion);
+
+    /**
+     * Mutations applied so far, counted once each is visible to readers; read it
+     * before reading users to tag what was read.
+     */
+    long modificationCount();
+
+    /**
+     * The email of a user, without the rest of it: what a write to the user may give up.
+     */
+    default Optional<String> selectEmailByUserUid(UUID userUid) {
+        return selectUserByUserUid(userUid).map(User::getEmail);
+    }
+
+    // The lookups below fall back to scanning selectAllUsers();
+    // stores that keep secondary indexes override them.
+
+    default List<User> selectUsersByGender(User.Gender gender) {
+        return selectAllUsers().stream()
+                .filter(user -> gender.equals(user.getGender()))
+                .collect(Collectors.toList());
+    }
+
+    default Optional<User> selectUserByEmail(String email) {
+        return selectAllUsers().stream()
+                .filter(user -> email.equalsIgnoreCase(user.getEmail()))
+                .findFirst();
+    }
+
+    default List<User> selectUsersByAgeBetween(int minAge, int maxAge) {
+        return selectAllUsers().stream()
+                .filter(user -> user.getAge() != null)
+                .filter(user -> user.getAge() >= minAge && user.getAge() <= maxAge)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Keyset page: up to {@code limit} users ordered by uid, starting after
+     * {@code afterUserUid} or from the beginning when it is null.
+     */
+    default List<User> selectUsersAfter(UUID afterUserUid, int limit) {
+        return selectAllUsers().stream()
+                .filter(user -> afterUserUid == null || user.getUserUid().compareTo(afterUserUid) > 0)
+                .sorted(Comparator.comparing(User::getUserUid))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    default List<User> selectUsersByGenderAfter(User.Gender gender, UUID afterUserUid, int limit) {
+        return selectUsersByGender(gender).stream()
+                .filter(user -> afterUserUid == null || user.getUserUid().compareTo(afterUserUid) > 0)
+                .sorted(Comparator.comparing(User::getUserUid))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Users matching {@code query}, in its order and cut at its limit. Stores evaluate it
+     * where their indexes can narrow or order the candidates; the projected fields are the
+     * caller's to apply, since stores keeping users on heap hand out shared instances.
+     */
+    default List<User> selectUsers(UserQuery query) {
+        return query.select(streamAllUsers());
+    }
+
+    /**
+     * Up to {@code limit} users whose names or email match the words of {@code text} by
+     * prefix or within a typo, best first; see {@link UserSearchIndex} for the ranking.
+     * Stores that keep a search index override this scan.
+     */
+    default List<User> searchUsers(String text, int limit) {
+        return UserSearchIndex.scan(streamAllUsers(), text, limit);
+    }
+
+    /**
+     * Totals for {@link UserStats} over every user, splitting {@link #streamAllUsers()}
+     * across the common fork-join pool. Stores override this to split their own storage.
+     */
+    default UserStats.Accumulator collectStats() {
+        return streamAllUsers().parallel()
+                .collect(UserStats.Accumulator::new, UserStats.Accumulator::accept, UserStats.Accumulator::combine);
+    }
+
+    /**
+     * Lazily walks the store. Stores that can iterate their storage directly
+     * override this so callers never hold every user at once.
+     */
+    default Stream<User> streamAllUsers() {
+        return selectAllUsers().stream();
+    }
+
+    default Stream<User> streamUsersByGender(User.Gender gender) {
+        return selectUsersByGender(gender).stream();
+    }
+
+    // Batch variants return one 0/1 code per item, in input order. The defaults
+    // apply the items one by one; stores with a per-call cost (locks, fsync,
+    // queue hand-off) override them to pay it once per batch.
+
+    default int[] insertUsers(List<User> users) {
+        int[] results = new int[users.size()];
+        for (int i = 0; i < results.length; i++) {
+            User user = users.get(i);
+            results[i] = insertUser(user.getUserUid(), user);
+        }
+        return results;
+    }
+
+    default int[] updateUsers(List<User> users) {
+        int[] results = new int[users.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = updateUser(users.get(i));
+        }
+        return results;
+    }
+
+    default int[] deleteUsersByUserUid(List<UUID> userUids) {
+        int[] results = new int[userUids.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = deleteUserByUserUid(userUids.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * Runs {@code writes}, calls of this store's mutations, and returns their result.
+     * Stores that acknowledge a write only once it is durable wait once, after
+     * {@code writes} returns, rather than inside each call, so a caller can order writes
+     * under a lock of its own without holding it through the wait.
+     */
+    default <T> T deferSync(Supplier<T> writes) {
+        return writes.get();
+    }
 }
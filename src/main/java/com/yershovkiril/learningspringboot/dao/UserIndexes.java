@@ -0,0 +1,196 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Secondary indexes over a user store: the ordered set of uids used for keyset
+ * pagination, a bucket per gender, a unique index on email, a sorted index
+ * on age and the {@link UserSearchIndex} of names and emails. Buckets hold user uids only; the owning store
+ * resolves them and re-checks the indexed field, so a reader racing a writer
+ * never sees a user under the wrong key.
+ * <p>
+ * Not atomic on its own: the store must call the mutators while holding
+ * whatever lock guards the user being changed.
+ */
+final class UserIndexes {
+
+    private final NavigableSet<UUID> userUids = new ConcurrentSkipListSet<>();
+    private final Map<User.Gender, NavigableSet<UUID>> genderIndex = new EnumMap<>(User.Gender.class);
+    private final ConcurrentMap<String, UUID> emailIndex;
+    private final ConcurrentNavigableMap<Integer, NavigableSet<UUID>> ageIndex = new ConcurrentSkipListMap<>();
+    private final UserSearchIndex searchIndex = new UserSearchIndex();
+
+    UserIndexes() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Indexes whose unique emails are kept in {@code emailIndex}, which stores that split
+     * their users may share to keep emails unique across all of them.
+     */
+    UserIndexes(ConcurrentMap<String, UUID> emailIndex) {
+        this.emailIndex = emailIndex;
+        for (User.Gender gender : User.Gender.values()) {
+            genderIndex.put(gender, new ConcurrentSkipListSet<>());
+        }
+    }
+
+    /**
+     * Publishes the entries of each index as {@code users.store.index.size}: users per gender,
+     * owned emails, distinct ages and distinct searchable words. The gender buckets are
+     * counted at every read.
+     */
+    void bindTo(MeterRegistry registry, Tags tags) {
+        for (Map.Entry<User.Gender, NavigableSet<UUID>> bucket : genderIndex.entrySet()) {
+            indexSize(registry, tags, "gender." + bucket.getKey(), bucket.getValue(), Set::size);
+        }
+        indexSize(registry, tags, "email", emailIndex, Map::size);
+        indexSize(registry, tags, "age", ageIndex, Map::size);
+        indexSize(registry, tags, "search", searchIndex, UserSearchIndex::words);
+    }
+
+    private static <T> void indexSize(MeterRegistry registry, Tags tags, String index, T entries,
+                                      ToDoubleFunction<T> size) {
+        Gauge.builder("users.store.index.size", entries, size)
+                .tags(tags.and("index", index))
+                .register(registry);
+    }
+
+    /**
+     * Claims {@code email} for {@code userUid}.
+     *
+     * @return false if another user already owns the email
+     */
+    boolean reserveEmail(UUID userUid, String email) {
+        if (email == null) {
+            return true;
+        }
+        UUID owner = emailIndex.putIfAbsent(emailKey(email), userUid);
+        return owner == null || owner.equals(userUid);
+    }
+
+    /**
+     * Gives {@code email} to {@code userUid} even if another user holds it.
+     */
+    void claimEmail(UUID userUid, String email) {
+        if (email != null) {
+            emailIndex.put(emailKey(email), userUid);
+        }
+    }
+
+    void releaseEmail(UUID userUid, String email) {
+        if (email != null) {
+            emailIndex.remove(emailKey(email), userUid);
+        }
+    }
+
+    /**
+     * Indexes a newly stored user whose email has already been reserved.
+     */
+    void add(UUID userUid, User user) {
+        userUids.add(userUid);
+        if (user.getGender() != null) {
+            genderIndex.get(user.getGender()).add(userUid);
+        }
+        if (user.getAge() != null) {
+            ageIndex.computeIfAbsent(user.getAge(), age -> new ConcurrentSkipListSet<>()).add(userUid);
+        }
+        searchIndex.add(userUid, user);
+    }
+
+    /**
+     * Moves a user from the keys of {@code previous} to the keys of {@code current}.
+     * The new email must already be reserved.
+     */
+    void replace(UUID userUid, User previous, User current) {
+        // unlink before relinking so a concurrent range scan never meets the user twice
+        if (previous.getGender() != current.getGender()) {
+            if (previous.getGender() != null) {
+                genderIndex.get(previous.getGender()).remove(userUid);
+            }
+            if (current.getGender() != null) {
+                genderIndex.get(current.getGender()).add(userUid);
+            }
+        }
+        if (!Objects.equals(previous.getAge(), current.getAge())) {
+            removeAge(userUid, previous);
+            if (current.getAge() != null) {
+                ageIndex.computeIfAbsent(current.getAge(), age -> new ConcurrentSkipListSet<>()).add(userUid);
+            }
+        }
+        if (previous.getEmail() != null
+                && (current.getEmail() == null || !emailKey(previous.getEmail()).equals(emailKey(current.getEmail())))) {
+            releaseEmail(userUid, previous.getEmail());
+        }
+        searchIndex.replace(userUid, previous, current);
+    }
+
+    void remove(UUID userUid, User user) {
+        userUids.remove(userUid);
+        if (user.getGender() != null) {
+            genderIndex.get(user.getGender()).remove(userUid);
+        }
+        removeAge(userUid, user);
+        releaseEmail(userUid, user.getEmail());
+        searchIndex.remove(userUid, user);
+    }
+
+    NavigableSet<UUID> userUids() {
+        return userUids;
+    }
+
+    NavigableSet<UUID> byGender(User.Gender gender) {
+        return genderIndex.get(gender);
+    }
+
+    UserSearchIndex search() {
+        return searchIndex;
+    }
+
+    Optional<UUID> byEmail(String email) {
+        return Optional.ofNullable(emailIndex.get(emailKey(email)));
+    }
+
+    /**
+     * Uids of users aged {@code minAge..maxAge} inclusive, youngest first.
+     */
+    Collection<NavigableSet<UUID>> byAgeBetween(int minAge, int maxAge) {
+        return byAgeBetween(minAge, maxAge, false);
+    }
+
+    /**
+     * Uids of users aged {@code minAge..maxAge} inclusive, eldest first when {@code descending};
+     * each bucket is ordered by uid.
+     */
+    Collection<NavigableSet<UUID>> byAgeBetween(int minAge, int maxAge, boolean descending) {
+        if (minAge > maxAge) {
+            return Collections.emptyList();
+        }
+        NavigableMap<Integer, NavigableSet<UUID>> ages = ageIndex.subMap(minAge, true, maxAge, true);
+        return (descending ? ages.descendingMap() : ages).values();
+    }
+
+    private void removeAge(UUID userUid, User user) {
+        if (user.getAge() != null) {
+            NavigableSet<UUID> bucket = ageIndex.get(user.getAge());
+            if (bucket != null) {
+                bucket.remove(userUid);
+            }
+        }
+    }
+
+    static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
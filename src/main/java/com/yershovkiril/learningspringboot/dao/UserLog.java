@@ -0,0 +1,307 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of user mutations, written through fixed-size memory-mapped regions.
+ * <p>
+ * The file starts with {@code [int magic][int version][int regionSize]}. Each record is
+ * {@code [int length][int crc32][body]}, where the body is a put (the full user in
+ * {@link UserCodec} form) or a delete (the uid). Records never straddle a region: the
+ * unused tail of a region is skipped with a padding marker, and a zero length marks the
+ * end of the log. A torn last record fails its checksum and ends replay there.
+ * <p>
+ * Appends are serialized by the caller. {@link #awaitDurable} implements group commit:
+ * one waiting thread forces every region written so far while the others wait for it,
+ * so concurrent writers share a single fsync.
+ */
+final class UserLog implements Closeable {
+
+    static final int DEFAULT_REGION_SIZE = 16 << 20;
+
+    private static final int MAGIC = 0x554C4F47;
+    private static final int VERSION = 2;
+    private static final int FILE_HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int PADDING = -1;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private final FileChannel channel;
+    private final int regionSize;
+    private final List<MappedByteBuffer> unsynced = new ArrayList<>();
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+    private long appended;
+
+    private final Object forceLock = new Object();
+    private final Object syncLock = new Object();
+    private boolean syncing;
+    private long durable;
+
+    private UserLog(FileChannel channel, int regionSize) throws IOException {
+        this.channel = channel;
+        this.regionSize = regionSize;
+        this.region = channel.map(FileChannel.MapMode.READ_WRITE, 0, regionSize);
+        region.putInt(0, MAGIC);
+        region.putInt(4, VERSION);
+        region.putInt(8, regionSize);
+        this.position = FILE_HEADER_SIZE;
+        unsynced.add(region);
+    }
+
+    static UserLog create(Path path, int regionSize) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new UserLog(channel, regionSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Makes room for a record of {@code recordSize} bytes, mapping the next region if needed.
+     * Called before the in-memory change so that the following {@link #append} cannot fail.
+     */
+    synchronized void reserve(int recordSize) throws IOException {
+        if (recordSize > regionSize - FILE_HEADER_SIZE) {
+            throw new IllegalArgumentException("user record of " + recordSize + " bytes exceeds a log region");
+        }
+        long regionEnd = regionStart + regionSize;
+        if (position + recordSize <= regionEnd) {
+            return;
+        }
+        if (regionEnd - position >= 4) {
+            region.putInt((int) (position - regionStart), PADDING);
+        }
+        regionStart = regionEnd;
+        position = regionStart;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize);
+        unsynced.add(region);
+    }
+
+    /**
+     * Writes a record previously sized with {@link #reserve}.
+     *
+     * @return the log position just after the record
+     */
+    synchronized long append(byte[] record) {
+        ByteBuffer target = region.duplicate();
+        target.position((int) (position - regionStart));
+        target.put(record);
+        if (unsynced.isEmpty() || unsynced.get(unsynced.size() - 1) != region) {
+            unsynced.add(region);
+        }
+        position += record.length;
+        appended += record.length;
+        return position;
+    }
+
+    /**
+     * Bytes of records appended since the log was created.
+     */
+    synchronized long appendedBytes() {
+        return appended;
+    }
+
+    /**
+     * Blocks until everything up to {@code upTo} has been forced to disk, forcing it
+     * on behalf of every waiter if no other thread is already doing so.
+     */
+    void awaitDurable(long upTo) {
+        synchronized (syncLock) {
+            while (durable < upTo && syncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while waiting for the user log", e);
+                }
+            }
+            if (durable >= upTo) {
+                return;
+            }
+            syncing = true;
+        }
+        long target = 0;
+        try {
+            target = force();
+        } finally {
+            synchronized (syncLock) {
+                durable = Math.max(durable, target);
+                syncing = false;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Forces every region written since the last call.
+     *
+     * @return the log position now durable
+     */
+    long force() {
+        synchronized (forceLock) {
+            List<MappedByteBuffer> regions;
+            long target;
+            synchronized (this) {
+                target = position;
+                regions = new ArrayList<>(unsynced);
+                unsynced.clear();
+            }
+            for (MappedByteBuffer written : regions) {
+                written.force();
+            }
+            return target;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        long target = force();
+        synchronized (syncLock) {
+            durable = Math.max(durable, target);
+            syncLock.notifyAll();
+        }
+        channel.close();
+    }
+
+    // Replay
+
+    interface Visitor {
+        void put(User user);
+
+        void delete(UUID userUid);
+    }
+
+    /**
+     * Applies every intact record of the log at {@code path}, in order.
+     *
+     * @return the number of records applied
+     */
+    static long replay(Path path, Visitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < FILE_HEADER_SIZE) {
+                return 0;
+            }
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(path + " is not a user log");
+            }
+            int regionSize = header.getInt(8);
+            long records = 0;
+            for (long regionStart = 0; regionStart < size; regionStart += regionSize) {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                        regionStart, Math.min(regionSize, size - regionStart));
+                if (regionStart == 0) {
+                    region.position(FILE_HEADER_SIZE);
+                }
+                long applied = replayRegion(region, visitor);
+                if (applied < 0) {
+                    return records - applied - 1;
+                }
+                records += applied;
+            }
+            return records;
+        }
+    }
+
+    /**
+     * @return records applied, or {@code -(records + 1)} once the end of the log is reached
+     */
+    private static long replayRegion(ByteBuffer region, Visitor visitor) {
+        long records = 0;
+        while (region.remaining() >= RECORD_HEADER_SIZE) {
+            if (region.getInt(region.position()) == PADDING) {
+                return records;
+            }
+            if (!read(region, visitor)) {
+                return -(records + 1);
+            }
+            records++;
+        }
+        return records;
+    }
+
+    // Encoding
+
+    static byte[] put(UUID userUid, User user) {
+        byte[] encoded = UserCodec.encode(userUid, user);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + 1 + encoded.length);
+        record.position(RECORD_HEADER_SIZE);
+        record.put(PUT);
+        record.put(encoded);
+        return frame(record);
+    }
+
+    static byte[] delete(UUID userUid) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + 1 + 16);
+        record.position(RECORD_HEADER_SIZE);
+        record.put(DELETE);
+        record.putLong(userUid.getMostSignificantBits());
+        record.putLong(userUid.getLeastSignificantBits());
+        return frame(record);
+    }
+
+    /**
+     * Decodes one framed record from {@code source}, as written by {@link #put} or {@link #delete}.
+     *
+     * @return false if {@code source} holds no further intact record
+     */
+    static boolean read(ByteBuffer source, Visitor visitor) {
+        if (source.remaining() < RECORD_HEADER_SIZE) {
+            return false;
+        }
+        int length = source.getInt();
+        if (length <= 0 || length > source.remaining() - 4) {
+            return false;
+        }
+        int crc = source.getInt();
+        ByteBuffer body = source.slice();
+        body.limit(length);
+        source.position(source.position() + length);
+        if (crc != checksum(body.duplicate())) {
+            return false;
+        }
+        decode(body, visitor);
+        return true;
+    }
+
+    private static byte[] frame(ByteBuffer record) {
+        int bodySize = record.position() - RECORD_HEADER_SIZE;
+        record.putInt(0, bodySize);
+        record.putInt(4, checksum(ByteBuffer.wrap(record.array(), RECORD_HEADER_SIZE, bodySize)));
+        return record.array();
+    }
+
+    private static void decode(ByteBuffer body, Visitor visitor) {
+        if (body.get(0) == DELETE) {
+            visitor.delete(new UUID(body.getLong(1), body.getLong(9)));
+        } else {
+            visitor.put(UserCodec.decode(body, 1));
+        }
+    }
+
+    private static int checksum(ByteBuffer body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,507 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Inverted index of the words in each user's first name, last name and email, which
+ * between them cover the full name. Words are the lower-cased runs of letters and digits.
+ * <p>
+ * A search is split into words the same way, and a user matches when every search word
+ * matches one of its words: exactly (3 points), as a prefix (2 points) or, from
+ * {@value #MIN_FUZZY_LENGTH} letters on, when a prefix of the word is within one typo of
+ * it (two typos from {@value #TWO_TYPO_LENGTH} letters; 1 point). A typo is an insertion,
+ * deletion, substitution or swap of adjacent letters after the first, which people rarely
+ * get wrong. Users are ranked by their points.
+ * <p>
+ * The vocabulary is sorted, so it doubles as a trie: prefix matches are one range of it,
+ * and typo matches are found by walking its branches with a row of edit distances,
+ * leaving a branch as soon as no word below it can come within the typos. The longest
+ * search word drives: its exact matches are read first, then its prefix matches, then,
+ * only while fewer than {@code limit} users matched, its typo matches. Reading stops once
+ * {@code limit} users reach the best score still possible.
+ * <p>
+ * Like {@link UserIndexes}, which owns it, it holds uids only and the caller re-checks
+ * every candidate against the stored user.
+ */
+final class UserSearchIndex {
+
+    static final int MIN_FUZZY_LENGTH = 4;
+    static final int TWO_TYPO_LENGTH = 8;
+
+    private static final int EXACT = 3;
+    private static final int PREFIX = 2;
+    private static final int FUZZY = 1;
+    private static final int[] CLASSES = {EXACT, PREFIX, FUZZY};
+
+    // the users of a word: a lone UUID until a second user shares it, then a Set<UUID>
+    private final ConcurrentMap<String, Object> postings = new ConcurrentHashMap<>();
+    private final NavigableSet<String> vocabulary = new ConcurrentSkipListSet<>();
+
+    void add(UUID userUid, User user) {
+        for (String word : words(user)) {
+            link(word, userUid);
+        }
+    }
+
+    void replace(UUID userUid, User previous, User current) {
+        Set<String> before = words(previous);
+        Set<String> after = words(current);
+        // link first so the user stays findable by the words it keeps
+        for (String word : after) {
+            if (!before.contains(word)) {
+                link(word, userUid);
+            }
+        }
+        for (String word : before) {
+            if (!after.contains(word)) {
+                unlink(word, userUid);
+            }
+        }
+    }
+
+    void remove(UUID userUid, User user) {
+        for (String word : words(user)) {
+            unlink(word, userUid);
+        }
+    }
+
+    /**
+     * Distinct words indexed.
+     */
+    int words() {
+        return postings.size();
+    }
+
+    /**
+     * Up to {@code limit} users matching {@code text}, best first; ties are in no particular order.
+     */
+    List<User> search(String text, int limit, Function<UUID, User> users) {
+        List<String> terms = terms(text);
+        if (terms.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        String driver = driver(terms);
+        int otherTermsBest = 0;
+        for (String term : terms) {
+            otherTermsBest += term == driver ? 0 : best(term);
+        }
+        Reader reader = new Reader(terms, limit, users);
+        for (int matchClass : CLASSES) {
+            if (matchClass == FUZZY && reader.matched() >= limit) {
+                break;
+            }
+            // the best score of a user first met from here on
+            if (reader.lowerCeiling(matchClass + otherTermsBest) || read(driver, matchClass, reader)) {
+                break;
+            }
+        }
+        return reader.ranked();
+    }
+
+    /**
+     * The same search over every user of {@code users}, for stores without the index.
+     */
+    static List<User> scan(Stream<User> users, String text, int limit) {
+        List<String> terms = terms(text);
+        if (terms.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        List<Scored> matches = users.map(user -> new Scored(user, score(user, terms)))
+                .filter(scored -> scored.score > 0)
+                .collect(Collectors.toList());
+        String driver = driver(terms);
+        Predicate<Scored> withoutTypo = scored -> score(scored.user, Collections.singletonList(driver)) >= PREFIX;
+        if (matches.stream().filter(withoutTypo).count() >= limit) {
+            matches.removeIf(withoutTypo.negate());
+        }
+        return matches.stream()
+                .sorted(Comparator.comparingInt((Scored scored) -> scored.score).reversed())
+                .limit(limit)
+                .map(scored -> scored.user)
+                .collect(Collectors.toList());
+    }
+
+    private static String driver(List<String> terms) {
+        return Collections.max(terms, Comparator.comparingInt(String::length));
+    }
+
+    /**
+     * Feeds the words of a match class to {@code reader} as views of the vocabulary, so a
+     * search that stops early never lists the rest.
+     *
+     * @return whether the reader stopped
+     */
+    private boolean read(String term, int matchClass, Reader reader) {
+        switch (matchClass) {
+            case EXACT:
+                return reader.read(Collections.singleton(term));
+            case PREFIX:
+                return reader.read(startingWith(term, false));
+            default:
+                int typos = typos(term);
+                int[] row = firstRow(term);
+                return typos > 0 && walk(term.substring(0, 1), nextRow(row, null, term.charAt(0), (char) 0, term),
+                        row, term, typos, reader);
+        }
+    }
+
+    /**
+     * The best points {@code term} can score with the words indexed now.
+     */
+    private int best(String term) {
+        if (postings.containsKey(term)) {
+            return EXACT;
+        }
+        String next = vocabulary.higher(term);
+        return next != null && next.startsWith(term) ? PREFIX : FUZZY;
+    }
+
+    /**
+     * Visits the branches below {@code prefix}, whose distances to the prefixes of
+     * {@code term} are {@code row}, and feeds the words under each branch within the typos
+     * of the whole term to {@code reader}. Branches under the term itself hold the prefix
+     * matches, read before.
+     *
+     * @return whether the reader stopped
+     */
+    private boolean walk(String prefix, int[] row, int[] previousRow, String term, int typos, Reader reader) {
+        char previous = prefix.isEmpty() ? 0 : prefix.charAt(prefix.length() - 1);
+        String next = vocabulary.higher(prefix);
+        while (next != null && next.startsWith(prefix)) {
+            char c = next.charAt(prefix.length());
+            String branch = prefix + c;
+            int[] branchRow = nextRow(row, previousRow, c, previous, term);
+            boolean stopped = false;
+            if (branch.startsWith(term)) {
+                // prefix matches
+            } else if (term.startsWith(branch)) {
+                stopped = branchRow[term.length()] <= typos && vocabulary.contains(branch)
+                        && reader.read(Collections.singleton(branch));
+                stopped = stopped || walk(branch, branchRow, row, term, typos, reader);
+            } else if (branchRow[term.length()] <= typos) {
+                stopped = reader.read(startingWith(branch, true));
+            } else if (min(branchRow) <= typos) {
+                stopped = walk(branch, branchRow, row, term, typos, reader);
+            }
+            if (stopped) {
+                return true;
+            }
+            if (c == Character.MAX_VALUE) {
+                return false;
+            }
+            next = vocabulary.ceiling(prefix + (char) (c + 1));
+        }
+        return false;
+    }
+
+    private NavigableSet<String> startingWith(String prefix, boolean inclusive) {
+        return vocabulary.subSet(prefix, inclusive, prefix + Character.MAX_VALUE, false);
+    }
+
+    private void link(String word, UUID userUid) {
+        postings.compute(word, (key, userUids) -> {
+            if (userUids == null) {
+                vocabulary.add(word);
+                return userUid;
+            }
+            if (userUids instanceof UUID) {
+                if (userUids.equals(userUid)) {
+                    return userUids;
+                }
+                Set<UUID> shared = ConcurrentHashMap.newKeySet();
+                shared.add((UUID) userUids);
+                shared.add(userUid);
+                return shared;
+            }
+            shared(userUids).add(userUid);
+            return userUids;
+        });
+    }
+
+    private void unlink(String word, UUID userUid) {
+        postings.computeIfPresent(word, (key, userUids) -> {
+            if (userUids instanceof UUID) {
+                if (!userUids.equals(userUid)) {
+                    return userUids;
+                }
+            } else {
+                Set<UUID> shared = shared(userUids);
+                shared.remove(userUid);
+                if (!shared.isEmpty()) {
+                    return shared;
+                }
+            }
+            vocabulary.remove(word);
+            return null;
+        });
+    }
+
+    private static Collection<UUID> users(Object userUids) {
+        if (userUids == null) {
+            return Collections.emptySet();
+        }
+        return userUids instanceof UUID ? Collections.singleton((UUID) userUids) : shared(userUids);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<UUID> shared(Object userUids) {
+        return (Set<UUID>) userUids;
+    }
+
+    /**
+     * The points of {@code user} for {@code terms}, 0 unless every term matches. Reads the
+     * words in place rather than splitting them out, as a search scores many candidates.
+     */
+    static int score(User user, List<String> terms) {
+        int score = 0;
+        for (String term : terms) {
+            int best = Math.max(match(term, user.getFirstName(), false),
+                    Math.max(match(term, user.getLastName(), false), match(term, user.getEmail(), false)));
+            if (best == 0 && typos(term) > 0) {
+                best = match(term, user.getFirstName(), true) > 0 || match(term, user.getLastName(), true) > 0
+                        || match(term, user.getEmail(), true) > 0 ? FUZZY : 0;
+            }
+            if (best == 0) {
+                return 0;
+            }
+            score += best;
+        }
+        return score;
+    }
+
+    /**
+     * The best match of {@code term} with a word of {@code text}: exact or prefix, or else,
+     * when {@code fuzzy}, within the typos.
+     */
+    private static int match(String term, String text, boolean fuzzy) {
+        if (text == null) {
+            return 0;
+        }
+        int best = 0;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (fuzzy) {
+                    if (hasPrefixWithin(term, text, start, i, typos(term))) {
+                        return FUZZY;
+                    }
+                } else if (i - start >= term.length() && startsWith(text, start, term)) {
+                    if (i - start == term.length()) {
+                        return EXACT;
+                    }
+                    best = PREFIX;
+                }
+                start = -1;
+            }
+        }
+        return best;
+    }
+
+    private static boolean startsWith(String text, int start, String term) {
+        for (int j = 0; j < term.length(); j++) {
+            if (Character.toLowerCase(text.charAt(start + j)) != term.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int typos(String term) {
+        return term.length() < MIN_FUZZY_LENGTH ? 0 : term.length() < TWO_TYPO_LENGTH ? 1 : 2;
+    }
+
+    /**
+     * Whether a prefix of the word from {@code start} to {@code end} of {@code text}, the
+     * word itself included, is within {@code typos} of {@code term}.
+     */
+    private static boolean hasPrefixWithin(String term, String text, int start, int end, int typos) {
+        if (Character.toLowerCase(text.charAt(start)) != term.charAt(0)) {
+            return false;
+        }
+        int[] previousRow = null;
+        int[] row = firstRow(term);
+        char previous = 0;
+        for (int i = start; i < end; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int[] next = nextRow(row, previousRow, c, previous, term);
+            if (next[term.length()] <= typos) {
+                return true;
+            }
+            if (min(next) > typos) {
+                return false;
+            }
+            previousRow = row;
+            row = next;
+            previous = c;
+        }
+        return false;
+    }
+
+    private static int[] firstRow(String term) {
+        int[] row = new int[term.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = j;
+        }
+        return row;
+    }
+
+    /**
+     * The next row of optimal string alignment distances: {@code row} holds those from a
+     * word prefix ending in {@code previous} to each prefix of {@code term}, the result
+     * those from the word prefix extended by {@code c}.
+     */
+    private static int[] nextRow(int[] row, int[] previousRow, char c, char previous, String term) {
+        int[] next = new int[row.length];
+        next[0] = row[0] + 1;
+        for (int j = 1; j < next.length; j++) {
+            int cost = term.charAt(j - 1) == c ? 0 : 1;
+            int value = Math.min(Math.min(row[j] + 1, next[j - 1] + 1), row[j - 1] + cost);
+            if (previousRow != null && j > 1 && term.charAt(j - 2) == c && term.charAt(j - 1) == previous) {
+                value = Math.min(value, previousRow[j - 2] + 1);
+            }
+            next[j] = value;
+        }
+        return next;
+    }
+
+    private static int min(int[] row) {
+        int min = row[0];
+        for (int value : row) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    static List<String> terms(String text) {
+        return new ArrayList<>(split(text, new LinkedHashSet<>()));
+    }
+
+    static Set<String> words(User user) {
+        Set<String> words = new HashSet<>();
+        split(user.getFirstName(), words);
+        split(user.getLastName(), words);
+        split(user.getEmail(), words);
+        return words;
+    }
+
+    private static Set<String> split(String text, Set<String> words) {
+        if (text == null) {
+            return words;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(lowerCase(text, start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Lower-cases one char at a time, the way {@link #score} compares them.
+     */
+    private static String lowerCase(String text, int start, int end) {
+        char[] word = new char[end - start];
+        for (int i = start; i < end; i++) {
+            word[i - start] = Character.toLowerCase(text.charAt(i));
+        }
+        return new String(word);
+    }
+
+    /**
+     * Scores the users of the words it is fed until {@code limit} of them reach the ceiling,
+     * the best score of a user met from then on.
+     */
+    private final class Reader {
+        private final List<String> terms;
+        private final int limit;
+        private final Function<UUID, User> users;
+        private final Set<UUID> seen = new HashSet<>();
+        private final List<Scored> matches = new ArrayList<>();
+        private int ceiling = Integer.MAX_VALUE;
+        private int atCeiling;
+
+        Reader(List<String> terms, int limit, Function<UUID, User> users) {
+            this.terms = terms;
+            this.limit = limit;
+            this.users = users;
+        }
+
+        /**
+         * Moves the ceiling down to the best score of the users still unread.
+         *
+         * @return whether enough users are already at it
+         */
+        boolean lowerCeiling(int ceiling) {
+            this.ceiling = ceiling;
+            atCeiling = 0;
+            for (Scored match : matches) {
+                if (match.score >= ceiling) {
+                    atCeiling++;
+                }
+            }
+            return atCeiling >= limit;
+        }
+
+        /**
+         * @return whether enough users reached the ceiling to stop
+         */
+        boolean read(Collection<String> words) {
+            for (String word : words) {
+                for (UUID userUid : users(postings.get(word))) {
+                    if (!seen.add(userUid)) {
+                        continue;
+                    }
+                    User user = users.apply(userUid);
+                    int score = user == null ? 0 : score(user, terms);
+                    if (score > 0) {
+                        matches.add(new Scored(user, score));
+                        if (score >= ceiling && ++atCeiling >= limit) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        int matched() {
+            return matches.size();
+        }
+
+        List<User> ranked() {
+            matches.sort(Comparator.comparingInt((Scored scored) -> scored.score).reversed());
+            List<User> ranked = new ArrayList<>(Math.min(limit, matches.size()));
+            for (int i = 0; i < matches.size() && i < limit; i++) {
+                ranked.add(matches.get(i).user);
+            }
+            return ranked;
+        }
+    }
+
+    private static final class Scored {
+        private final User user;
+        private final int score;
+
+        Scored(User user, int score) {
+            this.user = user;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+/**
+ * Compacted image of a user store: {@code [int magic][int version]} followed by one
+ * {@link UserLog} put record per user. Written to a temporary file and renamed into
+ * place once forced, so a snapshot file is either complete or absent; the rename itself
+ * is forced with the directory before {@link #write} returns.
+ */
+final class UserSnapshot {
+
+    private static final int MAGIC = 0x55534E50;
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private UserSnapshot() {
+    }
+
+    /**
+     * @return the number of users written
+     */
+    static long write(Path path, Iterator<User> users) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                     Channels.newOutputStream(channel), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            while (users.hasNext()) {
+                User user = users.next();
+                out.write(UserLog.put(user.getUserUid(), user));
+                count++;
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory(path.toAbsolutePath().getParent());
+        return count;
+    }
+
+    /**
+     * Makes files created, renamed or deleted in {@code directory} durable, which forcing
+     * the files themselves does not.
+     */
+    static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @return the number of users read
+     */
+    static long read(Path path, UserLog.Visitor visitor) throws IOException {
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(path), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(path + " is not a user snapshot");
+            }
+            ByteBuffer record = ByteBuffer.allocate(BUFFER_SIZE);
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return count;
+                }
+                if (length <= 0) {
+                    throw new IOException(path + " is corrupt after " + count + " users");
+                }
+                if (record.capacity() < length + 8) {
+                    record = ByteBuffer.allocate(length + 8);
+                }
+                record.clear();
+                record.putInt(length);
+                record.putInt(in.readInt());
+                in.readFully(record.array(), 8, length);
+                record.limit(length + 8);
+                record.position(0);
+                if (!UserLog.read(record, visitor)) {
+                    throw new IOException(path + " is corrupt after " + count + " users");
+                }
+                count++;
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.yershovkiril.learningspringboot.metrics;
+
+import com.yershovkiril.learningspringboot.trace.UserRequestTrace;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.validation.ValidationException;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.NotFoundException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every call along the user request path: resource methods as {@code users.resource},
+ * service methods as {@code users.service} and {@code UserDao} calls as {@code users.dao},
+ * tagged with the class, method and the exception thrown, if any. A call returning a
+ * {@link CompletionStage} is timed until the stage completes. Percentiles and histogram
+ * buckets come from the {@code management.metrics.distribution.*.users} properties.
+ * <p>
+ * Failed resource calls are counted as {@code users.api.failures}, tagged with
+ * {@code reason} {@code not_found} or {@code validation}.
+ * <p>
+ * With {@code users.metrics.allocation.enabled}, each call also records the bytes its thread
+ * allocated, as the {@code <timer>.allocated} summary. Work handed to other threads is not
+ * included, and reading the counter costs a few hundred nanoseconds per call.
+ */
+@Aspect
+@Component
+public class UserMetricsAspect {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserMetricsAspect.class);
+
+    private final MeterRegistry registry;
+    private final com.sun.management.ThreadMXBean allocations;
+    private final ConcurrentMap<CallSite, Meters> meters = new ConcurrentHashMap<>();
+
+    public UserMetricsAspect(MeterRegistry registry,
+                             @Value("${users.metrics.allocation.enabled:false}") boolean allocationEnabled) {
+        this.registry = registry;
+        this.allocations = allocationEnabled ? threadAllocations() : null;
+    }
+
+    @Around("execution(public * com.yershovkiril.learningspringboot.resource.UserResourceResteasy*.*(..))")
+    public Object timeResource(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("users.resource", joinPoint, true);
+    }
+
+    @Around("execution(public * com.yershovkiril.learningspringboot.service.*Service.*(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("users.service", joinPoint, false);
+    }
+
+    /**
+     * Also adds the time to the {@link UserRequestTrace} of the request being served, if any.
+     */
+    @Around("execution(* com.yershovkiril.learningspringboot.dao.UserDao.*(..))")
+    public Object timeDao(ProceedingJoinPoint joinPoint) throws Throwable {
+        UserRequestTrace trace = UserRequestTrace.current();
+        if (trace == null) {
+            return time("users.dao", joinPoint, false);
+        }
+        trace.enterDao();
+        try {
+            return time("users.dao", joinPoint, false);
+        } finally {
+            trace.exitDao();
+        }
+    }
+
+    private Object time(String name, ProceedingJoinPoint joinPoint, boolean countFailures) throws Throwable {
+        Meters callMeters = meters(name, joinPoint);
+        long allocatedBefore = allocatedBytes();
+        long start = registry.config().clock().monotonicTime();
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } catch (Throwable failure) {
+            record(callMeters, start, allocatedSince(allocatedBefore), failure, countFailures);
+            throw failure;
+        }
+        long allocated = allocatedSince(allocatedBefore);
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result).whenComplete((value, failure) ->
+                    record(callMeters, start, allocated, failure, countFailures));
+            return result;
+        }
+        record(callMeters, start, allocated, null, countFailures);
+        return result;
+    }
+
+    private void record(Meters callMeters, long start, long allocated, Throwable failure, boolean countFailures) {
+        long duration = registry.config().clock().monotonicTime() - start;
+        if (failure == null) {
+            callMeters.timer.record(duration, TimeUnit.NANOSECONDS);
+            if (callMeters.allocated != null) {
+                callMeters.allocated.record(allocated);
+            }
+            return;
+        }
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        Timer.builder(callMeters.name)
+                .tags(callMeters.tags.and("exception", cause.getClass().getSimpleName()))
+                .register(registry)
+                .record(duration, TimeUnit.NANOSECONDS);
+        if (countFailures) {
+            String reason = failureReason(cause);
+            if (reason != null) {
+                registry.counter("users.api.failures", "reason", reason).increment();
+            }
+        }
+    }
+
+    private Meters meters(String name, ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Class<?> targetClass = joinPoint.getTarget().getClass();
+        return meters.computeIfAbsent(new CallSite(name, targetClass, method), callSite -> {
+            Tags tags = Tags.of("class", targetClass.getSimpleName(), "method", method.getName());
+            Timer timer = Timer.builder(name)
+                    .tags(tags.and("exception", "none"))
+                    .register(registry);
+            DistributionSummary allocated = allocations == null ? null : DistributionSummary
+                    .builder(name + ".allocated")
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .register(registry);
+            return new Meters(name, tags, timer, allocated);
+        });
+    }
+
+    private long allocatedBytes() {
+        return allocations == null ? 0 : allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private long allocatedSince(long before) {
+        return allocations == null ? 0 : allocatedBytes() - before;
+    }
+
+    private static String failureReason(Throwable failure) {
+        if (failure instanceof NotFoundException) {
+            return "not_found";
+        }
+        if (failure instanceof BadRequestException || failure instanceof ValidationException) {
+            return "validation";
+        }
+        return null;
+    }
+
+    private static com.sun.management.ThreadMXBean threadAllocations() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            if (allocations.isThreadAllocatedMemorySupported()) {
+                allocations.setThreadAllocatedMemoryEnabled(true);
+                return allocations;
+            }
+        }
+        LOGGER.warn("users.metrics.allocation.enabled is set but this JVM does not count thread allocations");
+        return null;
+    }
+
+    private static final class CallSite {
+        private final String name;
+        private final Class<?> targetClass;
+        private final Method method;
+
+        CallSite(String name, Class<?> targetClass, Method method) {
+            this.name = name;
+            this.targetClass = targetClass;
+            this.method = method;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CallSite)) {
+                return false;
+            }
+            CallSite callSite = (CallSite) o;
+            return name.equals(callSite.name)
+                    && targetClass == callSite.targetClass
+                    && method.equals(callSite.method);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, targetClass, method);
+        }
+    }
+
+    private static final class Meters {
+        private final String name;
+        private final Tags tags;
+        private final Timer timer;
+        private final DistributionSummary allocated;
+
+        Meters(String name, Tags tags, Timer timer, DistributionSummary allocated) {
+            this.name = name;
+            this.tags = tags;
+            this.timer = timer;
+            this.allocated = allocated;
+        }
+    }
+}
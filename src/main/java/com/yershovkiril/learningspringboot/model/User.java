@@ -7,7 +7,9 @@ import javax.validation.constraints.Email;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.UUID;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -33,6 +35,9 @@ public class User {
     @Email
     private final String email;
 
+    // derived from final fields, so racing threads can only compute the same value
+    private transient String fullName;
+
     public static User newUser(UUID userUid, User user) {
         return new User(userUid, user.getFirstName(), user.getLastName(),
                 user.getGender(), user.getAge(), user.getEmail());
@@ -78,11 +83,16 @@ public class User {
     }
 
     public String getFullName() {
-        return firstName + " " + lastName;
+        String fullName = this.fullName;
+        if (fullName == null) {
+            fullName = firstName + " " + lastName;
+            this.fullName = fullName;
+        }
+        return fullName;
     }
 
     public int getDateOfBirth() {
-        return LocalDate.now().minusYears(age).getYear();
+        return CurrentYear.get() - age;
     }
 
     @Override
@@ -101,4 +111,36 @@ public class User {
         MALE,
         FEMALE
     }
+
+    /**
+     * The year in the default time zone, looked up again only once it is over.
+     */
+    private static final class CurrentYear {
+        private static volatile CurrentYear current = of(System.currentTimeMillis());
+
+        private final int year;
+        private final long endMillis;
+
+        private CurrentYear(int year, long endMillis) {
+            this.year = year;
+            this.endMillis = endMillis;
+        }
+
+        static int get() {
+            long now = System.currentTimeMillis();
+            CurrentYear currentYear = current;
+            if (now >= currentYear.endMillis) {
+                currentYear = of(now);
+                current = currentYear;
+            }
+            return currentYear.year;
+        }
+
+        private static CurrentYear of(long now) {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate today = Instant.ofEpochMilli(now).atZone(zone).toLocalDate();
+            LocalDate nextYear = LocalDate.of(today.getYear() + 1, 1, 1);
+            return new CurrentYear(today.getYear(), nextYear.atStartOfDay(zone).toInstant().toEpochMilli());
+        }
+    }
 }
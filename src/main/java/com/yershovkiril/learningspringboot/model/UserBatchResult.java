@@ -0,0 +1,66 @@
+package com.yershovkiril.learningspringboot.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.UUID;
+
+/**
+ * Outcome of one item of a batch request, reported at the item's position in the request.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserBatchResult {
+
+    private final int index;
+
+    private final UUID userUid;
+
+    private final Status status;
+
+    private final String errorMessage;
+
+    public UserBatchResult(@JsonProperty("index") int index,
+                           @JsonProperty("userUid") UUID userUid,
+                           @JsonProperty("status") Status status,
+                           @JsonProperty("errorMessage") String errorMessage) {
+        this.index = index;
+        this.userUid = userUid;
+        this.status = status;
+        this.errorMessage = errorMessage;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public UUID getUserUid() {
+        return userUid;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    @Override
+    public String toString() {
+        return "UserBatchResult{" +
+                "index=" + index +
+                ", userUid=" + userUid +
+                ", status=" + status +
+                ", errorMessage='" + errorMessage + '\'' +
+                '}';
+    }
+
+    public enum Status {
+        APPLIED,
+        INVALID,
+        NOT_FOUND,
+        CONFLICT
+    }
+}
@@ -0,0 +1,57 @@
+package com.yershovkiril.learningspringboot.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.UUID;
+
+/**
+ * One applied mutation of the change feed: the user as stored after it, or no user when
+ * it was deleted. Sequences count up by one per change.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserChange {
+
+    private final long sequence;
+
+    private final UUID userUid;
+
+    private final User user;
+
+    public UserChange(@JsonProperty("sequence") long sequence,
+                      @JsonProperty("userUid") UUID userUid,
+                      @JsonProperty("user") User user) {
+        this.sequence = sequence;
+        this.userUid = userUid;
+        this.user = user;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public UUID getUserUid() {
+        return userUid;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    @JsonIgnore
+    public boolean isDelete() {
+        return user == null;
+    }
+
+    @Override
+    public String toString() {
+        return "UserChange{" +
+                "sequence=" + sequence +
+                ", userUid=" + userUid +
+                ", user=" + user +
+                '}';
+    }
+}
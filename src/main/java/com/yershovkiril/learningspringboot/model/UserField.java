@@ -0,0 +1,65 @@
+package com.yershovkiril.learningspringboot.model;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * The properties of a serialized {@link User}, in the order they are written. Stored
+ * properties can be sorted on; users missing the property come last in either direction.
+ */
+public enum UserField {
+    USER_UID("userUid", User::getUserUid),
+    FIRST_NAME("firstName", User::getFirstName),
+    LAST_NAME("lastName", User::getLastName),
+    GENDER("gender", User::getGender),
+    AGE("age", User::getAge),
+    EMAIL("email", User::getEmail),
+    FULL_NAME("fullName"),
+    DATE_OF_BIRTH("dateOfBirth");
+
+    private final String jsonName;
+    private final Comparator<User> ascending;
+    private final Comparator<User> descending;
+
+    UserField(String jsonName) {
+        this.jsonName = jsonName;
+        this.ascending = null;
+        this.descending = null;
+    }
+
+    <T extends Comparable<? super T>> UserField(String jsonName, Function<User, T> key) {
+        this.jsonName = jsonName;
+        this.ascending = Comparator.comparing(key, Comparator.nullsLast(Comparator.<T>naturalOrder()));
+        this.descending = Comparator.comparing(key, Comparator.nullsLast(Comparator.<T>reverseOrder()));
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    public boolean isSortable() {
+        return ascending != null;
+    }
+
+    /**
+     * @throws IllegalStateException for a derived property
+     */
+    public Comparator<User> comparator(boolean descending) {
+        if (!isSortable()) {
+            throw new IllegalStateException(jsonName + " is not sortable");
+        }
+        return descending ? this.descending : ascending;
+    }
+
+    /**
+     * The field serialized as {@code jsonName}, or null when there is none.
+     */
+    public static UserField ofJsonName(String jsonName) {
+        for (UserField field : values()) {
+            if (field.jsonName.equals(jsonName)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,60 @@
+package com.yershovkiril.learningspringboot.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Outcome of an import: how many lines were read, imported and rejected, and the first
+ * rejected ones, each reported at its line number.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserImportResult {
+
+    private final long lines;
+
+    private final long imported;
+
+    private final long rejected;
+
+    private final List<UserBatchResult> rejections;
+
+    public UserImportResult(@JsonProperty("lines") long lines,
+                            @JsonProperty("imported") long imported,
+                            @JsonProperty("rejected") long rejected,
+                            @JsonProperty("rejections") List<UserBatchResult> rejections) {
+        this.lines = lines;
+        this.imported = imported;
+        this.rejected = rejected;
+        this.rejections = rejections;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public List<UserBatchResult> getRejections() {
+        return rejections;
+    }
+
+    @Override
+    public String toString() {
+        return "UserImportResult{" +
+                "lines=" + lines +
+                ", imported=" + imported +
+                ", rejected=" + rejected +
+                ", rejections=" + rejections +
+                '}';
+    }
+}
@@ -0,0 +1,16 @@
+package com.yershovkiril.learningspringboot.model;
+
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * Serializes {@link User} with {@link UserSerializer} instead of reflective bean binding,
+ * and {@link UserProjection} with the same serializer restricted to the projected fields.
+ */
+public class UserJsonModule extends SimpleModule {
+
+    public UserJsonModule() {
+        super(UserJsonModule.class.getSimpleName());
+        addSerializer(User.class, new UserSerializer());
+        addSerializer(UserProjection.class, new UserProjectionSerializer());
+    }
+}
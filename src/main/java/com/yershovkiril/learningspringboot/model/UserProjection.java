@@ -0,0 +1,27 @@
+package com.yershovkiril.learningspringboot.model;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Users to be written as an array of objects holding only {@code fields}, by
+ * {@link UserProjectionSerializer}, without copying the users themselves.
+ */
+public final class UserProjection {
+
+    private final List<User> users;
+    private final Set<UserField> fields;
+
+    public UserProjection(List<User> users, Set<UserField> fields) {
+        this.users = users;
+        this.fields = fields;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public Set<UserField> getFields() {
+        return fields;
+    }
+}
@@ -0,0 +1,45 @@
+package com.yershovkiril.learningspringboot.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link UserProjection} as an array, each user through {@link UserSerializer}
+ * restricted to the projected fields.
+ */
+final class UserProjectionSerializer extends StdSerializer<UserProjection> implements ContextualSerializer {
+
+    private final UserSerializer userSerializer;
+
+    UserProjectionSerializer() {
+        this(new UserSerializer());
+    }
+
+    private UserProjectionSerializer(UserSerializer userSerializer) {
+        super(UserProjection.class);
+        this.userSerializer = userSerializer;
+    }
+
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property)
+            throws JsonMappingException {
+        return new UserProjectionSerializer((UserSerializer) userSerializer.createContextual(provider, property));
+    }
+
+    @Override
+    public void serialize(UserProjection projection, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        generator.writeStartArray();
+        for (User user : projection.getUsers()) {
+            userSerializer.serialize(user, projection.getFields(), generator, provider);
+        }
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,321 @@
+package com.yershovkiril.learningspringboot.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Selects users by gender, age range, first- or last-name prefix and email domain, all
+ * optional and combined with AND; prefixes and domains ignore case. Matches are ordered by
+ * the sort keys, then by uid, and cut at the limit. With uid order a query can resume after
+ * a cursor uid like a keyset page. The fields name the properties the caller wants back,
+ * all of them when empty.
+ */
+public final class UserQuery {
+
+    private final User.Gender gender;
+    private final int minAge;
+    private final int maxAge;
+    private final String namePrefix;
+    private final String emailDomain;
+    private final List<Order> sort;
+    private final Set<UserField> fields;
+    private final UUID afterUserUid;
+    private final int limit;
+    private final Comparator<User> comparator;
+
+    private UserQuery(Builder builder) {
+        this.gender = builder.gender;
+        this.minAge = builder.minAge;
+        this.maxAge = builder.maxAge;
+        this.namePrefix = builder.namePrefix;
+        this.emailDomain = builder.emailDomain;
+        this.sort = Collections.unmodifiableList(new ArrayList<>(builder.sort));
+        this.fields = Collections.unmodifiableSet(builder.fields.isEmpty()
+                ? EnumSet.noneOf(UserField.class)
+                : EnumSet.copyOf(builder.fields));
+        this.afterUserUid = builder.afterUserUid;
+        this.limit = builder.limit;
+        this.comparator = comparator(sort);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public User.Gender getGender() {
+        return gender;
+    }
+
+    /**
+     * The lowest age selected, {@link Integer#MIN_VALUE} when unbounded.
+     */
+    public int getMinAge() {
+        return minAge;
+    }
+
+    /**
+     * The highest age selected, {@link Integer#MAX_VALUE} when unbounded.
+     */
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Whether the query selects by age, which also leaves out users without one.
+     */
+    public boolean hasAgeRange() {
+        return minAge != Integer.MIN_VALUE || maxAge != Integer.MAX_VALUE;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public String getEmailDomain() {
+        return emailDomain;
+    }
+
+    public List<Order> getSort() {
+        return sort;
+    }
+
+    public Set<UserField> getFields() {
+        return fields;
+    }
+
+    public UUID getAfterUserUid() {
+        return afterUserUid;
+    }
+
+    /**
+     * The most users returned, {@link Integer#MAX_VALUE} when unlimited.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Whether matches are ordered by {@code field} first and then by uid, either because
+     * those are the sort keys or because uid is the first of them.
+     */
+    public boolean isOrderedBy(UserField field) {
+        if (sort.isEmpty()) {
+            return field == UserField.USER_UID;
+        }
+        if (sort.get(0).getField() != field) {
+            return false;
+        }
+        if (field == UserField.USER_UID) {
+            return !sort.get(0).isDescending();
+        }
+        return sort.size() == 1 || (sort.get(1).getField() == UserField.USER_UID && !sort.get(1).isDescending());
+    }
+
+    /**
+     * The order of the results: the sort keys, then ascending uid.
+     */
+    public Comparator<User> comparator() {
+        return comparator;
+    }
+
+    public boolean matches(User user) {
+        if (gender != null && user.getGender() != gender) {
+            return false;
+        }
+        if (hasAgeRange() && (user.getAge() == null || user.getAge() < minAge || user.getAge() > maxAge)) {
+            return false;
+        }
+        if (namePrefix != null
+                && !startsWithIgnoreCase(user.getFirstName(), namePrefix)
+                && !startsWithIgnoreCase(user.getLastName(), namePrefix)) {
+            return false;
+        }
+        if (emailDomain != null && !hasDomain(user.getEmail(), emailDomain)) {
+            return false;
+        }
+        return afterUserUid == null || (user.getUserUid() != null && user.getUserUid().compareTo(afterUserUid) > 0);
+    }
+
+    /**
+     * Evaluates the query over {@code users} in any order. Under a limit only the best
+     * {@code limit} matches are held at a time.
+     */
+    public List<User> select(Stream<User> users) {
+        Iterator<User> matches = users.filter(this::matches).iterator();
+        if (limit == Integer.MAX_VALUE) {
+            List<User> selected = new ArrayList<>();
+            matches.forEachRemaining(selected::add);
+            selected.sort(comparator);
+            return selected;
+        }
+        // a max-heap of the best matches so far, whose head is the first to give way
+        PriorityQueue<User> best = new PriorityQueue<>(Math.min(limit, 1024), comparator.reversed());
+        while (matches.hasNext()) {
+            User user = matches.next();
+            if (best.size() < limit) {
+                best.add(user);
+            } else if (comparator.compare(user, best.peek()) < 0) {
+                best.poll();
+                best.add(user);
+            }
+        }
+        List<User> selected = new ArrayList<>(best);
+        selected.sort(comparator);
+        return selected;
+    }
+
+    private static Comparator<User> comparator(List<Order> sort) {
+        Comparator<User> comparator = null;
+        for (Order order : sort) {
+            Comparator<User> next = order.getField().comparator(order.isDescending());
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        Comparator<User> byUid = UserField.USER_UID.comparator(false);
+        return comparator == null ? byUid : comparator.thenComparing(byUid);
+    }
+
+    private static boolean startsWithIgnoreCase(String value, String prefix) {
+        return value != null && value.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    private static boolean hasDomain(String email, String domain) {
+        if (email == null) {
+            return false;
+        }
+        int at = email.lastIndexOf('@');
+        return at >= 0 && email.length() - at - 1 == domain.length()
+                && email.regionMatches(true, at + 1, domain, 0, domain.length());
+    }
+
+    @Override
+    public String toString() {
+        return "UserQuery{" +
+                "gender=" + gender +
+                ", minAge=" + minAge +
+                ", maxAge=" + maxAge +
+                ", namePrefix='" + namePrefix + '\'' +
+                ", emailDomain='" + emailDomain + '\'' +
+                ", sort=" + sort +
+                ", fields=" + fields +
+                ", afterUserUid=" + afterUserUid +
+                ", limit=" + limit +
+                '}';
+    }
+
+    /**
+     * A sort key: a sortable field, ascending unless descending.
+     */
+    public static final class Order {
+
+        private final UserField field;
+        private final boolean descending;
+
+        public Order(UserField field, boolean descending) {
+            if (!field.isSortable()) {
+                throw new IllegalArgumentException(field.getJsonName() + " is not sortable");
+            }
+            this.field = field;
+            this.descending = descending;
+        }
+
+        public UserField getField() {
+            return field;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        @Override
+        public String toString() {
+            return (descending ? "-" : "") + field.getJsonName();
+        }
+    }
+
+    public static final class Builder {
+
+        private User.Gender gender;
+        private int minAge = Integer.MIN_VALUE;
+        private int maxAge = Integer.MAX_VALUE;
+        private String namePrefix;
+        private String emailDomain;
+        private List<Order> sort = Collections.emptyList();
+        private Set<UserField> fields = EnumSet.noneOf(UserField.class);
+        private UUID afterUserUid;
+        private int limit = Integer.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        public Builder gender(User.Gender gender) {
+            this.gender = gender;
+            return this;
+        }
+
+        public Builder minAge(int minAge) {
+            this.minAge = minAge;
+            return this;
+        }
+
+        public Builder maxAge(int maxAge) {
+            this.maxAge = maxAge;
+            return this;
+        }
+
+        public Builder namePrefix(String namePrefix) {
+            this.namePrefix = namePrefix;
+            return this;
+        }
+
+        /**
+         * The part of the email after its {@code @}.
+         */
+        public Builder emailDomain(String emailDomain) {
+            this.emailDomain = emailDomain;
+            return this;
+        }
+
+        public Builder sort(List<Order> sort) {
+            this.sort = sort;
+            return this;
+        }
+
+        public Builder fields(Set<UserField> fields) {
+            this.fields = fields;
+            return this;
+        }
+
+        public Builder after(UUID afterUserUid) {
+            this.afterUserUid = afterUserUid;
+            return this;
+        }
+
+        public Builder limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException for a non-positive limit, or a cursor uid
+         *                                  without uid order
+         */
+        public UserQuery build() {
+            if (limit < 1) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            UserQuery query = new UserQuery(this);
+            if (afterUserUid != null && !query.isOrderedBy(UserField.USER_UID)) {
+                throw new IllegalArgumentException("a cursor requires uid order");
+            }
+            return query;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.yershovkiril.learningspringboot.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Writes the same properties, in the same order, as bean binding of {@link User} does, with
+ * field names and gender values encoded once up front. The uid goes through the mapper's own
+ * UUID serializer so binary formats keep writing it as 16 bytes. {@link UserField} lists the
+ * properties in that order.
+ */
+final class UserSerializer extends StdSerializer<User> implements ContextualSerializer {
+
+    private static final SerializedString USER_UID = new SerializedString("userUid");
+    private static final SerializedString FIRST_NAME = new SerializedString("firstName");
+    private static final SerializedString LAST_NAME = new SerializedString("lastName");
+    private static final SerializedString GENDER = new SerializedString("gender");
+    private static final SerializedString AGE = new SerializedString("age");
+    private static final SerializedString EMAIL = new SerializedString("email");
+    private static final SerializedString FULL_NAME = new SerializedString("fullName");
+    private static final SerializedString DATE_OF_BIRTH = new SerializedString("dateOfBirth");
+    private static final SerializedString[] GENDERS = genders();
+    private static final UserField[] FIELDS = UserField.values();
+
+    private final JsonSerializer<Object> uuidSerializer;
+
+    UserSerializer() {
+        this(null);
+    }
+
+    private UserSerializer(JsonSerializer<Object> uuidSerializer) {
+        super(User.class);
+        this.uuidSerializer = uuidSerializer;
+    }
+
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property)
+            throws JsonMappingException {
+        return uuidSerializer != null ? this : new UserSerializer(provider.findValueSerializer(UUID.class));
+    }
+
+    @Override
+    public void serialize(User user, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(user);
+        for (UserField field : FIELDS) {
+            writeField(field, user, generator, provider);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes the object of {@code user} with only {@code fields}, in serialization order.
+     */
+    void serialize(User user, Set<UserField> fields, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        generator.writeStartObject(user);
+        for (UserField field : fields) {
+            writeField(field, user, generator, provider);
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeField(UserField field, User user, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        switch (field) {
+            case USER_UID:
+                generator.writeFieldName(USER_UID);
+                if (user.getUserUid() == null) {
+                    generator.writeNull();
+                } else if (uuidSerializer == null) {
+                    provider.findValueSerializer(UUID.class).serialize(user.getUserUid(), generator, provider);
+                } else {
+                    uuidSerializer.serialize(user.getUserUid(), generator, provider);
+                }
+                break;
+            case FIRST_NAME:
+                generator.writeFieldName(FIRST_NAME);
+                generator.writeString(user.getFirstName());
+                break;
+            case LAST_NAME:
+                generator.writeFieldName(LAST_NAME);
+                generator.writeString(user.getLastName());
+                break;
+            case GENDER:
+                generator.writeFieldName(GENDER);
+                if (user.getGender() == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeString(GENDERS[user.getGender().ordinal()]);
+                }
+                break;
+            case AGE:
+                generator.writeFieldName(AGE);
+                if (user.getAge() == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeNumber(user.getAge());
+                }
+                break;
+            case EMAIL:
+                generator.writeFieldName(EMAIL);
+                generator.writeString(user.getEmail());
+                break;
+            case FULL_NAME:
+                generator.writeFieldName(FULL_NAME);
+                generator.writeString(user.getFullName());
+                break;
+            case DATE_OF_BIRTH:
+                generator.writeFieldName(DATE_OF_BIRTH);
+                if (user.getAge() == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeNumber(user.getDateOfBirth());
+                }
+                break;
+            default:
+                throw new IllegalStateException("unknown field " + field);
+        }
+    }
+
+    private static SerializedString[] genders() {
+        User.Gender[] values = User.Gender.values();
+        SerializedString[] genders = new SerializedString[values.length];
+        for (User.Gender gender : values) {
+            genders[gender.ordinal()] = new SerializedString(gender.name());
+        }
+        return genders;
+    }
+}
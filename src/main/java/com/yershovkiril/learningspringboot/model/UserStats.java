@@ -0,0 +1,249 @@
+package com.yershovkiril.learningspringboot.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Aggregates over the whole store: users per gender, the age range, mean and histogram by
+ * decade (keyed by its first age), and the most common email domains.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserStats {
+
+    public static final int AGE_BUCKET_WIDTH = 10;
+
+    // the oldest age a user is validated for; decades past it are not kept
+    private static final int MAX_AGE = 112;
+
+    private static final User.Gender[] GENDERS = User.Gender.values();
+
+    private final long users;
+
+    private final Map<User.Gender, Long> genders;
+
+    private final long usersWithAge;
+
+    private final Integer minAge;
+
+    private final Integer maxAge;
+
+    private final Double meanAge;
+
+    private final SortedMap<Integer, Long> ageHistogram;
+
+    private final Map<String, Long> emailDomains;
+
+    private final int distinctEmailDomains;
+
+    public UserStats(@JsonProperty("users") long users,
+                     @JsonProperty("genders") Map<User.Gender, Long> genders,
+                     @JsonProperty("usersWithAge") long usersWithAge,
+                     @JsonProperty("minAge") Integer minAge,
+                     @JsonProperty("maxAge") Integer maxAge,
+                     @JsonProperty("meanAge") Double meanAge,
+                     @JsonProperty("ageHistogram") SortedMap<Integer, Long> ageHistogram,
+                     @JsonProperty("emailDomains") Map<String, Long> emailDomains,
+                     @JsonProperty("distinctEmailDomains") int distinctEmailDomains) {
+        this.users = users;
+        this.genders = genders;
+        this.usersWithAge = usersWithAge;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        this.meanAge = meanAge;
+        this.ageHistogram = ageHistogram;
+        this.emailDomains = emailDomains;
+        this.distinctEmailDomains = distinctEmailDomains;
+    }
+
+    public long getUsers() {
+        return users;
+    }
+
+    public Map<User.Gender, Long> getGenders() {
+        return genders;
+    }
+
+    public long getUsersWithAge() {
+        return usersWithAge;
+    }
+
+    public Integer getMinAge() {
+        return minAge;
+    }
+
+    public Integer getMaxAge() {
+        return maxAge;
+    }
+
+    public Double getMeanAge() {
+        return meanAge;
+    }
+
+    public SortedMap<Integer, Long> getAgeHistogram() {
+        return ageHistogram;
+    }
+
+    /**
+     * The most common domains, most users first.
+     */
+    public Map<String, Long> getEmailDomains() {
+        return emailDomains;
+    }
+
+    public int getDistinctEmailDomains() {
+        return distinctEmailDomains;
+    }
+
+    /**
+     * The lower-cased part of {@code email} after its last {@code @}, null without one.
+     */
+    public static String emailDomain(String email) {
+        if (email == null) {
+            return null;
+        }
+        int at = email.lastIndexOf('@');
+        return at < 0 ? null : email.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString() {
+        return "UserStats{" +
+                "users=" + users +
+                ", genders=" + genders +
+                ", usersWithAge=" + usersWithAge +
+                ", minAge=" + minAge +
+                ", maxAge=" + maxAge +
+                ", meanAge=" + meanAge +
+                ", ageHistogram=" + ageHistogram +
+                ", emailDomains=" + emailDomains +
+                ", distinctEmailDomains=" + distinctEmailDomains +
+                '}';
+    }
+
+    /**
+     * Running totals for one split of a parallel stream, merged with {@link #combine}.
+     * Counts are primitives, and each email domain boxes one counter however many users
+     * share it.
+     */
+    public static final class Accumulator {
+
+        private long users;
+        private final long[] genders = new long[GENDERS.length];
+        private long usersWithAge;
+        private int minAge = Integer.MAX_VALUE;
+        private int maxAge = Integer.MIN_VALUE;
+        private long ageSum;
+        private final long[] ageBuckets = new long[MAX_AGE / AGE_BUCKET_WIDTH + 1];
+        private final Map<String, long[]> emailDomains = new HashMap<>();
+        // the domain last met as written in the email, and its counter: most users share a
+        // few domains, and matching it in place saves building and hashing the domain again
+        private String lastEmailDomain;
+        private long[] lastEmailDomainCount;
+
+        public void accept(User user) {
+            Integer age = user.getAge();
+            count(user.getGender(), age != null, age == null ? 0 : age);
+            String email = user.getEmail();
+            int at = email == null ? -1 : email.lastIndexOf('@');
+            if (at < 0) {
+                return;
+            }
+            int length = email.length() - at - 1;
+            if (lastEmailDomain == null || lastEmailDomain.length() != length
+                    || !email.regionMatches(at + 1, lastEmailDomain, 0, length)) {
+                lastEmailDomain = email.substring(at + 1);
+                lastEmailDomainCount = counter(lastEmailDomain.toLowerCase(Locale.ROOT));
+            }
+            lastEmailDomainCount[0]++;
+        }
+
+        /**
+         * Counts a user from its parts, for stores that can read them without building the user.
+         */
+        public void accept(User.Gender gender, boolean hasAge, int age, String emailDomain) {
+            count(gender, hasAge, age);
+            if (emailDomain != null) {
+                counter(emailDomain)[0]++;
+            }
+        }
+
+        private void count(User.Gender gender, boolean hasAge, int age) {
+            users++;
+            if (gender != null) {
+                genders[gender.ordinal()]++;
+            }
+            if (hasAge) {
+                usersWithAge++;
+                minAge = Math.min(minAge, age);
+                maxAge = Math.max(maxAge, age);
+                ageSum += age;
+                // stores may hold ages that were never validated; those count in the first or last decade
+                ageBuckets[Math.min(Math.max(age, 0), MAX_AGE) / AGE_BUCKET_WIDTH]++;
+            }
+        }
+
+        private long[] counter(String emailDomain) {
+            return emailDomains.computeIfAbsent(emailDomain, domain -> new long[1]);
+        }
+
+        public void combine(Accumulator other) {
+            users += other.users;
+            for (int i = 0; i < genders.length; i++) {
+                genders[i] += other.genders[i];
+            }
+            usersWithAge += other.usersWithAge;
+            minAge = Math.min(minAge, other.minAge);
+            maxAge = Math.max(maxAge, other.maxAge);
+            ageSum += other.ageSum;
+            for (int i = 0; i < ageBuckets.length; i++) {
+                ageBuckets[i] += other.ageBuckets[i];
+            }
+            other.emailDomains.forEach((domain, count) -> counter(domain)[0] += count[0]);
+        }
+
+        /**
+         * The totals, keeping the {@code topDomains} most common email domains.
+         */
+        public UserStats toStats(int topDomains) {
+            Map<User.Gender, Long> genderCounts = new EnumMap<>(User.Gender.class);
+            for (User.Gender gender : GENDERS) {
+                genderCounts.put(gender, genders[gender.ordinal()]);
+            }
+            SortedMap<Integer, Long> histogram = new TreeMap<>();
+            for (int i = 0; i < ageBuckets.length; i++) {
+                if (ageBuckets[i] > 0) {
+                    histogram.put(i * AGE_BUCKET_WIDTH, ageBuckets[i]);
+                }
+            }
+            List<Map.Entry<String, long[]>> domains = new ArrayList<>(emailDomains.entrySet());
+            domains.sort((a, b) -> a.getValue()[0] != b.getValue()[0]
+                    ? Long.compare(b.getValue()[0], a.getValue()[0])
+                    : a.getKey().compareTo(b.getKey()));
+            Map<String, Long> mostCommon = new LinkedHashMap<>();
+            for (Map.Entry<String, long[]> domain : domains.subList(0, Math.min(topDomains, domains.size()))) {
+                mostCommon.put(domain.getKey(), domain.getValue()[0]);
+            }
+            boolean anyAge = usersWithAge > 0;
+            return new UserStats(users, Collections.unmodifiableMap(genderCounts), usersWithAge,
+                    anyAge ? minAge : null,
+                    anyAge ? maxAge : null,
+                    anyAge ? (double) ageSum / usersWithAge : null,
+                    Collections.unmodifiableSortedMap(histogram),
+                    Collections.unmodifiableMap(mostCommon),
+                    emailDomains.size());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.yershovkiril.learningspringboot.model;
+
+/**
+ * A stored user and its version: 1 when inserted, incremented by every update. Versions
+ * restart when a uid is deleted and inserted again, so the insertion, numbered by the
+ * store on every insert, tells the users that held the same uid apart.
+ */
+public final class VersionedUser {
+
+    private final User user;
+    private final long insertion;
+    private final long version;
+
+    public VersionedUser(User user, long insertion, long version) {
+        this.user = user;
+        this.insertion = insertion;
+        this.version = version;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public long getInsertion() {
+        return insertion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "VersionedUser{" +
+                "user=" + user +
+                ", insertion=" + insertion +
+                ", version=" + version +
+                '}';
+    }
+}
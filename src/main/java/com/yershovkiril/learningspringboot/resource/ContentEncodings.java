@@ -0,0 +1,123 @@
+package com.yershovkiril.learningspringboot.resource;
+
+import javax.ws.rs.NotSupportedException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The content codings the users API compresses responses with, gzip preferred over deflate,
+ * and accepts request bodies in.
+ */
+final class ContentEncodings {
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ContentEncodings() {
+    }
+
+    /**
+     * The coding to answer an {@code Accept-Encoding} header with, or null when it accepts neither.
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = 0;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parameters = element.split(";");
+            String coding = parameters[0].trim().toLowerCase(Locale.ROOT);
+            float quality = quality(parameters);
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzip = quality;
+            } else if (coding.equals(DEFLATE)) {
+                deflate = quality;
+            } else if (coding.equals("*")) {
+                any = quality;
+            }
+        }
+        gzip = gzip < 0 ? any : gzip;
+        deflate = deflate < 0 ? any : deflate;
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    /**
+     * Compresses what is written to the returned stream into {@code out}; closing it finishes
+     * the coding but leaves {@code out} open.
+     */
+    static OutputStream compress(OutputStream out, String encoding) throws IOException {
+        OutputStream target = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        return GZIP.equals(encoding)
+                ? new GZIPOutputStream(target, BUFFER_SIZE)
+                : new DeflaterOutputStream(target, new Deflater(), BUFFER_SIZE, false) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            def.end();
+                        }
+                    }
+                };
+    }
+
+    /**
+     * Decodes a request body sent with {@code Content-Encoding: encoding}, as it is read.
+     *
+     * @throws NotSupportedException for codings other than gzip, deflate and identity
+     */
+    static InputStream decompress(InputStream in, String encoding) throws IOException {
+        String coding = encoding == null ? "identity" : encoding.trim().toLowerCase(Locale.ROOT);
+        switch (coding) {
+            case "identity":
+            case "":
+                return in;
+            case GZIP:
+            case "x-gzip":
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            case DEFLATE:
+                return new InflaterInputStream(in);
+            default:
+                throw new NotSupportedException("Content-Encoding " + encoding + " is not supported");
+        }
+    }
+
+    private static float quality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
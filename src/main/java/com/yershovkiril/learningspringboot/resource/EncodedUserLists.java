@@ -0,0 +1,100 @@
+package com.yershovkiril.learningspringboot.resource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yershovkiril.learningspringboot.model.User;
+
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Full user lists, per gender, media type and content coding, kept as the bytes sent on the
+ * wire: serialized, and compressed when past the compression threshold. An entry belongs to
+ * the store modification count it was read at and is rebuilt once a write has moved the count
+ * on, so repeated reads of an unchanged collection skip both serialization and compression.
+ * The entries are bounded by their total size in bytes.
+ */
+class EncodedUserLists {
+
+    private static final Type USER_LIST_TYPE = new GenericType<List<User>>() {}.getType();
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private final Cache<String, EncodedUserList> cache;
+    private final int minCompressedBytes;
+
+    EncodedUserLists(long maximumBytes, int minCompressedBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((String key, EncodedUserList list) -> list.body.length)
+                .build();
+        this.minCompressedBytes = minCompressedBytes;
+    }
+
+    EncodedUserList get(String gender, MediaType mediaType, String encoding, long modificationCount,
+                        Supplier<List<User>> users, Providers providers) {
+        String key = gender + ' ' + mediaType + ' ' + encoding;
+        EncodedUserList cached = cache.getIfPresent(key);
+        if (cached != null && cached.modificationCount == modificationCount) {
+            return cached;
+        }
+        EncodedUserList encoded = encode(users.get(), mediaType, encoding, modificationCount, providers);
+        cache.put(key, encoded);
+        return encoded;
+    }
+
+    private EncodedUserList encode(List<User> users, MediaType mediaType, String encoding,
+                                   long modificationCount, Providers providers) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        MessageBodyWriter<List<User>> writer = (MessageBodyWriter) providers
+                .getMessageBodyWriter(List.class, USER_LIST_TYPE, NO_ANNOTATIONS, mediaType);
+        try {
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            writer.writeTo(users, List.class, USER_LIST_TYPE, NO_ANNOTATIONS, mediaType,
+                    new MultivaluedHashMap<>(), serialized);
+            if (encoding == null || serialized.size() <= minCompressedBytes) {
+                return new EncodedUserList(serialized.toByteArray(), null, modificationCount);
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(serialized.size() / 4);
+            try (OutputStream output = ContentEncodings.compress(compressed, encoding)) {
+                serialized.writeTo(output);
+            }
+            return new EncodedUserList(compressed.toByteArray(), encoding, modificationCount);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static final class EncodedUserList {
+        private final byte[] body;
+        private final String encoding;
+        private final long modificationCount;
+
+        EncodedUserList(byte[] body, String encoding, long modificationCount) {
+            this.body = body;
+            this.encoding = encoding;
+            this.modificationCount = modificationCount;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * The content coding of the body, or null when it is sent as serialized.
+         */
+        String getEncoding() {
+            return encoding;
+        }
+    }
+}
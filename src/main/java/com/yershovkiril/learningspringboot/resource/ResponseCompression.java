@@ -0,0 +1,143 @@
+package com.yershovkiril.learningspringboot.resource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+/**
+ * Compresses response bodies with gzip or deflate, whichever {@code Accept-Encoding} prefers,
+ * once they grow past {@code min-response-bytes}; smaller ones are sent as they are. The first
+ * bytes are held back until that is decided, so the header can still be set. Responses that
+ * already carry a {@code Content-Encoding}, and those to requests with the
+ * {@link #UNCOMPRESSED_PROPERTY} property, are left alone.
+ */
+@Component
+@Provider
+@Priority(Priorities.ENTITY_CODER)
+public class ResponseCompression implements ContainerResponseFilter, WriterInterceptor {
+
+    /**
+     * Request property that keeps the response uncompressed, for streams whose every flush
+     * must reach the client.
+     */
+    static final String UNCOMPRESSED_PROPERTY = ResponseCompression.class.getName() + ".uncompressed";
+
+    private static final String ENCODING_PROPERTY = ResponseCompression.class.getName() + ".encoding";
+
+    private final boolean enabled;
+    private final int minResponseBytes;
+
+    public ResponseCompression(@Value("${users.api.compression.enabled:true}") boolean enabled,
+                               @Value("${users.api.compression.min-response-bytes:2048}") int minResponseBytes) {
+        this.enabled = enabled;
+        this.minResponseBytes = minResponseBytes;
+    }
+
+    /**
+     * The coding a response to these request headers should be compressed with, or null.
+     */
+    String negotiate(HttpHeaders headers) {
+        return enabled ? ContentEncodings.negotiate(headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING)) : null;
+    }
+
+    int getMinResponseBytes() {
+        return minResponseBytes;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        if (!enabled || !responseContext.hasEntity() || requestContext.getProperty(UNCOMPRESSED_PROPERTY) != null) {
+            return;
+        }
+        // cacheable responses already vary on it, as their tags do
+        if (!responseContext.getStringHeaders().getOrDefault(HttpHeaders.VARY, Collections.emptyList())
+                .contains(HttpHeaders.ACCEPT_ENCODING)) {
+            responseContext.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (responseContext.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            return;
+        }
+        String encoding = ContentEncodings.negotiate(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+        if (encoding != null) {
+            requestContext.setProperty(ENCODING_PROPERTY, encoding);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        String encoding = (String) context.getProperty(ENCODING_PROPERTY);
+        if (encoding == null) {
+            context.proceed();
+            return;
+        }
+        ThresholdOutputStream output = new ThresholdOutputStream(context, encoding);
+        context.setOutputStream(output);
+        context.proceed();
+        output.finish();
+    }
+
+    private final class ThresholdOutputStream extends OutputStream {
+        private final WriterInterceptorContext context;
+        private final OutputStream out;
+        private final String encoding;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream compressed;
+
+        ThresholdOutputStream(WriterInterceptorContext context, String encoding) {
+            this.context = context;
+            this.out = context.getOutputStream();
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (compressed != null) {
+                compressed.write(b, off, len);
+                return;
+            }
+            buffer.write(b, off, len);
+            if (buffer.size() > minResponseBytes) {
+                context.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+                context.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                compressed = ContentEncodings.compress(out, encoding);
+                buffer.writeTo(compressed);
+                buffer = null;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // before the threshold is crossed a flush would commit headers still undecided
+            if (compressed != null) {
+                compressed.flush();
+            }
+        }
+
+        void finish() throws IOException {
+            if (compressed != null) {
+                compressed.close();
+            } else if (buffer != null) {
+                buffer.writeTo(out);
+                buffer = null;
+            }
+        }
+    }
+}
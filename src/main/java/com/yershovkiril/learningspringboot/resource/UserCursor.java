@@ -0,0 +1,36 @@
+package com.yershovkiril.learningspringboot.resource;
+
+import javax.ws.rs.BadRequestException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque pagination cursor: the uid of the last user on a page, URL-safe base64 encoded.
+ */
+final class UserCursor {
+
+    private UserCursor() {
+    }
+
+    static String encode(UUID userUid) {
+        ByteBuffer bytes = ByteBuffer.allocate(16);
+        bytes.putLong(userUid.getMostSignificantBits());
+        bytes.putLong(userUid.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array());
+    }
+
+    static UUID decode(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("invalid cursor " + cursor);
+        }
+        if (bytes.length != 16) {
+            throw new BadRequestException("invalid cursor " + cursor);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,102 @@
+package com.yershovkiril.learningspringboot.resource;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import java.security.SecureRandom;
+import java.time.LocalDate;
+import java.util.OptionalLong;
+
+import static com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes.APPLICATION_JACKSON_SMILE_TYPE;
+
+/**
+ * Strong entity tags of users and user collections:
+ * {@code "<instance>.<year>.<insertion>.<version>"} for a user and
+ * {@code "<instance>.<year>.m<count>"} for a collection read at a store modification count.
+ * Versions restart when a uid is inserted again, so the insertion keeps a tag of a deleted
+ * user from matching its successor. Versions and counts restart with the process, so a random instance
+ * number keeps tags of an earlier process from matching; the year is there because
+ * {@link com.yershovkiril.learningspringboot.model.User#getDateOfBirth()} depends on it.
+ * <p>
+ * Each representation has its own tag, since a strong tag must change with the bytes: Smile
+ * adds {@code -smile} and a negotiated content coding {@code -gzip} or {@code -deflate}.
+ */
+final class UserEntityTags {
+
+    private static final String INSTANCE = Long.toHexString(new SecureRandom().nextLong());
+
+    private UserEntityTags() {
+    }
+
+    static EntityTag ofVersion(long insertion, long version) {
+        return new EntityTag(prefix() + insertion + "." + version);
+    }
+
+    static EntityTag ofModificationCount(long modificationCount) {
+        return new EntityTag(prefix() + "m" + modificationCount);
+    }
+
+    static EntityTag ofVariant(EntityTag entityTag, MediaType mediaType, String encoding) {
+        StringBuilder value = new StringBuilder(entityTag.getValue());
+        if (APPLICATION_JACKSON_SMILE_TYPE.isCompatible(mediaType)) {
+            value.append("-smile");
+        }
+        if (encoding != null) {
+            value.append('-').append(encoding);
+        }
+        return new EntityTag(value.toString());
+    }
+
+    /**
+     * Whether an {@code If-None-Match} header names {@code entityTag}, compared weakly as
+     * RFC 7232 asks, so that a tag a proxy has weakened still matches.
+     */
+    static boolean noneMatchNames(String ifNoneMatch, EntityTag entityTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String listed : ifNoneMatch.split(",")) {
+            String tag = listed.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            try {
+                if (EntityTag.valueOf(tag).getValue().equals(entityTag.getValue())) {
+                    return true;
+                }
+            } catch (IllegalArgumentException e) {
+                // not a tag of ours
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The user version named by an {@code If-Match} header, or empty when it names none of
+     * this process or another insertion than {@code insertion}, which can only fail the
+     * precondition.
+     */
+    static OptionalLong version(String ifMatch, long insertion) {
+        EntityTag entityTag;
+        try {
+            entityTag = EntityTag.valueOf(ifMatch.trim());
+        } catch (IllegalArgumentException e) {
+            return OptionalLong.empty();
+        }
+        String prefix = prefix() + insertion + ".";
+        if (entityTag.isWeak() || !entityTag.getValue().startsWith(prefix)) {
+            return OptionalLong.empty();
+        }
+        // any representation of the version will do
+        String version = entityTag.getValue().substring(prefix.length());
+        int variant = version.indexOf('-');
+        try {
+            return OptionalLong.of(Long.parseLong(variant < 0 ? version : version.substring(0, variant)));
+        } catch (NumberFormatException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    private static String prefix() {
+        return INSTANCE + "." + LocalDate.now().getYear() + ".";
+    }
+}
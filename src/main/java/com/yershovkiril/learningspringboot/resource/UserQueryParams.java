@@ -0,0 +1,126 @@
+package com.yershovkiril.learningspringboot.resource;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserField;
+import com.yershovkiril.learningspringboot.model.UserQuery;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.QueryParam;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Query parameters of {@code GET /api/v1/users} beyond gender and paging:
+ * {@code minAge}, {@code maxAge}, {@code namePrefix}, {@code emailDomain},
+ * {@code sort=age,-lastName} (a leading {@code -} sorts descending) and
+ * {@code fields=firstName,email}.
+ */
+public class UserQueryParams {
+
+    @QueryParam("minAge")
+    private Integer minAge;
+
+    @QueryParam("maxAge")
+    private Integer maxAge;
+
+    @QueryParam("namePrefix")
+    private String namePrefix;
+
+    @QueryParam("emailDomain")
+    private String emailDomain;
+
+    @QueryParam("sort")
+    private String sort;
+
+    @QueryParam("fields")
+    private String fields;
+
+    public UserQueryParams() {
+    }
+
+    UserQueryParams(Integer minAge, Integer maxAge, String namePrefix, String emailDomain,
+                    String sort, String fields) {
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        this.namePrefix = namePrefix;
+        this.emailDomain = emailDomain;
+        this.sort = sort;
+        this.fields = fields;
+    }
+
+    boolean isEmpty() {
+        return minAge == null && maxAge == null && namePrefix == null && emailDomain == null
+                && sort == null && fields == null;
+    }
+
+    /**
+     * Combines these parameters with the gender and paging ones. Without {@code limit} or
+     * {@code cursor} every match is selected; a cursor needs the default uid order.
+     */
+    UserQuery toQuery(String gender, Integer limit, String cursor) {
+        UserQuery.Builder query = UserQuery.builder()
+                .gender(gender == null ? null : gender(gender))
+                .namePrefix(namePrefix)
+                .emailDomain(emailDomain)
+                .sort(sort == null ? new ArrayList<>() : sort(sort))
+                .fields(fields == null ? EnumSet.noneOf(UserField.class) : fields(fields));
+        if (minAge != null) {
+            query.minAge(minAge);
+        }
+        if (maxAge != null) {
+            query.maxAge(maxAge);
+        }
+        if (limit != null || cursor != null) {
+            query.limit(UserResourceResteasy.pageSize(limit));
+        }
+        if (cursor != null) {
+            query.after(UserCursor.decode(cursor));
+        }
+        try {
+            return query.build();
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    private static User.Gender gender(String gender) {
+        try {
+            return User.Gender.valueOf(gender.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("invalid gender " + gender);
+        }
+    }
+
+    private static List<UserQuery.Order> sort(String sort) {
+        List<UserQuery.Order> orders = new ArrayList<>();
+        for (String key : sort.split(",")) {
+            key = key.trim();
+            boolean descending = key.startsWith("-");
+            UserField field = field(descending ? key.substring(1) : key);
+            if (!field.isSortable()) {
+                throw new BadRequestException("cannot sort by " + field.getJsonName());
+            }
+            orders.add(new UserQuery.Order(field, descending));
+        }
+        return orders;
+    }
+
+    private static Set<UserField> fields(String fields) {
+        Set<UserField> projected = EnumSet.noneOf(UserField.class);
+        for (String name : fields.split(",")) {
+            projected.add(field(name.trim()));
+        }
+        return projected;
+    }
+
+    private static UserField field(String name) {
+        UserField field = UserField.ofJsonName(name);
+        if (field == null) {
+            throw new BadRequestException("unknown field " + name);
+        }
+        return field;
+    }
+}
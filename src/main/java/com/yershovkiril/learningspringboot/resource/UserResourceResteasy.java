@@ -1,65 +1,554 @@
 package com.yershovkiril.learningspringboot.resource;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserBatchResult;
+import com.yershovkiril.learningspringboot.model.UserChange;
+import com.yershovkiril.learningspringboot.model.UserField;
+import com.yershovkiril.learningspringboot.model.UserImportResult;
+import com.yershovkiril.learningspringboot.model.UserProjection;
+import com.yershovkiril.learningspringboot.model.UserQuery;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
+import com.yershovkiril.learningspringboot.service.UserChangeFeed;
+import com.yershovkiril.learningspringboot.service.UserImportService;
 import com.yershovkiril.learningspringboot.service.UserService;
+import org.jboss.resteasy.spi.HttpRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.validation.annotation.Validated;
 
-import javax.validation.Valid;
 import javax.ws.rs.*;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.Providers;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import static com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes.APPLICATION_JACKSON_SMILE;
+import static com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes.APPLICATION_JACKSON_SMILE_TYPE;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 
-@Validated
 @Component
 @Path("api/v1/users")
 public class UserResourceResteasy {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String CHANGE_EPOCH_HEADER = "X-Change-Epoch";
+    public static final String CHANGE_SEQUENCE_HEADER = "X-Change-Sequence";
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 10_000;
+    private static final int DEFAULT_SEARCH_SIZE = 10;
+    private static final int MAX_SEARCH_SIZE = 100;
+    private static final int DEFAULT_STATS_DOMAINS = 10;
+    private static final int MAX_STATS_DOMAINS = 1000;
+    private static final int CHANGES_PER_READ = 1000;
+    // versions start at 1, so no user is ever at this one
+    private static final long NO_VERSION = 0;
+
     private UserService userService;
+    private ObjectMapper objectMapper;
+    private CacheControl cacheControl;
+    private ResponseCompression responseCompression;
+    private EncodedUserLists encodedUserLists;
+    private UserChangeFeed changeFeed;
+    private long heartbeatMs;
+    private UserImportService userImportService;
 
     @Autowired
-    public UserResourceResteasy(UserService userService) {
+    public UserResourceResteasy(UserService userService, ObjectMapper objectMapper,
+                                @Value("${users.api.cache-max-age-seconds:0}") int cacheMaxAgeSeconds,
+                                ResponseCompression responseCompression,
+                                @Value("${users.api.list-cache.maximum-bytes:67108864}") long listCacheMaximumBytes,
+                                UserChangeFeed changeFeed,
+                                @Value("${users.feed.heartbeat-ms:10000}") long heartbeatMs,
+                                UserImportService userImportService) {
         this.userService = userService;
+        this.changeFeed = changeFeed;
+        this.heartbeatMs = heartbeatMs;
+        this.userImportService = userImportService;
+        this.objectMapper = objectMapper;
+        this.cacheControl = new CacheControl();
+        this.cacheControl.setMaxAge(cacheMaxAgeSeconds);
+        this.responseCompression = responseCompression;
+        if (listCacheMaximumBytes > 0) {
+            this.encodedUserLists = new EncodedUserLists(listCacheMaximumBytes, responseCompression.getMinResponseBytes());
+        }
+    }
+
+    /**
+     * Without {@code limit} or {@code cursor} returns every user. Otherwise returns one page
+     * ordered by uid; when more users follow, the {@value #NEXT_CURSOR_HEADER} header holds
+     * the cursor of the next page. Either way the ETag is taken from the store modification
+     * count, so a request whose {@code If-None-Match} still matches is answered 304 without
+     * reading any user. Full lists are sent from {@link EncodedUserLists} while the count stands.
+     * <p>
+     * Any of the {@link UserQueryParams} turns the request into a query evaluated by the store,
+     * paged the same way while it keeps the uid order; {@code fields} trims what is written.
+     */
+    @GET
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public Response fetchUsers(@QueryParam("gender") String gender,
+                               @QueryParam("limit") Integer limit,
+                               @QueryParam("cursor") String cursor,
+                               @BeanParam UserQueryParams queryParams,
+                               @Context HttpHeaders headers,
+                               @Context Providers providers) {
+        long modificationCount = userService.getModificationCount();
+        EntityTag entityTag = UserEntityTags.ofModificationCount(modificationCount);
+        if (!queryParams.isEmpty()) {
+            UserQuery query = queryParams.toQuery(gender, limit, cursor);
+            return cacheable(headers, entityTag, () -> queried(userService.getUsers(query), query));
+        }
+        if (limit == null && cursor == null) {
+            Supplier<List<User>> users = () -> userService.getAllUsers(Optional.ofNullable(gender));
+            if (encodedUserLists == null) {
+                return cacheable(headers, entityTag, () -> Response.ok(new GenericEntity<List<User>>(users.get()) {}));
+            }
+            return cacheable(headers, entityTag, () -> {
+                MediaType mediaType = listMediaType(headers);
+                EncodedUserLists.EncodedUserList list = encodedUserLists.get(gender, mediaType,
+                        responseCompression.negotiate(headers), modificationCount, users, providers);
+                return Response.ok(list.getBody(), mediaType).encoding(list.getEncoding());
+            });
+        }
+        int pageSize = pageSize(limit);
+        Optional<UUID> after = Optional.ofNullable(cursor).map(UserCursor::decode);
+        return cacheable(headers, entityTag,
+                () -> page(userService.getUsersPage(Optional.ofNullable(gender), after, pageSize), pageSize));
     }
 
+    /**
+     * Up to {@code limit} users whose first name, last name or email match every word of
+     * {@code q} exactly, as a prefix or within a typo, best matches first.
+     */
     @GET
+    @Path("search")
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public Response searchUsers(@QueryParam("q") String text,
+                                @QueryParam("limit") Integer limit,
+                                @Context HttpHeaders headers) {
+        int resultSize = searchSize(limit);
+        EntityTag entityTag = UserEntityTags.ofModificationCount(userService.getModificationCount());
+        return cacheable(headers, entityTag,
+                () -> Response.ok(new GenericEntity<List<User>>(userService.searchUsers(text, resultSize)) {}));
+    }
+
+    /**
+     * Counts by gender, age statistics and histogram, and the {@code domains} most common
+     * email domains, computed in the store so that reports need not fetch every user.
+     */
+    @GET
+    @Path("stats")
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public Response fetchUserStats(@QueryParam("domains") Integer domains, @Context HttpHeaders headers) {
+        int topDomains = statsDomains(domains);
+        EntityTag entityTag = UserEntityTags.ofModificationCount(userService.getModificationCount());
+        return cacheable(headers, entityTag, () -> Response.ok(userService.getUserStats(topDomains)));
+    }
+
+    /**
+     * Writes every user as one JSON array, one element at a time, without building the list.
+     */
+    @GET
+    @Path("stream")
     @Produces(APPLICATION_JSON)
-    public List<User> fetchUsers(@QueryParam("gender") String gender) {
-        return userService.getAllUsers(Optional.ofNullable(gender));
+    public StreamingOutput streamUsers(@QueryParam("gender") String gender) {
+        Stream<User> users = userService.streamUsers(Optional.ofNullable(gender));
+        ObjectWriter writer = objectMapper.writerFor(User.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return output -> {
+            try (Stream<User> stream = users;
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                Iterator<User> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    writer.writeValue(generator, iterator.next());
+                }
+                generator.writeEndArray();
+            }
+        };
+    }
+
+    /**
+     * Every user, one JSON object per line, in the format {@link #importUsers} reads; gzip
+     * compressed when the request accepts it, like any response.
+     */
+    @GET
+    @Path("export")
+    @Produces(APPLICATION_NDJSON)
+    public Response exportUsers(@QueryParam("gender") String gender) {
+        Stream<User> users = userService.streamUsers(Optional.ofNullable(gender));
+        ObjectWriter writer = objectMapper.writerFor(User.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingOutput lines = output -> {
+            try (Stream<User> stream = users;
+                 JsonGenerator generator = ndjsonGenerator(output)) {
+                Iterator<User> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    writer.writeValue(generator, iterator.next());
+                    generator.writeRaw('\n');
+                }
+            }
+        };
+        return Response.ok(lines).cacheControl(noStore()).build();
+    }
+
+    /**
+     * Inserts the users of a newline-delimited JSON body, such as an export, read and applied
+     * in batches as it arrives; the body may be sent with {@code Content-Encoding} gzip or
+     * deflate. Lines that do not parse, are invalid or conflict are rejected and reported by
+     * line number without stopping the import.
+     */
+    @POST
+    @Path("import")
+    @Consumes(APPLICATION_NDJSON)
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public UserImportResult importUsers(@HeaderParam(HttpHeaders.CONTENT_ENCODING) String contentEncoding,
+                                        InputStream body) throws IOException {
+        try (InputStream users = ContentEncodings.decompress(body, contentEncoding)) {
+            return userImportService.importUsers(users);
+        }
     }
 
+    /**
+     * The changes after sequence {@code after} (0 by default) of {@code epoch}, the current
+     * one unless given, as one JSON {@link UserChange} per line in the order they were applied;
+     * the {@value #CHANGE_EPOCH_HEADER} header names the epoch to resume with. With
+     * {@code follow} the response stays open, sending each change as it is applied and an
+     * empty line every heartbeat while there is none. Answers 410 when those changes are no
+     * longer kept or the epoch has ended: start over from {@link #fetchChangesSnapshot()}.
+     */
+    @GET
+    @Path("changes")
+    @Produces(APPLICATION_NDJSON)
+    public Response fetchChanges(@QueryParam("epoch") String epoch,
+                                 @QueryParam("after") Long after,
+                                 @QueryParam("follow") boolean follow,
+                                 @Context HttpRequest request) {
+        String streamEpoch = epoch != null ? epoch : changeFeed.getEpoch();
+        long from = after == null ? 0 : after;
+        List<UserChange> first = changeFeed.changesAfter(streamEpoch, from, CHANGES_PER_READ);
+        ObjectWriter writer = objectMapper.writerFor(UserChange.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingOutput changes = output -> {
+            try (JsonGenerator generator = ndjsonGenerator(output)) {
+                List<UserChange> next = first;
+                long last = from;
+                while (true) {
+                    for (UserChange change : next) {
+                        writer.writeValue(generator, change);
+                        generator.writeRaw('\n');
+                        last = change.getSequence();
+                    }
+                    generator.flush();
+                    if (follow) {
+                        next = changeFeed.awaitChangesAfter(streamEpoch, last, CHANGES_PER_READ,
+                                heartbeatMs, TimeUnit.MILLISECONDS);
+                        if (next.isEmpty()) {
+                            if (changeFeed.isClosed()) {
+                                return;
+                            }
+                            generator.writeRaw('\n');
+                        }
+                    } else if (next.isEmpty()) {
+                        return;
+                    } else {
+                        next = changeFeed.changesAfter(streamEpoch, last, CHANGES_PER_READ);
+                    }
+                }
+            } catch (ClientErrorException e) {
+                // the epoch ended or the consumer fell behind what is kept: ending the
+                // response makes it ask again, and learn which with a 410
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        if (follow) {
+            // compression would hold the first changes back and ignore the flushes after each
+            request.setAttribute(ResponseCompression.UNCOMPRESSED_PROPERTY, Boolean.TRUE);
+        }
+        return Response.ok(changes)
+                .header(CHANGE_EPOCH_HEADER, streamEpoch)
+                .cacheControl(noStore())
+                .build();
+    }
+
+    /**
+     * Every user, one JSON object per line, as of the change named by the
+     * {@value #CHANGE_EPOCH_HEADER} and {@value #CHANGE_SEQUENCE_HEADER} headers; follow it
+     * with {@link #fetchChanges} from there.
+     */
+    @GET
+    @Path("changes/snapshot")
+    @Produces(APPLICATION_NDJSON)
+    public Response fetchChangesSnapshot() {
+        UserChangeFeed.Snapshot snapshot = changeFeed.snapshot();
+        ObjectWriter writer = objectMapper.writerFor(User.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingOutput users = output -> {
+            try (JsonGenerator generator = ndjsonGenerator(output)) {
+                for (User user : snapshot.getUsers()) {
+                    writer.writeValue(generator, user);
+                    generator.writeRaw('\n');
+                }
+            }
+        };
+        return Response.ok(users)
+                .header(CHANGE_EPOCH_HEADER, snapshot.getEpoch())
+                .header(CHANGE_SEQUENCE_HEADER, snapshot.getSequence())
+                .cacheControl(noStore())
+                .build();
+    }
+
+    /**
+     * The ETag names the version of the user, for {@code If-None-Match} here and
+     * {@code If-Match} on updates and deletes.
+     */
     @GET
     @Path("{userUid}")
-    @Produces(APPLICATION_JSON)
-    public User fetchUser(@PathParam("userUid") UUID userUid) {
-        return userService
-                .getUser(userUid)
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public Response fetchUser(@PathParam("userUid") UUID userUid, @Context HttpHeaders headers) {
+        VersionedUser versionedUser = userService
+                .getVersionedUser(userUid)
                 .orElseThrow(() -> new NotFoundException("user " + userUid + " not found."));
+        return cacheable(headers, UserEntityTags.ofVersion(versionedUser.getInsertion(), versionedUser.getVersion()),
+                () -> Response.ok(versionedUser.getUser()));
     }
 
+    /**
+     * A user breaking a constraint of {@link User} answers 400, as on every write, and one
+     * whose uid or email is already taken 409.
+     */
     @POST
-    @Consumes(APPLICATION_JSON)
-    @Produces(APPLICATION_JSON)
-    public void insertNewUser(@Valid User user) {
-        userService.insertUser(user);
+    @Consumes({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public Response insertNewUser(User user) {
+        if (userService.insertUser(user) == 0) {
+            return insertConflict(user);
+        }
+        return Response.noContent().build();
     }
 
+    /**
+     * With {@code If-Match}, updates only the version it names and answers 412 if the user
+     * has changed since; on success the ETag is the one a GET with the same {@code Accept}
+     * and {@code Accept-Encoding} would return. An email already used by another user
+     * answers 409.
+     */
     @PUT
-    @Consumes(APPLICATION_JSON)
-    @Produces(APPLICATION_JSON)
-    public void updateUser(User user) {
-        userService.updateUser(user);
+    @Consumes({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public Response updateUser(@HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, User user,
+                               @Context HttpHeaders headers) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            if (userService.updateUser(user) == 0) {
+                return emailConflict(user);
+            }
+            return Response.noContent().build();
+        }
+        Optional<VersionedUser> current = userService.getVersionedUser(user == null ? null : user.getUserUid());
+        long version = expectedVersion(ifMatch, current);
+        // a missing user or another version has already failed with 404 or 412
+        if (userService.updateUser(user, version) == 0) {
+            return emailConflict(user);
+        }
+        EntityTag entityTag = UserEntityTags.ofVersion(current.get().getInsertion(), version + 1);
+        return Response.noContent().tag(variantTag(headers, entityTag)).build();
     }
 
+    /**
+     * With {@code If-Match}, deletes only the version it names and answers 412 otherwise.
+     */
     @DELETE
     @Path("{userUid}")
-    @Produces(APPLICATION_JSON)
-    public void deleteUser(@PathParam("userUid") UUID userUid) {
-        userService.removeUser(userUid);
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public void deleteUser(@HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                           @PathParam("userUid") UUID userUid) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            userService.removeUser(userUid);
+        } else {
+            userService.removeUser(userUid, expectedVersion(ifMatch, userService.getVersionedUser(userUid)));
+        }
+    }
+
+    @POST
+    @Path("batch")
+    @Consumes({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public List<UserBatchResult> insertNewUsers(List<User> users) {
+        checkBatchSize(users);
+        return userService.insertUsers(users);
+    }
+
+    @PUT
+    @Path("batch")
+    @Consumes({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public List<UserBatchResult> updateUsers(List<User> users) {
+        checkBatchSize(users);
+        return userService.updateUsers(users);
     }
 
+    @DELETE
+    @Path("batch")
+    @Consumes({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public List<UserBatchResult> deleteUsers(List<UUID> userUids) {
+        checkBatchSize(userUids);
+        return userService.removeUsers(userUids);
+    }
+
+    static int pageSize(Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return pageSize;
+    }
+
+    static int searchSize(Integer limit) {
+        int resultSize = limit == null ? DEFAULT_SEARCH_SIZE : limit;
+        if (resultSize < 1 || resultSize > MAX_SEARCH_SIZE) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_SEARCH_SIZE);
+        }
+        return resultSize;
+    }
+
+    static int statsDomains(Integer domains) {
+        int topDomains = domains == null ? DEFAULT_STATS_DOMAINS : domains;
+        if (topDomains < 0 || topDomains > MAX_STATS_DOMAINS) {
+            throw new BadRequestException("domains must be between 0 and " + MAX_STATS_DOMAINS);
+        }
+        return topDomains;
+    }
+
+    static Response.ResponseBuilder page(List<User> users, int pageSize) {
+        Response.ResponseBuilder response = Response.ok(new GenericEntity<List<User>>(users) {});
+        if (users.size() == pageSize) {
+            response.header(NEXT_CURSOR_HEADER, UserCursor.encode(users.get(users.size() - 1).getUserUid()));
+        }
+        return response;
+    }
+
+    static Response.ResponseBuilder queried(List<User> users, UserQuery query) {
+        Response.ResponseBuilder response = Response.ok(query.getFields().isEmpty()
+                ? new GenericEntity<List<User>>(users) {}
+                : new UserProjection(users, query.getFields()));
+        if (query.isOrderedBy(UserField.USER_UID) && users.size() == query.getLimit()) {
+            response.header(NEXT_CURSOR_HEADER, UserCursor.encode(users.get(users.size() - 1).getUserUid()));
+        }
+        return response;
+    }
+
+    /**
+     * The first of JSON and Smile the request accepts, JSON when it accepts both equally.
+     */
+    private static MediaType listMediaType(HttpHeaders headers) {
+        for (MediaType accepted : headers.getAcceptableMediaTypes()) {
+            if (accepted.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                return MediaType.APPLICATION_JSON_TYPE;
+            }
+            if (accepted.isCompatible(APPLICATION_JACKSON_SMILE_TYPE)) {
+                return APPLICATION_JACKSON_SMILE_TYPE;
+            }
+        }
+        throw new NotAcceptableException();
+    }
+
+    private JsonGenerator ndjsonGenerator(OutputStream output) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(output);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    private static CacheControl noStore() {
+        CacheControl noStore = new CacheControl();
+        noStore.setNoStore(true);
+        return noStore;
+    }
+
+    /**
+     * Tagged with the representation the request negotiates, whose media type is then fixed
+     * on the response, so that the tag always describes the bytes sent.
+     */
+    private Response cacheable(HttpHeaders headers, EntityTag entityTag, Supplier<Response.ResponseBuilder> ok) {
+        MediaType mediaType = listMediaType(headers);
+        EntityTag variantTag = variantTag(headers, entityTag);
+        Response.ResponseBuilder response = UserEntityTags.noneMatchNames(headers.getHeaderString(HttpHeaders.IF_NONE_MATCH), variantTag)
+                ? Response.notModified()
+                : ok.get().type(mediaType);
+        return response
+                .tag(variantTag)
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .build();
+    }
+
+    /**
+     * The tag of the representation a request with {@code headers} would be answered with.
+     */
+    private EntityTag variantTag(HttpHeaders headers, EntityTag entityTag) {
+        return UserEntityTags.ofVariant(entityTag, listMediaType(headers), responseCompression.negotiate(headers));
+    }
+
+    static Response insertConflict(User user) {
+        if (user.getUserUid() == null) {
+            return emailConflict(user);
+        }
+        return conflict("user " + user.getUserUid() + " or email " + user.getEmail() + " already exists.");
+    }
+
+    static Response emailConflict(User user) {
+        return conflict("email " + user.getEmail() + " is already used.");
+    }
+
+    private static Response conflict(String message) {
+        return Response.status(Response.Status.CONFLICT).entity(new ErrorMessage(message)).build();
+    }
+
+    /**
+     * The version of {@code current} that {@code If-Match} names. Without a current user
+     * none is expected, and the write answers 404.
+     */
+    private static long expectedVersion(String ifMatch, Optional<VersionedUser> current) {
+        if (!current.isPresent()) {
+            return NO_VERSION;
+        }
+        OptionalLong version = UserEntityTags.version(ifMatch, current.get().getInsertion());
+        if (!version.isPresent()) {
+            throw new ClientErrorException("If-Match does not name a current user version.",
+                    Response.Status.PRECONDITION_FAILED);
+        }
+        return version.getAsLong();
+    }
+
+    static void checkBatchSize(List<?> batch) {
+        if (batch == null || batch.isEmpty() || batch.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException("batch must hold between 1 and " + MAX_BATCH_SIZE + " items");
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package com.yershovkiril.learningspringboot.resource;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserBatchResult;
+import com.yershovkiril.learningspringboot.service.AsyncUserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.*;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import static com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes.APPLICATION_JACKSON_SMILE;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+/**
+ * The endpoints of {@link UserResourceResteasy}, answered from {@link AsyncUserService}:
+ * the request thread is released as soon as the work is handed off, and the response
+ * is written when the returned stage completes. A saturated executor answers 503.
+ * <p>
+ * RESTEasy cannot hand an unmapped exception back to the container once a request is
+ * suspended, so every stage is completed with a {@link WebApplicationException}: invalid
+ * input, which the service rejects with 400, stays 400, a taken uid or email is 409 as on
+ * the synchronous endpoints, and anything unexpected becomes 500.
+ */
+@Component
+@Path("api/v1/async/users")
+public class UserResourceResteasyAsync {
+
+    private AsyncUserService userService;
+
+    @Autowired
+    public UserResourceResteasyAsync(AsyncUserService userService) {
+        this.userService = userService;
+    }
+
+    @GET
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public CompletionStage<Response> fetchUsers(@QueryParam("gender") String gender,
+                                                @QueryParam("limit") Integer limit,
+                                                @QueryParam("cursor") String cursor) {
+        if (limit == null && cursor == null) {
+            return respond(userService.getAllUsers(Optional.ofNullable(gender))
+                    .thenApply(users -> Response.ok(new GenericEntity<List<User>>(users) {}).build()));
+        }
+        int pageSize = UserResourceResteasy.pageSize(limit);
+        Optional<UUID> after = Optional.ofNullable(cursor).map(UserCursor::decode);
+        return respond(userService.getUsersPage(Optional.ofNullable(gender), after, pageSize)
+                .thenApply(users -> UserResourceResteasy.page(users, pageSize).build()));
+    }
+
+    @GET
+    @Path("{userUid}")
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public CompletionStage<User> fetchUser(@PathParam("userUid") UUID userUid) {
+        return respond(userService.getUser(userUid)
+                .thenApply(user -> user.orElseThrow(() -> new NotFoundException("user " + userUid + " not found."))));
+    }
+
+    @POST
+    @Consumes({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public CompletionStage<Void> insertNewUser(User user) {
+        return respond(userService.insertUser(user).thenApply(applied -> {
+            if (applied == 0) {
+                throw new ClientErrorException(UserResourceResteasy.insertConflict(user));
+            }
+            return null;
+        }));
+    }
+
+    @PUT
+    @Consumes({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public CompletionStage<Void> updateUser(User user) {
+        return respond(userService.updateUser(user).thenApply(applied -> {
+            if (applied == 0) {
+                throw new ClientErrorException(UserResourceResteasy.emailConflict(user));
+            }
+            return null;
+        }));
+    }
+
+    @DELETE
+    @Path("{userUid}")
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public CompletionStage<Void> deleteUser(@PathParam("userUid") UUID userUid) {
+        return respond(userService.removeUser(userUid).thenApply(result -> null));
+    }
+
+    @POST
+    @Path("batch")
+    @Consumes({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public CompletionStage<List<UserBatchResult>> insertNewUsers(List<User> users) {
+        UserResourceResteasy.checkBatchSize(users);
+        return respond(userService.insertUsers(users));
+    }
+
+    @PUT
+    @Path("batch")
+    @Consumes({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public CompletionStage<List<UserBatchResult>> updateUsers(List<User> users) {
+        UserResourceResteasy.checkBatchSize(users);
+        return respond(userService.updateUsers(users));
+    }
+
+    @DELETE
+    @Path("batch")
+    @Consumes({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    @Produces({APPLICATION_JSON, APPLICATION_JACKSON_SMILE})
+    public CompletionStage<List<UserBatchResult>> deleteUsers(List<UUID> userUids) {
+        UserResourceResteasy.checkBatchSize(userUids);
+        return respond(userService.removeUsers(userUids));
+    }
+
+    private static <T> CompletionStage<T> respond(CompletionStage<T> stage) {
+        CompletableFuture<T> response = new CompletableFuture<>();
+        stage.whenComplete((value, failure) -> {
+            if (failure == null) {
+                response.complete(value);
+            } else {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause()
+                        : failure;
+                response.completeExceptionally(toWebApplicationException(cause));
+            }
+        });
+        return response;
+    }
+
+    private static WebApplicationException toWebApplicationException(Throwable failure) {
+        if (failure instanceof WebApplicationException) {
+            return (WebApplicationException) failure;
+        }
+        if (failure instanceof IllegalStateException) {
+            return new BadRequestException(failure.getMessage(), failure);
+        }
+        return new InternalServerErrorException(failure);
+    }
+}
@@ -0,0 +1,84 @@
+package com.yershovkiril.learningspringboot.service;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserBatchResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.ws.rs.ServiceUnavailableException;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * {@link UserService} on a bounded executor, so callers wait on a {@link CompletionStage}
+ * instead of a thread. When the executor is saturated the stage fails at once with
+ * {@link ServiceUnavailableException}.
+ */
+@Service
+public class AsyncUserService {
+
+    private static final long RETRY_AFTER_SECONDS = 1;
+
+    private UserService userService;
+    private Executor executor;
+
+    @Autowired
+    public AsyncUserService(UserService userService, @Qualifier("userExecutor") Executor executor) {
+        this.userService = userService;
+        this.executor = executor;
+    }
+
+    public CompletionStage<List<User>> getAllUsers(Optional<String> gender) {
+        return supply(() -> userService.getAllUsers(gender));
+    }
+
+    public CompletionStage<List<User>> getUsersPage(Optional<String> gender, Optional<UUID> afterUserUid, int limit) {
+        return supply(() -> userService.getUsersPage(gender, afterUserUid, limit));
+    }
+
+    public CompletionStage<Optional<User>> getUser(UUID userUid) {
+        return supply(() -> userService.getUser(userUid));
+    }
+
+    public CompletionStage<Integer> updateUser(User user) {
+        return supply(() -> userService.updateUser(user));
+    }
+
+    public CompletionStage<Integer> removeUser(UUID uid) {
+        return supply(() -> userService.removeUser(uid));
+    }
+
+    public CompletionStage<Integer> insertUser(User user) {
+        return supply(() -> userService.insertUser(user));
+    }
+
+    public CompletionStage<List<UserBatchResult>> insertUsers(List<User> users) {
+        return supply(() -> userService.insertUsers(users));
+    }
+
+    public CompletionStage<List<UserBatchResult>> updateUsers(List<User> users) {
+        return supply(() -> userService.updateUsers(users));
+    }
+
+    public CompletionStage<List<UserBatchResult>> removeUsers(List<UUID> userUids) {
+        return supply(() -> userService.removeUsers(userUids));
+    }
+
+    private <T> CompletionStage<T> supply(Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(
+                    new ServiceUnavailableException("user service is saturated, retry later", RETRY_AFTER_SECONDS));
+            return rejected;
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package com.yershovkiril.learningspringboot.service;
+
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserChange;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.NotAllowedException;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Numbers every mutation applied through {@link UserService} and keeps the last
+ * {@code users.feed.capacity} of them, for consumers to resume from a sequence.
+ * <p>
+ * A mutation is applied and numbered holding a stripe lock for its user and one for each
+ * email it takes or gives up, so writes to one user, or handing one email over, are
+ * numbered in the order the store applied them; anything else runs in parallel, as far
+ * as the store allows. Numbers come from one counter and changes are published in a ring
+ * that tolerates them arriving out of order: consumers only see the changes up to the
+ * first gap. Stores that wait for fsync do so after the stripes are released. Changes are
+ * full users or deletes: replaying them in order over a {@link #snapshot()} yields the
+ * store as of the last one.
+ * <p>
+ * Sequences start over in every process under a random epoch, which consumers pass back so
+ * that a restart is told apart from a resume. An instance following a leader
+ * ({@code users.follower.leader-url}) refuses writes and takes the leader's epoch and
+ * changes, sequences included, through {@link #reset} and {@link #replicate}.
+ */
+@Component
+public class UserChangeFeed implements MeterBinder, AutoCloseable {
+
+    static final int DEFAULT_CAPACITY = 100_000;
+    private static final int STRIPES = 256;
+
+    private final UserDao userDao;
+    private final AtomicReferenceArray<UserChange> changes;
+    private final String leaderUrl;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    // guards the epoch, the floor and closing, and wakes waiting consumers
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    // the last sequence handed out, and the last one published with every one before it
+    private final AtomicLong assigned = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+    // written under the lock, read without it by getters
+    private volatile String epoch = UUID.randomUUID().toString();
+    private volatile boolean closed;
+    private volatile long resets;
+    // the sequence changes are kept after, raised by bootstraps
+    private long floor;
+
+    public UserChangeFeed(UserDao userDao) {
+        this(userDao, DEFAULT_CAPACITY, "");
+    }
+
+    @Autowired
+    public UserChangeFeed(UserDao userDao,
+                          @Value("${users.feed.capacity:100000}") int capacity,
+                          @Value("${users.follower.leader-url:}") String leaderUrl) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("users.feed.capacity must be positive");
+        }
+        this.userDao = userDao;
+        this.changes = new AtomicReferenceArray<>(capacity);
+        this.leaderUrl = leaderUrl.isEmpty() ? null : leaderUrl;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Publishes the last sequence as {@code users.feed.sequence}.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("users.feed.sequence", this, UserChangeFeed::getSequence)
+                .register(registry);
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    public boolean isFollower() {
+        return leaderUrl != null;
+    }
+
+    /**
+     * Runs {@code mutation}, a single store write, and records {@code user} for
+     * {@code userUid} if it was applied; a null user records a delete.
+     */
+    public int write(UUID userUid, User user, IntSupplier mutation) {
+        checkWritable();
+        return userDao.deferSync(() -> locked(1, i -> userUid, i -> user, () -> {
+            int applied = mutation.getAsInt();
+            if (applied == 1) {
+                append(userUid, user);
+            }
+            return applied;
+        }));
+    }
+
+    /**
+     * Runs {@code mutation}, a batch insert or update of {@code users}, and records the
+     * users it applied in input order.
+     */
+    public int[] writeAll(List<User> users, Supplier<int[]> mutation) {
+        return writeBatch(users.size(), mutation, i -> users.get(i).getUserUid(), users::get);
+    }
+
+    /**
+     * Runs {@code mutation}, a batch delete of {@code userUids}, and records the deletes
+     * it applied in input order.
+     */
+    public int[] removeAll(List<UUID> userUids, Supplier<int[]> mutation) {
+        return writeBatch(userUids.size(), mutation, userUids::get, i -> null);
+    }
+
+    private int[] writeBatch(int size, Supplier<int[]> mutation, IntFunction<UUID> userUid, IntFunction<User> user) {
+        checkWritable();
+        return userDao.deferSync(() -> locked(size, userUid, user, () -> {
+            int[] applied = mutation.get();
+            for (int i = 0; i < applied.length; i++) {
+                if (applied[i] == 1) {
+                    append(userUid.apply(i), user.apply(i));
+                }
+            }
+            return applied;
+        }));
+    }
+
+    /**
+     * Up to {@code max} changes after sequence {@code after}, oldest first. A null
+     * {@code epoch} stands for the current one.
+     *
+     * @throws ClientErrorException 410 when the epoch is another one, or the changes right
+     *                              after {@code after} are no longer kept or never were
+     */
+    public List<UserChange> changesAfter(String epoch, long after, int max) {
+        lock.lock();
+        try {
+            checkResumable(epoch, after);
+            return copy(after, max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #changesAfter}, but waits up to {@code timeout} for a change when none
+     * follows {@code after} yet; empty if none came or the feed was closed.
+     */
+    public List<UserChange> awaitChangesAfter(String epoch, long after, int max, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        // counted before looking at the sequence, so a publisher that moves it also signals
+        waiting.incrementAndGet();
+        try {
+            lock.lockInterruptibly();
+            try {
+                checkResumable(epoch, after);
+                while (sequence.get() == after && nanos > 0 && !closed) {
+                    nanos = appended.awaitNanos(nanos);
+                    // a follower may have bootstrapped again meanwhile
+                    checkResumable(epoch, after);
+                }
+                return copy(after, max);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Every user together with the epoch and sequence they are current as of, without
+     * stopping writes: the users are copied after noting the sequence, then every write the
+     * copy may have seen is waited for and the changes since the noted sequence are replayed
+     * over the copy. Starts over if a bootstrap or more than the kept changes come between.
+     */
+    public Snapshot snapshot() {
+        while (true) {
+            String epoch;
+            long from;
+            long resetsBefore;
+            lock.lock();
+            try {
+                epoch = this.epoch;
+                from = sequence.get();
+                resetsBefore = resets;
+            } finally {
+                lock.unlock();
+            }
+            List<User> users = userDao.selectAllUsers();
+            // writes applied while copying still hold their stripes until they are numbered
+            for (ReentrantLock stripe : stripes) {
+                stripe.lock();
+                stripe.unlock();
+            }
+            long to = assigned.get();
+            while (sequence.get() < to && resets == resetsBefore) {
+                Thread.yield();
+            }
+            List<UserChange> since;
+            lock.lock();
+            try {
+                since = resets == resetsBefore ? kept(from, to) : null;
+            } finally {
+                lock.unlock();
+            }
+            if (since == null) {
+                continue;
+            }
+            Map<UUID, User> current = new LinkedHashMap<>();
+            for (User user : users) {
+                current.put(user.getUserUid(), user);
+            }
+            for (UserChange change : since) {
+                if (change.isDelete()) {
+                    current.remove(change.getUserUid());
+                } else {
+                    current.put(change.getUserUid(), change.getUser());
+                }
+            }
+            return new Snapshot(epoch, to, new ArrayList<>(current.values()));
+        }
+    }
+
+    /**
+     * Replaces every user of the store with {@code users}, a leader's snapshot, and
+     * continues the leader's feed after it. Readers see the store empty meanwhile.
+     */
+    public void reset(String epoch, long sequence, List<User> users) {
+        userDao.deferSync(() -> {
+            for (ReentrantLock stripe : stripes) {
+                stripe.lock();
+            }
+            lock.lock();
+            try {
+                List<UUID> stale = new ArrayList<>();
+                for (User user : userDao.selectAllUsers()) {
+                    stale.add(user.getUserUid());
+                }
+                userDao.deleteUsersByUserUid(stale);
+                int[] inserted = userDao.insertUsers(users);
+                for (int i = 0; i < inserted.length; i++) {
+                    if (inserted[i] == 0) {
+                        throw new IllegalStateException("snapshot user " + users.get(i).getUserUid() + " was rejected");
+                    }
+                }
+                for (int i = 0; i < changes.length(); i++) {
+                    changes.set(i, null);
+                }
+                this.epoch = epoch;
+                this.assigned.set(sequence);
+                this.sequence.set(sequence);
+                this.floor = sequence;
+                resets++;
+                appended.signalAll();
+                return null;
+            } finally {
+                lock.unlock();
+                for (int i = STRIPES - 1; i >= 0; i--) {
+                    stripes[i].unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies a leader's change, which must be the one after the last, and records it
+     * under the leader's sequence.
+     *
+     * @throws IllegalStateException when it is out of order or does not apply to the store,
+     *                               which has then diverged and must be {@link #reset}
+     */
+    public void replicate(UserChange change) {
+        UUID userUid = change.getUserUid();
+        userDao.deferSync(() -> locked(1, i -> userUid, i -> change.getUser(), () -> {
+            if (change.getSequence() != assigned.get() + 1) {
+                throw new IllegalStateException("expected change " + (assigned.get() + 1) + " but got " + change.getSequence());
+            }
+            boolean applied = change.isDelete()
+                    ? userDao.deleteUserByUserUid(userUid) == 1
+                    : userDao.updateUser(change.getUser()) == 1 || userDao.insertUser(userUid, change.getUser()) == 1;
+            if (!applied) {
+                throw new IllegalStateException("change " + change.getSequence() + " does not apply to user " + userUid);
+            }
+            // only the follower's own thread replicates, and local writes are refused
+            assigned.set(change.getSequence());
+            publish(change.getSequence(), userUid, change.getUser());
+            return null;
+        }));
+    }
+
+    /**
+     * Wakes every waiting consumer; they get no more changes.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void checkWritable() {
+        if (leaderUrl != null) {
+            throw new NotAllowedException("this instance follows " + leaderUrl + ", which takes the writes",
+                    HttpMethod.GET, new String[]{HttpMethod.HEAD});
+        }
+    }
+
+    private void checkResumable(String epoch, long after) {
+        if (epoch != null && !epoch.equals(this.epoch)) {
+            throw new ClientErrorException("epoch " + epoch + " has ended; start again from a snapshot.",
+                    Response.Status.GONE);
+        }
+        long last = sequence.get();
+        if (after < Math.max(floor, last - changes.length()) || after > last) {
+            throw notKept(after);
+        }
+    }
+
+    private List<UserChange> copy(long after, int max) {
+        List<UserChange> copied = kept(after, Math.min(after + max, sequence.get()));
+        if (copied == null) {
+            throw notKept(after);
+        }
+        return copied;
+    }
+
+    /**
+     * The published changes after {@code after} up to {@code last}, or null when changes
+     * numbered since have taken some of their slots.
+     */
+    private List<UserChange> kept(long after, long last) {
+        if (after < floor) {
+            return null;
+        }
+        List<UserChange> kept = new ArrayList<>((int) Math.max(0, last - after));
+        for (long next = after + 1; next <= last; next++) {
+            UserChange change = changes.get(slot(next));
+            if (change == null || change.getSequence() != next) {
+                return null;
+            }
+            kept.add(change);
+        }
+        return kept;
+    }
+
+    private static ClientErrorException notKept(long after) {
+        return new ClientErrorException("changes after " + after + " are not kept; start again from a snapshot.",
+                Response.Status.GONE);
+    }
+
+    /**
+     * Runs {@code write} holding the stripes of each of {@code size} items' uid, of the
+     * email the item's user takes and of the email its uid holds now. The held emails are
+     * looked up before locking, so the lookup is repeated under the stripes and the whole
+     * taken again if one has changed hands meanwhile.
+     */
+    private <T> T locked(int size, IntFunction<UUID> userUid, IntFunction<User> user, Supplier<T> write) {
+        while (true) {
+            String[] heldEmails = new String[size];
+            int[] locks = new int[size * 3];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                UUID uid = userUid.apply(i);
+                if (uid != null) {
+                    locks[count++] = stripe(uid.hashCode());
+                    heldEmails[i] = heldEmail(uid);
+                    if (heldEmails[i] != null) {
+                        locks[count++] = stripe(heldEmails[i].hashCode());
+                    }
+                }
+                User taken = user.apply(i);
+                if (taken != null && taken.getEmail() != null) {
+                    locks[count++] = stripe(emailKey(taken.getEmail()).hashCode());
+                }
+            }
+            Arrays.sort(locks, 0, count);
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (distinct == 0 || locks[distinct - 1] != locks[i]) {
+                    locks[distinct++] = locks[i];
+                }
+            }
+            for (int i = 0; i < distinct; i++) {
+                stripes[locks[i]].lock();
+            }
+            try {
+                if (stillHeld(size, userUid, heldEmails)) {
+                    return write.get();
+                }
+            } finally {
+                for (int i = distinct - 1; i >= 0; i--) {
+                    stripes[locks[i]].unlock();
+                }
+            }
+        }
+    }
+
+    private boolean stillHeld(int size, IntFunction<UUID> userUid, String[] heldEmails) {
+        for (int i = 0; i < size; i++) {
+            UUID uid = userUid.apply(i);
+            if (uid != null && !Objects.equals(heldEmails[i], heldEmail(uid))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String heldEmail(UUID userUid) {
+        return userDao.selectEmailByUserUid(userUid)
+                .map(UserChangeFeed::emailKey)
+                .orElse(null);
+    }
+
+    // emails are unique regardless of case in every store
+    static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    static int stripe(int hash) {
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % changes.length());
+    }
+
+    private void append(UUID userUid, User user) {
+        publish(assigned.incrementAndGet(), userUid, user);
+    }
+
+    /**
+     * Puts change {@code next} in its slot, then moves the published sequence past every
+     * change in place after it: whichever publisher fills a gap publishes those after it.
+     */
+    private void publish(long next, UUID userUid, User user) {
+        // the change a full ring back may still be on its way into the same slot
+        while (next - sequence.get() > changes.length()) {
+            Thread.yield();
+        }
+        changes.set(slot(next), new UserChange(next, userUid, user));
+        long published;
+        while (true) {
+            published = sequence.get();
+            UserChange following = changes.get(slot(published + 1));
+            if (following == null || following.getSequence() != published + 1) {
+                break;
+            }
+            sequence.compareAndSet(published, published + 1);
+        }
+        if (waiting.get() > 0) {
+            lock.lock();
+            try {
+                appended.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * The users of {@link #snapshot()}; changes after {@code sequence} of {@code epoch} follow them.
+     */
+    public static final class Snapshot {
+
+        private final String epoch;
+        private final long sequence;
+        private final List<User> users;
+
+        Snapshot(String epoch, long sequence, List<User> users) {
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.users = users;
+        }
+
+        public String getEpoch() {
+            return epoch;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public List<User> getUsers() {
+            return users;
+        }
+    }
+}
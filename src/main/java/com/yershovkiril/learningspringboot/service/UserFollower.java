@@ -0,0 +1,162 @@
+package com.yershovkiril.learningspringboot.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yershovkiril.learningspringboot.clientproxy.UserResourceV1;
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserChange;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.yershovkiril.learningspringboot.resource.UserResourceResteasy.CHANGE_EPOCH_HEADER;
+import static com.yershovkiril.learningspringboot.resource.UserResourceResteasy.CHANGE_SEQUENCE_HEADER;
+
+/**
+ * Keeps this instance a read replica of the leader at {@code users.follower.leader-url}:
+ * loads the leader's snapshot into the store, then follows its change feed and applies
+ * each change as it comes, so that reads are served locally. It bootstraps again when the
+ * feed answers 410, the leader having restarted or dropped changes not yet applied here,
+ * or when a change does not apply; it reconnects with a growing back-off while the leader
+ * cannot be reached.
+ * <p>
+ * The feed is read with a client of its own: the shared one buffers whole responses, and
+ * a followed feed may stay quiet for a heartbeat, longer than a read timeout meant for
+ * API calls. {@code read-timeout-ms} must exceed {@code users.feed.heartbeat-ms}.
+ */
+@Component
+@ConditionalOnProperty(name = "users.follower.leader-url")
+public class UserFollower implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserFollower.class);
+
+    private static final long MAX_RETRY_MS = 30_000;
+
+    private final UserChangeFeed changeFeed;
+    private final ObjectMapper objectMapper;
+    private final String leaderUrl;
+    private final long retryMs;
+    private final ResteasyClient client;
+    private final UserResourceV1 leader;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    @Autowired
+    public UserFollower(UserChangeFeed changeFeed, ObjectMapper objectMapper,
+                        @Value("${users.follower.leader-url}") String leaderUrl,
+                        @Value("${users.follower.connect-timeout-ms:2000}") long connectTimeoutMs,
+                        @Value("${users.follower.read-timeout-ms:30000}") long readTimeoutMs,
+                        @Value("${users.follower.retry-ms:1000}") long retryMs) {
+        this.changeFeed = changeFeed;
+        this.objectMapper = objectMapper;
+        this.leaderUrl = leaderUrl;
+        this.retryMs = retryMs;
+        this.client = (ResteasyClient) ClientBuilder.newBuilder()
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+        this.leader = client.target(leaderUrl).proxy(UserResourceV1.class);
+        this.thread = new Thread(this::run, "user-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops following; closing the client ends a read in progress.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        thread.interrupt();
+        client.close();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void run() {
+        boolean synced = false;
+        long retry = retryMs;
+        while (running) {
+            try {
+                if (!synced) {
+                    bootstrap();
+                    synced = true;
+                }
+                synced = follow();
+                retry = retryMs;
+            } catch (IllegalStateException e) {
+                LOGGER.warn("Bootstrapping from {} again: {}", leaderUrl, e.getMessage());
+                synced = false;
+            } catch (IOException | ProcessingException e) {
+                if (!running) {
+                    return;
+                }
+                LOGGER.warn("Could not follow {}, retrying in {} ms: {}", leaderUrl, retry, e.toString());
+                try {
+                    Thread.sleep(retry);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                retry = Math.min(retry * 2, MAX_RETRY_MS);
+            }
+        }
+    }
+
+    private void bootstrap() throws IOException {
+        Response response = leader.fetchChangesSnapshot();
+        try {
+            checkOk(response);
+            String epoch = response.getHeaderString(CHANGE_EPOCH_HEADER);
+            long sequence = Long.parseLong(response.getHeaderString(CHANGE_SEQUENCE_HEADER));
+            List<User> users;
+            try (MappingIterator<User> lines = objectMapper.readerFor(User.class)
+                    .readValues(response.readEntity(InputStream.class))) {
+                users = lines.readAll();
+            }
+            changeFeed.reset(epoch, sequence, users);
+            LOGGER.info("Loaded {} users from {} as of change {} of epoch {}", users.size(), leaderUrl, sequence, epoch);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Applies changes until the leader ends the response; false when it answered 410.
+     */
+    private boolean follow() throws IOException {
+        Response response = leader.fetchChanges(changeFeed.getEpoch(), changeFeed.getSequence(), true);
+        try {
+            if (response.getStatus() == Response.Status.GONE.getStatusCode()) {
+                return false;
+            }
+            checkOk(response);
+            try (MappingIterator<UserChange> changes = objectMapper.readerFor(UserChange.class)
+                    .readValues(response.readEntity(InputStream.class))) {
+                while (running && changes.hasNextValue()) {
+                    changeFeed.replicate(changes.nextValue());
+                }
+            }
+            return true;
+        } finally {
+            response.close();
+        }
+    }
+
+    private void checkOk(Response response) throws IOException {
+        if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+            throw new IOException("leader answered " + response.getStatus());
+        }
+    }
+}
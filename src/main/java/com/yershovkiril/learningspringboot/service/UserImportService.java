@@ -0,0 +1,131 @@
+package com.yershovkiril.learningspringboot.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserBatchResult;
+import com.yershovkiril.learningspringboot.model.UserImportResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.yershovkiril.learningspringboot.model.UserBatchResult.Status.APPLIED;
+import static com.yershovkiril.learningspringboot.model.UserBatchResult.Status.INVALID;
+
+/**
+ * Loads users from newline-delimited JSON, one user per line as the export writes them.
+ * Lines are parsed as they are read and inserted {@code users.import.batch-size} at a time
+ * through {@link UserService#insertUsers}, so memory does not grow with the input. Each line
+ * stands alone: one that does not parse, is invalid or conflicts is rejected and the import
+ * goes on; blank lines are skipped.
+ */
+@Service
+public class UserImportService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserImportService.class);
+
+    static final int MAX_REPORTED_REJECTIONS = 1000;
+    private static final long PROGRESS_LINES = 1_000_000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final UserService userService;
+    private final ObjectReader reader;
+    private final int batchSize;
+
+    @Autowired
+    public UserImportService(UserService userService, ObjectMapper objectMapper,
+                             @Value("${users.import.batch-size:1000}") int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("users.import.batch-size must be positive");
+        }
+        this.userService = userService;
+        this.reader = objectMapper.readerFor(User.class);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports every line of {@code ndjson}; the first {@value #MAX_REPORTED_REJECTIONS}
+     * rejected lines are reported, the others only counted.
+     */
+    public UserImportResult importUsers(InputStream ndjson) throws IOException {
+        Progress progress = new Progress();
+        BufferedReader lines = new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8), BUFFER_SIZE);
+        List<User> batch = new ArrayList<>(batchSize);
+        long[] lineNumbers = new long[batchSize];
+        long lineNumber = 0;
+        for (String line; (line = lines.readLine()) != null; ) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            if (++progress.lines % PROGRESS_LINES == 0) {
+                progress.log();
+            }
+            try {
+                lineNumbers[batch.size()] = lineNumber;
+                batch.add(reader.readValue(line));
+            } catch (JsonProcessingException e) {
+                progress.reject(new UserBatchResult(toIndex(lineNumber), null, INVALID, e.getOriginalMessage()));
+                continue;
+            }
+            if (batch.size() == batchSize) {
+                insert(batch, lineNumbers, progress);
+            }
+        }
+        insert(batch, lineNumbers, progress);
+        progress.log();
+        return new UserImportResult(progress.lines, progress.imported, progress.rejected, progress.rejections);
+    }
+
+    private void insert(List<User> batch, long[] lineNumbers, Progress progress) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (UserBatchResult result : userService.insertUsers(batch)) {
+            if (result.getStatus() == APPLIED) {
+                progress.imported++;
+            } else {
+                progress.reject(new UserBatchResult(toIndex(lineNumbers[result.getIndex()]), result.getUserUid(),
+                        result.getStatus(), result.getErrorMessage()));
+            }
+        }
+        batch.clear();
+    }
+
+    private static int toIndex(long lineNumber) {
+        return (int) Math.min(lineNumber, Integer.MAX_VALUE);
+    }
+
+    private static final class Progress {
+        private final long started = System.nanoTime();
+        private final List<UserBatchResult> rejections = new ArrayList<>();
+        private long lines;
+        private long imported;
+        private long rejected;
+
+        void reject(UserBatchResult rejection) {
+            rejected++;
+            if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                rejections.add(rejection);
+            }
+        }
+
+        void log() {
+            long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            LOGGER.info("Import read {} users in {} ms ({} per second): {} imported, {} rejected",
+                    lines, elapsedMs, lines * 1000 / elapsedMs, imported, rejected);
+        }
+    }
+}
@@ -2,51 +2,128 @@ package com.yershovkiril.learningspringboot.service;
 
 import com.yershovkiril.learningspringboot.dao.UserDao;
 import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserBatchResult;
+import com.yershovkiril.learningspringboot.model.UserQuery;
+import com.yershovkiril.learningspringboot.model.UserStats;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static java.util.Objects.requireNonNull;
+import static com.yershovkiril.learningspringboot.model.UserBatchResult.Status.*;
+import static com.yershovkiril.learningspringboot.service.UserValidator.validationError;
 
 @Service
 public class UserService {
 
     private UserDao userDao;
+    private UserChangeFeed changeFeed;
 
-    @Autowired
     public UserService(UserDao userDao) {
+        this(userDao, new UserChangeFeed(userDao));
+    }
+
+    /**
+     * Every mutation goes through {@code changeFeed}, which numbers it.
+     */
+    @Autowired
+    public UserService(UserDao userDao, UserChangeFeed changeFeed) {
         this.userDao = userDao;
+        this.changeFeed = changeFeed;
     }
 
     public List<User> getAllUsers(Optional<String> gender) {
-        List<User> users = userDao.selectAllUsers();
         if (!gender.isPresent()) {
-            return users;
+            return userDao.selectAllUsers();
         }
-        try {
-            User.Gender theGender = User.Gender.valueOf(gender.get().toUpperCase());
-            return users.stream()
-                    .filter(user -> user.getGender().equals(theGender))
-                    .collect(Collectors.toList());
-        } catch (IllegalArgumentException e) {
-            throw new IllegalStateException("Invalid gender", e);
+        return userDao.selectUsersByGender(parseGender(gender.get()));
+    }
+
+    /**
+     * Returns up to {@code limit} users ordered by uid, resuming after {@code afterUserUid}.
+     */
+    public List<User> getUsersPage(Optional<String> gender, Optional<UUID> afterUserUid, int limit) {
+        UUID after = afterUserUid.orElse(null);
+        if (!gender.isPresent()) {
+            return userDao.selectUsersAfter(after, limit);
+        }
+        return userDao.selectUsersByGenderAfter(parseGender(gender.get()), after, limit);
+    }
+
+    /**
+     * Evaluates {@code query} in the store; see {@link UserDao#selectUsers(UserQuery)}.
+     */
+    public List<User> getUsers(UserQuery query) {
+        return userDao.selectUsers(query);
+    }
+
+    /**
+     * Ranked users whose names or email match {@code text}; see {@link UserDao#searchUsers(String, int)}.
+     */
+    public List<User> searchUsers(String text, int limit) {
+        if (text == null || text.trim().isEmpty()) {
+            throw new BadRequestException("search text required");
         }
+        return userDao.searchUsers(text, limit);
+    }
 
+    /**
+     * Totals over every user, computed in parallel inside the store, with the
+     * {@code topDomains} most common email domains.
+     */
+    public UserStats getUserStats(int topDomains) {
+        return userDao.collectStats().toStats(topDomains);
+    }
+
+    /**
+     * Lazily streams users without copying the store; the gender is checked eagerly.
+     */
+    public Stream<User> streamUsers(Optional<String> gender) {
+        if (!gender.isPresent()) {
+            return userDao.streamAllUsers();
+        }
+        return userDao.streamUsersByGender(parseGender(gender.get()));
     }
 
     public Optional<User> getUser(UUID userUid) {
         return userDao.selectUserByUserUid(userUid);
     }
 
+    public Optional<VersionedUser> getVersionedUser(UUID userUid) {
+        return userDao.selectVersionedUserByUserUid(userUid);
+    }
+
+    /**
+     * Changes with every applied mutation; read it before the users it describes.
+     */
+    public long getModificationCount() {
+        return userDao.modificationCount();
+    }
+
+    /**
+     * Returns 0 when the email belongs to another user; a user missing, or deleted before
+     * the write, fails with 404.
+     */
     public int updateUser(User user) {
+        validate(user);
         Optional<User> optionalUser = getUser(user.getUserUid());
         if (optionalUser.isPresent()) {
-            return userDao.updateUser(user);
+            if (changeFeed.write(user.getUserUid(), user, () -> userDao.updateUser(user)) == 1) {
+                return 1;
+            }
+            if (getUser(user.getUserUid()).isPresent()) {
+                return 0;
+            }
         }
         throw  new NotFoundException("user " + user.getUserUid() + " not found.");
     }
@@ -55,19 +132,134 @@ public class UserService {
         UUID userUid = getUser(uid)
                 .map(User::getUserUid)
                 .orElseThrow(() -> new NotFoundException("user " + uid + " not found."));
-        return userDao.deleteUserByUserUid(userUid);
+        return changeFeed.write(userUid, null, () -> userDao.deleteUserByUserUid(userUid));
+    }
+
+    /**
+     * Updates the user only if it is still at {@code expectedVersion}; a user changed in the
+     * meantime fails with 412 instead of being overwritten.
+     */
+    public int updateUser(User user, long expectedVersion) {
+        validate(user);
+        if (changeFeed.write(user.getUserUid(), user, () -> userDao.updateUser(user, expectedVersion)) == 1) {
+            return 1;
+        }
+        checkVersion(user.getUserUid(), expectedVersion);
+        return 0;
+    }
+
+    public int removeUser(UUID uid, long expectedVersion) {
+        if (changeFeed.write(uid, null, () -> userDao.deleteUserByUserUid(uid, expectedVersion)) == 1) {
+            return 1;
+        }
+        checkVersion(uid, expectedVersion);
+        return 0;
     }
 
     public int insertUser(User user) {
+        validate(user);
         UUID userUid = user.getUserUid() == null ? UUID.randomUUID() : user.getUserUid();
-        return userDao.insertUser(userUid, User.newUser(userUid, user));
+        User newUser = User.newUser(userUid, user);
+        return changeFeed.write(userUid, newUser, () -> userDao.insertUser(userUid, newUser));
+    }
+
+    /**
+     * Validates every user, then inserts the valid ones in a single DAO call.
+     * Users without a uid get a random one.
+     */
+    public List<UserBatchResult> insertUsers(List<User> users) {
+        UserBatchResult[] results = new UserBatchResult[users.size()];
+        List<User> valid = new ArrayList<>(users.size());
+        int[] positions = new int[users.size()];
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            String error = validationError(user);
+            if (error != null) {
+                results[i] = new UserBatchResult(i, user == null ? null : user.getUserUid(), INVALID, error);
+                continue;
+            }
+            UUID userUid = user.getUserUid() == null ? UUID.randomUUID() : user.getUserUid();
+            positions[valid.size()] = i;
+            valid.add(User.newUser(userUid, user));
+        }
+        int[] applied = changeFeed.writeAll(valid, () -> userDao.insertUsers(valid));
+        for (int k = 0; k < applied.length; k++) {
+            UUID userUid = valid.get(k).getUserUid();
+            results[positions[k]] = new UserBatchResult(positions[k], userUid,
+                    applied[k] == 1 ? APPLIED : CONFLICT, null);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Validates every user, then updates the valid ones in a single DAO call.
+     * Only failed items are looked up again, to tell a missing user from an email conflict.
+     */
+    public List<UserBatchResult> updateUsers(List<User> users) {
+        UserBatchResult[] results = new UserBatchResult[users.size()];
+        List<User> valid = new ArrayList<>(users.size());
+        int[] positions = new int[users.size()];
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            String error = user != null && user.getUserUid() == null ? "user uid required" : validationError(user);
+            if (error != null) {
+                results[i] = new UserBatchResult(i, user == null ? null : user.getUserUid(), INVALID, error);
+                continue;
+            }
+            positions[valid.size()] = i;
+            valid.add(user);
+        }
+        int[] applied = changeFeed.writeAll(valid, () -> userDao.updateUsers(valid));
+        for (int k = 0; k < applied.length; k++) {
+            UUID userUid = valid.get(k).getUserUid();
+            UserBatchResult.Status status = applied[k] == 1 ? APPLIED
+                    : getUser(userUid).isPresent() ? CONFLICT : NOT_FOUND;
+            results[positions[k]] = new UserBatchResult(positions[k], userUid, status, null);
+        }
+        return Arrays.asList(results);
+    }
+
+    public List<UserBatchResult> removeUsers(List<UUID> userUids) {
+        UserBatchResult[] results = new UserBatchResult[userUids.size()];
+        List<UUID> valid = new ArrayList<>(userUids.size());
+        int[] positions = new int[userUids.size()];
+        for (int i = 0; i < userUids.size(); i++) {
+            UUID userUid = userUids.get(i);
+            if (userUid == null) {
+                results[i] = new UserBatchResult(i, null, INVALID, "user uid required");
+                continue;
+            }
+            positions[valid.size()] = i;
+            valid.add(userUid);
+        }
+        int[] applied = changeFeed.removeAll(valid, () -> userDao.deleteUsersByUserUid(valid));
+        for (int k = 0; k < applied.length; k++) {
+            results[positions[k]] = new UserBatchResult(positions[k], valid.get(k),
+                    applied[k] == 1 ? APPLIED : NOT_FOUND, null);
+        }
+        return Arrays.asList(results);
     }
 
-    private void validateUser(User user) {
-        requireNonNull(user.getFirstName(), "first name required");
-        requireNonNull(user.getLastName(), "last name required");
-        requireNonNull(user.getAge(), "age required");
-        requireNonNull(user.getEmail(), "email required");
-        requireNonNull(user.getGender(), "gender required");
+    private void checkVersion(UUID userUid, long expectedVersion) {
+        VersionedUser current = getVersionedUser(userUid)
+                .orElseThrow(() -> new NotFoundException("user " + userUid + " not found."));
+        if (current.getVersion() != expectedVersion) {
+            throw new ClientErrorException("user " + userUid + " was modified.", Response.Status.PRECONDITION_FAILED);
+        }
+    }
+
+    private User.Gender parseGender(String gender) {
+        try {
+            return User.Gender.valueOf(gender.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid gender", e);
+        }
+    }
+
+    private static void validate(User user) {
+        String error = validationError(user);
+        if (error != null) {
+            throw new BadRequestException(error);
+        }
     }
 }
@@ -0,0 +1,208 @@
+package com.yershovkiril.learningspringboot.service;
+
+import com.yershovkiril.learningspringboot.model.User;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+/**
+ * The constraints declared on {@link User}, checked by hand instead of by Bean Validation,
+ * which walks the constraint metadata of every user it is given. A valid user is checked
+ * without allocating.
+ * <p>
+ * Emails are accepted exactly as {@code @Email} accepts them. Plain addresses, a dot-atom
+ * local part at an ASCII host name, are scanned here; quoted local parts, address literals
+ * and internationalized domains, which need IDNA, are handed to Bean Validation.
+ */
+public final class UserValidator {
+
+    static final int MIN_AGE = 0;
+    static final int MAX_AGE = 112;
+
+    private static final int MAX_LOCAL_PART_LENGTH = 64;
+    private static final int MAX_DOMAIN_LENGTH = 255;
+    private static final int MAX_LABEL_LENGTH = 63;
+
+    // ASCII characters of an unquoted local part, besides letters and digits
+    private static final String LOCAL_PART_SYMBOLS = "!#$%&'*+/=?^_`{|}~-";
+    // ASCII characters of a domain label, besides letters, digits and inner dashes
+    private static final String DOMAIN_SYMBOLS = "!#$%&'*+/=?^_`{|}~";
+
+    private static final int PLAIN_LOCAL_PART = 1;
+    private static final int PLAIN_DOMAIN = 2;
+    private static final byte[] CHARACTER_CLASSES = new byte[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            boolean alphanumeric = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9';
+            int classes = 0;
+            if (alphanumeric || LOCAL_PART_SYMBOLS.indexOf(c) >= 0) {
+                classes |= PLAIN_LOCAL_PART;
+            }
+            if (alphanumeric || DOMAIN_SYMBOLS.indexOf(c) >= 0) {
+                classes |= PLAIN_DOMAIN;
+            }
+            CHARACTER_CLASSES[c] = (byte) classes;
+        }
+    }
+
+    private UserValidator() {
+    }
+
+    /**
+     * The first constraint {@code user} breaks, or {@code null} if it is valid.
+     */
+    public static String validationError(User user) {
+        if (user == null) {
+            return "user required";
+        }
+        if (user.getFirstName() == null) {
+            return "first name required";
+        }
+        if (user.getLastName() == null) {
+            return "last name required";
+        }
+        Integer age = user.getAge();
+        if (age == null) {
+            return "age required";
+        }
+        if (age < MIN_AGE || age > MAX_AGE) {
+            return "age must be between " + MIN_AGE + " and " + MAX_AGE;
+        }
+        String email = user.getEmail();
+        if (email == null) {
+            return "email required";
+        }
+        if (!isEmail(email)) {
+            return "email must be a well-formed email address";
+        }
+        if (user.getGender() == null) {
+            return "gender required";
+        }
+        return null;
+    }
+
+    static boolean isEmail(String email) {
+        // like @Email, an empty string is left to other constraints
+        if (email.isEmpty()) {
+            return true;
+        }
+        int at = email.lastIndexOf('@');
+        if (at < 0) {
+            return false;
+        }
+        switch (scanLocalPart(email, at)) {
+            case INVALID:
+                return false;
+            case PLAIN:
+                break;
+            default:
+                return BeanValidation.isEmail(email);
+        }
+        switch (scanDomain(email, at + 1)) {
+            case INVALID:
+                return false;
+            case PLAIN:
+                return true;
+            default:
+                return BeanValidation.isEmail(email);
+        }
+    }
+
+    private enum Scan {
+        PLAIN, INVALID, OTHER
+    }
+
+    /**
+     * Dot-separated runs of local part characters, which include any other character of the
+     * Basic Multilingual Plane; surrogates are left to Bean Validation, which reads code points.
+     */
+    private static Scan scanLocalPart(String email, int end) {
+        if (end > MAX_LOCAL_PART_LENGTH) {
+            return Scan.INVALID;
+        }
+        int atomLength = 0;
+        for (int i = 0; i < end; i++) {
+            char c = email.charAt(i);
+            if (c == '.') {
+                if (atomLength == 0) {
+                    return Scan.INVALID;
+                }
+                atomLength = 0;
+            } else if (c == '"' || Character.isSurrogate(c)) {
+                return Scan.OTHER;
+            } else if (c < 128 && (CHARACTER_CLASSES[c] & PLAIN_LOCAL_PART) == 0) {
+                return Scan.INVALID;
+            } else {
+                atomLength++;
+            }
+        }
+        return atomLength == 0 ? Scan.INVALID : Scan.PLAIN;
+    }
+
+    /**
+     * Dot-separated labels that start and end with a domain character, dashes allowed in
+     * between, at most 63 characters each and 255 in all, as IDNA leaves ASCII names.
+     */
+    private static Scan scanDomain(String email, int start) {
+        int end = email.length();
+        if (start < end && email.charAt(start) == '[') {
+            return Scan.OTHER;
+        }
+        if (end - start > MAX_DOMAIN_LENGTH) {
+            // still invalid unless IDNA changes its length, which only happens past ASCII
+            return isAscii(email, start, end) ? Scan.INVALID : Scan.OTHER;
+        }
+        Scan scan = Scan.PLAIN;
+        int labelLength = 0;
+        char previous = '.';
+        for (int i = start; i < end; i++) {
+            char c = email.charAt(i);
+            if (c >= 128) {
+                return Scan.OTHER;
+            }
+            if (c == '.') {
+                if (previous == '.' || previous == '-') {
+                    scan = Scan.INVALID;
+                }
+                labelLength = 0;
+            } else if (c == '-') {
+                if (previous == '.') {
+                    scan = Scan.INVALID;
+                }
+                labelLength++;
+            } else if ((CHARACTER_CLASSES[c] & PLAIN_DOMAIN) == 0) {
+                scan = Scan.INVALID;
+            } else {
+                labelLength++;
+            }
+            if (labelLength > MAX_LABEL_LENGTH) {
+                scan = Scan.INVALID;
+            }
+            previous = c;
+        }
+        // a non-ASCII character later on sends the whole address to Bean Validation
+        return previous == '.' || previous == '-' ? Scan.INVALID : scan;
+    }
+
+    private static boolean isAscii(String email, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (email.charAt(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hibernate Validator's {@code @Email} for the addresses not scanned here, created the
+     * first time one comes along.
+     */
+    private static final class BeanValidation {
+        private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
+        static boolean isEmail(String email) {
+            return VALIDATOR.validateValue(User.class, "email", email).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.yershovkiril.learningspringboot.startup;
+
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.service.UserChangeFeed;
+import com.yershovkiril.learningspringboot.service.UserFollower;
+import com.yershovkiril.learningspringboot.service.UserService;
+import jdk.jfr.Recording;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.ws.rs.Path;
+import javax.ws.rs.ext.Provider;
+
+@Configuration
+public class StartupConfig {
+
+    /**
+     * Under {@code spring.main.lazy-initialization}, as in the fast-startup profile, beans are
+     * created when first needed, so the ones nothing asks for at startup, such as the client
+     * proxies of ClientProxyConfig, are not created at all. These stay eager: the JAX-RS
+     * resources and providers, which RESTEasy only finds among beans already created, the
+     * service and store behind them, and beans that work without being asked, the follower
+     * and the JFR recording.
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter eagerUserBeans() {
+        LazyInitializationExcludeFilter eagerTypes = LazyInitializationExcludeFilter.forBeanTypes(UserDao.class,
+                UserService.class, UserChangeFeed.class, UserFollower.class, Recording.class);
+        return (beanName, beanDefinition, beanType) -> beanType.isAnnotationPresent(Path.class)
+                || beanType.isAnnotationPresent(Provider.class)
+                || eagerTypes.isExcluded(beanName, beanDefinition, beanType);
+    }
+}
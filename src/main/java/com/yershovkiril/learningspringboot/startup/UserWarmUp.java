@@ -0,0 +1,112 @@
+package com.yershovkiril.learningspringboot.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yershovkiril.learningspringboot.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes.APPLICATION_JACKSON_SMILE;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+/**
+ * Sends reads through the users API of this instance before it reports ready, so that the
+ * first requests it is sent do not pay for class loading, RESTEasy's first dispatch and the
+ * interpreter: the resource, service, store and Jackson paths are compiled by then. It runs
+ * as an ApplicationRunner, and Spring Boot only moves readiness to accepting traffic, as
+ * {@code /actuator/health/readiness} reports, once runners have returned.
+ * <p>
+ * Requests cycle through pages, lookups, searches and users written as JSON and Smile, plain
+ * and gzip compressed, for {@code requests} requests or {@code max-ms}, whichever comes
+ * first. Nothing is written to the store; new users are only read and written by Jackson.
+ */
+@Component
+@ConditionalOnProperty(name = "users.startup.warm-up.enabled", havingValue = "true")
+public class UserWarmUp implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserWarmUp.class);
+
+    private static final String[] PATHS = {"?limit=100", "/" + UUID.randomUUID(), "/search?q=jones&limit=10",
+            "?gender=male&limit=10", "?minAge=20&sort=-age&limit=20&fields=firstName,age"};
+    private static final String[] ACCEPTS = {APPLICATION_JSON, APPLICATION_JACKSON_SMILE};
+    private static final String[] ENCODINGS = {"identity", "gzip"};
+
+    private final ApplicationContext context;
+    private final Environment environment;
+    private final ObjectMapper objectMapper;
+    private final int requests;
+    private final long maxMs;
+    private final boolean exitAfterWarmUp;
+
+    @Autowired
+    public UserWarmUp(ApplicationContext context, Environment environment, ObjectMapper objectMapper,
+                      @Value("${users.startup.warm-up.requests:1000}") int requests,
+                      @Value("${users.startup.warm-up.max-ms:10000}") long maxMs,
+                      @Value("${users.startup.exit-after-warm-up:false}") boolean exitAfterWarmUp) {
+        this.context = context;
+        this.environment = environment;
+        this.objectMapper = objectMapper;
+        this.requests = requests;
+        this.maxMs = maxMs;
+        this.exitAfterWarmUp = exitAfterWarmUp;
+    }
+
+    /**
+     * With {@code users.startup.exit-after-warm-up} the application then exits, as the
+     * training run of an AppCDS archive does.
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.MILLISECONDS.toNanos(maxMs);
+        String url = "http://localhost:" + environment.getProperty("local.server.port") + "/api/v1/users";
+        User sample = new User(UUID.randomUUID(), "Joe", "Jones", User.Gender.MALE, 22, "joe.jones@gmail.com");
+        int sent = 0;
+        try {
+            while (sent < requests && System.nanoTime() < deadline) {
+                get(url + PATHS[sent % PATHS.length], ACCEPTS[sent / PATHS.length % ACCEPTS.length],
+                        ENCODINGS[sent / (PATHS.length * ACCEPTS.length) % ENCODINGS.length]);
+                objectMapper.readValue(objectMapper.writeValueAsBytes(sample), User.class);
+                sent++;
+            }
+            LOGGER.info("Warmed up with {} requests in {} ms", sent,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException e) {
+            LOGGER.warn("Warm-up stopped after {} requests: {}", sent, e.toString());
+        }
+        if (exitAfterWarmUp) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    private static void get(String url, String accept, String encoding) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("Accept", accept);
+        connection.setRequestProperty("Accept-Encoding", encoding);
+        int status = connection.getResponseCode();
+        // drained, so that the connection is kept alive for the next request
+        try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (body != null) {
+                byte[] buffer = new byte[8192];
+                while (body.read(buffer) >= 0) {
+                    // discarded
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.yershovkiril.learningspringboot.trace;
+
+import jdk.jfr.Recording;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * {@code /actuator/jfr}: the flight recording kept by {@link TraceConfig} so far, as a
+ * {@code .jfr} file for JDK Mission Control or {@code jfr print}.
+ */
+@Endpoint(id = "jfr")
+public class RecordingEndpoint {
+
+    private final Recording recording;
+
+    public RecordingEndpoint(Recording recording) {
+        this.recording = recording;
+    }
+
+    @ReadOperation(produces = "application/octet-stream")
+    public Resource dump() throws IOException {
+        Path file = Files.createTempFile(TraceConfig.RECORDING_NAME + "-", ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new TemporaryFileResource(file);
+    }
+
+    /**
+     * Deletes the dump once it has been sent.
+     */
+    private static final class TemporaryFileResource extends FileSystemResource {
+        private final Path file;
+
+        TemporaryFileResource(Path file) {
+            super(file);
+            this.file = file;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.yershovkiril.learningspringboot.trace;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * Keeps a continuous flight recording of the last {@code max-age-ms} of the process, with the
+ * JDK's default event settings plus every {@link UserRequestEvent} slower than
+ * {@code threshold-ms}. {@code GET /actuator/jfr} downloads it, as does
+ * {@code jcmd <pid> JFR.dump name=users filename=users.jfr} without going over HTTP.
+ */
+@org.springframework.context.annotation.Configuration
+@ConditionalOnProperty(name = "users.trace.jfr.enabled", havingValue = "true")
+public class TraceConfig {
+
+    static final String RECORDING_NAME = "users";
+
+    @Value("${users.trace.jfr.threshold-ms:0}")
+    private long thresholdMs;
+
+    @Value("${users.trace.jfr.max-age-ms:600000}")
+    private long maxAgeMs;
+
+    @Value("${users.trace.jfr.max-size-bytes:104857600}")
+    private long maxSizeBytes;
+
+    @Bean(destroyMethod = "close")
+    public Recording userRequestRecording() throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName(RECORDING_NAME);
+        recording.setToDisk(true);
+        recording.setMaxAge(Duration.ofMillis(maxAgeMs));
+        recording.setMaxSize(maxSizeBytes);
+        recording.enable(UserRequestEvent.NAME).withThreshold(Duration.ofMillis(thresholdMs));
+        recording.start();
+        return recording;
+    }
+
+    @Bean
+    public RecordingEndpoint recordingEndpoint(Recording userRequestRecording) {
+        return new RecordingEndpoint(userRequestRecording);
+    }
+}
@@ -0,0 +1,44 @@
+package com.yershovkiril.learningspringboot.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One call of the users API, from its request filters to the last byte of its response body.
+ */
+@Name(UserRequestEvent.NAME)
+@Label("Users API Request")
+@Category("Users API")
+@Description("A call of the users API with the time spent in the user store and in writing the response")
+@StackTrace(false)
+class UserRequestEvent extends Event {
+
+    static final String NAME = "com.yershovkiril.learningspringboot.UserRequest";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("User Uid")
+    String userUid;
+
+    @Label("Status")
+    int status;
+
+    @Label("DAO Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long daoTime;
+
+    @Label("Serialization Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long serializationTime;
+
+    @Label("Result Size")
+    @DataAmount
+    long resultSize;
+}
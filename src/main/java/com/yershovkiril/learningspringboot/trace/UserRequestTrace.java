@@ -0,0 +1,78 @@
+package com.yershovkiril.learningspringboot.trace;
+
+/**
+ * The {@link UserRequestEvent} of a request being served. While bound to the serving thread,
+ * {@link #current()} returns it so the store calls made for the request add up their time;
+ * nested store calls, such as a cache calling the store behind it, are counted once.
+ */
+public final class UserRequestTrace {
+
+    private static final ThreadLocal<UserRequestTrace> CURRENT = new ThreadLocal<>();
+
+    private final UserRequestEvent event;
+    private int daoDepth;
+    private long daoStart;
+
+    private UserRequestTrace(UserRequestEvent event) {
+        this.event = event;
+    }
+
+    /**
+     * Begins the event of a request, or returns null when no recording wants it.
+     */
+    static UserRequestTrace begin(String operation, String userUid) {
+        UserRequestEvent event = new UserRequestEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.operation = operation;
+        event.userUid = userUid;
+        event.begin();
+        return new UserRequestTrace(event);
+    }
+
+    /**
+     * The trace bound to this thread, or null.
+     */
+    public static UserRequestTrace current() {
+        return CURRENT.get();
+    }
+
+    void bindToThread() {
+        CURRENT.set(this);
+    }
+
+    public void enterDao() {
+        if (daoDepth++ == 0) {
+            daoStart = System.nanoTime();
+        }
+    }
+
+    public void exitDao() {
+        if (--daoDepth == 0) {
+            event.daoTime += System.nanoTime() - daoStart;
+        }
+    }
+
+    void status(int status) {
+        event.status = status;
+    }
+
+    void serialized(long nanos, long bytes) {
+        event.serializationTime += nanos;
+        event.resultSize += bytes;
+    }
+
+    /**
+     * Ends the event and commits it if it lasted past the recording threshold.
+     */
+    void end() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.commit();
+        }
+    }
+}
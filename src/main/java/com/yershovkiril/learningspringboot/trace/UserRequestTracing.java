@@ -0,0 +1,122 @@
+package com.yershovkiril.learningspringboot.trace;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Emits a {@link UserRequestEvent} for every call of a resource method while a recording has
+ * the event enabled. The event starts in the request filters and ends once the response body
+ * is written, which is timed and measured after the compression interceptor, so the result
+ * size is the serialized one. Methods returning a {@link CompletionStage} do their store work
+ * on other threads, so their events carry no DAO time.
+ * <p>
+ * Without {@code users.trace.jfr.enabled} no filter is registered at all.
+ */
+@Component
+@Provider
+@ConditionalOnProperty(name = "users.trace.jfr.enabled", havingValue = "true")
+public class UserRequestTracing implements DynamicFeature {
+
+    private static final String TRACE_PROPERTY = UserRequestTrace.class.getName();
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        Method method = resourceInfo.getResourceMethod();
+        String operation = ClassUtils.getUserClass(resourceInfo.getResourceClass()).getSimpleName()
+                + "." + method.getName();
+        boolean async = CompletionStage.class.isAssignableFrom(method.getReturnType());
+        context.register(new TracingFilter(operation, !async), Priorities.USER);
+    }
+
+    private static final class TracingFilter
+            implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+        private final String operation;
+        private final boolean bindToThread;
+
+        TracingFilter(String operation, boolean bindToThread) {
+            this.operation = operation;
+            this.bindToThread = bindToThread;
+        }
+
+        @Override
+        public void filter(ContainerRequestContext requestContext) {
+            String userUid = requestContext.getUriInfo().getPathParameters().getFirst("userUid");
+            UserRequestTrace trace = UserRequestTrace.begin(operation, userUid);
+            if (trace == null) {
+                return;
+            }
+            requestContext.setProperty(TRACE_PROPERTY, trace);
+            if (bindToThread) {
+                trace.bindToThread();
+            }
+        }
+
+        @Override
+        public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+            UserRequestTrace trace = (UserRequestTrace) requestContext.getProperty(TRACE_PROPERTY);
+            if (trace == null) {
+                return;
+            }
+            trace.status(responseContext.getStatus());
+            if (!responseContext.hasEntity()) {
+                trace.end();
+            }
+        }
+
+        @Override
+        public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+            UserRequestTrace trace = (UserRequestTrace) context.getProperty(TRACE_PROPERTY);
+            if (trace == null) {
+                context.proceed();
+                return;
+            }
+            CountingOutputStream output = new CountingOutputStream(context.getOutputStream());
+            context.setOutputStream(output);
+            long start = System.nanoTime();
+            try {
+                context.proceed();
+            } finally {
+                trace.serialized(System.nanoTime() - start, output.count);
+                trace.end();
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.yershovkiril.learningspringboot.clientproxy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.*;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingHttpClientTest {
+    private static final HttpHost HOST = new HttpHost("localhost", 8080);
+    private static final String USERS = "/api/v1/users";
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private StubHttpClient server;
+    private CachingHttpClient cachingHttpClient;
+
+    @BeforeEach
+    void setUp() {
+        server = new StubHttpClient();
+        cachingHttpClient = new CachingHttpClient(server, 100, nanos::get);
+        cachingHttpClient.bindTo(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.release.countDown();
+    }
+
+    @Test
+    void shouldRevalidateWithEntityTag() throws IOException {
+        server.cacheControl = "max-age=0";
+
+        assertThat(get(USERS)).isEqualTo("[1]");
+        assertThat(get(USERS)).isEqualTo("[1]");
+
+        assertThat(server.requests).hasSize(2);
+        assertThat(server.requests.get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue()).isEqualTo("W/\"1\"");
+        assertThat(server.notModified).isEqualTo(1);
+    }
+
+    @Test
+    void shouldServeFreshResponsesLocally() throws IOException {
+        server.cacheControl = "max-age=10";
+
+        assertThat(get(USERS)).isEqualTo("[1]");
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertThat(get(USERS)).isEqualTo("[1]");
+        assertThat(server.requests).hasSize(1);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        server.version++;
+        assertThat(get(USERS)).isEqualTo("[2]");
+        assertThat(server.requests).hasSize(2);
+    }
+
+    @Test
+    void shouldNotStoreResponsesWithoutValidator() throws IOException {
+        server.entityTag = false;
+        server.cacheControl = "max-age=0";
+
+        get(USERS);
+        get(USERS);
+
+        assertThat(server.requests).hasSize(2);
+        assertThat(server.requests.get(1).containsHeader(HttpHeaders.IF_NONE_MATCH)).isFalse();
+    }
+
+    @Test
+    void shouldInvalidateOnWrites() throws IOException {
+        server.cacheControl = "max-age=60";
+        String user = USERS + "/2d1b4bfb-4fa5-4b5a-9d3e-27e8d1d1fd9e";
+        get(user);
+        get(USERS + "?gender=MALE");
+
+        cachingHttpClient.execute(HOST, new HttpDelete(user)).close();
+        get(user);
+        get(USERS + "?gender=MALE");
+
+        assertThat(server.requests).extracting(request -> request.getRequestLine().getMethod())
+                .containsExactly("GET", "GET", "DELETE", "GET");
+    }
+
+    @Test
+    void shouldCoalesceIdenticalRequestsInFlight() throws Exception {
+        server.cacheControl = "max-age=0";
+        server.release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = callers.submit(() -> get(USERS));
+            server.received.await(5, TimeUnit.SECONDS);
+            Future<String> follower = callers.submit(() -> get(USERS));
+            while (registry.get("users.client.coalesced").functionCounter().count() < 1) {
+                Thread.sleep(1);
+            }
+            server.release.countDown();
+
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("[1]");
+            assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("[1]");
+            assertThat(server.requests).hasSize(1);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private String get(String uri) throws IOException {
+        try (CloseableHttpResponse response = cachingHttpClient.execute(HOST, new HttpGet(uri))) {
+            return EntityUtils.toString(response.getEntity());
+        }
+    }
+
+    private static final class StubHttpClient extends CloseableHttpClient {
+        final List<HttpRequest> requests = new ArrayList<>();
+        final CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(0);
+        int version = 1;
+        int notModified;
+        boolean entityTag = true;
+        String cacheControl;
+
+        @Override
+        protected synchronized CloseableHttpResponse doExecute(HttpHost target, HttpRequest request,
+                                                               HttpContext context) throws IOException {
+            requests.add(request);
+            received.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String tag = "W/\"" + version + "\"";
+            Header ifNoneMatch = request.getFirstHeader(HttpHeaders.IF_NONE_MATCH);
+            Response response;
+            if (ifNoneMatch != null && ifNoneMatch.getValue().equals(tag)) {
+                notModified++;
+                response = new Response(HttpStatus.SC_NOT_MODIFIED);
+            } else {
+                response = new Response(HttpStatus.SC_OK);
+                response.setEntity(new StringEntity("[" + version + "]"));
+            }
+            if (entityTag) {
+                response.setHeader(HttpHeaders.ETAG, tag);
+            }
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+            return response;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public HttpParams getParams() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public ClientConnectionManager getConnectionManager() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class Response extends BasicHttpResponse implements CloseableHttpResponse {
+        Response(int status) {
+            super(HttpVersion.HTTP_1_1, status, null);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
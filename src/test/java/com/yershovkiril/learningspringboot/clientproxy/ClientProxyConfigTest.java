@@ -0,0 +1,23 @@
+package com.yershovkiril.learningspringboot.clientproxy;
+
+import org.apache.http.message.BasicHttpRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientProxyConfigTest {
+
+    @Test
+    void shouldTagRequestsWithUriTemplate() {
+        UUID userUid = UUID.randomUUID();
+
+        assertThat(ClientProxyConfig.uriTemplate(new BasicHttpRequest("GET", "/api/v1/users/" + userUid)))
+                .isEqualTo("/api/v1/users/{userUid}");
+        assertThat(ClientProxyConfig.uriTemplate(new BasicHttpRequest("GET", "/api/v1/users?gender=MALE&limit=2")))
+                .isEqualTo("/api/v1/users");
+        assertThat(ClientProxyConfig.uriTemplate(new BasicHttpRequest("DELETE", "/api/v1/users/batch")))
+                .isEqualTo("/api/v1/users/batch");
+    }
+}
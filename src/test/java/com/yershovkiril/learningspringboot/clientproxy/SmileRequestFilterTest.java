@@ -0,0 +1,51 @@
+package com.yershovkiril.learningspringboot.clientproxy;
+
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.Collections;
+
+import static com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes.APPLICATION_JACKSON_SMILE_TYPE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class SmileRequestFilterTest {
+
+    private final SmileRequestFilter filter = new SmileRequestFilter();
+
+    @Test
+    void shouldExchangeSmileInsteadOfJson() {
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        ClientRequestContext requestContext = request(headers, MediaType.APPLICATION_JSON_TYPE, true);
+
+        filter.filter(requestContext);
+
+        assertThat(headers.getFirst(HttpHeaders.ACCEPT)).isEqualTo(SmileRequestFilter.ACCEPT_SMILE);
+        assertThat(headers.getFirst(HttpHeaders.CONTENT_TYPE)).isEqualTo(APPLICATION_JACKSON_SMILE_TYPE);
+    }
+
+    @Test
+    void shouldLeaveOtherMediaTypesAlone() {
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        ClientRequestContext requestContext = request(headers, MediaType.TEXT_PLAIN_TYPE, false);
+
+        filter.filter(requestContext);
+
+        assertThat(headers).isEmpty();
+    }
+
+    private static ClientRequestContext request(MultivaluedMap<String, Object> headers,
+                                                MediaType mediaType, boolean hasEntity) {
+        ClientRequestContext requestContext = mock(ClientRequestContext.class);
+        given(requestContext.getHeaders()).willReturn(headers);
+        given(requestContext.getAcceptableMediaTypes()).willReturn(Collections.singletonList(mediaType));
+        given(requestContext.hasEntity()).willReturn(hasEntity);
+        given(requestContext.getMediaType()).willReturn(mediaType);
+        return requestContext;
+    }
+}
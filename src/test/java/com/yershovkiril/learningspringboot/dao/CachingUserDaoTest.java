@@ -0,0 +1,131 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class CachingUserDaoTest {
+    private final AtomicLong nanos = new AtomicLong();
+    private ConcurrentDataDao concurrentDataDao;
+    private CachingUserDao cachingUserDao;
+
+    @BeforeEach
+    void setUp() {
+        concurrentDataDao = spy(new ConcurrentDataDao());
+        cachingUserDao = new CachingUserDao(concurrentDataDao, 100, 60_000, 1_000, nanos::get);
+    }
+
+    @Test
+    void shouldServeRepeatedLookupsFromCache() {
+        User anna = anna(UUID.randomUUID());
+        concurrentDataDao.insertUser(anna.getUserUid(), anna);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(cachingUserDao.selectUserByUserUid(anna.getUserUid()).get()).isEqualToComparingFieldByField(anna);
+        }
+
+        verify(concurrentDataDao, times(1)).selectVersionedUserByUserUid(anna.getUserUid());
+        assertThat(cachingUserDao.stats().hitCount()).isEqualTo(2);
+        assertThat(cachingUserDao.stats().missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldExpireFoundUsersAfterTtl() {
+        User anna = anna(UUID.randomUUID());
+        concurrentDataDao.insertUser(anna.getUserUid(), anna);
+        cachingUserDao.selectUserByUserUid(anna.getUserUid());
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        cachingUserDao.selectUserByUserUid(anna.getUserUid());
+        verify(concurrentDataDao, times(1)).selectVersionedUserByUserUid(anna.getUserUid());
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        cachingUserDao.selectUserByUserUid(anna.getUserUid());
+        verify(concurrentDataDao, times(2)).selectVersionedUserByUserUid(anna.getUserUid());
+    }
+
+    @Test
+    void shouldCacheMissingUsersForNegativeTtl() {
+        UUID userUid = UUID.randomUUID();
+        assertFalse(cachingUserDao.selectUserByUserUid(userUid).isPresent());
+        assertFalse(cachingUserDao.selectUserByUserUid(userUid).isPresent());
+        verify(concurrentDataDao, times(1)).selectVersionedUserByUserUid(userUid);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertFalse(cachingUserDao.selectUserByUserUid(userUid).isPresent());
+        verify(concurrentDataDao, times(2)).selectVersionedUserByUserUid(userUid);
+    }
+
+    @Test
+    void shouldInvalidateOnWrites() {
+        UUID userUid = UUID.randomUUID();
+        assertFalse(cachingUserDao.selectUserByUserUid(userUid).isPresent());
+
+        assertThat(cachingUserDao.insertUser(userUid, anna(userUid))).isEqualTo(1);
+        assertTrue(cachingUserDao.selectUserByUserUid(userUid).isPresent());
+
+        User olderAnna = new User(userUid, "anna", "montana", User.Gender.FEMALE, 31, "anna@gmail.com");
+        assertThat(cachingUserDao.updateUser(olderAnna)).isEqualTo(1);
+        assertThat(cachingUserDao.selectUserByUserUid(userUid).get().getAge()).isEqualTo(31);
+
+        assertThat(cachingUserDao.deleteUserByUserUid(userUid)).isEqualTo(1);
+        assertFalse(cachingUserDao.selectUserByUserUid(userUid).isPresent());
+    }
+
+    @Test
+    void shouldInvalidateOnBatchWrites() {
+        UUID annaUserUid = UUID.randomUUID();
+        UUID bobUserUid = UUID.randomUUID();
+        cachingUserDao.selectUserByUserUid(annaUserUid);
+        cachingUserDao.selectUserByUserUid(bobUserUid);
+
+        User bob = new User(bobUserUid, "bob", "jones", User.Gender.MALE, 40, "bob@gmail.com");
+        assertThat(cachingUserDao.insertUsers(Arrays.asList(anna(annaUserUid), bob))).containsExactly(1, 1);
+        assertTrue(cachingUserDao.selectUserByUserUid(annaUserUid).isPresent());
+        assertTrue(cachingUserDao.selectUserByUserUid(bobUserUid).isPresent());
+
+        assertThat(cachingUserDao.deleteUsersByUserUid(Collections.singletonList(bobUserUid))).containsExactly(1);
+        assertFalse(cachingUserDao.selectUserByUserUid(bobUserUid).isPresent());
+        assertTrue(cachingUserDao.selectUserByUserUid(annaUserUid).isPresent());
+    }
+
+    @Test
+    void shouldEvictBeyondMaximumSize() {
+        for (int i = 0; i < 500; i++) {
+            cachingUserDao.selectUserByUserUid(UUID.randomUUID());
+        }
+
+        assertThat(cachingUserDao.stats().evictionCount()).isGreaterThanOrEqualTo(400);
+    }
+
+    private static User anna(UUID userUid) {
+        return new User(userUid, "anna", "montana", User.Gender.FEMALE, 30, "anna@gmail.com");
+    }
+
+    @Test
+    void shouldInvalidateOnConditionalWrites() {
+        UUID userUid = UUID.randomUUID();
+        cachingUserDao.insertUser(userUid, anna(userUid));
+        assertThat(cachingUserDao.selectVersionedUserByUserUid(userUid).get().getVersion()).isEqualTo(1);
+
+        User olderAnna = new User(userUid, "anna", "montana", User.Gender.FEMALE, 31, "anna@gmail.com");
+        assertThat(cachingUserDao.updateUser(olderAnna, 1)).isEqualTo(1);
+        assertThat(cachingUserDao.selectVersionedUserByUserUid(userUid).get().getVersion()).isEqualTo(2);
+
+        assertThat(cachingUserDao.deleteUserByUserUid(userUid, 2)).isEqualTo(1);
+        assertFalse(cachingUserDao.selectUserByUserUid(userUid).isPresent());
+    }
+}
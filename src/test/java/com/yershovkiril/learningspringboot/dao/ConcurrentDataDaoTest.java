@@ -0,0 +1,406 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserField;
+import com.yershovkiril.learningspringboot.model.UserQuery;
+import com.yershovkiril.learningspringboot.model.UserStats;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentDataDaoTest {
+    private ConcurrentDataDao concurrentDataDao;
+
+    @BeforeEach
+    void setUp() {
+        concurrentDataDao = new ConcurrentDataDao();
+    }
+
+    @Test
+    void shouldSelectAllUsers() {
+        List<User> users = concurrentDataDao.selectAllUsers();
+        assertThat(users).hasSize(1);
+
+        User user = users.get(0);
+
+        assertThat(user.getAge()).isEqualTo(22);
+        assertThat(user.getEmail()).isEqualTo("example@gmail.com");
+        assertThat(user.getFirstName()).isEqualTo("Joe");
+        assertThat(user.getLastName()).isEqualTo("Jones");
+        assertThat(user.getGender()).isEqualTo(User.Gender.MALE);
+        assertThat(user.getUserUid()).isNotNull();
+    }
+
+    @Test
+    void shouldSelectUserByUserUid() {
+        UUID annaUserUid = UUID.randomUUID();
+        User anna = new User(annaUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+        concurrentDataDao.insertUser(annaUserUid, anna);
+        assertThat(concurrentDataDao.selectAllUsers()).hasSize(2);
+
+        Optional<User> annaOptional = concurrentDataDao.selectUserByUserUid(annaUserUid);
+        assertTrue(annaOptional.isPresent());
+        assertThat(annaOptional.get()).isEqualToComparingFieldByField(anna);
+    }
+
+    @Test
+    void shouldNotSelectUserByRandomUserUid() {
+        Optional<User> user = concurrentDataDao.selectUserByUserUid(UUID.randomUUID());
+        assertFalse(user.isPresent());
+    }
+
+    @Test
+    void shouldUpdateUser() {
+        UUID joeUserUid = concurrentDataDao.selectAllUsers().get(0).getUserUid();
+        User newJoe = new User(joeUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+
+        assertThat(concurrentDataDao.updateUser(newJoe)).isEqualTo(1);
+
+        Optional<User> optionalUser = concurrentDataDao.selectUserByUserUid(joeUserUid);
+        assertTrue(optionalUser.isPresent());
+
+        assertThat(concurrentDataDao.selectAllUsers()).hasSize(1);
+        assertThat(optionalUser.get()).isEqualToComparingFieldByField(newJoe);
+    }
+
+    @Test
+    void shouldNotUpdateMissingUser() {
+        UUID userUid = UUID.randomUUID();
+        User anna = new User(userUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+
+        assertThat(concurrentDataDao.updateUser(anna)).isEqualTo(0);
+        assertFalse(concurrentDataDao.selectUserByUserUid(userUid).isPresent());
+    }
+
+    @Test
+    void deleteUserByUserUid() {
+        UUID joeUserUid = concurrentDataDao.selectAllUsers().get(0).getUserUid();
+
+        assertThat(concurrentDataDao.deleteUserByUserUid(joeUserUid)).isEqualTo(1);
+        assertThat(concurrentDataDao.deleteUserByUserUid(joeUserUid)).isEqualTo(0);
+        assertFalse(concurrentDataDao.selectUserByUserUid(joeUserUid).isPresent());
+        assertThat(concurrentDataDao.selectAllUsers()).isEmpty();
+    }
+
+    @Test
+    void insertUser() {
+        UUID userUid = UUID.randomUUID();
+        User user = new User(userUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+        User other = new User(userUid, "joe", "jones",
+                User.Gender.MALE, 40, "joe@gmail.com");
+
+        assertThat(concurrentDataDao.insertUser(userUid, user)).isEqualTo(1);
+        assertThat(concurrentDataDao.insertUser(userUid, other)).isEqualTo(0);
+
+        List<User> users = concurrentDataDao.selectAllUsers();
+        assertThat(users).hasSize(2);
+        assertThat(concurrentDataDao.selectUserByUserUid(userUid).get()).isEqualToComparingFieldByField(user);
+    }
+
+    @Test
+    void shouldSelectUsersByGender() {
+        UUID annaUserUid = UUID.randomUUID();
+        User anna = new User(annaUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+        concurrentDataDao.insertUser(annaUserUid, anna);
+
+        assertThat(concurrentDataDao.selectUsersByGender(User.Gender.FEMALE))
+                .extracting("userUid").containsExactly(annaUserUid);
+        assertThat(concurrentDataDao.selectUsersByGender(User.Gender.MALE))
+                .extracting("firstName").containsExactly("Joe");
+
+        User annaAsMale = new User(annaUserUid, "anna", "montana",
+                User.Gender.MALE, 30, "anna@gmail.com");
+        concurrentDataDao.updateUser(annaAsMale);
+
+        assertThat(concurrentDataDao.selectUsersByGender(User.Gender.FEMALE)).isEmpty();
+        assertThat(concurrentDataDao.selectUsersByGender(User.Gender.MALE)).hasSize(2);
+
+        concurrentDataDao.deleteUserByUserUid(annaUserUid);
+        assertThat(concurrentDataDao.selectUsersByGender(User.Gender.MALE)).hasSize(1);
+    }
+
+    @Test
+    void shouldSelectUserByEmailIgnoringCase() {
+        Optional<User> joe = concurrentDataDao.selectUserByEmail("Example@Gmail.com");
+        assertTrue(joe.isPresent());
+        assertThat(joe.get().getFirstName()).isEqualTo("Joe");
+        assertFalse(concurrentDataDao.selectUserByEmail("nobody@gmail.com").isPresent());
+    }
+
+    @Test
+    void shouldKeepEmailUnique() {
+        UUID userUid = UUID.randomUUID();
+        User sameEmail = new User(userUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "EXAMPLE@gmail.com");
+
+        assertThat(concurrentDataDao.insertUser(userUid, sameEmail)).isEqualTo(0);
+        assertFalse(concurrentDataDao.selectUserByUserUid(userUid).isPresent());
+
+        User anna = new User(userUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+        assertThat(concurrentDataDao.insertUser(userUid, anna)).isEqualTo(1);
+        assertThat(concurrentDataDao.updateUser(sameEmail)).isEqualTo(0);
+        assertThat(concurrentDataDao.selectUserByUserUid(userUid).get().getEmail()).isEqualTo("anna@gmail.com");
+
+        UUID joeUserUid = concurrentDataDao.selectUserByEmail("example@gmail.com").get().getUserUid();
+        concurrentDataDao.deleteUserByUserUid(joeUserUid);
+        assertThat(concurrentDataDao.updateUser(sameEmail)).isEqualTo(1);
+        assertThat(concurrentDataDao.selectUserByEmail("example@gmail.com").get().getUserUid()).isEqualTo(userUid);
+        assertFalse(concurrentDataDao.selectUserByEmail("anna@gmail.com").isPresent());
+    }
+
+    @Test
+    void shouldSelectUsersByAgeBetween() {
+        UUID annaUserUid = UUID.randomUUID();
+        concurrentDataDao.insertUser(annaUserUid, new User(annaUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com"));
+        UUID bobUserUid = UUID.randomUUID();
+        concurrentDataDao.insertUser(bobUserUid, new User(bobUserUid, "bob", "jones",
+                User.Gender.MALE, 60, "bob@gmail.com"));
+
+        assertThat(concurrentDataDao.selectUsersByAgeBetween(20, 40))
+                .extracting("age").containsExactly(22, 30);
+        assertThat(concurrentDataDao.selectUsersByAgeBetween(31, 59)).isEmpty();
+        assertThat(concurrentDataDao.selectUsersByAgeBetween(40, 20)).isEmpty();
+
+        concurrentDataDao.updateUser(new User(bobUserUid, "bob", "jones",
+                User.Gender.MALE, 35, "bob@gmail.com"));
+        assertThat(concurrentDataDao.selectUsersByAgeBetween(20, 40))
+                .extracting("age").containsExactly(22, 30, 35);
+        assertThat(concurrentDataDao.selectUsersByAgeBetween(60, 60)).isEmpty();
+    }
+
+    @Test
+    void shouldSelectUsersPageByPage() {
+        for (int i = 0; i < 9; i++) {
+            UUID userUid = UUID.randomUUID();
+            concurrentDataDao.insertUser(userUid, new User(userUid, "anna" + i, "montana",
+                    i % 2 == 0 ? User.Gender.FEMALE : User.Gender.MALE, 30, userUid + "@gmail.com"));
+        }
+
+        List<User> firstPage = concurrentDataDao.selectUsersAfter(null, 4);
+        List<User> secondPage = concurrentDataDao.selectUsersAfter(firstPage.get(3).getUserUid(), 4);
+        List<User> lastPage = concurrentDataDao.selectUsersAfter(secondPage.get(3).getUserUid(), 4);
+
+        assertThat(firstPage).hasSize(4);
+        assertThat(secondPage).hasSize(4);
+        assertThat(lastPage).hasSize(2);
+        List<User> all = new ArrayList<>(firstPage);
+        all.addAll(secondPage);
+        all.addAll(lastPage);
+        assertThat(all).extracting("userUid").isSorted().doesNotHaveDuplicates();
+        assertThat(all).hasSize(10);
+
+        List<User> females = concurrentDataDao.selectUsersByGenderAfter(User.Gender.FEMALE, null, 3);
+        assertThat(females).hasSize(3).extracting("gender").containsOnly(User.Gender.FEMALE);
+        assertThat(concurrentDataDao.selectUsersByGenderAfter(User.Gender.FEMALE, females.get(2).getUserUid(), 3))
+                .hasSize(2).extracting("gender").containsOnly(User.Gender.FEMALE);
+    }
+
+    @Test
+    void shouldQueryThroughIndexesInUidOrder() {
+        for (int i = 0; i < 20; i++) {
+            UUID userUid = UUID.randomUUID();
+            concurrentDataDao.insertUser(userUid, new User(userUid, i % 3 == 0 ? "Anna" + i : "Bob" + i, "Montana",
+                    i % 2 == 0 ? User.Gender.FEMALE : User.Gender.MALE, 20 + i,
+                    "user" + i + (i % 4 == 0 ? "@Example.com" : "@gmail.com")));
+        }
+        UserQuery query = UserQuery.builder()
+                .minAge(25)
+                .maxAge(38)
+                .namePrefix("an")
+                .build();
+
+        List<User> users = concurrentDataDao.selectUsers(query);
+
+        assertThat(users).extracting("firstName").containsExactlyInAnyOrder("Anna6", "Anna9", "Anna12", "Anna15", "Anna18");
+        assertThat(users).extracting("userUid").isSorted();
+
+        List<User> firstPage = concurrentDataDao.selectUsers(UserQuery.builder()
+                .gender(User.Gender.FEMALE).emailDomain("example.COM").limit(2).build());
+        List<User> lastPage = concurrentDataDao.selectUsers(UserQuery.builder()
+                .gender(User.Gender.FEMALE).emailDomain("example.COM").limit(10)
+                .after(firstPage.get(1).getUserUid()).build());
+        List<User> all = new ArrayList<>(firstPage);
+        all.addAll(lastPage);
+        assertThat(firstPage).hasSize(2);
+        assertThat(all).extracting("email")
+                .containsExactlyInAnyOrder("user0@Example.com", "user4@Example.com", "user8@Example.com",
+                        "user12@Example.com", "user16@Example.com");
+        assertThat(all).extracting("userUid").isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    void shouldSortQueriesLikeAFullScan() {
+        for (int i = 0; i < 50; i++) {
+            UUID userUid = UUID.randomUUID();
+            concurrentDataDao.insertUser(userUid, new User(userUid, "Anna", "Montana" + (i % 7),
+                    i % 2 == 0 ? User.Gender.FEMALE : User.Gender.MALE, i % 10 == 0 ? null : 18 + i % 5,
+                    userUid + "@gmail.com"));
+        }
+        List<UserQuery> queries = Arrays.asList(
+                UserQuery.builder().sort(orders(UserField.AGE, false)).limit(7).build(),
+                UserQuery.builder().sort(orders(UserField.AGE, true)).build(),
+                UserQuery.builder().sort(orders(UserField.AGE, true)).minAge(19).maxAge(21).limit(12).build(),
+                UserQuery.builder().gender(User.Gender.MALE).sort(orders(UserField.LAST_NAME, true)).limit(5).build(),
+                UserQuery.builder().minAge(20).sort(orders(UserField.GENDER, false)).build());
+
+        for (UserQuery query : queries) {
+            assertThat(concurrentDataDao.selectUsers(query)).as(query.toString())
+                    .containsExactlyElementsOf(query.select(concurrentDataDao.selectAllUsers().stream()));
+        }
+        assertThat(concurrentDataDao.selectUsers(queries.get(1))).last().extracting(User::getAge).isNull();
+    }
+
+    @Test
+    void shouldCollectStats() {
+        for (int i = 0; i < 30; i++) {
+            UUID userUid = UUID.randomUUID();
+            concurrentDataDao.insertUser(userUid, new User(userUid, "Anna", "Montana",
+                    User.Gender.FEMALE, i == 0 ? null : 10 + i, "anna" + i + (i % 3 == 0 ? "@Example.com" : "@gmail.com")));
+        }
+
+        UserStats stats = concurrentDataDao.collectStats().toStats(1);
+
+        assertThat(stats.getUsers()).isEqualTo(31);
+        assertThat(stats.getGenders()).containsEntry(User.Gender.FEMALE, 30L).containsEntry(User.Gender.MALE, 1L);
+        assertThat(stats.getUsersWithAge()).isEqualTo(30);
+        assertThat(stats.getMinAge()).isEqualTo(11);
+        assertThat(stats.getMaxAge()).isEqualTo(39);
+        assertThat(stats.getMeanAge()).isEqualTo((22 + (11 + 39) * 29 / 2.0) / 30);
+        assertThat(stats.getAgeHistogram()).containsExactly(entry(10, 9L), entry(20, 11L), entry(30, 10L));
+        assertThat(stats.getEmailDomains()).containsExactly(entry("gmail.com", 21L));
+        assertThat(stats.getDistinctEmailDomains()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldInsertEachUserExactlyOnceUnderContention() throws Exception {
+        int threads = 8;
+        int usersPerThread = 1_000;
+        List<UUID> userUids = new ArrayList<>();
+        for (int i = 0; i < usersPerThread; i++) {
+            userUids.add(UUID.randomUUID());
+        }
+        AtomicInteger inserted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (UUID userUid : userUids) {
+                        inserted.addAndGet(concurrentDataDao.insertUser(userUid, new User(userUid, "anna",
+                                "montana", User.Gender.FEMALE, 30, userUid + "@gmail.com")));
+                        concurrentDataDao.selectAllUsers();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(inserted.get()).isEqualTo(usersPerThread);
+        assertThat(concurrentDataDao.selectAllUsers()).hasSize(usersPerThread + 1);
+    }
+
+    @Test
+    void shouldNumberEveryInsertionOfAUid() {
+        UUID annaUserUid = UUID.randomUUID();
+        User anna = new User(annaUserUid, "anna", "montana", User.Gender.FEMALE, 30, "anna@gmail.com");
+        concurrentDataDao.insertUser(annaUserUid, anna);
+        long insertion = concurrentDataDao.selectVersionedUserByUserUid(annaUserUid).get().getInsertion();
+        concurrentDataDao.updateUser(new User(annaUserUid, "anna", "montana", User.Gender.FEMALE, 31, "anna@gmail.com"));
+        assertThat(concurrentDataDao.selectVersionedUserByUserUid(annaUserUid).get().getInsertion()).isEqualTo(insertion);
+
+        concurrentDataDao.deleteUserByUserUid(annaUserUid);
+        concurrentDataDao.insertUser(annaUserUid, anna);
+
+        VersionedUser reinserted = concurrentDataDao.selectVersionedUserByUserUid(annaUserUid).get();
+        assertThat(reinserted.getVersion()).isEqualTo(1);
+        assertThat(reinserted.getInsertion()).isNotEqualTo(insertion);
+    }
+
+    @Test
+    void shouldCompareVersionsBeforeWriting() {
+        UUID annaUserUid = UUID.randomUUID();
+        User anna = new User(annaUserUid, "anna", "montana", User.Gender.FEMALE, 30, "anna@gmail.com");
+        concurrentDataDao.insertUser(annaUserUid, anna);
+        long modifications = concurrentDataDao.modificationCount();
+        assertThat(concurrentDataDao.selectVersionedUserByUserUid(annaUserUid).get().getVersion()).isEqualTo(1);
+
+        User olderAnna = new User(annaUserUid, "anna", "montana", User.Gender.FEMALE, 31, "anna@gmail.com");
+        assertThat(concurrentDataDao.updateUser(olderAnna, 1)).isEqualTo(1);
+        assertThat(concurrentDataDao.updateUser(anna, 1)).isEqualTo(0);
+        assertThat(concurrentDataDao.deleteUserByUserUid(annaUserUid, 1)).isEqualTo(0);
+
+        VersionedUser current = concurrentDataDao.selectVersionedUserByUserUid(annaUserUid).get();
+        assertThat(current.getVersion()).isEqualTo(2);
+        assertThat(current.getUser().getAge()).isEqualTo(31);
+        assertThat(concurrentDataDao.modificationCount()).isEqualTo(modifications + 1);
+
+        assertThat(concurrentDataDao.deleteUserByUserUid(annaUserUid, 2)).isEqualTo(1);
+        assertFalse(concurrentDataDao.selectVersionedUserByUserUid(annaUserUid).isPresent());
+        assertThat(concurrentDataDao.modificationCount()).isEqualTo(modifications + 2);
+    }
+
+    @Test
+    void shouldApplyOneOfConcurrentConditionalUpdates() throws Exception {
+        UUID annaUserUid = UUID.randomUUID();
+        concurrentDataDao.insertUser(annaUserUid, new User(annaUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com"));
+        int threads = 8;
+        AtomicInteger applied = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int age = 40 + t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    applied.addAndGet(concurrentDataDao.updateUser(new User(annaUserUid, "anna", "montana",
+                            User.Gender.FEMALE, age, "anna@gmail.com"), 1));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(applied.get()).isEqualTo(1);
+        assertThat(concurrentDataDao.selectVersionedUserByUserUid(annaUserUid).get().getVersion()).isEqualTo(2);
+    }
+
+    private static List<UserQuery.Order> orders(UserField field, boolean descending) {
+        return Collections.singletonList(new UserQuery.Order(field, descending));
+    }
+}
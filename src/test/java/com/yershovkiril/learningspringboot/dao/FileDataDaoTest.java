@@ -0,0 +1,182 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileDataDaoTest {
+    private static final int REGION_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private FileDataDao fileDataDao;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (fileDataDao != null) {
+            fileDataDao.close();
+        }
+    }
+
+    @Test
+    void shouldStartEmpty() throws IOException {
+        fileDataDao = open();
+        assertThat(fileDataDao.selectAllUsers()).isEmpty();
+    }
+
+    @Test
+    void shouldRecoverMutationsFromLog() throws IOException {
+        fileDataDao = open();
+        User anna = user("anna", User.Gender.FEMALE, 30);
+        User joe = user("joe", User.Gender.MALE, 22);
+        User bob = user("bob", User.Gender.MALE, 40);
+        fileDataDao.insertUser(anna.getUserUid(), anna);
+        fileDataDao.insertUser(joe.getUserUid(), joe);
+        fileDataDao.insertUser(bob.getUserUid(), bob);
+        User olderJoe = new User(joe.getUserUid(), "joe", "jones", User.Gender.MALE, 23, "joe@gmail.com");
+        fileDataDao.updateUser(olderJoe);
+        fileDataDao.deleteUserByUserUid(bob.getUserUid());
+
+        fileDataDao = reopen();
+
+        assertThat(fileDataDao.selectAllUsers()).hasSize(2);
+        assertThat(fileDataDao.selectUserByUserUid(anna.getUserUid()).get()).isEqualToComparingFieldByField(anna);
+        assertThat(fileDataDao.selectUserByUserUid(joe.getUserUid()).get()).isEqualToComparingFieldByField(olderJoe);
+        assertFalse(fileDataDao.selectUserByUserUid(bob.getUserUid()).isPresent());
+        assertThat(fileDataDao.selectUsersByAgeBetween(23, 23)).hasSize(1);
+        assertTrue(fileDataDao.selectUserByEmail("anna@gmail.com").isPresent());
+    }
+
+    @Test
+    void shouldNotLogRejectedMutations() throws IOException {
+        fileDataDao = open();
+        User anna = user("anna", User.Gender.FEMALE, 30);
+        assertThat(fileDataDao.insertUser(anna.getUserUid(), anna)).isEqualTo(1);
+        assertThat(fileDataDao.insertUser(anna.getUserUid(), user("other", User.Gender.MALE, 1))).isEqualTo(0);
+        assertThat(fileDataDao.deleteUserByUserUid(UUID.randomUUID())).isEqualTo(0);
+
+        fileDataDao = reopen();
+
+        assertThat(fileDataDao.selectAllUsers()).hasSize(1);
+        assertThat(fileDataDao.selectUserByUserUid(anna.getUserUid()).get()).isEqualToComparingFieldByField(anna);
+    }
+
+    @Test
+    void shouldRecoverBatchesSpanningRegions() throws IOException {
+        fileDataDao = open();
+        List<User> users = Stream.generate(() -> user(UUID.randomUUID().toString(), User.Gender.FEMALE, 30))
+                .limit(200)
+                .collect(Collectors.toList());
+        int[] inserted = fileDataDao.insertUsers(users);
+        assertThat(inserted).containsOnly(1);
+        int[] deleted = fileDataDao.deleteUsersByUserUid(Arrays.asList(users.get(0).getUserUid(), UUID.randomUUID()));
+        assertThat(deleted).containsExactly(1, 0);
+
+        fileDataDao = reopen();
+
+        assertThat(fileDataDao.selectAllUsers()).hasSize(199);
+        assertFalse(fileDataDao.selectUserByUserUid(users.get(0).getUserUid()).isPresent());
+    }
+
+    @Test
+    void shouldRecoverFromSnapshotAndLogTail() throws IOException {
+        fileDataDao = open();
+        User anna = user("anna", User.Gender.FEMALE, 30);
+        User joe = user("joe", User.Gender.MALE, 22);
+        fileDataDao.insertUser(anna.getUserUid(), anna);
+        fileDataDao.snapshot();
+        fileDataDao.insertUser(joe.getUserUid(), joe);
+        fileDataDao.deleteUserByUserUid(anna.getUserUid());
+
+        assertThat(files(".snapshot")).hasSize(1);
+        assertThat(files(".log")).hasSize(1);
+
+        fileDataDao = reopen();
+
+        assertThat(fileDataDao.selectAllUsers()).hasSize(1);
+        assertThat(fileDataDao.selectUserByUserUid(joe.getUserUid()).get()).isEqualToComparingFieldByField(joe);
+        assertFalse(fileDataDao.selectUserByEmail("anna@gmail.com").isPresent());
+    }
+
+    @Test
+    void shouldIgnoreTornTailOfLog() throws IOException {
+        fileDataDao = open();
+        User anna = user("anna", User.Gender.FEMALE, 30);
+        User joe = user("joe", User.Gender.MALE, 22);
+        fileDataDao.insertUser(anna.getUserUid(), anna);
+        fileDataDao.insertUser(joe.getUserUid(), joe);
+        fileDataDao.close();
+        fileDataDao = null;
+
+        Path log = files(".log").get(0);
+        long joeRecordEnd = 16 + UserLog.put(anna.getUserUid(), anna).length
+                + UserLog.put(joe.getUserUid(), joe).length;
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            file.seek(joeRecordEnd - 1);
+            int lastByte = file.read();
+            file.seek(joeRecordEnd - 1);
+            file.write(lastByte ^ 0xFF);
+        }
+
+        fileDataDao = open();
+
+        Optional<User> recovered = fileDataDao.selectUserByUserUid(anna.getUserUid());
+        assertTrue(recovered.isPresent());
+        assertThat(fileDataDao.selectAllUsers()).hasSize(1);
+    }
+
+    private FileDataDao open() throws IOException {
+        return new FileDataDao(directory, FileDataDao.Fsync.GROUP, 0, 0, Long.MAX_VALUE, REGION_SIZE);
+    }
+
+    private FileDataDao reopen() throws IOException {
+        fileDataDao.close();
+        return open();
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).collect(Collectors.toList());
+        }
+    }
+
+    private static User user(String name, User.Gender gender, int age) {
+        return new User(UUID.randomUUID(), name, "montana", gender, age, name + "@gmail.com");
+    }
+
+    @Test
+    void shouldLogConditionalWrites() throws IOException {
+        fileDataDao = open();
+        User anna = user("anna", User.Gender.FEMALE, 30);
+        User joe = user("joe", User.Gender.MALE, 22);
+        fileDataDao.insertUser(anna.getUserUid(), anna);
+        fileDataDao.insertUser(joe.getUserUid(), joe);
+        User olderAnna = new User(anna.getUserUid(), "anna", "montana", User.Gender.FEMALE, 31, "anna@gmail.com");
+        assertThat(fileDataDao.updateUser(olderAnna, 1)).isEqualTo(1);
+        assertThat(fileDataDao.updateUser(anna, 1)).isEqualTo(0);
+        assertThat(fileDataDao.deleteUserByUserUid(joe.getUserUid(), 2)).isEqualTo(0);
+        assertThat(fileDataDao.deleteUserByUserUid(joe.getUserUid(), 1)).isEqualTo(1);
+
+        fileDataDao = reopen();
+
+        assertThat(fileDataDao.selectAllUsers()).hasSize(1);
+        assertThat(fileDataDao.selectUserByUserUid(anna.getUserUid()).get()).isEqualToComparingFieldByField(olderAnna);
+    }
+}
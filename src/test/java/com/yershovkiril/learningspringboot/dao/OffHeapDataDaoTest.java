@@ -0,0 +1,301 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserField;
+import com.yershovkiril.learningspringboot.model.UserQuery;
+import com.yershovkiril.learningspringboot.model.UserStats;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapDataDaoTest {
+    private OffHeapDataDao offHeapDataDao;
+
+    @BeforeEach
+    void setUp() {
+        offHeapDataDao = new OffHeapDataDao(1 << 20);
+    }
+
+    @Test
+    void shouldSelectAllUsers() {
+        List<User> users = offHeapDataDao.selectAllUsers();
+        assertThat(users).hasSize(1);
+
+        User user = users.get(0);
+
+        assertThat(user.getAge()).isEqualTo(22);
+        assertThat(user.getEmail()).isEqualTo("example@gmail.com");
+        assertThat(user.getFirstName()).isEqualTo("Joe");
+        assertThat(user.getLastName()).isEqualTo("Jones");
+        assertThat(user.getGender()).isEqualTo(User.Gender.MALE);
+        assertThat(user.getUserUid()).isNotNull();
+    }
+
+    @Test
+    void shouldSelectUserByUserUid() {
+        UUID annaUserUid = UUID.randomUUID();
+        User anna = new User(annaUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+        offHeapDataDao.insertUser(annaUserUid, anna);
+        assertThat(offHeapDataDao.selectAllUsers()).hasSize(2);
+
+        Optional<User> annaOptional = offHeapDataDao.selectUserByUserUid(annaUserUid);
+        assertTrue(annaOptional.isPresent());
+        assertThat(annaOptional.get()).isEqualToComparingFieldByField(anna);
+        assertFalse(offHeapDataDao.selectUserByUserUid(UUID.randomUUID()).isPresent());
+    }
+
+    @Test
+    void shouldUpdateUserInPlaceOrMoveIt() {
+        UUID joeUserUid = offHeapDataDao.selectAllUsers().get(0).getUserUid();
+        User sameSize = new User(joeUserUid, "Jon", "Jones",
+                User.Gender.MALE, 23, "example@gmail.com");
+        User larger = new User(joeUserUid, "Jonathan Christopher", "Jones-Montgomery",
+                User.Gender.MALE, 24, "jonathan.christopher@gmail.com");
+
+        assertThat(offHeapDataDao.updateUser(sameSize)).isEqualTo(1);
+        assertThat(offHeapDataDao.selectUserByUserUid(joeUserUid).get()).isEqualToComparingFieldByField(sameSize);
+        assertThat(offHeapDataDao.updateUser(larger)).isEqualTo(1);
+        assertThat(offHeapDataDao.selectUserByUserUid(joeUserUid).get()).isEqualToComparingFieldByField(larger);
+        assertThat(offHeapDataDao.selectAllUsers()).hasSize(1);
+
+        assertThat(offHeapDataDao.updateUser(new User(UUID.randomUUID(), "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com"))).isEqualTo(0);
+    }
+
+    @Test
+    void shouldKeepEmailUnique() {
+        UUID userUid = UUID.randomUUID();
+        User sameEmail = new User(userUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "EXAMPLE@gmail.com");
+
+        assertThat(offHeapDataDao.insertUser(userUid, sameEmail)).isEqualTo(0);
+        assertFalse(offHeapDataDao.selectUserByUserUid(userUid).isPresent());
+
+        User anna = new User(userUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+        assertThat(offHeapDataDao.insertUser(userUid, anna)).isEqualTo(1);
+        assertThat(offHeapDataDao.updateUser(sameEmail)).isEqualTo(0);
+        assertThat(offHeapDataDao.updateUser(sameEmail, 1)).isEqualTo(0);
+        assertThat(offHeapDataDao.selectVersionedUserByUserUid(userUid).get().getVersion()).isEqualTo(1);
+        assertThat(offHeapDataDao.selectUserByUserUid(userUid).get().getEmail()).isEqualTo("anna@gmail.com");
+
+        UUID joeUserUid = offHeapDataDao.selectUserByEmail("Example@Gmail.com").get().getUserUid();
+        offHeapDataDao.deleteUserByUserUid(joeUserUid);
+        assertThat(offHeapDataDao.updateUser(sameEmail)).isEqualTo(1);
+        assertThat(offHeapDataDao.selectUserByEmail("example@gmail.com").get().getUserUid()).isEqualTo(userUid);
+        assertFalse(offHeapDataDao.selectUserByEmail("anna@gmail.com").isPresent());
+        UUID bobUserUid = UUID.randomUUID();
+        assertThat(offHeapDataDao.insertUser(bobUserUid, new User(bobUserUid, "bob", "jones",
+                User.Gender.MALE, 40, "anna@gmail.com"))).isEqualTo(1);
+    }
+
+    @Test
+    void shouldLeaveStoreAsItWasWhenAWriteFails() {
+        OffHeapDataDao smallChunks = new OffHeapDataDao(256, 16);
+        UUID annaUserUid = UUID.randomUUID();
+        User anna = new User(annaUserUid, "anna", "montana", User.Gender.FEMALE, 30, "anna@gmail.com");
+        assertThat(smallChunks.insertUser(annaUserUid, anna)).isEqualTo(1);
+        User tooLarge = new User(annaUserUid, repeat('a', 300), "montana", User.Gender.FEMALE, 30, "large@gmail.com");
+        UUID bobUserUid = UUID.randomUUID();
+
+        assertThatThrownBy(() -> smallChunks.updateUser(tooLarge)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> smallChunks.insertUser(bobUserUid, new User(bobUserUid, repeat('b', 300), "jones",
+                User.Gender.MALE, 40, "bob@gmail.com"))).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(smallChunks.selectUserByUserUid(annaUserUid).get()).isEqualToComparingFieldByField(anna);
+        assertThat(smallChunks.selectUserByEmail("anna@gmail.com").get().getUserUid()).isEqualTo(annaUserUid);
+        assertFalse(smallChunks.selectUserByEmail("large@gmail.com").isPresent());
+        // as large as anna, so it would take her slot had it been freed
+        UUID carolUserUid = UUID.randomUUID();
+        assertThat(smallChunks.insertUser(carolUserUid, new User(carolUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "bob@gmail.com"))).isEqualTo(1);
+        assertThat(smallChunks.selectUserByUserUid(annaUserUid).get()).isEqualToComparingFieldByField(anna);
+    }
+
+    @Test
+    void shouldInsertAndDeleteThroughTableGrowth() {
+        List<UUID> userUids = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            UUID userUid = UUID.randomUUID();
+            userUids.add(userUid);
+            assertThat(offHeapDataDao.insertUser(userUid, new User(userUid, "anna" + i, "montana",
+                    User.Gender.FEMALE, i % 100, userUid + "@gmail.com"))).isEqualTo(1);
+        }
+        assertThat(offHeapDataDao.insertUser(userUids.get(0), new User(userUids.get(0), "joe", "jones",
+                User.Gender.MALE, 40, "joe@gmail.com"))).isEqualTo(0);
+
+        for (int i = 0; i < userUids.size(); i += 2) {
+            assertThat(offHeapDataDao.deleteUserByUserUid(userUids.get(i))).isEqualTo(1);
+        }
+
+        assertThat(offHeapDataDao.selectAllUsers()).hasSize(2_501);
+        for (int i = 0; i < userUids.size(); i++) {
+            Optional<User> user = offHeapDataDao.selectUserByUserUid(userUids.get(i));
+            assertThat(user.isPresent()).isEqualTo(i % 2 == 1);
+            user.ifPresent(found -> assertThat(found.getEmail()).startsWith(found.getUserUid().toString()));
+        }
+        assertThat(offHeapDataDao.streamAllUsers().count()).isEqualTo(2_501);
+    }
+
+    @Test
+    void shouldReuseFreedSlots() {
+        for (int round = 0; round < 50; round++) {
+            List<UUID> userUids = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                UUID userUid = UUID.randomUUID();
+                userUids.add(userUid);
+                offHeapDataDao.insertUser(userUid, new User(userUid, "anna", "montana",
+                        User.Gender.FEMALE, 30, "anna@gmail.com"));
+            }
+            offHeapDataDao.deleteUsersByUserUid(userUids);
+        }
+
+        assertThat(offHeapDataDao.offHeapBytes()).isEqualTo(1 << 20);
+        assertThat(offHeapDataDao.selectAllUsers()).hasSize(1);
+    }
+
+    @Test
+    void shouldScanByGenderAndAge() {
+        UUID annaUserUid = UUID.randomUUID();
+        offHeapDataDao.insertUser(annaUserUid, new User(annaUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com"));
+        UUID bobUserUid = UUID.randomUUID();
+        offHeapDataDao.insertUser(bobUserUid, new User(bobUserUid, "bob", "jones",
+                User.Gender.MALE, 300, "bob@gmail.com"));
+
+        assertThat(offHeapDataDao.selectUsersByGender(User.Gender.FEMALE))
+                .extracting("userUid").containsExactly(annaUserUid);
+        assertThat(offHeapDataDao.selectUsersByGender(User.Gender.MALE)).hasSize(2);
+        assertThat(offHeapDataDao.streamUsersByGender(User.Gender.MALE).count()).isEqualTo(2);
+        assertThat(offHeapDataDao.selectUsersByAgeBetween(20, 40))
+                .extracting("age").containsOnly(22, 30);
+        assertThat(offHeapDataDao.selectUsersByAgeBetween(250, 400))
+                .extracting("userUid").containsExactly(bobUserUid);
+        assertThat(offHeapDataDao.selectUserByEmail("Anna@Gmail.com").get().getUserUid()).isEqualTo(annaUserUid);
+    }
+
+    @Test
+    void shouldQueryEncodedRecords() {
+        UUID annaUserUid = UUID.randomUUID();
+        offHeapDataDao.insertUser(annaUserUid, new User(annaUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@example.com"));
+        UUID bobUserUid = UUID.randomUUID();
+        offHeapDataDao.insertUser(bobUserUid, new User(bobUserUid, "bob", "jones",
+                User.Gender.MALE, 300, "bob@example.com"));
+
+        assertThat(offHeapDataDao.selectUsers(UserQuery.builder().emailDomain("example.com")
+                .sort(Collections.singletonList(new UserQuery.Order(UserField.AGE, true))).build()))
+                .extracting("userUid").containsExactly(bobUserUid, annaUserUid);
+        assertThat(offHeapDataDao.selectUsers(UserQuery.builder().gender(User.Gender.MALE).minAge(23).build()))
+                .extracting("userUid").containsExactly(bobUserUid);
+        assertThat(offHeapDataDao.selectUsers(UserQuery.builder().namePrefix("JO").maxAge(40).build()))
+                .extracting("firstName").containsExactly("Joe");
+    }
+
+    @Test
+    void shouldCollectStatsFromEncodedRecords() {
+        for (int i = 0; i < 3_000; i++) {
+            UUID userUid = UUID.randomUUID();
+            offHeapDataDao.insertUser(userUid, new User(userUid, "anna" + i, "montana",
+                    i % 11 == 0 ? null : User.Gender.values()[i % 2], i % 13 == 0 ? null : i % 300,
+                    i % 17 == 0 ? null : "anna" + i + "@Domain" + i % 40 + ".com"));
+        }
+        UserStats.Accumulator scanned = new UserStats.Accumulator();
+        offHeapDataDao.selectAllUsers().forEach(scanned::accept);
+
+        UserStats stats = offHeapDataDao.collectStats().toStats(5);
+
+        assertThat(stats).isEqualToComparingFieldByField(scanned.toStats(5));
+        assertThat(stats.getUsers()).isEqualTo(3_001);
+        assertThat(stats.getEmailDomains()).hasSize(5);
+    }
+
+    @Test
+    void shouldSelectUsersPageByPage() {
+        for (int i = 0; i < 9; i++) {
+            UUID userUid = UUID.randomUUID();
+            offHeapDataDao.insertUser(userUid, new User(userUid, "anna" + i, "montana",
+                    i % 2 == 0 ? User.Gender.FEMALE : User.Gender.MALE, 30, userUid + "@gmail.com"));
+        }
+
+        List<User> all = new ArrayList<>();
+        List<User> page = offHeapDataDao.selectUsersAfter(null, 4);
+        while (!page.isEmpty()) {
+            all.addAll(page);
+            page = offHeapDataDao.selectUsersAfter(page.get(page.size() - 1).getUserUid(), 4);
+        }
+
+        assertThat(all).extracting("userUid").isSorted().doesNotHaveDuplicates();
+        assertThat(all.stream().map(User::getUserUid).collect(Collectors.toList()))
+                .containsExactlyElementsOf(offHeapDataDao.selectAllUsers().stream()
+                        .map(User::getUserUid).sorted().collect(Collectors.toList()));
+
+        List<User> females = offHeapDataDao.selectUsersByGenderAfter(User.Gender.FEMALE, null, 3);
+        assertThat(females).hasSize(3).extracting("gender").containsOnly(User.Gender.FEMALE);
+        assertThat(offHeapDataDao.selectUsersByGenderAfter(User.Gender.FEMALE, females.get(2).getUserUid(), 3))
+                .hasSize(2).extracting("gender").containsOnly(User.Gender.FEMALE);
+    }
+
+    @Test
+    void shouldNumberEveryInsertionOfAUid() {
+        UUID annaUserUid = UUID.randomUUID();
+        User anna = new User(annaUserUid, "anna", "montana", User.Gender.FEMALE, 30, "anna@gmail.com");
+        offHeapDataDao.insertUser(annaUserUid, anna);
+        long insertion = offHeapDataDao.selectVersionedUserByUserUid(annaUserUid).get().getInsertion();
+        User renamedAnna = new User(annaUserUid, "anna-maria-magdalena", "montana-smith",
+                User.Gender.FEMALE, 31, "anna.maria.magdalena@gmail.com");
+        offHeapDataDao.updateUser(renamedAnna);
+        assertThat(offHeapDataDao.selectVersionedUserByUserUid(annaUserUid).get().getInsertion()).isEqualTo(insertion);
+
+        offHeapDataDao.deleteUserByUserUid(annaUserUid);
+        offHeapDataDao.insertUser(annaUserUid, anna);
+
+        VersionedUser reinserted = offHeapDataDao.selectVersionedUserByUserUid(annaUserUid).get();
+        assertThat(reinserted.getVersion()).isEqualTo(1);
+        assertThat(reinserted.getInsertion()).isNotEqualTo(insertion);
+    }
+
+    @Test
+    void shouldCompareVersionsBeforeWriting() {
+        UUID annaUserUid = UUID.randomUUID();
+        User anna = new User(annaUserUid, "anna", "montana", User.Gender.FEMALE, 30, "anna@gmail.com");
+        offHeapDataDao.insertUser(annaUserUid, anna);
+        long modifications = offHeapDataDao.modificationCount();
+
+        User renamedAnna = new User(annaUserUid, "anna-maria-magdalena", "montana-smith",
+                User.Gender.FEMALE, 31, "anna.maria.magdalena@gmail.com");
+        assertThat(offHeapDataDao.updateUser(renamedAnna, 1)).isEqualTo(1);
+        assertThat(offHeapDataDao.updateUser(anna, 1)).isEqualTo(0);
+        assertThat(offHeapDataDao.deleteUserByUserUid(annaUserUid, 1)).isEqualTo(0);
+
+        VersionedUser current = offHeapDataDao.selectVersionedUserByUserUid(annaUserUid).get();
+        assertThat(current.getVersion()).isEqualTo(2);
+        assertThat(current.getUser()).isEqualToComparingFieldByField(renamedAnna);
+        assertThat(offHeapDataDao.updateUser(anna)).isEqualTo(1);
+        assertThat(offHeapDataDao.selectVersionedUserByUserUid(annaUserUid).get().getVersion()).isEqualTo(3);
+
+        assertThat(offHeapDataDao.deleteUserByUserUid(annaUserUid, 3)).isEqualTo(1);
+        assertFalse(offHeapDataDao.selectVersionedUserByUserUid(annaUserUid).isPresent());
+        assertThat(offHeapDataDao.modificationCount()).isEqualTo(modifications + 3);
+    }
+
+    private static String repeat(char c, int times) {
+        char[] chars = new char[times];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
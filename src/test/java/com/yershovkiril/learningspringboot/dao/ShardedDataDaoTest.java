@@ -0,0 +1,236 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserField;
+import com.yershovkiril.learningspringboot.model.UserQuery;
+import com.yershovkiril.learningspringboot.model.UserStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedDataDaoTest {
+    private ShardedDataDao shardedDataDao;
+
+    @BeforeEach
+    void setUp() {
+        shardedDataDao = new ShardedDataDao(4, 16, 64);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shardedDataDao.close();
+    }
+
+    @Test
+    void shouldSelectUsersAcrossShards() {
+        List<UUID> userUids = insertUsers(40);
+
+        assertThat(shardedDataDao.selectAllUsers()).extracting(User::getUserUid)
+                .containsExactlyInAnyOrderElementsOf(userUids);
+        for (UUID userUid : userUids) {
+            assertTrue(shardedDataDao.selectUserByUserUid(userUid).isPresent());
+        }
+        assertFalse(shardedDataDao.selectUserByUserUid(UUID.randomUUID()).isPresent());
+        assertThat(shardedDataDao.selectUsersByGender(User.Gender.FEMALE)).hasSize(20)
+                .extracting("gender").containsOnly(User.Gender.FEMALE);
+        assertThat(shardedDataDao.selectUsersByAgeBetween(25, 29)).extracting(User::getAge)
+                .containsExactly(25, 26, 27, 28, 29);
+        assertThat(shardedDataDao.streamAllUsers()).hasSize(40);
+        assertThat(shardedDataDao.modificationCount()).isEqualTo(40);
+    }
+
+    @Test
+    void shouldKeepEmailUniqueAcrossShards() {
+        UUID annaUserUid = UUID.randomUUID();
+        shardedDataDao.insertUser(annaUserUid, new User(annaUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com"));
+        int rejected = 0;
+        for (int i = 0; i < 16; i++) {
+            UUID userUid = UUID.randomUUID();
+            rejected += 1 - shardedDataDao.insertUser(userUid, new User(userUid, "anna", "copy",
+                    User.Gender.FEMALE, 30, "ANNA@gmail.com"));
+        }
+
+        assertThat(rejected).isEqualTo(16);
+        assertThat(shardedDataDao.selectUserByEmail("Anna@Gmail.com").get().getUserUid()).isEqualTo(annaUserUid);
+        assertThat(shardedDataDao.deleteUserByUserUid(annaUserUid)).isEqualTo(1);
+        assertFalse(shardedDataDao.selectUserByEmail("anna@gmail.com").isPresent());
+    }
+
+    @Test
+    void shouldMergePagesQueriesAndSearchesLikeOneStore() {
+        ConcurrentDataDao oneStore = new ConcurrentDataDao(64);
+        for (int i = 0; i < 60; i++) {
+            UUID userUid = UUID.randomUUID();
+            User user = new User(userUid, i % 3 == 0 ? "Anna" + i : "Bob" + i, "Montana" + (i % 7),
+                    i % 2 == 0 ? User.Gender.FEMALE : User.Gender.MALE, i % 10 == 0 ? null : 18 + i % 5,
+                    "user" + i + "@gmail.com");
+            shardedDataDao.insertUser(userUid, user);
+            oneStore.insertUser(userUid, user);
+        }
+        List<UserQuery> queries = Arrays.asList(
+                UserQuery.builder().limit(7).build(),
+                UserQuery.builder().gender(User.Gender.MALE).namePrefix("bo").limit(5).build(),
+                UserQuery.builder().sort(Collections.singletonList(new UserQuery.Order(UserField.AGE, true))).limit(12).build(),
+                UserQuery.builder().minAge(20).sort(Collections.singletonList(new UserQuery.Order(UserField.LAST_NAME, false))).build());
+
+        List<User> firstPage = shardedDataDao.selectUsersAfter(null, 8);
+        assertThat(firstPage).containsExactlyElementsOf(oneStore.selectUsersAfter(null, 8));
+        assertThat(shardedDataDao.selectUsersAfter(firstPage.get(7).getUserUid(), 8))
+                .containsExactlyElementsOf(oneStore.selectUsersAfter(firstPage.get(7).getUserUid(), 8));
+        assertThat(shardedDataDao.selectUsersByGenderAfter(User.Gender.FEMALE, null, 5))
+                .containsExactlyElementsOf(oneStore.selectUsersByGenderAfter(User.Gender.FEMALE, null, 5));
+        for (UserQuery query : queries) {
+            assertThat(shardedDataDao.selectUsers(query)).as(query.toString())
+                    .containsExactlyElementsOf(oneStore.selectUsers(query));
+        }
+        // which of the users tied at the limit come back is unspecified
+        assertThat(shardedDataDao.searchUsers("ana", 60)).containsExactlyInAnyOrderElementsOf(oneStore.searchUsers("ana", 60));
+        assertThat(shardedDataDao.searchUsers("montana3", 4)).hasSize(4)
+                .isSubsetOf(oneStore.searchUsers("montana3", 60));
+        UserStats stats = shardedDataDao.collectStats().toStats(3);
+        assertThat(stats).usingRecursiveComparison().isEqualTo(oneStore.collectStats().toStats(3));
+    }
+
+    @Test
+    void shouldApplyBatchesAcrossShardsInInputOrder() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            UUID userUid = UUID.randomUUID();
+            users.add(new User(userUid, "anna" + i, "montana", User.Gender.FEMALE, 30,
+                    i == 29 ? "anna0@gmail.com" : "anna" + i + "@gmail.com"));
+        }
+
+        int[] inserted = shardedDataDao.insertUsers(users);
+        int[] deleted = shardedDataDao.deleteUsersByUserUid(Arrays.asList(users.get(3).getUserUid(), null,
+                UUID.randomUUID(), users.get(4).getUserUid()));
+
+        assertThat(Arrays.copyOf(inserted, 29)).containsOnly(1);
+        assertThat(inserted[29]).isEqualTo(0);
+        assertThat(deleted).containsExactly(1, 0, 0, 1);
+        assertThat(shardedDataDao.selectAllUsers()).hasSize(27);
+    }
+
+    @Test
+    void shouldCompareVersionsInTheShardWriter() throws Exception {
+        UUID annaUserUid = UUID.randomUUID();
+        shardedDataDao.insertUser(annaUserUid, new User(annaUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com"));
+        int threads = 8;
+        AtomicInteger applied = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int age = 40 + t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    applied.addAndGet(shardedDataDao.updateUser(new User(annaUserUid, "anna", "montana",
+                            User.Gender.FEMALE, age, "anna@gmail.com"), 1));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(applied.get()).isEqualTo(1);
+        assertThat(shardedDataDao.selectVersionedUserByUserUid(annaUserUid).get().getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldApplyWritesQueuedBeforeClosing() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> writes = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                UUID userUid = UUID.randomUUID();
+                writes.add(executor.submit(() -> shardedDataDao.insertUser(userUid, new User(userUid, "anna",
+                        "montana", User.Gender.FEMALE, 30, userUid + "@gmail.com"))));
+            }
+            int applied = 0;
+            for (Future<Integer> write : writes) {
+                applied += write.get(30, TimeUnit.SECONDS);
+            }
+            shardedDataDao.close();
+
+            assertThat(applied).isEqualTo(200);
+            assertThat(shardedDataDao.selectAllUsers()).hasSize(200);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldReleaseWritersWhenClosedUnderThem() throws Exception {
+        // one shard with room for one write, so that closing finds writers blocked on a full queue
+        shardedDataDao.close();
+        shardedDataDao = new ShardedDataDao(1, 1, 64);
+        int threads = 8;
+        List<UUID> insertedUids = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch writing = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                writers.add(executor.submit(() -> {
+                    writing.countDown();
+                    while (true) {
+                        UUID userUid = UUID.randomUUID();
+                        try {
+                            if (shardedDataDao.insertUser(userUid, new User(userUid, "anna", "montana",
+                                    User.Gender.FEMALE, 30, userUid + "@gmail.com")) == 1) {
+                                insertedUids.add(userUid);
+                            }
+                        } catch (IllegalStateException e) {
+                            rejected.incrementAndGet();
+                            return null;
+                        }
+                    }
+                }));
+            }
+            writing.await();
+            Thread.sleep(50);
+            shardedDataDao.close();
+
+            // every writer gets an answer, none waits for a write nobody will apply
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+            assertThat(rejected.get()).isEqualTo(threads);
+            assertThat(shardedDataDao.selectAllUsers()).extracting(User::getUserUid)
+                    .containsExactlyInAnyOrderElementsOf(insertedUids);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<UUID> insertUsers(int count) {
+        List<UUID> userUids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UUID userUid = UUID.randomUUID();
+            assertThat(shardedDataDao.insertUser(userUid, new User(userUid, "anna" + i, "montana",
+                    i % 2 == 0 ? User.Gender.FEMALE : User.Gender.MALE, 20 + i, userUid + "@gmail.com"))).isEqualTo(1);
+            userUids.add(userUid);
+        }
+        return userUids;
+    }
+}
@@ -0,0 +1,85 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserStats;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserCodecTest {
+
+    @Test
+    void shouldRoundTripUser() {
+        User anna = new User(UUID.randomUUID(), "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+
+        byte[] encoded = UserCodec.encode(anna);
+
+        assertThat(encoded).hasSize(16 + 2 + 5 + 8 + 15);
+        assertThat(UserCodec.decode(encoded)).isEqualToComparingFieldByField(anna);
+    }
+
+    @Test
+    void shouldRoundTripNullsAndWideAges() {
+        User empty = new User(UUID.randomUUID(), null, null, null, null, null);
+        User old = new User(UUID.randomUUID(), "", "x", User.Gender.MALE, 254, "e");
+        User negative = new User(UUID.randomUUID(), "a", "b", User.Gender.MALE, Integer.MIN_VALUE, "e");
+
+        assertThat(UserCodec.decode(UserCodec.encode(empty))).isEqualToComparingFieldByField(empty);
+        assertThat(UserCodec.decode(UserCodec.encode(old))).isEqualToComparingFieldByField(old);
+        assertThat(UserCodec.decode(UserCodec.encode(negative))).isEqualToComparingFieldByField(negative);
+    }
+
+    @Test
+    void shouldRoundTripNonAsciiAndLongStrings() {
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            longName.append('ж');
+        }
+        User user = new User(UUID.randomUUID(), longName.toString(), "Müller",
+                User.Gender.FEMALE, 41, "jürgen@例え.jp");
+
+        assertThat(UserCodec.decode(UserCodec.encode(user))).isEqualToComparingFieldByField(user);
+    }
+
+    @Test
+    void shouldDecodeAtOffsetWithoutMovingPosition() {
+        User anna = new User(UUID.randomUUID(), "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+        byte[] encoded = UserCodec.encode(anna);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.length + 7);
+        buffer.position(7);
+        buffer.put(encoded);
+        buffer.position(3);
+
+        assertThat(UserCodec.decode(buffer, 7)).isEqualToComparingFieldByField(anna);
+        assertThat(UserCodec.gender(buffer, 7)).isEqualTo(User.Gender.FEMALE);
+        assertThat(UserCodec.hasAgeBetween(buffer, 7, 30, 30)).isTrue();
+        assertThat(UserCodec.hasAgeBetween(buffer, 7, 31, 40)).isFalse();
+        assertThat(buffer.position()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldReadAgeAndEmailDomainInPlace() {
+        User[] users = {
+                new User(UUID.randomUUID(), "anna", "montana", User.Gender.FEMALE, 30, "Anna@GMail.com"),
+                new User(UUID.randomUUID(), "", "x", User.Gender.MALE, 254, "a@b@example.org"),
+                new User(UUID.randomUUID(), "a", "b", User.Gender.MALE, -7, "jürgen@例え.jp"),
+                new User(UUID.randomUUID(), null, null, null, null, null),
+                new User(UUID.randomUUID(), "a", "b", null, 1, "no-domain")};
+
+        for (User user : users) {
+            ByteBuffer buffer = ByteBuffer.wrap(UserCodec.encode(user));
+
+            assertThat(UserCodec.hasAge(buffer, 0)).isEqualTo(user.getAge() != null);
+            if (user.getAge() != null) {
+                assertThat(UserCodec.age(buffer, 0)).isEqualTo(user.getAge());
+            }
+            assertThat(UserCodec.emailDomain(buffer, 0)).isEqualTo(UserStats.emailDomain(user.getEmail()));
+        }
+        assertThat(UserCodec.emailDomain(ByteBuffer.wrap(UserCodec.encode(users[0])), 0)).isEqualTo("gmail.com");
+    }
+}
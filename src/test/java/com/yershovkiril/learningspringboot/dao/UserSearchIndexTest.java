@@ -0,0 +1,105 @@
+package com.yershovkiril.learningspringboot.dao;
+
+import com.yershovkiril.learningspringboot.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserSearchIndexTest {
+
+    private final Map<UUID, User> users = new HashMap<>();
+    private UserSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        searchIndex = new UserSearchIndex();
+        add("Anna", "Montana", "anna.montana@gmail.com");
+        add("Annabel", "Jones", "annabel@example.com");
+        add("Joe", "Jones", "joe@gmail.com");
+        add("Johanna", "Smith", "jsmith@example.com");
+    }
+
+    @Test
+    void shouldRankExactWordsAbovePrefixes() {
+        assertThat(searchIndex.search("ANN", 10, users::get)).extracting("firstName")
+                .containsExactlyInAnyOrder("Anna", "Annabel");
+        assertThat(searchIndex.search("anna", 10, users::get)).extracting("firstName")
+                .startsWith("Anna").contains("Annabel");
+        assertThat(searchIndex.search("anna", 1, users::get)).extracting("firstName")
+                .containsExactly("Anna");
+        assertThat(searchIndex.search("jones ann", 10, users::get)).extracting("firstName")
+                .containsExactly("Annabel");
+        assertThat(searchIndex.search("example", 10, users::get)).extracting("firstName")
+                .containsExactlyInAnyOrder("Annabel", "Johanna");
+    }
+
+    @Test
+    void shouldTolerateTypos() {
+        assertThat(searchIndex.search("mnotana", 10, users::get)).extracting("firstName")
+                .containsExactly("Anna");
+        assertThat(searchIndex.search("smtih", 10, users::get)).extracting("firstName")
+                .containsExactly("Johanna");
+        assertThat(searchIndex.search("jonse", 10, users::get)).extracting("firstName")
+                .containsExactlyInAnyOrder("Annabel", "Joe");
+        assertThat(searchIndex.search("jnoes", 10, users::get)).extracting("firstName")
+                .containsExactlyInAnyOrder("Annabel", "Joe");
+        assertThat(searchIndex.search("jox", 10, users::get)).isEmpty();
+    }
+
+    @Test
+    void shouldFollowUpdatesAndDeletes() {
+        User joe = users.values().stream().filter(user -> user.getFirstName().equals("Joe")).findFirst().get();
+        User renamed = new User(joe.getUserUid(), "Joseph", "Jones", User.Gender.MALE, 22, "joe@gmail.com");
+        searchIndex.replace(joe.getUserUid(), joe, renamed);
+        users.put(joe.getUserUid(), renamed);
+
+        assertThat(searchIndex.search("joseph", 10, users::get)).extracting("userUid")
+                .containsExactly(joe.getUserUid());
+        assertThat(searchIndex.search("joe", 10, users::get)).extracting("firstName")
+                .containsExactly("Joseph");
+
+        searchIndex.remove(joe.getUserUid(), renamed);
+        users.remove(joe.getUserUid());
+
+        assertThat(searchIndex.search("joseph", 10, users::get)).isEmpty();
+        assertThat(searchIndex.words()).isEqualTo(users.values().stream()
+                .flatMap(user -> UserSearchIndex.words(user).stream())
+                .distinct()
+                .count());
+    }
+
+    @Test
+    void shouldFindWhatAScanFinds() {
+        String[] syllables = {"an", "na", "jo", "nes", "mon", "ta", "smi", "th", "el", "be"};
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            add(name(random, syllables), name(random, syllables), name(random, syllables) + "@example.com");
+        }
+
+        for (String text : new String[]{"anna", "jones", "jnoes", "monta", "smiht", "annabel", "tasmith", "be jo", "elna mon"}) {
+            assertThat(searchIndex.search(text, 1000, users::get)).as(text)
+                    .containsExactlyInAnyOrderElementsOf(UserSearchIndex.scan(users.values().stream(), text, 1000));
+        }
+    }
+
+    private static String name(Random random, String[] syllables) {
+        StringBuilder name = new StringBuilder();
+        for (int i = random.nextInt(3); i >= 0; i--) {
+            name.append(syllables[random.nextInt(syllables.length)]);
+        }
+        return name.toString();
+    }
+
+    private void add(String firstName, String lastName, String email) {
+        UUID userUid = UUID.randomUUID();
+        User user = new User(userUid, firstName, lastName, User.Gender.FEMALE, 30, email);
+        users.put(userUid, user);
+        searchIndex.add(userUid, user);
+    }
+}
@@ -1,19 +1,57 @@
 package com.yershovkiril.learningspringboot.it;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yershovkiril.learningspringboot.LearningSpringBootApplication;
 import com.yershovkiril.learningspringboot.clientproxy.UserResourceV1;
+import com.yershovkiril.learningspringboot.clientproxy.UserResourceV1Async;
 import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserBatchResult;
+import com.yershovkiril.learningspringboot.model.UserChange;
+import com.yershovkiril.learningspringboot.model.UserImportResult;
+import com.yershovkiril.learningspringboot.model.UserStats;
+import com.yershovkiril.learningspringboot.resource.UserResourceResteasy;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.NotAllowedException;
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+import static com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes.APPLICATION_JACKSON_SMILE_TYPE;
 import static com.yershovkiril.learningspringboot.model.User.Gender.FEMALE;
 import static com.yershovkiril.learningspringboot.model.User.Gender.MALE;
+import static com.yershovkiril.learningspringboot.model.UserBatchResult.Status.APPLIED;
+import static com.yershovkiril.learningspringboot.model.UserBatchResult.Status.CONFLICT;
+import static com.yershovkiril.learningspringboot.model.UserBatchResult.Status.INVALID;
+import static com.yershovkiril.learningspringboot.model.UserBatchResult.Status.NOT_FOUND;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
@@ -25,12 +63,24 @@ public class UserIT {
 	@Autowired
 	private UserResourceV1 userResourceV1;
 
+	@Autowired
+	private UserResourceV1Async userResourceV1Async;
+
+	@Autowired
+	private ResteasyClient userApiClient;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${users.api.url.v1}")
+	private String usersEndpointUrl;
+
 	@Test
 	public void shouldInsertUser() {
 		// Given
 		UUID userUid = UUID.randomUUID();
 		User user = new User(userUid, "Joe", "Jones",
-				MALE, 22, "example@gmail.com");
+				MALE, 22, userUid + "@gmail.com");
 
 		// When
 		userResourceV1.insertNewUser(user);
@@ -40,12 +90,77 @@ public class UserIT {
 		assertThat(joe).isEqualToComparingFieldByField(user);
 	}
 
+	@Test
+	public void shouldRejectInvalidUsers() throws Exception {
+		// Given
+		UUID userUid = UUID.randomUUID();
+		User tooOld = new User(userUid, "Joe", "Jones",
+				MALE, 113, userUid + "@gmail.com");
+		User badEmail = new User(userUid, "Joe", "Jones",
+				MALE, 22, "joe.jones.gmail.com");
+
+		// When
+		CompletableFuture<Void> async = userResourceV1Async.insertNewUser(badEmail).toCompletableFuture();
+
+		// Then
+		assertThatThrownBy(() -> userResourceV1.insertNewUser(tooOld))
+				.isInstanceOf(BadRequestException.class);
+		assertThatThrownBy(() -> userResourceV1.updateUser(badEmail))
+				.isInstanceOf(BadRequestException.class);
+		assertThatThrownBy(async::get)
+				.isInstanceOf(ExecutionException.class)
+				.hasCauseInstanceOf(BadRequestException.class);
+		assertThatThrownBy(() -> userResourceV1.fetchUser(userUid))
+				.isInstanceOf(NotFoundException.class);
+	}
+
+	@Test
+	public void shouldRejectTakenEmails() throws Exception {
+		// Given
+		UUID annaUid = UUID.randomUUID();
+		UUID joeUid = UUID.randomUUID();
+		String email = annaUid + "@gmail.com";
+		userResourceV1.insertNewUser(new User(annaUid, "Anna", "Montana", FEMALE, 30, email));
+		userResourceV1.insertNewUser(new User(joeUid, "Joe", "Jones", MALE, 22, joeUid + "@gmail.com"));
+		User joeWithAnnasEmail = new User(joeUid, "Joe", "Jones", MALE, 22, email);
+		EntityTag joeTag = userApiClient.target(usersEndpointUrl).path(joeUid.toString())
+				.request().get().getEntityTag();
+
+		// When
+		Response inserted = userApiClient.target(usersEndpointUrl).request()
+				.post(Entity.json(new User(null, "Bob", "Jones", MALE, 40, email)));
+		Response updated = userApiClient.target(usersEndpointUrl).request()
+				.put(Entity.json(joeWithAnnasEmail));
+		Response updatedAtVersion = userApiClient.target(usersEndpointUrl).request()
+				.header(HttpHeaders.IF_MATCH, joeTag)
+				.put(Entity.json(joeWithAnnasEmail));
+		CompletableFuture<Void> insertedAsync = userResourceV1Async
+				.insertNewUser(new User(null, "Bob", "Jones", MALE, 40, email)).toCompletableFuture();
+
+		// Then
+		assertThat(inserted.getStatus()).isEqualTo(409);
+		assertThat(inserted.readEntity(String.class)).contains(email);
+		assertThat(updated.getStatus()).isEqualTo(409);
+		assertThat(updatedAtVersion.getStatus()).isEqualTo(409);
+		assertThat(updatedAtVersion.getEntityTag()).isNull();
+		assertThatThrownBy(insertedAsync::get)
+				.isInstanceOf(ExecutionException.class)
+				.hasCauseInstanceOf(ClientErrorException.class);
+		assertThatThrownBy(() -> userResourceV1.insertNewUser(new User(annaUid, "Anna", "Montana", FEMALE, 30,
+				UUID.randomUUID() + "@gmail.com")))
+				.isInstanceOfSatisfying(ClientErrorException.class,
+						e -> assertThat(e.getResponse().getStatus()).isEqualTo(409));
+		assertThat(userResourceV1.fetchUser(joeUid).getEmail()).isEqualTo(joeUid + "@gmail.com");
+		updated.close();
+		updatedAtVersion.close();
+	}
+
 	@Test
 	public void shouldDeleteUser() {
 		// Given
 		UUID userUid = UUID.randomUUID();
 		User user = new User(userUid, "Joe", "Jones",
-				MALE, 22, "example@gmail.com");
+				MALE, 22, userUid + "@gmail.com");
 
 		// When
 		userResourceV1.insertNewUser(user);
@@ -67,7 +182,7 @@ public class UserIT {
 		// Given
 		UUID userUid = UUID.randomUUID();
 		User user = new User(userUid, "Joe", "Jones",
-				MALE, 22, "example@gmail.com");
+				MALE, 22, userUid + "@gmail.com");
 
 		// When
 		userResourceV1.insertNewUser(user);
@@ -86,7 +201,7 @@ public class UserIT {
 		// Given
 		UUID userUid = UUID.randomUUID();
 		User user = new User(userUid, "Joe", "Jones",
-				MALE, 22, "example@gmail.com");
+				MALE, 22, userUid + "@gmail.com");
 
 		// When
 		userResourceV1.insertNewUser(user);
@@ -102,7 +217,6 @@ public class UserIT {
 
 
 		// When
-		userResourceV1.insertNewUser(user);
 		List<User> males = userResourceV1.fetchUsers(MALE.name());
 
 		// Then
@@ -113,4 +227,358 @@ public class UserIT {
 		assertThat(males).extracting("age").contains(user.getAge());
 		assertThat(males).extracting("email").contains(user.getEmail());
 	}
+
+	@Test
+	public void shouldFetchUsersPageByPage() {
+		// Given
+		for (int i = 0; i < 3; i++) {
+			UUID userUid = UUID.randomUUID();
+			userResourceV1.insertNewUser(new User(userUid, "Joe", "Jones",
+					MALE, 22, userUid + "@gmail.com"));
+		}
+		int total = userResourceV1.fetchUsers(null).size();
+
+		// When
+		Set<UUID> seen = new HashSet<>();
+		String cursor = null;
+		do {
+			Response page = userResourceV1.fetchUsersPage(null, 2, cursor);
+			List<User> users = page.readEntity(new GenericType<List<User>>() {});
+			assertThat(users.size()).isLessThanOrEqualTo(2);
+			users.forEach(user -> seen.add(user.getUserUid()));
+			cursor = page.getHeaderString("X-Next-Cursor");
+		} while (cursor != null);
+
+		// Then
+		assertThat(seen).hasSize(total);
+	}
+
+	@Test
+	public void shouldQueryUsers() {
+		// Given
+		String domain = UUID.randomUUID() + ".com";
+		for (int age : new int[]{30, 50, 40}) {
+			userResourceV1.insertNewUser(new User(null, "Ann" + age, "Montana", FEMALE, age, "ann" + age + "@" + domain));
+		}
+		userResourceV1.insertNewUser(new User(null, "Joe", "Jones", MALE, 45, "joe@" + domain));
+
+		// When
+		List<User> users = userResourceV1.queryUsers(null, 35, null, "an", domain, "-age", "firstName,age", 10);
+
+		// Then
+		assertThat(users).extracting("firstName").containsExactly("Ann50", "Ann40");
+		assertThat(users).extracting("email").containsOnlyNulls();
+		assertThatThrownBy(() -> userResourceV1.queryUsers(null, null, null, null, domain, "fullName", null, null))
+				.isInstanceOf(BadRequestException.class);
+	}
+
+	@Test
+	public void shouldSearchUsersByName() {
+		// Given
+		String lastName = "Zq" + Long.toString(System.nanoTime(), 36);
+		userResourceV1.insertNewUser(new User(null, "Joe", lastName, MALE, 22, UUID.randomUUID() + "@gmail.com"));
+
+		// When
+		List<User> byPrefix = userResourceV1.searchUsers("joe " + lastName.substring(0, 4), 5);
+		List<User> withTypo = userResourceV1.searchUsers(lastName.substring(0, 2) + lastName.charAt(3)
+				+ lastName.charAt(2) + lastName.substring(4), 5);
+
+		// Then
+		assertThat(byPrefix).extracting("lastName").containsExactly(lastName);
+		assertThat(withTypo).extracting("lastName").containsExactly(lastName);
+		assertThatThrownBy(() -> userResourceV1.searchUsers(" ", null))
+				.isInstanceOf(BadRequestException.class);
+	}
+
+	@Test
+	public void shouldFetchUserStats() {
+		// Given
+		UserStats before = userResourceV1.fetchUserStats(null);
+		String domain = Long.toString(System.nanoTime(), 36) + ".example.com";
+		userResourceV1.insertNewUser(new User(null, "Anna", "Montana", FEMALE, 30, "anna@" + domain));
+
+		// When
+		UserStats after = userResourceV1.fetchUserStats(1000);
+
+		// Then
+		assertThat(after.getUsers()).isEqualTo(before.getUsers() + 1);
+		assertThat(after.getGenders().get(FEMALE)).isEqualTo(before.getGenders().get(FEMALE) + 1);
+		assertThat(after.getEmailDomains()).containsEntry(domain, 1L);
+		assertThat(after.getAgeHistogram()).containsKey(30);
+		assertThat(after.getMinAge()).isLessThanOrEqualTo(30);
+		assertThatThrownBy(() -> userResourceV1.fetchUserStats(-1))
+				.isInstanceOf(BadRequestException.class);
+	}
+
+	@Test
+	public void shouldFollowChangesUncompressed() throws Exception {
+		// Given
+		Response snapshot = userResourceV1.fetchChangesSnapshot();
+		String epoch = snapshot.getHeaderString(UserResourceResteasy.CHANGE_EPOCH_HEADER);
+		long sequence = Long.parseLong(snapshot.getHeaderString(UserResourceResteasy.CHANGE_SEQUENCE_HEADER));
+		snapshot.close();
+		UUID userUid = UUID.randomUUID();
+		userResourceV1.insertNewUser(new User(userUid, "Anna", "Montana", FEMALE, 30, userUid + "@gmail.com"));
+
+		// When
+		// a followed response never ends, so it is read a line at a time and then dropped
+		HttpURLConnection connection = (HttpURLConnection) new URL(usersEndpointUrl
+				+ "/changes?follow=true&epoch=" + epoch + "&after=" + sequence).openConnection();
+		connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip");
+		try {
+			BufferedReader changes = new BufferedReader(
+					new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+
+			// Then
+			assertThat(connection.getHeaderField(HttpHeaders.CONTENT_ENCODING)).isNull();
+			assertThat(objectMapper.readValue(changes.readLine(), UserChange.class).getUserUid()).isEqualTo(userUid);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Test
+	public void shouldFetchChangesAfterASnapshot() throws Exception {
+		// Given
+		Response snapshot = userResourceV1.fetchChangesSnapshot();
+		String epoch = snapshot.getHeaderString(UserResourceResteasy.CHANGE_EPOCH_HEADER);
+		long sequence = Long.parseLong(snapshot.getHeaderString(UserResourceResteasy.CHANGE_SEQUENCE_HEADER));
+		snapshot.close();
+		UUID userUid = UUID.randomUUID();
+		userResourceV1.insertNewUser(new User(userUid, "Anna", "Montana", FEMALE, 30, userUid + "@gmail.com"));
+		userResourceV1.deleteUser(userUid);
+
+		// When
+		Response response = userResourceV1.fetchChanges(epoch, sequence, false);
+		List<UserChange> changes = objectMapper.readerFor(UserChange.class)
+				.<UserChange>readValues(response.readEntity(String.class))
+				.readAll();
+
+		// Then
+		assertThat(response.getHeaderString(UserResourceResteasy.CHANGE_EPOCH_HEADER)).isEqualTo(epoch);
+		assertThat(changes).filteredOn(change -> change.getUserUid().equals(userUid))
+				.extracting(UserChange::isDelete)
+				.containsExactly(false, true);
+		assertThat(changes.get(0).getSequence()).isEqualTo(sequence + 1);
+		assertThat(userResourceV1.fetchChanges(UUID.randomUUID().toString(), sequence, false).getStatus())
+				.isEqualTo(Response.Status.GONE.getStatusCode());
+	}
+
+	@Test
+	public void shouldServeReadsFromAFollower() throws Exception {
+		UUID before = UUID.randomUUID();
+		userResourceV1.insertNewUser(new User(before, "Joe", "Jones", MALE, 22, before + "@gmail.com"));
+		try (ConfigurableApplicationContext follower = new SpringApplicationBuilder(LearningSpringBootApplication.class)
+				.run("--server.port=8090", "--management.server.port=8091",
+						"--users.follower.leader-url=" + usersEndpointUrl)) {
+			// Given
+			UserResourceV1 followerResource = follower.getBean(UserResourceV1.class);
+			UUID after = UUID.randomUUID();
+
+			// When
+			userResourceV1.insertNewUser(new User(after, "Anna", "Montana", FEMALE, 30, after + "@gmail.com"));
+			userResourceV1.deleteUser(before);
+
+			// Then
+			long deadline = System.currentTimeMillis() + 10_000;
+			while (!hasUser(followerResource, after) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			assertThat(followerResource.fetchUser(after).getEmail()).isEqualTo(after + "@gmail.com");
+			assertThat(hasUser(followerResource, before)).isFalse();
+			assertThatThrownBy(() -> followerResource.insertNewUser(new User(null, "Bob", "Jones", MALE, 40, "bob@gmail.com")))
+					.isInstanceOf(NotAllowedException.class);
+		}
+	}
+
+	@Test
+	public void shouldImportWhatWasExported() throws Exception {
+		// Given
+		UUID userUid = UUID.randomUUID();
+		userResourceV1.insertNewUser(new User(userUid, "Anna", "Montana", FEMALE, 30, userUid + "@gmail.com"));
+		Response export = userResourceV1.exportUsers(null);
+		String exported = export.readEntity(String.class);
+		userResourceV1.deleteUser(userUid);
+		byte[] ndjson = (exported + "not json\n").getBytes(StandardCharsets.UTF_8);
+
+		// When
+		UserImportResult result = userResourceV1.importUsers("gzip", new ByteArrayInputStream(ndjson));
+
+		// Then
+		assertThat(export.getMediaType().toString()).isEqualTo(UserResourceResteasy.APPLICATION_NDJSON);
+		assertThat(exported).contains(userUid.toString());
+		assertThat(result.getImported()).isEqualTo(1);
+		assertThat(result.getRejected()).isEqualTo(result.getLines() - 1);
+		assertThat(result.getRejections()).extracting(UserBatchResult::getStatus).contains(INVALID, CONFLICT);
+		assertThat(userResourceV1.fetchUser(userUid).getEmail()).isEqualTo(userUid + "@gmail.com");
+	}
+
+	private static boolean hasUser(UserResourceV1 resource, UUID userUid) {
+		try {
+			resource.fetchUser(userUid);
+			return true;
+		} catch (NotFoundException e) {
+			return false;
+		}
+	}
+
+	@Test
+	public void shouldApplyBatches() {
+		// Given
+		UUID joeUid = UUID.randomUUID();
+		UUID annaUid = UUID.randomUUID();
+		User joe = new User(joeUid, "Joe", "Jones", MALE, 22, joeUid + "@gmail.com");
+		User anna = new User(annaUid, "Anna", "Montana", FEMALE, 30, annaUid + "@gmail.com");
+
+		// When
+		List<UserBatchResult> inserted = userResourceV1.insertNewUsers(Arrays.asList(joe, anna, joe));
+
+		// Then
+		assertThat(inserted).extracting("status").containsExactly(APPLIED, APPLIED, CONFLICT);
+		assertThat(userResourceV1.fetchUser(annaUid)).isEqualToComparingFieldByField(anna);
+
+		// When
+		User olderAnna = new User(annaUid, "Anna", "Montana", FEMALE, 31, annaUid + "@gmail.com");
+		List<UserBatchResult> updated = userResourceV1.updateUsers(Arrays.asList(olderAnna,
+				new User(UUID.randomUUID(), "Bob", "Jones", MALE, 40, "bob@gmail.com")));
+
+		// Then
+		assertThat(updated).extracting("status").containsExactly(APPLIED, NOT_FOUND);
+		assertThat(userResourceV1.fetchUser(annaUid).getAge()).isEqualTo(31);
+
+		// When
+		List<UserBatchResult> deleted = userResourceV1.deleteUsers(Arrays.asList(joeUid, annaUid, UUID.randomUUID()));
+
+		// Then
+		assertThat(deleted).extracting("status").containsExactly(APPLIED, APPLIED, NOT_FOUND);
+		assertThatThrownBy(() -> userResourceV1.fetchUser(joeUid))
+				.isInstanceOf(NotFoundException.class);
+	}
+
+	@Test
+	public void shouldInsertAndFetchUserAsynchronously() throws Exception {
+		// Given
+		UUID userUid = UUID.randomUUID();
+		User user = new User(userUid, "Joe", "Jones",
+				MALE, 22, userUid + "@gmail.com");
+
+		// When
+		User joe = userResourceV1Async.insertNewUser(user)
+				.thenCompose(inserted -> userResourceV1Async.fetchUser(userUid))
+				.toCompletableFuture()
+				.get();
+
+		// Then
+		assertThat(joe).isEqualToComparingFieldByField(user);
+		assertThat(userResourceV1Async.fetchUsers(MALE.name()).toCompletableFuture().get())
+				.extracting("userUid").contains(userUid);
+
+		// When
+		CompletableFuture<User> missing = userResourceV1Async.fetchUser(UUID.randomUUID()).toCompletableFuture();
+
+		// Then
+		assertThatThrownBy(missing::get)
+				.isInstanceOf(ExecutionException.class)
+				.hasCauseInstanceOf(NotFoundException.class);
+	}
+
+	@Test
+	public void shouldHonourEntityTags() {
+		// Given
+		UUID userUid = UUID.randomUUID();
+		User user = new User(userUid, "Joe", "Jones",
+				MALE, 22, userUid + "@gmail.com");
+		userResourceV1.insertNewUser(user);
+		WebTarget target = userApiClient.target(usersEndpointUrl).path(userUid.toString());
+		EntityTag entityTag = target.request().get().getEntityTag();
+
+		// When
+		Response notModified = target.request().header(HttpHeaders.IF_NONE_MATCH, entityTag).get();
+
+		// Then
+		assertThat(notModified.getStatus()).isEqualTo(304);
+
+		// When
+		// the client asks for Smile unless told otherwise, so this is the other representation
+		String acceptJson = MediaType.APPLICATION_JSON + ", */*;q=0.1";
+		Response json = target.request().header(HttpHeaders.ACCEPT, acceptJson)
+				.header(HttpHeaders.IF_NONE_MATCH, entityTag).get();
+		json.close();
+		Response jsonNotModified = target.request().header(HttpHeaders.ACCEPT, acceptJson)
+				.header(HttpHeaders.IF_NONE_MATCH, "W/" + json.getEntityTag()).get();
+		jsonNotModified.close();
+
+		// Then
+		assertThat(json.getStatus()).isEqualTo(200);
+		assertThat(json.getEntityTag()).isNotEqualTo(entityTag);
+		assertThat(jsonNotModified.getStatus()).isEqualTo(304);
+
+		// When
+		User olderJoe = new User(userUid, "Joe", "Jones", MALE, 23, userUid + "@gmail.com");
+		Response updated = userApiClient.target(usersEndpointUrl).request()
+				.header(HttpHeaders.IF_MATCH, entityTag)
+				.put(Entity.json(olderJoe));
+		Response stale = userApiClient.target(usersEndpointUrl).request()
+				.header(HttpHeaders.IF_MATCH, entityTag)
+				.put(Entity.json(user));
+		updated.close();
+		stale.close();
+
+		// Then
+		assertThat(updated.getStatus()).isEqualTo(204);
+		assertThat(updated.getEntityTag()).isNotEqualTo(entityTag);
+		assertThat(updated.getEntityTag()).isEqualTo(target.request().get().getEntityTag());
+		assertThat(stale.getStatus()).isEqualTo(412);
+		assertThat(userResourceV1.fetchUser(userUid).getAge()).isEqualTo(23);
+
+		// When
+		Response deleted = target.request().header(HttpHeaders.IF_MATCH, updated.getEntityTag()).delete();
+		deleted.close();
+
+		// Then
+		assertThat(deleted.getStatus()).isEqualTo(204);
+		assertThatThrownBy(() -> userResourceV1.fetchUser(userUid))
+				.isInstanceOf(NotFoundException.class);
+	}
+
+	@Test
+	public void shouldNotMatchEntityTagOfADeletedUser() {
+		// Given
+		UUID userUid = UUID.randomUUID();
+		User user = new User(userUid, "Joe", "Jones",
+				MALE, 22, userUid + "@gmail.com");
+		userResourceV1.insertNewUser(user);
+		WebTarget target = userApiClient.target(usersEndpointUrl).path(userUid.toString());
+		EntityTag entityTag = target.request().get().getEntityTag();
+		userResourceV1.deleteUser(userUid);
+		userResourceV1.insertNewUser(user);
+
+		// When
+		Response stale = target.request().header(HttpHeaders.IF_MATCH, entityTag).delete();
+		stale.close();
+
+		// Then
+		assertThat(stale.getStatus()).isEqualTo(412);
+		assertThat(target.request().get().getEntityTag()).isNotEqualTo(entityTag);
+		assertThat(userResourceV1.fetchUser(userUid)).isEqualToComparingFieldByField(user);
+	}
+
+	@Test
+	public void shouldExchangeSmileForJson() {
+		// Given
+		UUID userUid = UUID.randomUUID();
+		User user = new User(userUid, "Joe", "Jones",
+				MALE, 22, userUid + "@gmail.com");
+		userResourceV1.insertNewUser(user);
+
+		// When
+		Response response = userApiClient.target(usersEndpointUrl).path(userUid.toString())
+				.request(MediaType.APPLICATION_JSON_TYPE)
+				.get();
+
+		// Then
+		assertThat(response.getMediaType()).isEqualTo(APPLICATION_JACKSON_SMILE_TYPE);
+		assertThat(response.readEntity(User.class)).isEqualToComparingFieldByField(user);
+		userResourceV1.deleteUser(userUid);
+	}
 }
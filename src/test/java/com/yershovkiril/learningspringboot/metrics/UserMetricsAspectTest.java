@@ -0,0 +1,78 @@
+package com.yershovkiril.learningspringboot.metrics;
+
+import com.yershovkiril.learningspringboot.dao.FakeDataDao;
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.service.AsyncUserService;
+import com.yershovkiril.learningspringboot.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import javax.ws.rs.NotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserMetricsAspectTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final UserMetricsAspect aspect = new UserMetricsAspect(registry, true);
+
+    @Test
+    void shouldTimeDaoAndServiceCalls() {
+        UserDao userDao = proxy(new FakeDataDao());
+        UserService userService = proxy(new UserService(userDao));
+
+        userService.getAllUsers(Optional.empty());
+
+        assertThat(timer("users.service", "UserService", "getAllUsers", "none").count()).isEqualTo(1);
+        assertThat(timer("users.dao", "FakeDataDao", "selectAllUsers", "none").count()).isEqualTo(1);
+        assertThat(registry.get("users.dao.allocated").tag("method", "selectAllUsers").summary().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void shouldTagFailures() {
+        UserService userService = proxy(new UserService(new FakeDataDao()));
+
+        assertThatThrownBy(() -> userService.removeUser(UUID.randomUUID(), 1))
+                .isInstanceOf(NotFoundException.class);
+
+        assertThat(timer("users.service", "UserService", "removeUser", "NotFoundException").count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldTimeCompletionStagesUntilTheyComplete() {
+        List<Runnable> tasks = new ArrayList<>();
+        AsyncUserService asyncUserService = proxy(new AsyncUserService(new UserService(new FakeDataDao()), tasks::add));
+
+        asyncUserService.getAllUsers(Optional.empty());
+        Timer timer = timer("users.service", "AsyncUserService", "getAllUsers", "none");
+        assertThat(timer.count()).isZero();
+        tasks.forEach(Runnable::run);
+
+        assertThat(timer.count()).isEqualTo(1);
+    }
+
+    private Timer timer(String name, String className, String method, String exception) {
+        return registry.get(name)
+                .tag("class", className)
+                .tag("method", method)
+                .tag("exception", exception)
+                .timer();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(T target) {
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(aspect);
+        return (T) proxyFactory.getProxy();
+    }
+}
@@ -0,0 +1,58 @@
+package com.yershovkiril.learningspringboot.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.UUID;
+
+import static com.yershovkiril.learningspringboot.model.User.Gender.FEMALE;
+import static com.yershovkiril.learningspringboot.model.User.Gender.MALE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserSerializerTest {
+
+    private final ObjectMapper reflective = new ObjectMapper();
+    private final ObjectMapper tuned = new ObjectMapper()
+            .registerModule(new AfterburnerModule())
+            .registerModule(new UserJsonModule());
+
+    @Test
+    void shouldWriteSameJsonAsBeanBinding() throws Exception {
+        User user = new User(UUID.randomUUID(), "Anna", "Montana", FEMALE, 30, "anna@gmail.com");
+
+        assertThat(tuned.writeValueAsString(user)).isEqualTo(reflective.writeValueAsString(user));
+    }
+
+    @Test
+    void shouldWriteMissingPropertiesAsNull() throws Exception {
+        User user = new User(null, "Anna", null, null, null, null);
+
+        assertThat(tuned.writeValueAsString(user)).isEqualTo(
+                "{\"userUid\":null,\"firstName\":\"Anna\",\"lastName\":null,\"gender\":null,\"age\":null,"
+                        + "\"email\":null,\"fullName\":\"Anna null\",\"dateOfBirth\":null}");
+    }
+
+    @Test
+    void shouldReadWhatItWrites() throws Exception {
+        User user = new User(UUID.randomUUID(), "Anna", "Montana", FEMALE, 30, "anna@gmail.com");
+
+        User read = tuned.readValue(tuned.writeValueAsBytes(user), User.class);
+
+        assertThat(read).isEqualToComparingFieldByField(user);
+    }
+
+    @Test
+    void shouldWriteOnlyProjectedFields() throws Exception {
+        User anna = new User(UUID.randomUUID(), "Anna", "Montana", FEMALE, 30, "anna@gmail.com");
+        User bob = new User(UUID.randomUUID(), "Bob", "Jones", MALE, 40, null);
+
+        String json = tuned.writeValueAsString(new UserProjection(Arrays.asList(anna, bob),
+                EnumSet.of(UserField.EMAIL, UserField.FIRST_NAME, UserField.FULL_NAME)));
+
+        assertThat(json).isEqualTo("[{\"firstName\":\"Anna\",\"email\":\"anna@gmail.com\",\"fullName\":\"Anna Montana\"},"
+                + "{\"firstName\":\"Bob\",\"email\":null,\"fullName\":\"Bob Jones\"}]");
+    }
+}
@@ -0,0 +1,74 @@
+package com.yershovkiril.learningspringboot.resource;
+
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.NotSupportedException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static com.yershovkiril.learningspringboot.resource.ContentEncodings.DEFLATE;
+import static com.yershovkiril.learningspringboot.resource.ContentEncodings.GZIP;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentEncodingsTest {
+
+    @Test
+    void shouldNegotiateAcceptedCoding() {
+        assertThat(ContentEncodings.negotiate(null)).isNull();
+        assertThat(ContentEncodings.negotiate("identity")).isNull();
+        assertThat(ContentEncodings.negotiate("gzip, deflate, br")).isEqualTo(GZIP);
+        assertThat(ContentEncodings.negotiate("deflate")).isEqualTo(DEFLATE);
+        assertThat(ContentEncodings.negotiate("gzip;q=0.5, deflate")).isEqualTo(DEFLATE);
+        assertThat(ContentEncodings.negotiate("gzip;q=0, deflate;q=0")).isNull();
+        assertThat(ContentEncodings.negotiate("*")).isEqualTo(GZIP);
+        assertThat(ContentEncodings.negotiate("*, gzip;q=0")).isEqualTo(DEFLATE);
+    }
+
+    @Test
+    void shouldCompressWithoutClosingTarget() throws IOException {
+        byte[] body = "[{\"firstName\":\"Joe\"},{\"firstName\":\"Anna\"}]".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(decompress(compress(body, GZIP), GZIP)).isEqualTo(body);
+        assertThat(decompress(compress(body, DEFLATE), DEFLATE)).isEqualTo(body);
+    }
+
+    @Test
+    void shouldDecodeRequestBodiesByContentEncoding() throws IOException {
+        byte[] body = "{\"firstName\":\"Joe\"}\n".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(decompress(compress(body, GZIP), "x-gzip")).isEqualTo(body);
+        assertThat(decompress(body, null)).isEqualTo(body);
+        assertThat(decompress(body, "identity")).isEqualTo(body);
+        assertThatThrownBy(() -> decompress(body, "br")).isInstanceOf(NotSupportedException.class);
+    }
+
+    private static byte[] compress(byte[] body, String encoding) throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                throw new AssertionError("target closed");
+            }
+        };
+        try (OutputStream output = ContentEncodings.compress(target, encoding)) {
+            output.write(body);
+        }
+        return target.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed, String encoding) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(compressed);
+        try (InputStream input = ContentEncodings.decompress(bytes, encoding)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            for (int read; (read = input.read(buffer)) > 0; ) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.yershovkiril.learningspringboot.resource;
+
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+
+import static com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes.APPLICATION_JACKSON_SMILE_TYPE;
+import static com.yershovkiril.learningspringboot.resource.ContentEncodings.GZIP;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserEntityTagsTest {
+
+    @Test
+    void shouldTagEachRepresentation() {
+        EntityTag entityTag = UserEntityTags.ofVersion(3, 7);
+
+        EntityTag json = UserEntityTags.ofVariant(entityTag, MediaType.APPLICATION_JSON_TYPE, null);
+        EntityTag smile = UserEntityTags.ofVariant(entityTag, APPLICATION_JACKSON_SMILE_TYPE, null);
+        EntityTag gzippedSmile = UserEntityTags.ofVariant(entityTag, APPLICATION_JACKSON_SMILE_TYPE, GZIP);
+
+        assertThat(json).isEqualTo(entityTag);
+        assertThat(smile.getValue()).isEqualTo(entityTag.getValue() + "-smile");
+        assertThat(gzippedSmile.getValue()).isEqualTo(entityTag.getValue() + "-smile-gzip");
+        assertThat(gzippedSmile.isWeak()).isFalse();
+    }
+
+    @Test
+    void shouldCompareIfNoneMatchWeakly() {
+        EntityTag entityTag = UserEntityTags.ofVariant(UserEntityTags.ofVersion(3, 7), MediaType.APPLICATION_JSON_TYPE, GZIP);
+
+        assertThat(UserEntityTags.noneMatchNames(null, entityTag)).isFalse();
+        assertThat(UserEntityTags.noneMatchNames(entityTag.toString(), entityTag)).isTrue();
+        assertThat(UserEntityTags.noneMatchNames("W/" + entityTag, entityTag)).isTrue();
+        assertThat(UserEntityTags.noneMatchNames("\"other\", " + entityTag, entityTag)).isTrue();
+        assertThat(UserEntityTags.noneMatchNames("*", entityTag)).isTrue();
+        assertThat(UserEntityTags.noneMatchNames(UserEntityTags.ofVersion(3, 7).toString(), entityTag)).isFalse();
+        assertThat(UserEntityTags.noneMatchNames("not a tag", entityTag)).isFalse();
+    }
+
+    @Test
+    void shouldReadVersionOfAnyRepresentation() {
+        EntityTag entityTag = UserEntityTags.ofVersion(3, 7);
+        EntityTag smile = UserEntityTags.ofVariant(entityTag, APPLICATION_JACKSON_SMILE_TYPE, GZIP);
+
+        assertThat(UserEntityTags.version(entityTag.toString(), 3)).hasValue(7);
+        assertThat(UserEntityTags.version(smile.toString(), 3)).hasValue(7);
+        assertThat(UserEntityTags.version("W/" + entityTag, 3)).isEmpty();
+        assertThat(UserEntityTags.version("\"0.2020.3.7\"", 3)).isEmpty();
+    }
+
+    @Test
+    void shouldNotReadVersionOfAnotherInsertion() {
+        EntityTag entityTag = UserEntityTags.ofVersion(3, 7);
+
+        assertThat(UserEntityTags.version(entityTag.toString(), 4)).isEmpty();
+        assertThat(UserEntityTags.version(UserEntityTags.ofVersion(33, 7).toString(), 3)).isEmpty();
+    }
+}
@@ -0,0 +1,71 @@
+package com.yershovkiril.learningspringboot.service;
+
+import com.yershovkiril.learningspringboot.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ServiceUnavailableException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class AsyncUserServiceTest {
+
+    @Mock
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    void shouldCompleteWithServiceResult() throws Exception {
+        UUID annaUserUid = UUID.randomUUID();
+        User anna = new User(annaUserUid, "anna", "montana", User.Gender.FEMALE, 30, "anna@gmail.com");
+        given(userService.getUser(annaUserUid)).willReturn(Optional.of(anna));
+        AsyncUserService asyncUserService = new AsyncUserService(userService, Runnable::run);
+
+        Optional<User> user = asyncUserService.getUser(annaUserUid).toCompletableFuture().get();
+
+        assertThat(user).contains(anna);
+    }
+
+    @Test
+    void shouldCompleteExceptionallyWithServiceFailure() {
+        User anna = new User(UUID.randomUUID(), "anna", "montana", User.Gender.FEMALE, 30, "anna@gmail.com");
+        given(userService.updateUser(anna)).willThrow(new NotFoundException("user not found"));
+        AsyncUserService asyncUserService = new AsyncUserService(userService, Runnable::run);
+
+        CompletableFuture<Integer> result = asyncUserService.updateUser(anna).toCompletableFuture();
+
+        assertThatThrownBy(result::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void shouldFailWithServiceUnavailableWhenSaturated() {
+        AsyncUserService asyncUserService = new AsyncUserService(userService, task -> {
+            throw new RejectedExecutionException();
+        });
+
+        CompletableFuture<Integer> result = asyncUserService.removeUser(UUID.randomUUID()).toCompletableFuture();
+
+        assertThat(result).isCompletedExceptionally();
+        assertThatThrownBy(result::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(ServiceUnavailableException.class);
+        verifyNoInteractions(userService);
+    }
+}
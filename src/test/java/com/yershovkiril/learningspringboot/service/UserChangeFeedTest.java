@@ -0,0 +1,258 @@
+package com.yershovkiril.learningspringboot.service;
+
+import com.yershovkiril.learningspringboot.dao.ConcurrentDataDao;
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserChange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.NotAllowedException;
+import javax.ws.rs.NotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserChangeFeedTest {
+
+    private UserDao userDao;
+    private UserChangeFeed changeFeed;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        userDao = new ConcurrentDataDao();
+        changeFeed = new UserChangeFeed(userDao, 3, "");
+        userService = new UserService(userDao, changeFeed);
+    }
+
+    @Test
+    void shouldNumberAppliedWritesInOrder() {
+        User anna = user("anna");
+        userService.insertUser(anna);
+        userService.insertUser(new User(UUID.randomUUID(), "anna", "copy", User.Gender.FEMALE, 30, anna.getEmail()));
+        userService.removeUser(anna.getUserUid());
+
+        List<UserChange> changes = changeFeed.changesAfter(null, 0, 10);
+
+        assertThat(changes).extracting(UserChange::getSequence).containsExactly(1L, 2L);
+        assertThat(changes.get(0).getUser()).usingRecursiveComparison().isEqualTo(anna);
+        assertThat(changes.get(1).isDelete()).isTrue();
+        assertThat(changes.get(1).getUserUid()).isEqualTo(anna.getUserUid());
+        assertThat(changeFeed.changesAfter(changeFeed.getEpoch(), 1, 10))
+                .extracting(UserChange::getSequence).containsExactly(2L);
+        assertThat(changeFeed.changesAfter(changeFeed.getEpoch(), 2, 10)).isEmpty();
+    }
+
+    @Test
+    void shouldNumberEachAppliedItemOfABatch() {
+        User anna = user("anna");
+        User bob = user("bob");
+        userService.insertUsers(Arrays.asList(anna, bob, anna));
+
+        assertThat(changeFeed.changesAfter(null, 0, 10))
+                .extracting(UserChange::getUserUid)
+                .containsExactly(anna.getUserUid(), bob.getUserUid());
+    }
+
+    @Test
+    void shouldAnswerGoneWhenChangesAreNotKept() {
+        for (int i = 0; i < 4; i++) {
+            userService.insertUser(user("user" + i));
+        }
+        String epoch = changeFeed.getEpoch();
+
+        assertThat(changeFeed.changesAfter(epoch, 1, 10)).hasSize(3);
+        assertGone(() -> changeFeed.changesAfter(epoch, 0, 10));
+        assertGone(() -> changeFeed.changesAfter(epoch, 5, 10));
+        assertGone(() -> changeFeed.changesAfter(UUID.randomUUID().toString(), 1, 10));
+    }
+
+    @Test
+    void shouldWaitForTheNextChange() throws Exception {
+        CompletableFuture<List<UserChange>> next = CompletableFuture.supplyAsync(() -> {
+            try {
+                return changeFeed.awaitChangesAfter(null, 0, 10, 10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        userService.insertUser(user("anna"));
+
+        assertThat(next.get(10, TimeUnit.SECONDS)).extracting(UserChange::getSequence).containsExactly(1L);
+        assertThat(changeFeed.awaitChangesAfter(null, 1, 10, 10, TimeUnit.MILLISECONDS)).isEmpty();
+    }
+
+    @Test
+    void shouldReplicateOverASnapshot() {
+        userService.insertUser(user("anna"));
+        UserChangeFeed.Snapshot snapshot = changeFeed.snapshot();
+        User bob = user("bob");
+        userService.insertUser(bob);
+        userService.updateUser(new User(bob.getUserUid(), "bob", "renamed", User.Gender.MALE, 40, bob.getEmail()));
+        userService.removeUser(snapshot.getUsers().get(0).getUserUid());
+
+        UserDao followerDao = new ConcurrentDataDao();
+        UserChangeFeed follower = new UserChangeFeed(followerDao, 3, "http://localhost:8080/api/v1/users");
+        follower.reset(snapshot.getEpoch(), snapshot.getSequence(), snapshot.getUsers());
+        changeFeed.changesAfter(follower.getEpoch(), follower.getSequence(), 10).forEach(follower::replicate);
+
+        assertThat(followerDao.selectAllUsers())
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyInAnyOrderElementsOf(userDao.selectAllUsers());
+        assertThat(follower.getEpoch()).isEqualTo(changeFeed.getEpoch());
+        assertThat(follower.getSequence()).isEqualTo(changeFeed.getSequence());
+        assertThat(follower.changesAfter(follower.getEpoch(), snapshot.getSequence(), 10))
+                .extracting(UserChange::getSequence).containsExactly(2L, 3L, 4L);
+        assertThatThrownBy(() -> follower.replicate(new UserChange(9, bob.getUserUid(), null)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new UserService(followerDao, follower).insertUser(user("carol")))
+                .isInstanceOf(NotAllowedException.class);
+    }
+
+    @Test
+    void shouldApplyWritesToDifferentUsersConcurrently() throws Exception {
+        int writers = 4;
+        List<User> users = usersOnDistinctStripes(writers);
+        Set<UUID> meeting = new HashSet<>();
+        users.forEach(user -> meeting.add(user.getUserUid()));
+        CyclicBarrier together = new CyclicBarrier(writers);
+        UserDao meetingDao = new ConcurrentDataDao() {
+            @Override
+            public int insertUser(UUID userUid, User user) {
+                if (!meeting.contains(userUid)) {
+                    return super.insertUser(userUid, user);
+                }
+                try {
+                    // returns only once every writer is inside the store at the same time
+                    together.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException("writes to different users were serialized", e);
+                }
+                return super.insertUser(userUid, user);
+            }
+        };
+        UserChangeFeed feed = new UserChangeFeed(meetingDao, 3, "");
+        UserService service = new UserService(meetingDao, feed);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<Integer>> inserts = new ArrayList<>();
+            for (User user : users) {
+                inserts.add(executor.submit(() -> service.insertUser(user)));
+            }
+            for (Future<Integer> insert : inserts) {
+                assertThat(insert.get(30, TimeUnit.SECONDS)).isEqualTo(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(feed.getSequence()).isEqualTo(writers);
+        assertThat(feed.changesAfter(null, 1, 10)).extracting(UserChange::getSequence).containsExactly(2L, 3L, 4L);
+    }
+
+    @Test
+    void shouldReplayConcurrentWritesOverASnapshotTakenMeanwhile() throws Exception {
+        changeFeed = new UserChangeFeed(userDao, 100_000, "");
+        userService = new UserService(userDao, changeFeed);
+        List<UUID> userUids = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            userUids.add(UUID.randomUUID());
+        }
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        UserChangeFeed.Snapshot snapshot;
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                // few users and fewer emails, so that emails keep changing hands
+                writers.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 2_000; i++) {
+                        UUID userUid = userUids.get(random.nextInt(userUids.size()));
+                        User user = new User(userUid, "anna", "jones", User.Gender.FEMALE, random.nextInt(100),
+                                "shared" + random.nextInt(4) + "@gmail.com");
+                        try {
+                            switch (random.nextInt(3)) {
+                                case 0:
+                                    userService.insertUser(user);
+                                    break;
+                                case 1:
+                                    userService.updateUser(user);
+                                    break;
+                                default:
+                                    userService.removeUser(userUid);
+                            }
+                        } catch (NotFoundException e) {
+                            // removed meanwhile
+                        }
+                    }
+                    return null;
+                }));
+            }
+            while (changeFeed.getSequence() < 500) {
+                Thread.yield();
+            }
+            snapshot = changeFeed.snapshot();
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        UserDao followerDao = new ConcurrentDataDao();
+        UserChangeFeed follower = new UserChangeFeed(followerDao, 100_000, "http://localhost:8080/api/v1/users");
+        follower.reset(snapshot.getEpoch(), snapshot.getSequence(), snapshot.getUsers());
+        changeFeed.changesAfter(follower.getEpoch(), follower.getSequence(), Integer.MAX_VALUE).forEach(follower::replicate);
+
+        assertThat(followerDao.selectAllUsers())
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyInAnyOrderElementsOf(userDao.selectAllUsers());
+        assertThat(follower.getSequence()).isEqualTo(changeFeed.getSequence());
+    }
+
+    /**
+     * Users whose uids and emails all fall on different stripes, so that their writes are
+     * independent.
+     */
+    private static List<User> usersOnDistinctStripes(int count) {
+        Set<Integer> taken = new HashSet<>();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; users.size() < count; i++) {
+            User user = user("user" + i);
+            int uidStripe = UserChangeFeed.stripe(user.getUserUid().hashCode());
+            int emailStripe = UserChangeFeed.stripe(UserChangeFeed.emailKey(user.getEmail()).hashCode());
+            if (uidStripe != emailStripe && !taken.contains(uidStripe) && !taken.contains(emailStripe)) {
+                taken.add(uidStripe);
+                taken.add(emailStripe);
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    private static User user(String name) {
+        return new User(UUID.randomUUID(), name, "jones", User.Gender.FEMALE, 30, name + "@gmail.com");
+    }
+
+    private static void assertGone(Runnable read) {
+        assertThatThrownBy(read::run)
+                .isInstanceOf(ClientErrorException.class)
+                .satisfies(e -> assertThat(((ClientErrorException) e).getResponse().getStatus()).isEqualTo(410));
+    }
+}
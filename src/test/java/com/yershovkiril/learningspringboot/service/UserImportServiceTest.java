@@ -0,0 +1,82 @@
+package com.yershovkiril.learningspringboot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yershovkiril.learningspringboot.dao.ConcurrentDataDao;
+import com.yershovkiril.learningspringboot.dao.UserDao;
+import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserBatchResult;
+import com.yershovkiril.learningspringboot.model.UserImportResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class UserImportServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private UserDao userDao;
+    private UserImportService userImportService;
+
+    @BeforeEach
+    void setUp() {
+        userDao = new ConcurrentDataDao();
+        userImportService = new UserImportService(new UserService(userDao), objectMapper, 2);
+    }
+
+    @Test
+    void shouldImportLinesInBatchesAndReportRejectedOnes() throws IOException {
+        User anna = new User(UUID.randomUUID(), "Anna", "Montana", User.Gender.FEMALE, 30, "anna@gmail.com");
+        String ndjson = objectMapper.writeValueAsString(anna) + "\n"
+                + "\n"
+                + "{\"firstName\":\"Joe\",\"lastName\":\"Jones\",\"gender\":\"MALE\",\"age\":22,\"email\":\"joe@gmail.com\"}\n"
+                + "{\"firstName\":\"Bob\",\n"
+                + "{\"firstName\":\"Bob\",\"lastName\":\"Jones\",\"gender\":\"MALE\",\"age\":40}\n"
+                + "{\"firstName\":\"Anna\",\"lastName\":\"Copy\",\"gender\":\"FEMALE\",\"age\":30,\"email\":\"ANNA@gmail.com\"}\n"
+                + "{\"firstName\":\"Carol\",\"lastName\":\"Jones\",\"gender\":\"FEMALE\",\"age\":50,\"email\":\"carol@gmail.com\"}";
+
+        UserImportResult result = userImportService.importUsers(stream(ndjson));
+
+        assertThat(result.getLines()).isEqualTo(6);
+        assertThat(result.getImported()).isEqualTo(3);
+        assertThat(result.getRejected()).isEqualTo(3);
+        assertThat(result.getRejections())
+                .extracting(UserBatchResult::getIndex, UserBatchResult::getStatus)
+                .containsExactly(
+                        tuple(4, UserBatchResult.Status.INVALID),
+                        tuple(5, UserBatchResult.Status.INVALID),
+                        tuple(6, UserBatchResult.Status.CONFLICT));
+        assertThat(result.getRejections().get(1).getErrorMessage()).isEqualTo("email required");
+        assertThat(userDao.selectUserByUserUid(anna.getUserUid())).isPresent();
+        assertThat(userDao.selectUserByEmail("joe@gmail.com")).isPresent();
+        assertThat(userDao.selectUserByEmail("carol@gmail.com")).isPresent();
+    }
+
+    @Test
+    void shouldCountRejectionsBeyondThoseReported() throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        int lines = UserImportService.MAX_REPORTED_REJECTIONS + 5;
+        for (int i = 0; i < lines; i++) {
+            ndjson.append("null\n");
+        }
+
+        UserImportResult result = userImportService.importUsers(stream(ndjson.toString()));
+
+        assertThat(result.getRejected()).isEqualTo(lines);
+        assertThat(result.getRejections()).hasSize(UserImportService.MAX_REPORTED_REJECTIONS);
+        assertThat(result.getRejections().get(0).getErrorMessage()).isEqualTo("user required");
+        // only the sample user
+        assertThat(userDao.selectAllUsers()).hasSize(1);
+    }
+
+    private static InputStream stream(String ndjson) {
+        return new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -2,6 +2,8 @@ package com.yershovkiril.learningspringboot.service;
 
 import com.yershovkiril.learningspringboot.dao.FakeDataDao;
 import com.yershovkiril.learningspringboot.model.User;
+import com.yershovkiril.learningspringboot.model.UserBatchResult;
+import com.yershovkiril.learningspringboot.model.VersionedUser;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -10,16 +12,23 @@ import org.mockito.MockitoAnnotations;
 
 import com.google.common.collect.ImmutableList;
 
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.NotFoundException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 class UserServiceTest {
@@ -32,6 +41,7 @@ class UserServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.initMocks(this);
+        given(fakeDataDao.deferSync(any())).willAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
         userService = new UserService(fakeDataDao);
     }
 
@@ -61,16 +71,32 @@ class UserServiceTest {
         User joe = new User(annaUserUid, "joe", "jones",
                 User.Gender.MALE, 30, "jones@gmail.com");
 
-        ImmutableList<User> users = new ImmutableList.Builder<User>()
+        ImmutableList<User> females = new ImmutableList.Builder<User>()
                 .add(anna)
-                .add(joe)
                 .build();
 
-        given(fakeDataDao.selectAllUsers()).willReturn(users);
+        given(fakeDataDao.selectUsersByGender(User.Gender.FEMALE)).willReturn(females);
 
         List<User> filteredUsers = userService.getAllUsers(Optional.of("female"));
         assertThat(filteredUsers).hasSize(1);
+        assertThat(filteredUsers).doesNotContain(joe);
         assertUserFields(filteredUsers.get(0));
+        verify(fakeDataDao, never()).selectAllUsers();
+    }
+
+    @Test
+    void shouldGetUsersPageByGender() {
+        UUID annaUserUid = UUID.randomUUID();
+        User anna = new User(annaUserUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+        UUID cursor = UUID.randomUUID();
+
+        given(fakeDataDao.selectUsersByGenderAfter(User.Gender.FEMALE, cursor, 10))
+                .willReturn(ImmutableList.of(anna));
+
+        List<User> page = userService.getUsersPage(Optional.of("female"), Optional.of(cursor), 10);
+        assertThat(page).hasSize(1);
+        assertUserFields(page.get(0));
     }
 
     @Test
@@ -117,6 +143,86 @@ class UserServiceTest {
         assertThat(updateResult).isEqualTo(1);
     }
 
+    @Test
+    void shouldTellDeletedUserFromTakenEmailOnUpdate() {
+        UUID annaUid = UUID.randomUUID();
+        User anna = new User(annaUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+
+        given(fakeDataDao.updateUser(anna)).willReturn(0);
+        given(fakeDataDao.selectUserByUserUid(annaUid)).willReturn(Optional.of(anna));
+
+        assertThat(userService.updateUser(anna)).isEqualTo(0);
+
+        given(fakeDataDao.selectUserByUserUid(annaUid)).willReturn(Optional.of(anna), Optional.empty());
+
+        assertThatThrownBy(() -> userService.updateUser(anna))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void shouldUpdateUserAtExpectedVersion() {
+        UUID annaUid = UUID.randomUUID();
+        User anna = new User(annaUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+
+        given(fakeDataDao.updateUser(anna, 3)).willReturn(1);
+
+        assertThat(userService.updateUser(anna, 3)).isEqualTo(1);
+        verify(fakeDataDao, never()).selectVersionedUserByUserUid(any());
+    }
+
+    @Test
+    void shouldRejectUpdateOfChangedUser() {
+        UUID annaUid = UUID.randomUUID();
+        User anna = new User(annaUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+
+        given(fakeDataDao.updateUser(anna, 3)).willReturn(0);
+        given(fakeDataDao.selectVersionedUserByUserUid(annaUid)).willReturn(Optional.of(new VersionedUser(anna, 1, 4)));
+
+        assertThatThrownBy(() -> userService.updateUser(anna, 3))
+                .isInstanceOf(ClientErrorException.class)
+                .satisfies(e -> assertThat(((ClientErrorException) e).getResponse().getStatus()).isEqualTo(412));
+    }
+
+    @Test
+    void shouldRejectInvalidUsersOnEveryWrite() {
+        User anna = new User(UUID.randomUUID(), "anna", "montana",
+                User.Gender.FEMALE, 130, "anna@gmail.com");
+        User noEmail = new User(UUID.randomUUID(), "joe", "jones",
+                User.Gender.MALE, 30, "joe.gmail.com");
+
+        assertThatThrownBy(() -> userService.insertUser(anna))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessage("age must be between 0 and 112");
+        assertThatThrownBy(() -> userService.updateUser(noEmail))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessage("email must be a well-formed email address");
+        assertThatThrownBy(() -> userService.updateUser(anna, 1))
+                .isInstanceOf(BadRequestException.class);
+        given(fakeDataDao.updateUsers(any())).willReturn(new int[0]);
+        List<UserBatchResult> results = userService.updateUsers(Arrays.asList(anna, noEmail));
+
+        assertThat(results).extracting("status")
+                .containsOnly(UserBatchResult.Status.INVALID);
+        verify(fakeDataDao, never()).insertUser(any(), any());
+        verify(fakeDataDao, never()).updateUser(any());
+        verify(fakeDataDao, never()).updateUser(any(), anyLong());
+        verify(fakeDataDao, never()).selectUserByUserUid(any());
+    }
+
+    @Test
+    void shouldRejectConditionalDeleteOfMissingUser() {
+        UUID annaUid = UUID.randomUUID();
+
+        given(fakeDataDao.deleteUserByUserUid(annaUid, 1)).willReturn(0);
+        given(fakeDataDao.selectVersionedUserByUserUid(annaUid)).willReturn(Optional.empty());
+
+        assertThatThrownBy(() -> userService.removeUser(annaUid, 1))
+                .isInstanceOf(NotFoundException.class);
+    }
+
     @Test
     void ShouldRemoveUser() {
         UUID annaUid = UUID.randomUUID();
@@ -152,6 +258,48 @@ class UserServiceTest {
         assertThat(insertResult).isEqualTo(1);
     }
 
+    @Test
+    void shouldInsertValidUsersInOneDaoCall() {
+        UUID annaUid = UUID.randomUUID();
+        User anna = new User(annaUid, "anna", "montana",
+                User.Gender.FEMALE, 30, "anna@gmail.com");
+        User noEmail = new User(UUID.randomUUID(), "joe", "jones",
+                User.Gender.MALE, 30, null);
+        UUID takenUid = UUID.randomUUID();
+        User taken = new User(takenUid, "joe", "jones",
+                User.Gender.MALE, 30, "joe@gmail.com");
+
+        given(fakeDataDao.insertUsers(any())).willReturn(new int[]{1, 0});
+
+        List<UserBatchResult> results = userService.insertUsers(Arrays.asList(anna, noEmail, taken));
+
+        ArgumentCaptor<List<User>> captor = ArgumentCaptor.forClass(List.class);
+        verify(fakeDataDao).insertUsers(captor.capture());
+        verify(fakeDataDao, never()).insertUser(any(), any());
+        assertThat(captor.getValue()).extracting("userUid").containsExactly(annaUid, takenUid);
+        assertUserFields(captor.getValue().get(0));
+
+        assertThat(results).extracting("index").containsExactly(0, 1, 2);
+        assertThat(results).extracting("status").containsExactly(
+                UserBatchResult.Status.APPLIED, UserBatchResult.Status.INVALID, UserBatchResult.Status.CONFLICT);
+        assertThat(results.get(1).getErrorMessage()).isEqualTo("email required");
+    }
+
+    @Test
+    void shouldReportMissingUsersOfBatchDelete() {
+        UUID annaUid = UUID.randomUUID();
+        UUID missingUid = UUID.randomUUID();
+
+        given(fakeDataDao.deleteUsersByUserUid(Arrays.asList(annaUid, missingUid))).willReturn(new int[]{1, 0});
+
+        List<UserBatchResult> results = userService.removeUsers(Arrays.asList(annaUid, null, missingUid));
+
+        verify(fakeDataDao, never()).selectUserByUserUid(any());
+        assertThat(results).extracting("status").containsExactly(
+                UserBatchResult.Status.APPLIED, UserBatchResult.Status.INVALID, UserBatchResult.Status.NOT_FOUND);
+        assertThat(results).extracting("userUid").containsExactly(annaUid, null, missingUid);
+    }
+
     private void assertUserFields(User user) {
         assertThat(user.getAge()).isEqualTo(30);
         assertThat(user.getEmail()).isEqualTo("anna@gmail.com");
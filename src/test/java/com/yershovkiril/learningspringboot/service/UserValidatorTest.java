@@ -0,0 +1,88 @@
+package com.yershovkiril.learningspringboot.service;
+
+import com.yershovkiril.learningspringboot.model.User;
+import org.junit.jupiter.api.Test;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserValidatorTest {
+
+    private static final Validator BEAN_VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private static final String LONG_LABEL = repeat('a', 63);
+
+    @Test
+    void shouldReportTheFirstBrokenConstraint() {
+        assertThat(UserValidator.validationError(null)).isEqualTo("user required");
+        assertThat(UserValidator.validationError(user(null, 30, "anna@gmail.com"))).isEqualTo("first name required");
+        assertThat(UserValidator.validationError(user("Anna", null, "anna@gmail.com"))).isEqualTo("age required");
+        assertThat(UserValidator.validationError(user("Anna", -1, "anna@gmail.com")))
+                .isEqualTo("age must be between 0 and 112");
+        assertThat(UserValidator.validationError(user("Anna", 113, null))).isEqualTo("age must be between 0 and 112");
+        assertThat(UserValidator.validationError(user("Anna", 112, null))).isEqualTo("email required");
+        assertThat(UserValidator.validationError(user("Anna", 0, "anna")))
+                .isEqualTo("email must be a well-formed email address");
+        assertThat(UserValidator.validationError(new User(null, "Anna", "Montana", null, 30, "anna@gmail.com")))
+                .isEqualTo("gender required");
+        assertThat(UserValidator.validationError(user("Anna", 30, "anna@gmail.com"))).isNull();
+    }
+
+    @Test
+    void shouldAgreeWithBeanValidation() {
+        List<String> emails = Arrays.asList(
+                "", "anna", "@", "anna@", "@gmail.com", "anna@gmail.com", "Anna.Montana+tag@Mail.Example.COM",
+                "a@b", "a@b.", "a@.b", "a@b..c", "a.@b.c", ".a@b.c", "a..b@c.d", "a@b@c.d", "a b@c.d",
+                "a@-b.c", "a@b-.c", "a@b--c.d", "a@b_c.d", "a@b c.d", "a@b,c", "a(b)@c.d",
+                "!#$%&'*+/=?^_`{|}~-@x.y", "a@!#$%&'*+/=?^_`{|}~.z", "a@~",
+                "\"anna montana\"@gmail.com", "\"a\\\"b\"@c.d", "\"a\"b@c.d", "\"\"@c.d", "\"a@b\"@c.d",
+                "a@[127.0.0.1]", "a@[IPv6:::1]", "a@[300.0.0.1]", "a@[not an ip]",
+                "ännä@gmail.com", "anna@bücher.de", "anna@bü cher.de", "anna@例え.テスト",
+                "😀@gmail.com", "anna@😀.com", "\uD83D@gmail.com",
+                repeat('a', 64) + "@b.c", repeat('a', 65) + "@b.c",
+                "a@" + LONG_LABEL + ".c", "a@" + LONG_LABEL + "a.c",
+                "a@" + repeat(LONG_LABEL + ".", 3) + repeat('b', 63), "a@" + repeat(LONG_LABEL + ".", 3) + repeat('b', 64),
+                "a@" + repeat(LONG_LABEL + ".", 4) + "com", "a@ü" + repeat(LONG_LABEL + ".", 4) + "com",
+                "a@b.c\n", "a\t@b.c", "a@b.c ", "ANNA@GMAIL.COM");
+
+        for (String email : emails) {
+            assertThat(UserValidator.isEmail(email))
+                    .as(email)
+                    .isEqualTo(BEAN_VALIDATOR.validateValue(User.class, "email", email).isEmpty());
+        }
+    }
+
+    @Test
+    void shouldAgreeWithBeanValidationOnAges() {
+        for (int age = -2; age <= 115; age++) {
+            User user = user("Anna", age, "anna@gmail.com");
+
+            assertThat(UserValidator.validationError(user) == null)
+                    .as("age %d", age)
+                    .isEqualTo(BEAN_VALIDATOR.validate(user).isEmpty());
+        }
+    }
+
+    private static User user(String firstName, Integer age, String email) {
+        return new User(UUID.randomUUID(), firstName, "Montana", User.Gender.FEMALE, age, email);
+    }
+
+    private static String repeat(char c, int times) {
+        char[] chars = new char[times];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            repeated.append(s);
+        }
+        return repeated.toString();
+    }
+}
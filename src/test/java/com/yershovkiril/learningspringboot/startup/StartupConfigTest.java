@@ -0,0 +1,36 @@
+package com.yershovkiril.learningspringboot.startup;
+
+import com.yershovkiril.learningspringboot.clientproxy.ClientProxyConfig;
+import com.yershovkiril.learningspringboot.config.SmileProvider;
+import com.yershovkiril.learningspringboot.dao.ConcurrentDataDao;
+import com.yershovkiril.learningspringboot.resource.UserResourceResteasy;
+import com.yershovkiril.learningspringboot.service.UserImportService;
+import com.yershovkiril.learningspringboot.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StartupConfigTest {
+
+    private final LazyInitializationExcludeFilter filter = StartupConfig.eagerUserBeans();
+
+    @Test
+    void shouldKeepUsersApiEager() {
+        assertThat(isEager(UserResourceResteasy.class)).isTrue();
+        assertThat(isEager(SmileProvider.class)).isTrue();
+        assertThat(isEager(UserService.class)).isTrue();
+        assertThat(isEager(ConcurrentDataDao.class)).isTrue();
+    }
+
+    @Test
+    void shouldLeaveOtherBeansLazy() {
+        assertThat(isEager(ClientProxyConfig.class)).isFalse();
+        assertThat(isEager(UserImportService.class)).isFalse();
+    }
+
+    private boolean isEager(Class<?> beanType) {
+        return filter.isExcluded("bean", new RootBeanDefinition(beanType), beanType);
+    }
+}
@@ -0,0 +1,61 @@
+package com.yershovkiril.learningspringboot.trace;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserRequestTraceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldNotTraceWithoutRecording() {
+        assertThat(UserRequestTrace.begin("UserResourceResteasy.fetchUser", null)).isNull();
+    }
+
+    @Test
+    void shouldRecordRequestWithOutermostDaoTime() throws Exception {
+        String userUid = UUID.randomUUID().toString();
+        Path file = directory.resolve("users.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(UserRequestEvent.NAME);
+            recording.start();
+            UserRequestTrace trace = UserRequestTrace.begin("UserResourceResteasy.fetchUser", userUid);
+            trace.bindToThread();
+            UserRequestTrace.current().enterDao();
+            UserRequestTrace.current().enterDao();
+            Thread.sleep(5);
+            UserRequestTrace.current().exitDao();
+            UserRequestTrace.current().exitDao();
+            trace.status(200);
+            trace.serialized(1_000, 184);
+            trace.end();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        assertThat(UserRequestTrace.current()).isNull();
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals(UserRequestEvent.NAME))
+                .collect(Collectors.toList());
+        assertThat(events).hasSize(1);
+        RecordedEvent event = events.get(0);
+        assertThat(event.getString("operation")).isEqualTo("UserResourceResteasy.fetchUser");
+        assertThat(event.getString("userUid")).isEqualTo(userUid);
+        assertThat(event.getInt("status")).isEqualTo(200);
+        assertThat(event.getDuration("daoTime").toMillis()).isBetween(5L, event.getDuration().toMillis());
+        assertThat(event.getDuration("serializationTime").toNanos()).isEqualTo(1_000);
+        assertThat(event.getLong("resultSize")).isEqualTo(184);
+    }
+}